@@ -21,6 +21,7 @@
 package org.wahlzeit.agents;
 
 import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
 
 /**
  * An Agent executes background tasks.
@@ -47,6 +48,11 @@ public abstract class Agent implements Runnable {
 	 */
 	protected long period = 60 * 60 * 1000; // default = 1h, in millis
 	
+	/**
+	 * How long doRun took
+	 */
+	protected final LatencyHistogram runTimes = new LatencyHistogram();
+	
 	/**
 	 * 
 	 */
@@ -88,7 +94,9 @@ public abstract class Agent implements Runnable {
 				// do nothing
 			}
 			SysLog.logSysInfo("just woke up");
+			long startTime = System.nanoTime();
 			doRun();
+			runTimes.recordNanos(System.nanoTime() - startTime);
 		}
 	}
 	
@@ -107,6 +115,13 @@ public abstract class Agent implements Runnable {
 	}
 	
 	
+	/**
+	 * 
+	 */
+	public LatencyHistogram getRunTimes() {
+		return runTimes;
+	}
+	
 	/**
 	 *
 	 */
@@ -44,6 +44,7 @@ public class AgentManager {
 	 */
 	protected static void initInstance() {
 		getInstance().addAgent(new NotifyAboutPraiseAgent());
+		getInstance().addAgent(new PassivateSessionsAgent());
 	}
 	
 	/**
@@ -88,6 +89,19 @@ public class AgentManager {
 		}
 	}
 	
+	/**
+	 * 
+	 */
+	public List<Agent> getAgents() {
+		List<Agent> result = new ArrayList<Agent>();
+		synchronized(threads) {
+			for (AgentThread thread : threads.values()) {
+				result.add(thread.getAgent());
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * @methodtype get
 	 */
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.agents;
+
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+
+/**
+ * The PassivateSessionsAgent moves idle user sessions out of memory, see UserSessionStore.
+ */
+public class PassivateSessionsAgent extends Agent {
+
+	/**
+	 * 
+	 */
+	public static final String NAME = "PassivateSessions";
+
+	/**
+	 * 
+	 */
+	public PassivateSessionsAgent() {
+		initialize(NAME, SysConfig.getSessionPassivationPeriod());
+	}
+	
+	/**
+	 * Agent.run does not catch; an exception would end passivation for good, and memory would grow unbounded
+	 */
+	protected void doRun() {
+		try {
+			UserSessionStore.getInstance().passivateIdleSessions(SysConfig.getSessionPassivationTime());
+		} catch (RuntimeException rex) {
+			SysLog.logThrowable(rex);
+		}
+	}
+	
+}
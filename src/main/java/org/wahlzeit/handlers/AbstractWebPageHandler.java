@@ -30,6 +30,27 @@ import org.wahlzeit.webparts.*;
  */
 public abstract class AbstractWebPageHandler extends AbstractWebPartHandler implements WebPageHandler {
 	
+	/**
+	 * Slots of the page frame
+	 */
+	protected static final WebPartSlot STYLESHEET_SLOT = WebPartSlot.get("stylesheet");
+	protected static final WebPartSlot JAVASCRIPT_SLOT = WebPartSlot.get("javascript");
+	protected static final WebPartSlot TITLE_SLOT = WebPartSlot.get("title");
+	protected static final WebPartSlot HEADING_SLOT = WebPartSlot.get("heading");
+	protected static final WebPartSlot FOOTER_SLOT = WebPartSlot.get("footer");
+	protected static final WebPartSlot MISSION_SLOT = WebPartSlot.get("mission");
+	protected static final WebPartSlot MENU_SLOT = WebPartSlot.get("menu");
+	
+	/**
+	 * Filled in by the servlet once a page is made; cached pages leave a hole for it
+	 */
+	public static final WebPartSlot PROCESSING_TIME_SLOT = WebPartSlot.get("processingTime");
+	
+	/**
+	 * Versions start over with every server start; validators of earlier runs must not match
+	 */
+	protected static final String VALIDATOR_EPOCH = Long.toString(System.currentTimeMillis(), 36);
+	
 	/**
 	 * 
 	 */
@@ -37,6 +58,35 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 		return makeWebPage(us);
 	}
 	
+	/**
+	 * No validator by default; such pages are always made anew
+	 */
+	public String getValidator(UserSession us) {
+		return null;
+	}
+	
+	/**
+	 * 
+	 */
+	public void makeNotModified(UserSession us) {
+		// do nothing
+	}
+	
+	/**
+	 * Returns a weak ETag made of the validator epoch, the templates version, and parts
+	 * 
+	 * @methodtype conversion
+	 */
+	protected String asValidator(String... parts) {
+		StringBuilder result = new StringBuilder(64);
+		result.append("W/\"").append(VALIDATOR_EPOCH);
+		result.append('-').append(WebPartTemplateService.getInstance().getVersion());
+		for (String part : parts) {
+			result.append('-').append(part);
+		}
+		return result.append('"').toString();
+	}
+	
 	/**
 	 * 
 	 */
@@ -45,9 +95,9 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 		
 		ConfigDir staticDir = SysConfig.getStaticDir();
 		String stylesheetUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.css"));
-		result.addString("stylesheet", stylesheetUrl);
+		result.addString(STYLESHEET_SLOT, stylesheetUrl);
 		String javascriptUrl = HtmlUtil.asPath(staticDir.getRelativeConfigFileName("wahlzeit.js"));
-		result.addString("javascript", javascriptUrl);
+		result.addString(JAVASCRIPT_SLOT, javascriptUrl);
 
 		makeWebPageFrame(us, result);
 		makeWebPageMenu(us, result);		
@@ -60,12 +110,12 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 	 * 
 	 */
 	protected void makeWebPageFrame(UserSession us, WebPart page) {
-		page.addString("title", us.cfg().getPageTitle());
+		page.addString(TITLE_SLOT, us.cfg().getPageTitle());
 		
 		makeWebPageHeading(us, page);
 		
-		page.addString("footer", us.cfg().getPageFooter(us.getPhotoSize()));
-		page.addString("mission", us.cfg().getPageMission());
+		page.addString(FOOTER_SLOT, us.cfg().getPageFooter(us.getPhotoSize()));
+		page.addString(MISSION_SLOT, us.cfg().getPageMission());
 	}
 	
 	/**
@@ -75,7 +125,7 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 		Language langValue = us.cfg().getLanguage();
 		String heading = HtmlUtil.asImg(getHeadingImageAsRelativeResourcePathString(langValue));
 		heading = HtmlUtil.asHref(us.getSiteUrl(), heading);
-		page.addString("heading", heading);
+		page.addString(HEADING_SLOT, heading);
 	}
 	
 	/**
@@ -90,19 +140,25 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 	 */
 	protected void makeWebPageMenu(UserSession us, WebPart page) {
 		Client client = us.getClient();
-		String menu = "";
+		WebPartFragmentCache cache = WebPartFragmentCache.getInstance();
+		String key = WebPartFragmentCache.asKey("menu", us.cfg().getLanguageCode(), client.getRights().asString());
+		WebPartFragment menu = cache.getFragment(key);
 		
-		if (client.hasAdministratorRights()) {
-			menu = us.cfg().getAdministratorMenu();
-		} else if (client.hasModeratorRights()) {
-			menu = us.cfg().getModeratorMenu();
-		} else if (client.hasUserRights()) {
-			menu = us.cfg().getUserMenu();
-		} else {
-			menu = us.cfg().getGuestMenu();
+		if (menu == null) {
+			String text = "";
+			if (client.hasAdministratorRights()) {
+				text = us.cfg().getAdministratorMenu();
+			} else if (client.hasModeratorRights()) {
+				text = us.cfg().getModeratorMenu();
+			} else if (client.hasUserRights()) {
+				text = us.cfg().getUserMenu();
+			} else {
+				text = us.cfg().getGuestMenu();
+			}
+			menu = cache.putFragment(key, cache.getVersion(), text);
 		}
 		
-		page.addString("menu", menu.toString());
+		page.addWritable(MENU_SLOT, menu);
 	}
 	
 	/**
@@ -20,7 +20,7 @@
 
 package org.wahlzeit.handlers;
 
-import java.io.File;
+import java.io.*;
 import java.util.*;
 
 import org.wahlzeit.model.*;
@@ -51,6 +51,13 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 		neededRights = myRights;
 	}
 	
+	/**
+	 * 
+	 */
+	public String getTemplateName() {
+		return tmplName;
+	}
+	
 	/**
 	 * @methodtype factory
 	 */
@@ -67,14 +74,44 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 		return new WebPart(tmpl);
 	}
 		
+	/**
+	 * For parts that depend on template, language, and access rights only; renders them once
+	 * 
+	 * @methodtype factory
+	 */
+	protected final Writable createCachedWebPart(UserSession us, String name) {
+		WebPartFragmentCache cache = WebPartFragmentCache.getInstance();
+		String key = WebPartFragmentCache.asKey(name, us.cfg().getLanguageCode(), us.getClient().getRights().asString());
+		WebPartFragment result = cache.getFragment(key);
+		if (result == null) {
+			long version = cache.getVersion();
+			WebPart part = createWebPart(us, name);
+			try {
+				result = cache.putFragment(key, version, part);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+				return part;
+			}
+		}
+		return result;
+	}
+		
 	/**
 	 * 
 	 */
 	protected String getPhotoThumb(UserSession us, Photo photo) {
 		String result = null;
 		if (photo != null) {
-			String imageLink = getPhotoAsRelativeResourcePathString(photo, PhotoSize.THUMB);
-			result = HtmlUtil.asImg(HtmlUtil.asPath(imageLink), photo.getThumbWidth(), photo.getThumbHeight());
+			PhotoFragmentCache cache = PhotoFragmentCache.getInstance();
+			String key = PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.THUMB, "");
+			long version = photo.getVersion();
+			result = cache.getString(key, version);
+			if (result == null) {
+				long templatesVersion = WebPartTemplateService.getInstance().getVersion();
+				String imageLink = getPhotoAsRelativeResourcePathString(photo, PhotoSize.THUMB);
+				result = HtmlUtil.asImg(HtmlUtil.asPath(imageLink), photo.getThumbWidth(), photo.getThumbHeight());
+				cache.putString(key, version, templatesVersion, result);
+			}
 		} else {
 			Language langValue = us.cfg().getLanguage();
 			result = HtmlUtil.asImg(getEmptyImageAsRelativeResourcePathString(langValue));
@@ -93,7 +130,37 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 * 
 	 */
 	protected String getPhotoCaption(UserSession us, Photo photo) {
-		return photo.getCaption(us.cfg());
+		PhotoFragmentCache cache = PhotoFragmentCache.getInstance();
+		String key = PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.CAPTION, us.cfg().getLanguageCode());
+		long version = photo.getVersion();
+		String result = cache.getString(key, version);
+		if (result == null) {
+			long templatesVersion = WebPartTemplateService.getInstance().getVersion();
+			result = cache.putString(key, version, templatesVersion, photo.getCaption(us.cfg()));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the part made by handler for the photo or photo case set in us, rendered once per version of it
+	 * 
+	 * @methodtype factory
+	 */
+	protected Writable createCachedPhotoPart(UserSession us, String id, String kind, long version, WebFormHandler handler) {
+		PhotoFragmentCache cache = PhotoFragmentCache.getInstance();
+		String key = PhotoFragmentCache.asKey(id, kind, us.cfg().getLanguageCode());
+		WebPartFragment result = cache.getFragment(key, version);
+		if (result == null) {
+			long templatesVersion = WebPartTemplateService.getInstance().getVersion();
+			WebPart part = handler.makeWebPart(us);
+			try {
+				result = cache.putFragment(key, version, templatesVersion, part);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+				return part;
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -252,7 +319,7 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 * 
 	 */
 	protected String getPhotoAsRelativeResourcePathString(Photo photo, PhotoSize size) {
-		String resName = photo.getId().asString() + size.asInt() + ".jpg";
+		String resName = PhotoUtil.getPhotoFilePath(photo.getImageId(), size);
 		return SysConfig.getPhotosDir().getRelativeDir() + '/' + resName;
 	}
 
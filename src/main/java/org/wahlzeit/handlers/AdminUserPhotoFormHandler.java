@@ -69,7 +69,7 @@ public class AdminUserPhotoFormHandler extends AbstractWebFormHandler {
 		PhotoManager pm = PhotoManager.getInstance();
 		pm.savePhoto(photo);
 		
-		StringBuffer sb = UserLog.createActionEntry("AdminUserPhoto");
+		StringBuilder sb = UserLog.createActionEntry("AdminUserPhoto");
 		UserLog.addUpdatedObject(sb, "Photo", photo.getId().asString());
 		UserLog.log(sb);
 		
@@ -101,7 +101,7 @@ public class AdminUserProfileFormHandler extends AbstractWebFormHandler {
 		user = um.getUserByName(userId);
 		us.setSavedArg("userId", userId);
 
-		StringBuffer sb = UserLog.createActionEntry("AdminUserProfile");
+		StringBuilder sb = UserLog.createActionEntry("AdminUserProfile");
 		UserLog.addUpdatedObject(sb, "User", user.getName());
 		UserLog.log(sb);
 		
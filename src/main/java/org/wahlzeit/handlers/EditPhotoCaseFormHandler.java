@@ -94,7 +94,7 @@ public class EditPhotoCaseFormHandler extends AbstractWebFormHandler {
 
 		photo.setStatus(status);
 
-		StringBuffer sb = UserLog.createActionEntry("EditPhotoCase");
+		StringBuilder sb = UserLog.createActionEntry("EditPhotoCase");
 		UserLog.addUpdatedObject(sb, "Photo", photo.getId().asString());
 		UserLog.log(sb);
 
@@ -93,7 +93,7 @@ public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 
 		pm.savePhoto(photo);
 		
-		StringBuffer sb = UserLog.createActionEntry("EditUserPhoto");
+		StringBuilder sb = UserLog.createActionEntry("EditUserPhoto");
 		UserLog.addUpdatedObject(sb, "Photo", photo.getId().asString());
 		UserLog.log(sb);
 		
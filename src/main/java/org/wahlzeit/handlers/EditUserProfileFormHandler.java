@@ -98,7 +98,7 @@ public class EditUserProfileFormHandler extends AbstractWebFormHandler {
 			user.setLanguage(langValue);
 		}
 		
-		StringBuffer sb = UserLog.createActionEntry("EditUserProfile");
+		StringBuilder sb = UserLog.createActionEntry("EditUserProfile");
 		UserLog.addUpdatedObject(sb, "User", user.getName());
 		UserLog.log(sb);
 		
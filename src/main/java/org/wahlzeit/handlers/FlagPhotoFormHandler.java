@@ -109,7 +109,7 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 		
 		us.setEmailAddress(from);
 
-		StringBuffer sb = UserLog.createActionEntry("FlagPhoto");
+		StringBuilder sb = UserLog.createActionEntry("FlagPhoto");
 		UserLog.addUpdatedObject(sb, "Photo", photo.getId().asString());
 		UserLog.log(sb);
 		
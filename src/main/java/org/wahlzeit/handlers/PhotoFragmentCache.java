@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.handlers;
+
+import java.io.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * The PhotoFragmentCache keeps HTML rendered for a photo, keyed by photo id, fragment kind, and language.
+ * Each entry remembers the DataObject version it was rendered from; it is stale once the photo changed.
+ * Whole-page skeletons are far larger than fragments, so they are kept apart, in a much smaller cache.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = PhotoFragmentCache.class
+)
+public class PhotoFragmentCache {
+	
+	/**
+	 * Fragment kinds
+	 */
+	public static final String THUMB = "thumb";
+	public static final String CAPTION = "caption";
+	public static final String USER_PHOTO_FORM = "userPhotoForm";
+	public static final String PHOTO_CASE_FORM = "photoCaseForm";
+	public static final String GUEST_PAGE = "guestPage";
+
+	/**
+	 * 
+	 */
+	protected static PhotoFragmentCache instance = null;
+
+	/**
+	 * 
+	 */
+	public static synchronized PhotoFragmentCache getInstance() {
+		if (instance == null) {
+			instance = new PhotoFragmentCache(SysConfig.getPhotoFragmentCacheEntries(), SysConfig.getPhotoSkeletonCacheEntries());
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * 
+	 */
+	public static synchronized void dropInstance() {
+		instance = null;
+	}
+	
+	/**
+	 * 
+	 */
+	protected static class Entry {
+		
+		/**
+		 * 
+		 */
+		protected final long version;
+		protected final long templatesVersion;
+		protected final Object value;
+		
+		/**
+		 * 
+		 */
+		protected Entry(long myVersion, long myTemplatesVersion, Object myValue) {
+			version = myVersion;
+			templatesVersion = myTemplatesVersion;
+			value = myValue;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected LruCache<String, Entry> entries;
+	protected LruCache<String, Entry> skeletons;
+	
+	/**
+	 * 
+	 */
+	protected PhotoFragmentCache(int maxEntries, int maxSkeletons) {
+		entries = new LruCache<String, Entry>(maxEntries);
+		skeletons = new LruCache<String, Entry>(maxSkeletons);
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	public static String asKey(String id, String kind, String lang) {
+		return id + '|' + kind + '|' + lang;
+	}
+	
+	/**
+	 * Returns the value of key if rendered from version and the current templates, or null
+	 */
+	protected static Object getValue(LruCache<String, Entry> cache, String key, long version) {
+		Entry result = cache.get(key);
+		if (result == null) {
+			return null;
+		}
+		
+		long templatesVersion = WebPartTemplateService.getInstance().getVersion();
+		if ((result.version != version) || (result.templatesVersion != templatesVersion)) {
+			return null;
+		}
+		
+		return result.value;
+	}
+	
+	/**
+	 * 
+	 */
+	public String getString(String key, long version) {
+		return (String) getValue(entries, key, version);
+	}
+	
+	/**
+	 * 
+	 */
+	public String putString(String key, long version, long templatesVersion, String value) {
+		entries.put(key, new Entry(version, templatesVersion, value));
+		return value;
+	}
+	
+	/**
+	 * 
+	 */
+	public WebPartFragment getFragment(String key, long version) {
+		return (WebPartFragment) getValue(entries, key, version);
+	}
+	
+	/**
+	 * Renders part into a fragment for key; versions are those read before part was created
+	 */
+	public WebPartFragment putFragment(String key, long version, long templatesVersion, Writable part) throws IOException {
+		WebPartFragment result = WebPartFragment.render(part, templatesVersion);
+		entries.put(key, new Entry(version, templatesVersion, result));
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	public WebPartTemplate getSkeleton(String key, long version) {
+		return (WebPartTemplate) getValue(skeletons, key, version);
+	}
+	
+	/**
+	 * 
+	 */
+	public WebPartTemplate putSkeleton(String key, long version, long templatesVersion, WebPartTemplate skeleton) {
+		skeletons.put(key, new Entry(version, templatesVersion, skeleton));
+		return skeleton;
+	}
+	
+	/**
+	 * 
+	 */
+	public int getNoEntries() {
+		return entries.size();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getHits() {
+		return entries.getHits();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getMisses() {
+		return entries.getMisses();
+	}
+	
+	/**
+	 * 
+	 */
+	public int getNoSkeletons() {
+		return skeletons.size();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getSkeletonHits() {
+		return skeletons.getHits();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getSkeletonMisses() {
+		return skeletons.getMisses();
+	}
+	
+}
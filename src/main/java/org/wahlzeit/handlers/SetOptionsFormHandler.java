@@ -69,7 +69,7 @@ public class SetOptionsFormHandler extends AbstractWebFormHandler {
 		PhotoSize photoValue = PhotoSize.getFromString(photoSize);
 		us.setPhotoSize(photoValue);
 		
-		StringBuffer sb = UserLog.createActionEntry("SetOptions");
+		StringBuilder sb = UserLog.createActionEntry("SetOptions");
 		UserLog.addField(sb, "language", language);
 		UserLog.addField(sb, "photoSize", photoSize);
 		UserLog.log(sb);
@@ -71,7 +71,9 @@ public class ShowPhotoCasesPageHandler extends AbstractWebPageHandler {
 	protected Writable makePhotoCaseForm(UserSession us, PhotoCase photoCase) {
 		us.setPhotoCase(photoCase);
 		WebFormHandler handler = getFormHandler(PartUtil.EDIT_PHOTO_CASE_FORM_NAME);
-		return handler.makeWebPart(us);
+		// versions are unique and increasing, so the larger one changes whenever case or photo changes
+		long version = Math.max(photoCase.getVersion(), photoCase.getPhoto().getVersion());
+		return createCachedPhotoPart(us, photoCase.getIdAsString(), PhotoFragmentCache.PHOTO_CASE_FORM, version, handler);
 	}
 	
 }
@@ -20,9 +20,11 @@
 
 package org.wahlzeit.handlers;
 
+import java.io.*;
 import java.util.*;
 
 import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
 import org.wahlzeit.utils.*;
 import org.wahlzeit.webparts.*;
 
@@ -31,6 +33,22 @@ import org.wahlzeit.webparts.*;
  */
 public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebFormHandler {
 	
+	/**
+	 * 
+	 */
+	protected static final WebPartSlot ID_SLOT = WebPartSlot.get(Photo.ID);
+	protected static final WebPartSlot DESCRIPTION_SLOT = WebPartSlot.get(Photo.DESCRIPTION);
+	protected static final WebPartSlot KEYWORDS_SLOT = WebPartSlot.get(Photo.KEYWORDS);
+	protected static final WebPartSlot IMAGE_SLOT = WebPartSlot.get(Photo.IMAGE);
+	protected static final WebPartSlot CAPTION_SLOT = WebPartSlot.get(Photo.CAPTION);
+	protected static final WebPartSlot LINK_SLOT = WebPartSlot.get(Photo.LINK);
+	protected static final WebPartSlot PRAISE_SLOT = WebPartSlot.get(Photo.PRAISE);
+	protected static final WebPartSlot THUMB_SLOT = WebPartSlot.get(Photo.THUMB);
+	protected static final WebPartSlot MAIN_WIDTH_SLOT = WebPartSlot.get("mainWidth");
+	protected static final WebPartSlot SIDEBAR_SLOT = WebPartSlot.get("sidebar");
+	protected static final WebPartSlot ENGAGE_GUEST_SLOT = WebPartSlot.get("engageGuest");
+	protected static final WebPartSlot PRAISE_PHOTO_SLOT = WebPartSlot.get("praisePhoto");
+	
 	/**
 	 * 
 	 */
@@ -74,6 +92,81 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		return us.getPriorPhoto() != null;
 	}
 
+	/**
+	 * Guests all get the same page for a photo, language, and photo size, except for the left sidebar.
+	 * Their pages are made from a cached skeleton, in which only the sidebar and processing time remain open.
+	 */
+	public WebPart makeWebPage(UserSession us) {
+		Photo photo = us.getPhoto();
+		if ((photo == null) || us.getClient().hasUserRights()) {
+			return super.makeWebPage(us);
+		}
+		
+		PhotoFragmentCache cache = PhotoFragmentCache.getInstance();
+		String key = getGuestPageKey(us, photo);
+		long version = photo.getVersion();
+		WebPartTemplate skeleton = cache.getSkeleton(key, version);
+		if (skeleton == null) {
+			long templatesVersion = WebPartTemplateService.getInstance().getVersion();
+			WebPart page = super.makeWebPage(us);
+			try {
+				skeleton = page.createSkeleton(key, SIDEBAR_SLOT, PROCESSING_TIME_SLOT);
+				cache.putSkeleton(key, version, templatesVersion, skeleton);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+			}
+			return page;
+		}
+		
+		WebPart result = new WebPart(skeleton);
+		makeLeftSidebar(us, result);
+		if (photo.isVisible()) {
+			us.addDisplayedPhoto(photo);
+		}
+		return result;
+	}
+	
+	/**
+	 * Pages with a prior photo are shown once; all others depend on the photo, the session's filter, and the page settings.
+	 * Owners may see their hidden photos, so whether the client owns the photo is part of the validator.
+	 */
+	public String getValidator(UserSession us) {
+		Photo photo = us.getPhoto();
+		if ((photo == null) || (us.getPriorPhoto() != null)) {
+			return null;
+		}
+		
+		PhotoFilter filter = us.getPhotoFilter();
+		int filterHash = (filter.getUserName() + '|' + filter.getTags().asString()).hashCode();
+		return asValidator(
+			photo.getId().asString(),
+			Long.toString(photo.getVersion(), 36),
+			us.cfg().getLanguageCode(),
+			us.getPhotoSize().asString(),
+			us.getClient().getRights().asString(),
+			us.isPhotoOwner(photo) ? "owner" : "other",
+			Integer.toHexString(filterHash)
+		);
+	}
+	
+	/**
+	 * The client still sees the photo, so it is not to be offered again
+	 */
+	public void makeNotModified(UserSession us) {
+		Photo photo = us.getPhoto();
+		if ((photo != null) && photo.isVisible()) {
+			us.addDisplayedPhoto(photo);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected String getGuestPageKey(UserSession us, Photo photo) {
+		String key = PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.GUEST_PAGE, us.cfg().getLanguageCode());
+		return key + '|' + us.getPhotoSize().asString() + '|' + us.getSiteUrl();
+	}
+
 	/**
 	 * 
 	 */
@@ -89,11 +182,11 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 			makeEngageGuest(us, page);
 
 			String photoId = photo.getId().asString();
-			page.addString(Photo.ID, photoId);
+			page.addString(ID_SLOT, photoId);
 
 			Tags tags = photo.getTags();
-			page.addString(Photo.DESCRIPTION, getPhotoSummary(us, photo));
-			page.addString(Photo.KEYWORDS, tags.asString(false, ','));
+			page.addString(DESCRIPTION_SLOT, getPhotoSummary(us, photo));
+			page.addString(KEYWORDS_SLOT, tags.asString(false, ','));
 
 			us.addDisplayedPhoto(photo);
 		}
@@ -111,16 +204,16 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		if (photo != null) {
 			parts.append(makePriorPhotoInfo(us));
 		} else {
-			parts.append(createWebPart(us, PartUtil.BLURP_INFO_FILE));
+			parts.append(createCachedWebPart(us, PartUtil.BLURP_INFO_FILE));
 		}
 
 		WebFormHandler handler = getFormHandler(PartUtil.FILTER_PHOTOS_FORM_NAME);
 		Writable filterPhotos = handler.makeWebPart(us);
 		parts.append(filterPhotos);
 
-		parts.append(createWebPart(us, PartUtil.LINKS_INFO_FILE));
+		parts.append(createCachedWebPart(us, PartUtil.LINKS_INFO_FILE));
 		
-		page.addWritable("sidebar", parts);
+		page.addWritable(SIDEBAR_SLOT, parts);
 	}
 	
 	/**
@@ -131,24 +224,24 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 
 		Photo photo = us.getPhoto();
 		if (photo == null) {
-			page.addString("mainWidth", String.valueOf(pagePhotoSize.getMaxPhotoWidth()));
+			page.addString(MAIN_WIDTH_SLOT, String.valueOf(pagePhotoSize.getMaxPhotoWidth()));
 			WebPart done = createWebPart(us, PartUtil.DONE_INFO_FILE);
-			page.addWritable(Photo.IMAGE, done);
+			page.addWritable(IMAGE_SLOT, done);
 			return;
 		}
 		
 		Client client = us.getClient();
 		if (!photo.isVisible() && !client.hasModeratorRights() && !us.isPhotoOwner(photo)) {
-			page.addString("mainWidth", String.valueOf(pagePhotoSize.getMaxPhotoWidth()));
+			page.addString(MAIN_WIDTH_SLOT, String.valueOf(pagePhotoSize.getMaxPhotoWidth()));
 			WebPart done = createWebPart(us, PartUtil.HIDDEN_INFO_FILE);
-			page.addWritable(Photo.IMAGE, done);
+			page.addWritable(IMAGE_SLOT, done);
 			return;
 		}
 		
 		PhotoSize maxPhotoSize = photo.getMaxPhotoSize();
 		PhotoSize photoSize = (maxPhotoSize.isSmaller(pagePhotoSize)) ? maxPhotoSize : pagePhotoSize;
 		String imageLink = getPhotoAsRelativeResourcePathString(photo, photoSize);
-		page.addString(Photo.IMAGE, HtmlUtil.asImg(HtmlUtil.asPath(imageLink)));
+		page.addString(IMAGE_SLOT, HtmlUtil.asImg(HtmlUtil.asPath(imageLink)));
 	}
 	
 	/**
@@ -159,8 +252,8 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		// String photoId = photo.getId().asString();
 			
 		WebPart caption = createWebPart(us, PartUtil.CAPTION_INFO_FILE);
-		caption.addString(Photo.CAPTION, getPhotoCaption(us, photo));
-		page.addWritable(Photo.CAPTION, caption);
+		caption.addString(CAPTION_SLOT, getPhotoCaption(us, photo));
+		page.addWritable(CAPTION_SLOT, caption);
 	}
 
 	/**
@@ -171,10 +264,10 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		String photoId = photo.getId().asString();
 
 		WebPart engageGuest = createWebPart(us, PartUtil.ENGAGE_GUEST_FORM_FILE);
-		engageGuest.addString(Photo.LINK, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(photoId)));
-		engageGuest.addString(Photo.ID, photoId);
+		engageGuest.addString(LINK_SLOT, HtmlUtil.asHref(getResourceAsRelativeHtmlPathString(photoId)));
+		engageGuest.addString(ID_SLOT, photoId);
 
-		page.addWritable("engageGuest", engageGuest);
+		page.addWritable(ENGAGE_GUEST_SLOT, engageGuest);
 	}
 	
 	/**
@@ -189,7 +282,7 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 
 		WebFormHandler handler = getFormHandler(handlerName);
 		Writable praisePhotoForm = handler.makeWebPart(us);
-		page.addWritable("praisePhoto", praisePhotoForm);
+		page.addWritable(PRAISE_PHOTO_SLOT, praisePhotoForm);
 	}
 
 	
@@ -202,9 +295,9 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		Photo photo = us.getPriorPhoto();
 		// String id = photo.getId().asString();
 
-		result.addString(Photo.PRAISE, photo.getPraiseAsString(us.cfg()));
-		result.addString(Photo.THUMB, getPhotoThumb(us, photo));
-		result.addString(Photo.CAPTION, getPhotoCaption(us, photo));
+		result.addString(PRAISE_SLOT, photo.getPraiseAsString(us.cfg()));
+		result.addString(THUMB_SLOT, getPhotoThumb(us, photo));
+		result.addString(CAPTION_SLOT, getPhotoCaption(us, photo));
 			
 		us.setPriorPhoto(null); // reset so you don't get repeats
 
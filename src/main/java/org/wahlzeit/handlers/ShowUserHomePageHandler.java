@@ -36,6 +36,32 @@ public class ShowUserHomePageHandler extends AbstractWebPageHandler {
 		initialize(PartUtil.SHOW_USER_HOME_PAGE_FILE, AccessRights.USER);
 	}
 
+	/**
+	 * Depends on the user and all of the user's photos; pages with a message are shown once
+	 */
+	public String getValidator(UserSession us) {
+		if (hasSavedMessage(us) || !(us.getClient() instanceof User)) {
+			return null;
+		}
+		
+		User user = (User) us.getClient();
+		long version = user.getVersion();
+		for (Photo photo : user.getPhotos()) {
+			photo = PhotoManager.getInstance().getPhotoFromId(photo.getId()); // the copy makeWebPageBody shows
+			if (photo != null) {
+				version = Math.max(version, photo.getVersion());
+			}
+		}
+		
+		return asValidator(
+			user.getIdAsString(),
+			Long.toString(version, 36),
+			us.cfg().getLanguageCode(),
+			us.getPhotoSize().asString(),
+			us.getClient().getRights().asString()
+		);
+	}
+
 	/**
 	 * 
 	 */
@@ -80,7 +106,8 @@ public class ShowUserHomePageHandler extends AbstractWebPageHandler {
 	protected Writable makeUserPhotoForm(UserSession us, Photo photo) {
 		us.setPhoto(photo);
 		WebFormHandler handler = getFormHandler(PartUtil.SHOW_USER_PHOTO_FORM_NAME);
-		return handler.makeWebPart(us);
+		String id = photo.getId().asString();
+		return createCachedPhotoPart(us, id, PhotoFragmentCache.USER_PHOTO_FORM, photo.getVersion(), handler);
 	}
 	
 }
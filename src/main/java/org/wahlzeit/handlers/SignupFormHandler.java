@@ -115,7 +115,7 @@ public class SignupFormHandler extends AbstractWebFormHandler {
 		
 		userManager.saveUser(user);
 		
-		StringBuffer sb = UserLog.createActionEntry("Signup");
+		StringBuilder sb = UserLog.createActionEntry("Signup");
 		UserLog.addCreatedObject(sb, "User", userName);
 		UserLog.log(sb);
 		
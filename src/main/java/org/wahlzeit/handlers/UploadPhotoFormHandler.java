@@ -64,11 +64,23 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 		try {
 			PhotoManager pm = PhotoManager.getInstance();
 			String sourceFileName = us.getAsString(args, "fileName");
+			if (StringUtil.isNullOrEmptyString(sourceFileName)) {
+				us.setMessage(us.cfg().getPhotoUploadFailed());
+				return PartUtil.UPLOAD_PHOTO_PAGE_NAME;
+			}
+
 			File file = new File(sourceFileName);
-			Photo photo = pm.createPhoto(file);
+			String contentHash = us.getAsString(args, "fileHash");
+			Photo photo = null;
+			if (StringUtil.isNullOrEmptyString(contentHash)) {
+				photo = pm.createPhoto(file);
+			} else {
+				photo = pm.createPhoto(file, contentHash);
+			}
 
-			String targetFileName = SysConfig.getBackupDir().asString() + photo.getId().asString();
-			createBackup(sourceFileName, targetFileName);
+			if (!photo.hasSharedImage()) {
+				createBackup(photo, file);
+			}
 		
 			User user = (User) us.getClient();
 			user.addPhoto(photo); 
@@ -77,7 +89,7 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 
 			pm.savePhoto(photo);
 
-			StringBuffer sb = UserLog.createActionEntry("UploadPhoto");
+			StringBuilder sb = UserLog.createActionEntry("UploadPhoto");
 			UserLog.addCreatedObject(sb, "Photo", photo.getId().asString());
 			UserLog.log(sb);
 			
@@ -93,13 +105,9 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 	/**
 	 * 
 	 */
-	protected void createBackup(String sourceName, String targetName) {
+	protected void createBackup(Photo photo, File source) {
 		try {
-			File sourceFile = new File(sourceName);
-			InputStream inputStream = new FileInputStream(sourceFile);
-			File targetFile = new File(targetName);
-			OutputStream outputStream = new FileOutputStream(targetFile);
-			// @FIXME IO.copy(inputStream, outputStream);
+			PhotoBackup.getInstance().createBackup(photo, source.toPath());
 		} catch (Exception ex) {
 			SysLog.logSysInfo("could not create backup file of photo");
 			SysLog.logThrowable(ex);			
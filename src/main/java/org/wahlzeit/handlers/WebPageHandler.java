@@ -34,5 +34,15 @@ public interface WebPageHandler extends WebPartHandler {
 	 */
 	public WebPart makeWebPart(UserSession us);
 	
+	/**
+	 * Returns a weak ETag for the page makeWebPart would make, or null if there is no cheap one.
+	 * Called before makeWebPart; must not change us.
+	 */
+	public String getValidator(UserSession us);
+	
+	/**
+	 * Called instead of makeWebPart if the client has the page already; does what showing the page does to us
+	 */
+	public void makeNotModified(UserSession us);
 	
 }
@@ -72,6 +72,20 @@ public class WebPartHandlerManager {
 		// do nothing
 	}
 
+	/**
+	 * Returns the handler registered under name, or null
+	 */
+	public WebPartHandler getWebPartHandlerFor(String name) {
+		return handler.get(name);
+	}
+	
+	/**
+	 * 
+	 */
+	public Set<String> getWebPartHandlerNames() {
+		return Collections.unmodifiableSet(handler.keySet());
+	}
+	
 	/**
 	 *
 	 */
@@ -30,6 +30,7 @@ import org.wahlzeit.services.*;
 public abstract class AbstractMain {
 	
 	private static final String DB_HOST = Optional.ofNullable(System.getenv("WAHLZEIT_DB_HOST")).orElse("localhost");
+	private static final String SESSION_STORE = Optional.ofNullable(System.getenv("WAHLZEIT_SESSION_STORE")).orElse("file");
 	
 	/**
 	 * 
@@ -48,6 +49,7 @@ public abstract class AbstractMain {
 	 */
 	protected void startUp(String rootDir) throws Exception {
 		SysConfig.setInstance(new SysConfig(rootDir, DB_HOST));
+		SysConfig.getInstance().setValue(SysConfig.SESSION_STORE, SESSION_STORE);
 		
 		boolean dbAvailable = DatabaseConnection.waitForDatabaseIsReady(30, 1000);
 		if (!dbAvailable) {
@@ -63,6 +65,7 @@ public abstract class AbstractMain {
 	 */
 	protected void shutDown() throws Exception {
 		SysConfig.dropInstance();
+		Log.stop();
 	}
 	
 }
@@ -21,7 +21,6 @@
 package org.wahlzeit.main;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.sql.*;
 
 import org.wahlzeit.model.*;
@@ -46,6 +45,7 @@ public abstract class ModelMain extends AbstractMain {
 			tearDownDatabase();
 			setUpDatabase();
 		}
+		upgradeDatabase();
 		
  		loadGlobals();
 
@@ -73,6 +73,10 @@ public abstract class ModelMain extends AbstractMain {
 	 */
 	protected void shutDown() throws Exception {
 		saveAll();
+		PhotoEncoder.getInstance().logStatistics();
+		PhotoEncoder.getInstance().disposeImageWriters();
+		PhotoStore.dropInstance();
+		PhotoBackup.dropInstance();
 
 		super.shutDown();
 	}
@@ -84,6 +88,13 @@ public abstract class ModelMain extends AbstractMain {
 		runScript("CreateTables.sql");
 	}
 	
+	/**
+	 * Adds what later versions added to CreateTables.sql to databases created before; does nothing if run again
+	 */
+	public void upgradeDatabase() throws SQLException {
+		runScript("UpgradeTables.sql");
+	}
+	
 	/**
 	 * 
 	 */
@@ -96,23 +107,15 @@ public abstract class ModelMain extends AbstractMain {
 	 */
 	protected void createUser(String userName, String password, String emailAddress, String photoDir) throws Exception {
 		UserManager userManager = UserManager.getInstance();
-		long confirmationCode = userManager.createConfirmationCode();
-		User user = new User(userName, password, emailAddress, confirmationCode);
-		userManager.addUser(user);
-		
-		PhotoManager photoManager = PhotoManager.getInstance();
-		File photoDirFile = new File(photoDir);
-		FileFilter photoFileFilter = new FileFilter() {
-			public boolean accept(File file) {
-				return file.getName().endsWith(".jpg");
-			}
-		};
-
-		File[] photoFiles = photoDirFile.listFiles(photoFileFilter);
-		for (int i = 0; i < photoFiles.length; i++) {
-			Photo newPhoto = photoManager.createPhoto(photoFiles[i]);
-			user.addPhoto(newPhoto);
+		User user = userManager.getUserByName(userName);
+		if (user == null) {
+			long confirmationCode = userManager.createConfirmationCode();
+			user = new User(userName, password, emailAddress, confirmationCode);
+			userManager.addUser(user);
 		}
+
+		PhotoImporter importer = new PhotoImporter();
+		importer.importPhotos(user, new File(photoDir));
 	}
 
 	
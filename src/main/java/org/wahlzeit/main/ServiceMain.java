@@ -20,12 +20,18 @@
 
 package org.wahlzeit.main;
 
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
 import org.wahlzeit.agents.AgentManager;
 import org.wahlzeit.contract.PatternInstance;
 import org.wahlzeit.handlers.*;
 import org.wahlzeit.model.*;
 import org.wahlzeit.webparts.*;
 import org.wahlzeit.services.*;
+import org.wahlzeit.servlets.*;
+import org.wahlzeit.utils.*;
 
 /**
  * A Main class that runs a Wahlzeit web server.
@@ -51,6 +57,11 @@ public class ServiceMain extends ModelMain {
 	 */
 	protected boolean isInProduction = false;
 	
+	/**
+	 * Set once warm-up is done; requests are turned away until then
+	 */
+	protected volatile boolean isReady = false;
+	
 	/**
 	 * 
 	 */
@@ -81,6 +92,13 @@ public class ServiceMain extends ModelMain {
 		return instance.isInProduction;
 	}
 	
+	/**
+	 * 
+	 */
+	public boolean isReady() {
+		return instance.isReady;
+	}
+	
 	/**
 	 * 
 	 */
@@ -93,16 +111,29 @@ public class ServiceMain extends ModelMain {
 		configureWebPartHandlers();
 		configureLanguageModels();
 
+		warmUp();
+
 		AgentManager am = AgentManager.getInstance();
 		am.startAllThreads();
+		
+		isReady = true;
+		SysLog.logSysInfo("ready to serve requests");
 	}
 	
 	/**
 	 * 
 	 */
 	public void shutDown() throws Exception {
+		isReady = false;
+		
 		AgentManager am = AgentManager.getInstance();
 		am.stopAllThreads();
+		
+		RequestExecutor.dropInstance();
+		AdmissionControl.dropInstance();
+		UserSessionStore.dropInstance();
+		WebPartTemplateService.getInstance().stopWatching();
+		PhotoFragmentCache.dropInstance();
 				
 		super.shutDown();
 	}
@@ -110,9 +141,15 @@ public class ServiceMain extends ModelMain {
 	/**
 	 * 
 	 */
-	public void configureWebPartTemplateService() {
+	public void configureWebPartTemplateService() throws IOException {
 		ConfigDir templatesDir = SysConfig.getTemplatesDir();
-		WebPartTemplateService.getInstance().setTemplatesDir(templatesDir);
+		WebPartTemplateService wpts = WebPartTemplateService.getInstance();
+		wpts.setTemplatesDir(templatesDir);
+		wpts.loadAllTemplates(Runtime.getRuntime().availableProcessors());
+		
+		if (SysConfig.isReloadTemplates()) {
+			wpts.startWatching();
+		}
 	}
 	
 	/**
@@ -220,4 +257,197 @@ public class ServiceMain extends ModelMain {
 		LanguageConfigs.put(Language.GERMAN, new GermanModelConfig());
 	}
 		
+	/**
+	 * Resolves what requests would otherwise resolve lazily and renders the guest pages until the JIT
+	 * has compiled the hot paths, so that the first requests after a start are as fast as later ones
+	 */
+	public void warmUp() {
+		long startTime = System.currentTimeMillis();
+		
+		preloadWebValues();
+		int noHandlers = resolveWebPartHandlers();
+		int noRounds = replayPageRenders(SysConfig.getWarmUpTime());
+		
+		long warmUpTime = System.currentTimeMillis() - startTime;
+		SysLog.logSysInfo("warm-up", warmUpTime + "ms, " + noHandlers + " handlers, " + noRounds + " rounds of page renders");
+	}
+	
+	/**
+	 * 
+	 */
+	protected void preloadWebValues() {
+		WebValueManager wvm = WebValueManager.getInstance();
+		EnumValue[][] allValues = {
+			AccessRights.values(), FlagReason.values(), Gender.values(), Language.values(),
+			PhotoSize.values(), PhotoStatus.values(), UserStatus.values()
+		};
+		for (EnumValue[] values : allValues) {
+			for (EnumValue value : values) {
+				wvm.getWebValue(value.getClass(), value.asString());
+			}
+		}
+	}
+	
+	/**
+	 * Checks that the templates of all handlers exist in all languages; returns the number of handlers
+	 */
+	protected int resolveWebPartHandlers() {
+		WebPartHandlerManager manager = WebPartHandlerManager.getInstance();
+		WebPartTemplateService wpts = WebPartTemplateService.getInstance();
+		Set<WebPartHandler> handlers = new HashSet<WebPartHandler>();
+		for (String name : manager.getWebPartHandlerNames()) {
+			WebPartHandler handler = manager.getWebPartHandlerFor(name);
+			if (!handlers.add(handler) || !(handler instanceof AbstractWebPartHandler)) {
+				continue;
+			}
+			
+			String tmplName = ((AbstractWebPartHandler) handler).getTemplateName();
+			for (Language language : getWarmUpLanguages()) {
+				if (wpts.getTemplate(language.asIsoCode(), tmplName) == null) {
+					SysLog.logSysError("missing template " + tmplName + " for " + name + " in " + language.asIsoCode());
+				}
+			}
+		}
+		return handlers.size();
+	}
+	
+	/**
+	 * Renders every page a guest may get, in every language, like MainServlet would; the photo page is
+	 * rendered for one visible photo, so the database is asked for photos only once. Stops once the JIT
+	 * has compiled nothing new for a while or maxTime (in ms) has passed. Returns the number of rounds.
+	 */
+	protected int replayPageRenders(long maxTime) {
+		if (maxTime <= 0) {
+			return 0;
+		}
+		
+		CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+		boolean isJitMonitored = (jit != null) && jit.isCompilationTimeMonitoringSupported();
+		
+		List<String> pageNames = new ArrayList<String>(getWarmUpPageNames());
+		List<Language> languages = getWarmUpLanguages();
+		UserSession us = new UserSession("warmup", "http://localhost/");
+		
+		Photo photo = findWarmUpPhoto(us);
+		int photoPage = pageNames.indexOf(PartUtil.SHOW_PHOTO_PAGE_NAME);
+		if ((photo != null) && (photoPage >= 0)) {
+			pageNames.set(photoPage, photo.getId().asString()); // "index" would only redirect to a photo
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+		Utf8Writer out = new Utf8Writer();
+		
+		long endTime = System.currentTimeMillis() + maxTime;
+		long lastCompilationTime = -1;
+		int result = 0;
+		while (!pageNames.isEmpty() && (System.currentTimeMillis() < endTime)) {
+			for (Iterator<String> i = pageNames.iterator(); i.hasNext(); ) {
+				String pageName = i.next();
+				for (Language language : languages) {
+					us.setConfiguration(LanguageConfigs.get(language));
+					boolean isRendered = replayPageRender(us, pageName, out.reset(bytes));
+					bytes.reset();
+					if (!isRendered) {
+						i.remove(); // no point in failing again and again
+						break;
+					}
+				}
+			}
+			
+			result++;
+			if ((result % WARM_UP_CHECK_ROUNDS) == 0) {
+				if (!isJitMonitored) {
+					break; // one check period must do
+				}
+				
+				long compilationTime = jit.getTotalCompilationTime();
+				if (compilationTime == lastCompilationTime) {
+					break;
+				}
+				lastCompilationTime = compilationTime;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Looks up a visible photo once, so that the photo page is rendered for it; returns null if there is none
+	 */
+	protected Photo findWarmUpPhoto(UserSession us) {
+		SessionManager.setThreadLocalSession(us);
+		try {
+			return PhotoManager.getInstance().getVisiblePhoto(us.getPhotoFilter());
+		} catch (Exception ex) {
+			SysLog.logThrowable(ex);
+			return null;
+		} finally {
+			us.returnDatabaseConnection();
+			SessionManager.dropThreadLocalSession();
+		}
+	}
+	
+	/**
+	 * Rounds of page renders between looking at the JIT
+	 */
+	protected static final int WARM_UP_CHECK_ROUNDS = 50;
+
+	/**
+	 * Returns false if rendering failed
+	 */
+	protected boolean replayPageRender(UserSession us, String pageName, Utf8Writer out) {
+		SessionManager.setThreadLocalSession(us);
+		try {
+			WebPageHandler handler = WebPartHandlerManager.getWebPageHandler(pageName);
+			String link = handler.handleGet(us, pageName, Collections.EMPTY_MAP);
+			if (link.equals(pageName)) {
+				handler.getValidator(us);
+				WebPart page = handler.makeWebPart(us);
+				page.writeOn(out);
+				out.flush();
+			}
+			return true;
+		} catch (Exception ex) {
+			SysLog.logSysError("warm-up render of " + pageName + " failed");
+			SysLog.logThrowable(ex);
+			return false;
+		} finally {
+			us.clearSavedArgs();
+			us.clearDisplayedPhotos();
+			us.returnDatabaseConnection();
+			SessionManager.dropThreadLocalSession();
+		}
+	}
+	
+	/**
+	 * Pages guests can see without form input
+	 */
+	protected List<String> getWarmUpPageNames() {
+		return Arrays.asList(
+			PartUtil.SHOW_PHOTO_PAGE_NAME,
+			PartUtil.ABOUT_PAGE_NAME,
+			PartUtil.CONTACT_PAGE_NAME,
+			PartUtil.IMPRINT_PAGE_NAME,
+			PartUtil.TERMS_PAGE_NAME,
+			PartUtil.FLAG_PHOTO_PAGE_NAME,
+			PartUtil.SEND_EMAIL_PAGE_NAME,
+			PartUtil.TELL_FRIEND_PAGE_NAME,
+			PartUtil.SET_OPTIONS_PAGE_NAME,
+			PartUtil.SIGNUP_PAGE_NAME,
+			PartUtil.LOGIN_PAGE_NAME
+		);
+	}
+	
+	/**
+	 * 
+	 */
+	protected List<Language> getWarmUpLanguages() {
+		List<Language> result = new ArrayList<Language>();
+		for (Language language : Language.values()) {
+			if (LanguageConfigs.get(language) != null) {
+				result.add(language);
+			}
+		}
+		return result;
+	}
+	
 }
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.wahlzeit.services.*;
+
+/**
+ * A DatabaseUserSessionStore keeps the sessions in a database table all nodes share, so any node can serve
+ * any request. Each request reads its session's state only if another node changed it meanwhile,
+ * and writes it back only if it changed. The table is UNLOGGED: it is fast to write, but emptied after a database
+ * crash, which logs all users out. Two requests of one session on two nodes at once are last writer wins.
+ */
+public class DatabaseUserSessionStore extends UserSessionStore {
+
+	/**
+	 * Sessions end after a day without requests, as HttpSessions do
+	 */
+	public static final long SESSION_TIMEOUT = 24 * 60 * 60 * 1000L;
+	
+	/**
+	 * Unchanged sessions are written anyway every so often to keep them from timing out
+	 */
+	public static final long TOUCH_INTERVAL = 60 * 60 * 1000L;
+	
+	/**
+	 * For databases created before the table was
+	 */
+	protected static final String CREATE_TABLE_STMT = "CREATE UNLOGGED TABLE IF NOT EXISTS sessions ("
+		+ "name text PRIMARY KEY, version bigint, data bytea, access_time bigint)";
+	protected static final String CREATE_INDEX_STMT = "CREATE INDEX IF NOT EXISTS sessions_access_time ON sessions (access_time)";
+	
+	/**
+	 * 
+	 */
+	protected static final String READ_STMT = "SELECT version, data FROM sessions WHERE name = ? AND version <> ?";
+	protected static final String ROW_STMT = "SELECT name, version, data, access_time FROM sessions WHERE name = ?";
+	protected static final String EXPIRED_ROWS_STMT = "SELECT name FROM sessions WHERE access_time < ?";
+	
+	/**
+	 * What a row holds of a session
+	 */
+	protected static class StoredState {
+		
+		protected final long version;
+		protected final byte[] data;
+		
+		protected StoredState(long myVersion, byte[] myData) {
+			version = myVersion;
+			data = myData;
+		}
+		
+	}
+	
+	/**
+	 * The sessions table; like the other tables, it gets its statements from the thread's DatabaseConnection,
+	 * and changes rows through updating statements
+	 */
+	protected static class SessionTable extends ObjectManager {
+		
+		/**
+		 * 
+		 */
+		public DatabaseConnection getDatabaseConnection() throws SQLException {
+			DatabaseConnection result = super.getDatabaseConnection();
+			if (result == null) {
+				throw new SQLException("no database connection for session store");
+			}
+			return result;
+		}
+		
+		/**
+		 * Rows are read as StoredStates, not as Persistent objects
+		 */
+		protected Persistent createObject(ResultSet rset) {
+			return null;
+		}
+		
+		/**
+		 * 
+		 */
+		protected void createTable() throws SQLException {
+			Statement stmt = getDatabaseConnection().getRdbmsConnection().createStatement();
+			SysLog.logQuery(CREATE_TABLE_STMT);
+			stmt.execute(CREATE_TABLE_STMT);
+			SysLog.logQuery(CREATE_INDEX_STMT);
+			stmt.execute(CREATE_INDEX_STMT);
+			stmt.close();
+		}
+		
+		/**
+		 * Returns the stored state of the session of name unless it has version, or null
+		 */
+		protected StoredState readState(String name, long version) throws SQLException {
+			PreparedStatement stmt = getReadingStatement(READ_STMT);
+			stmt.setString(1, name);
+			stmt.setLong(2, version);
+			ResultSet rset = executeQuery(stmt);
+			return rset.next() ? new StoredState(rset.getLong("version"), rset.getBytes("data")) : null;
+		}
+		
+		/**
+		 * Inserts the row of name, or updates it
+		 */
+		protected void writeState(String name, StoredState state, long accessTime) throws SQLException {
+			ResultSet rset = readRow(name);
+			boolean isNew = !rset.next();
+			if (isNew) {
+				rset.moveToInsertRow();
+				rset.updateString("name", name);
+			}
+			
+			rset.updateLong("version", state.version);
+			rset.updateBytes("data", state.data);
+			rset.updateLong("access_time", accessTime);
+			if (isNew) {
+				rset.insertRow();
+			} else {
+				rset.updateRow();
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		protected void touchState(String name, long accessTime) throws SQLException {
+			ResultSet rset = readRow(name);
+			if (rset.next()) {
+				rset.updateLong("access_time", accessTime);
+				rset.updateRow();
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		protected void deleteState(String name) throws SQLException {
+			ResultSet rset = readRow(name);
+			if (rset.next()) {
+				rset.deleteRow();
+			}
+		}
+		
+		/**
+		 * Returns the number of rows deleted
+		 */
+		protected int deleteStatesAccessedBefore(long accessTime) throws SQLException {
+			PreparedStatement stmt = getUpdatingStatement(EXPIRED_ROWS_STMT);
+			stmt.setLong(1, accessTime);
+			ResultSet rset = executeQuery(stmt);
+			int result = 0;
+			while (rset.next()) {
+				rset.deleteRow();
+				result++;
+			}
+			return result;
+		}
+		
+		/**
+		 * 
+		 */
+		protected ResultSet readRow(String name) throws SQLException {
+			PreparedStatement stmt = getUpdatingStatement(ROW_STMT);
+			stmt.setString(1, name);
+			return executeQuery(stmt);
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected final SessionTable table;
+	
+	/**
+	 * 
+	 */
+	public DatabaseUserSessionStore() {
+		table = createSessionTable();
+		
+		Session priorSession = beginTableAccess();
+		try {
+			table.createTable();
+		} catch (SQLException sex) {
+			SysLog.logThrowable(sex);
+		} finally {
+			endTableAccess(priorSession);
+		}
+	}
+	
+	/**
+	 * @methodtype factory
+	 */
+	protected SessionTable createSessionTable() {
+		return new SessionTable();
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isShared() {
+		return true;
+	}
+	
+	/**
+	 * A resident session not found in the table is taken as unchanged; it ends by timing out only,
+	 * and resident sessions are passivated long before that
+	 */
+	protected UserSession doLoadSession(String name, UserSession resident) {
+		StoredState state = null;
+		Session priorSession = beginTableAccess();
+		try {
+			state = table.readState(name, (resident != null) ? resident.storedVersion : -1);
+		} catch (SQLException sex) {
+			SysLog.logThrowable(sex);
+		} finally {
+			endTableAccess(priorSession);
+		}
+		
+		if (state == null) {
+			return resident;
+		}
+		
+		UserSession result = readSession(name, new DataInputStream(new ByteArrayInputStream(state.data)));
+		if (result == null) {
+			return resident;
+		}
+		
+		result.storedVersion = state.version;
+		result.storedState = state.data;
+		result.storedTime = System.currentTimeMillis();
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	protected void doReleaseSession(UserSession us) {
+		writeSession(us);
+	}
+	
+	/**
+	 * Writes the session if it changed, or to touch it; returns false if the table may not hold its current state
+	 */
+	protected boolean writeSession(UserSession us) {
+		byte[] data = null;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			us.writeOn(out);
+			out.close();
+			data = bytes.toByteArray();
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+			return false;
+		}
+		
+		long now = System.currentTimeMillis();
+		boolean isChanged = !Arrays.equals(data, us.storedState);
+		if (!isChanged && ((now - us.storedTime) < TOUCH_INTERVAL)) {
+			return true;
+		}
+		
+		Session priorSession = beginTableAccess();
+		try {
+			if (isChanged) {
+				StoredState state = new StoredState(createVersion(), data);
+				table.writeState(us.getName(), state, now);
+				us.storedVersion = state.version;
+				us.storedState = state.data;
+			} else {
+				table.touchState(us.getName(), now);
+			}
+			us.storedTime = now;
+			return true;
+		} catch (SQLException sex) {
+			SysLog.logThrowable(sex);
+			return false;
+		} finally {
+			endTableAccess(priorSession);
+		}
+	}
+	
+	/**
+	 * Versions are random rather than counted up, so that two nodes writing a row at once do not write the same version
+	 * 
+	 * @methodtype factory
+	 */
+	protected long createVersion() {
+		return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * 
+	 */
+	protected void doRemoveSession(String name) {
+		Session priorSession = beginTableAccess();
+		try {
+			table.deleteState(name);
+		} catch (SQLException sex) {
+			SysLog.logThrowable(sex);
+		} finally {
+			endTableAccess(priorSession);
+		}
+	}
+	
+	/**
+	 * Deletes the sessions timed out, too; each node does so, which does no harm
+	 */
+	public int passivateIdleSessions(long maxIdleTime) {
+		int result = super.passivateIdleSessions(maxIdleTime);
+		
+		Session priorSession = beginTableAccess();
+		try {
+			int noExpired = table.deleteStatesAccessedBefore(System.currentTimeMillis() - SESSION_TIMEOUT);
+			if (noExpired > 0) {
+				SysLog.logSysInfo("deleted timed out sessions: " + noExpired);
+			}
+		} catch (SQLException sex) {
+			SysLog.logThrowable(sex);
+		} finally {
+			endTableAccess(priorSession);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The released state is in the table already, unless writing it failed; then it is written again,
+	 * and the session stays resident if that fails, too
+	 */
+	protected boolean doPassivateSession(UserSession us) {
+		return writeSession(us);
+	}
+	
+	/**
+	 * Table operations run with a session of their own as the thread's session, as a resident session may be
+	 * in use by another request; returns the prior session of the thread
+	 */
+	protected Session beginTableAccess() {
+		Session result = SessionManager.getThreadLocalSession();
+		SessionManager.setThreadLocalSession(new SysSession("sessions"));
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	protected void endTableAccess(Session priorSession) {
+		SessionManager.getThreadLocalSession().returnDatabaseConnection();
+		SessionManager.setThreadLocalSession(priorSession);
+	}
+	
+	/**
+	 * Passivated sessions are the other rows of the table, which is not worth a query
+	 * 
+	 * @methodtype get
+	 */
+	public int getNoPassivatedSessions() {
+		return -1;
+	}
+	
+}
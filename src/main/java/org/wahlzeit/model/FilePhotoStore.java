@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * The PhotoStore that keeps each photo file as a plain file below the (sharded) photos directory.
+ */
+public class FilePhotoStore extends PhotoStore {
+
+	/**
+	 *
+	 */
+	public void write(PhotoId id, PhotoSize size, byte[] bytes) throws IOException {
+		Path target = PhotoUtil.getPhotoFile(id, size).toPath();
+		Files.createDirectories(target.getParent());
+		Files.write(target, bytes);
+	}
+
+	/**
+	 *
+	 */
+	public PhotoStoreEntry find(String idAsString, PhotoSize size) throws IOException {
+		File file = PhotoUtil.findPhotoFile(idAsString, size);
+		if (file == null) {
+			return null;
+		}
+
+		Path path = file.toPath();
+		try {
+			return new FileEntry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+		} catch (NoSuchFileException ex) {
+			return null; // moved away meanwhile
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected static class FileEntry extends PhotoStoreEntry {
+
+		protected final Path path;
+
+		protected FileEntry(Path myPath, long myLength, long myLastModified) {
+			super(myLength, myLastModified);
+			path = myPath;
+		}
+
+		public void transferTo(long start, long count, OutputStream out) throws IOException {
+			try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+				transferTo(in, start, count, out);
+			}
+		}
+
+	}
+
+}
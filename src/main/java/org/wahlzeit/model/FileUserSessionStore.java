@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.atomic.*;
+
+import org.wahlzeit.services.*;
+
+/**
+ * A FileUserSessionStore passivates each session to a file of its own. Sessions are tied to the
+ * HttpSessions of this node, so they do not outlive the process; neither do their files.
+ */
+public class FileUserSessionStore extends UserSessionStore {
+
+	/**
+	 * 
+	 */
+	public static final String SESSION_FILE_EXTENSION = ".ses";
+	
+	/**
+	 * 
+	 */
+	protected final Path sessionsDir;
+	
+	/**
+	 * 
+	 */
+	protected final AtomicInteger noPassivatedSessions = new AtomicInteger();
+	
+	/**
+	 * Deletes files left over by an earlier process
+	 */
+	public FileUserSessionStore(String mySessionsDir) {
+		sessionsDir = Paths.get(mySessionsDir);
+		
+		try {
+			Files.createDirectories(sessionsDir);
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(sessionsDir, "*" + SESSION_FILE_EXTENSION)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+		}
+	}
+	
+	/**
+	 * Leaves the file to the thread that activates the session, as other threads may read it at the same time
+	 */
+	protected UserSession doLoadSession(String name, UserSession resident) {
+		if (resident != null) {
+			return resident;
+		}
+		
+		Path file = getSessionFile(name);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			return readSession(name, in);
+		} catch (NoSuchFileException nsfex) {
+			return null;
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+			return null;
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void doActivateSession(UserSession us) {
+		if (deleteSessionFile(getSessionFile(us.getName()))) {
+			noPassivatedSessions.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void doRemoveSession(String name) {
+		if (deleteSessionFile(getSessionFile(name))) {
+			noPassivatedSessions.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * A request may acquire the session while it is written, and change what writeOn iterates over;
+	 * then writeOn fails with a RuntimeException, and the session stays resident
+	 */
+	protected boolean doPassivateSession(UserSession us) {
+		Path file = getSessionFile(us.getName());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			us.writeOn(out);
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+			deleteSessionFile(file);
+			return false;
+		} catch (RuntimeException rex) {
+			SysLog.logThrowable(rex);
+			deleteSessionFile(file);
+			return false;
+		}
+		
+		noPassivatedSessions.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * 
+	 */
+	protected void doCancelPassivation(UserSession us) {
+		doRemoveSession(us.getName());
+	}
+	
+	/**
+	 * 
+	 */
+	protected boolean deleteSessionFile(Path file) {
+		try {
+			return Files.deleteIfExists(file);
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+			return false;
+		}
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	protected Path getSessionFile(String name) {
+		return sessionsDir.resolve(name + SESSION_FILE_EXTENSION);
+	}
+	
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPassivatedSessions() {
+		return noPassivatedSessions.get();
+	}
+	
+}
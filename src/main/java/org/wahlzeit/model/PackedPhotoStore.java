@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.wahlzeit.services.*;
+
+/**
+ * The PhotoStore that appends photo files to a few large volume files instead of keeping one file each.
+ * Every record carries a header, so the volumes are their own journal: at startup the in-memory index
+ * is rebuilt by skipping from header to header. Reads are positional and may share one open channel.
+ * Photo files that are not in a volume yet are looked up in the plain file store.
+ */
+public class PackedPhotoStore extends PhotoStore {
+
+	/**
+	 *
+	 */
+	public static final String VOLUMES_DIR_NAME = "volumes";
+	public static final String VOLUME_FILE_PREFIX = "volume-";
+	public static final String VOLUME_FILE_SUFFIX = ".dat";
+
+	/**
+	 * Record layout: magic (int), time written (long), data length (int), key length (byte), key, data
+	 */
+	protected static final int RECORD_MAGIC = 0x575a5046;
+	protected static final int FIXED_HEADER_SIZE = 4 + 8 + 4 + 1;
+
+	/**
+	 *
+	 */
+	protected final Path volumesDir;
+	protected final long maxVolumeSize;
+
+	/**
+	 * All volumes, in order; only the last one is appended to
+	 */
+	protected volatile FileChannel[] volumes = new FileChannel[0];
+	protected long writePosition = 0;
+
+	/**
+	 *
+	 */
+	protected final Map<String, Location> index = new ConcurrentHashMap<String, Location>();
+
+	/**
+	 *
+	 */
+	protected final PhotoStore fallback = new FilePhotoStore();
+
+	/**
+	 *
+	 */
+	public PackedPhotoStore(String myVolumesDir, long myMaxVolumeSize) {
+		volumesDir = Paths.get(myVolumesDir);
+		maxVolumeSize = myMaxVolumeSize;
+		try {
+			openVolumes();
+		} catch (IOException ioex) {
+			throw new UncheckedIOException(ioex);
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected synchronized void openVolumes() throws IOException {
+		Files.createDirectories(volumesDir);
+
+		List<Path> volumeFiles = new ArrayList<Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(volumesDir, VOLUME_FILE_PREFIX + "*" + VOLUME_FILE_SUFFIX)) {
+			for (Path file : files) {
+				volumeFiles.add(file);
+			}
+		}
+		Collections.sort(volumeFiles);
+
+		FileChannel[] newVolumes = new FileChannel[volumeFiles.size()];
+		for (int i = 0; i < newVolumes.length; i++) {
+			newVolumes[i] = FileChannel.open(volumeFiles.get(i), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long end = readIndex(i, newVolumes[i]);
+			if (end < newVolumes[i].size()) {
+				SysLog.logSysInfo("truncating photo volume", volumeFiles.get(i).toString(), "at " + end);
+				newVolumes[i].truncate(end);
+			}
+			writePosition = end;
+		}
+		volumes = newVolumes;
+
+		if (volumes.length == 0) {
+			addVolume();
+		}
+
+		SysLog.logSysInfo("opened photo volumes", String.valueOf(volumes.length), index.size() + " photo files");
+	}
+
+	/**
+	 * Adds the records of volume to the index; returns where the last complete record ends
+	 */
+	protected long readIndex(int volumeNo, FileChannel volume) throws IOException {
+		long size = volume.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + 255);
+		while (position + FIXED_HEADER_SIZE <= size) {
+			header.clear();
+			header.limit((int) Math.min(header.capacity(), size - position));
+			readFully(volume, header, position);
+			header.flip();
+
+			if (header.getInt() != RECORD_MAGIC) {
+				break;
+			}
+
+			long timeWritten = header.getLong();
+			int dataLength = header.getInt();
+			int keyLength = header.get() & 0xff;
+			if ((dataLength < 0) || (header.remaining() < keyLength)) {
+				break;
+			}
+
+			byte[] key = new byte[keyLength];
+			header.get(key);
+			long dataOffset = position + FIXED_HEADER_SIZE + keyLength;
+			if (dataOffset + dataLength > size) {
+				break; // torn write
+			}
+
+			index.put(new String(key, StandardCharsets.US_ASCII), new Location(volumeNo, dataOffset, dataLength, timeWritten));
+			position = dataOffset + dataLength;
+		}
+
+		return position;
+	}
+
+	/**
+	 *
+	 */
+	protected void addVolume() throws IOException {
+		String fileName = VOLUME_FILE_PREFIX + String.format("%05d", volumes.length) + VOLUME_FILE_SUFFIX;
+		FileChannel volume = FileChannel.open(volumesDir.resolve(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		FileChannel[] newVolumes = Arrays.copyOf(volumes, volumes.length + 1);
+		newVolumes[volumes.length] = volume;
+		volumes = newVolumes;
+		writePosition = 0;
+	}
+
+	/**
+	 *
+	 */
+	public synchronized void write(PhotoId id, PhotoSize size, byte[] bytes) throws IOException {
+		String key = asKey(id.asString(), size);
+		byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+		long recordSize = FIXED_HEADER_SIZE + keyBytes.length + bytes.length;
+		if ((writePosition > 0) && (writePosition + recordSize > maxVolumeSize)) {
+			addVolume();
+		}
+
+		long timeWritten = System.currentTimeMillis();
+		ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+		record.putInt(RECORD_MAGIC).putLong(timeWritten).putInt(bytes.length).put((byte) keyBytes.length);
+		record.put(keyBytes).put(bytes);
+		record.flip();
+
+		int volumeNo = volumes.length - 1;
+		FileChannel volume = volumes[volumeNo];
+		long position = writePosition;
+		while (record.hasRemaining()) {
+			position += volume.write(record, position);
+		}
+
+		long dataOffset = writePosition + FIXED_HEADER_SIZE + keyBytes.length;
+		index.put(key, new Location(volumeNo, dataOffset, bytes.length, timeWritten));
+		writePosition = position;
+	}
+
+	/**
+	 *
+	 */
+	public PhotoStoreEntry find(String idAsString, PhotoSize size) throws IOException {
+		Location location = index.get(asKey(idAsString, size));
+		if (location == null) {
+			return fallback.find(idAsString, size);
+		}
+
+		return new VolumeEntry(volumes[location.volumeNo], location);
+	}
+
+	/**
+	 *
+	 */
+	public synchronized void close() throws IOException {
+		for (FileChannel volume : volumes) {
+			volume.force(true);
+			volume.close();
+		}
+		volumes = new FileChannel[0];
+		index.clear();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPhotoFiles() {
+		return index.size();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoVolumes() {
+		return volumes.length;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected String asKey(String idAsString, PhotoSize size) {
+		return idAsString + size.asInt();
+	}
+
+	/**
+	 *
+	 */
+	protected static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+		while (target.hasRemaining()) {
+			int read = channel.read(target, position);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Where the data of a photo file is found
+	 */
+	protected static class Location {
+
+		protected final int volumeNo;
+		protected final long offset;
+		protected final int length;
+		protected final long timeWritten;
+
+		protected Location(int myVolumeNo, long myOffset, int myLength, long myTimeWritten) {
+			volumeNo = myVolumeNo;
+			offset = myOffset;
+			length = myLength;
+			timeWritten = myTimeWritten;
+		}
+
+	}
+
+	/**
+	 *
+	 */
+	protected static class VolumeEntry extends PhotoStoreEntry {
+
+		protected final FileChannel volume;
+		protected final long offset;
+
+		protected VolumeEntry(FileChannel myVolume, Location location) {
+			super(location.length, location.timeWritten);
+			volume = myVolume;
+			offset = location.offset;
+		}
+
+		public void transferTo(long start, long count, OutputStream out) throws IOException {
+			transferTo(volume, offset + start, count, out);
+		}
+
+	}
+
+}
@@ -57,6 +57,8 @@ public class Photo extends DataObject {
     public static final String STATUS = "status";
     public static final String IS_INVISIBLE = "isInvisible";
     public static final String UPLOADED_ON = "uploadedOn";
+    public static final String CONTENT_HASH = "content_hash";
+    public static final String IMAGE_ID = "image_id";
 
     /**
      *
@@ -71,6 +73,12 @@ public class Photo extends DataObject {
      */
     protected PhotoId id = null;
 
+    /**
+     * Identical uploads share image files; imageId names the photo whose files are used
+     */
+    protected PhotoId imageId = null;
+    protected String contentHash = null;
+
     /**
      *
      */
@@ -119,6 +127,7 @@ public class Photo extends DataObject {
      */
     public Photo() {
         id = PhotoId.getNextId();
+        imageId = id;
         incWriteCount();
     }
 
@@ -127,6 +136,7 @@ public class Photo extends DataObject {
      */
     public Photo(PhotoId myId) {
         id = myId;
+        imageId = myId;
 
         incWriteCount();
     }
@@ -155,6 +165,9 @@ public class Photo extends DataObject {
      */
     public void readFrom(ResultSet rset) throws SQLException {
         id = PhotoId.getIdFromInt(rset.getInt("id"));
+        int imageIdAsInt = rset.getInt(IMAGE_ID);
+        imageId = (imageIdAsInt != 0) ? PhotoId.getIdFromInt(imageIdAsInt) : id;
+        contentHash = rset.getString(CONTENT_HASH);
 
         ownerId = rset.getInt("owner_id");
         ownerName = rset.getString("owner_name");
@@ -185,6 +198,8 @@ public class Photo extends DataObject {
      */
     public void writeOn(ResultSet rset) throws SQLException {
         rset.updateInt("id", id.asInt());
+        rset.updateInt(IMAGE_ID, imageId.asInt());
+        rset.updateString(CONTENT_HASH, contentHash);
         rset.updateInt("owner_id", ownerId);
         rset.updateString("owner_name", ownerName);
         rset.updateBoolean("owner_notify_about_praise", ownerNotifyAboutPraise);
@@ -215,6 +230,46 @@ public class Photo extends DataObject {
         return id;
     }
 
+    /**
+     * @methodtype get
+     */
+    public PhotoId getImageId() {
+        return imageId;
+    }
+
+    /**
+     * @methodtype get
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @methodtype set
+     */
+    public void setContentHash(String newContentHash) {
+        contentHash = newContentHash;
+        incWriteCount();
+    }
+
+    /**
+     * Lets this photo use the image files of source instead of its own.
+     *
+     * @methodtype set
+     */
+    public void setImageFrom(Photo source) {
+        imageId = source.getImageId();
+        contentHash = source.getContentHash();
+        setWidthAndHeight(source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * @methodtype boolean-query
+     */
+    public boolean hasSharedImage() {
+        return !imageId.isEqual(id);
+    }
+
     /**
      * @methodtype get
      */
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+
+/**
+ * The PhotoBackup keeps the originally uploaded file of each photo in the backup directory.
+ * A hard link is made if possible; otherwise the file is copied by a background thread.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = PhotoBackup.class
+)
+public class PhotoBackup {
+
+	/**
+	 *
+	 */
+	public static final String PENDING_SUFFIX = ".backup";
+
+	/**
+	 *
+	 */
+	protected static PhotoBackup instance = null;
+
+	/**
+	 *
+	 */
+	public static synchronized PhotoBackup getInstance() {
+		if (instance == null) {
+			instance = new PhotoBackup();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Waits for pending copies and drops the singleton instance
+	 */
+	public static synchronized void dropInstance() throws InterruptedException {
+		if (instance != null) {
+			instance.executor.shutdown();
+			instance.executor.awaitTermination(1, TimeUnit.MINUTES);
+			instance = null;
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread result = new Thread(runnable, "PhotoBackup");
+			result.setDaemon(true);
+			return result;
+		}
+	});
+
+	/**
+	 * Copies handed to the executor and not done yet
+	 */
+	protected final AtomicInteger noPendingCopies = new AtomicInteger();
+
+	/**
+	 *
+	 */
+	protected PhotoBackup() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public Path getBackupFile(Photo photo) {
+		return Paths.get(SysConfig.getBackupDir().asString(), photo.getId().asString());
+	}
+
+	/**
+	 * Backs up the upload in source for photo. The caller may delete source as soon as this method returns.
+	 */
+	public void createBackup(Photo photo, Path source) throws IOException {
+		final Path target = getBackupFile(photo);
+		Files.createDirectories(target.getParent());
+		try {
+			Files.deleteIfExists(target);
+			Files.createLink(target, source);
+			return;
+		} catch (IOException | UnsupportedOperationException ex) {
+			// different file system or no hard links; copy instead
+		}
+
+		final Path pending = source.resolveSibling(source.getFileName() + PENDING_SUFFIX);
+		Files.move(source, pending, StandardCopyOption.REPLACE_EXISTING);
+		noPendingCopies.incrementAndGet();
+		executor.execute(new Runnable() {
+			public void run() {
+				copyPendingFile(pending, target);
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	protected void copyPendingFile(Path pending, Path target) {
+		try {
+			Files.copy(pending, target, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ioex) {
+			SysLog.logSysInfo("could not create backup file of photo");
+			SysLog.logThrowable(ioex);
+		} finally {
+			noPendingCopies.decrementAndGet();
+			try {
+				Files.deleteIfExists(pending);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	public int getNoPendingCopies() {
+		return noPendingCopies.get();
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.imageio.*;
+import javax.imageio.metadata.*;
+import javax.imageio.stream.*;
+
+import org.w3c.dom.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+
+/**
+ * The PhotoEncoder turns scaled images into JPEG files.
+ * It keeps a small pool of ImageWriters, compresses each PhotoSize with its own quality,
+ * and counts the bytes it produced per PhotoSize.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = PhotoEncoder.class
+)
+public class PhotoEncoder {
+
+	/**
+	 *
+	 */
+	public static final String JPEG_FORMAT_NAME = "jpeg";
+	public static final String JPEG_METADATA_FORMAT_NAME = "javax_imageio_jpeg_image_1.0";
+
+	/**
+	 *
+	 */
+	protected static final PhotoEncoder instance = new PhotoEncoder();
+
+	/**
+	 *
+	 */
+	public static PhotoEncoder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Encoding is bound by CPU; writers beyond this many are disposed of after use
+	 */
+	public static final int MAX_POOLED_WRITERS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * ImageWriters are not thread-safe but expensive to look up; hence a pool of them
+	 */
+	protected final ObjectPool<ImageWriter> writers = new ObjectPool<ImageWriter>(MAX_POOLED_WRITERS) {
+		protected ImageWriter create() {
+			Iterator<ImageWriter> i = ImageIO.getImageWritersByFormatName(JPEG_FORMAT_NAME);
+			return i.hasNext() ? i.next() : null;
+		}
+		protected void reset(ImageWriter writer) {
+			writer.reset();
+		}
+		protected void discard(ImageWriter writer) {
+			writer.dispose();
+		}
+	};
+
+	/**
+	 * Statistics, indexed by PhotoSize.asInt()
+	 */
+	protected AtomicLongArray bytesWritten = new AtomicLongArray(PhotoSize.values().length);
+	protected AtomicLongArray filesWritten = new AtomicLongArray(PhotoSize.values().length);
+
+	/**
+	 *
+	 */
+	protected PhotoEncoder() {
+		// do nothing
+	}
+
+	/**
+	 * Encodes image as JPEG using the settings for size; returns the encoded bytes.
+	 */
+	public byte[] encode(RenderedImage image, PhotoSize size) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(estimateEncodedSize(image));
+		encode(image, size, result);
+		return result.toByteArray();
+	}
+
+	/**
+	 * Encodes image as JPEG onto out; returns the number of bytes written.
+	 */
+	public long encode(RenderedImage image, PhotoSize size, OutputStream out) throws IOException {
+		ImageWriter writer = acquireImageWriter();
+		ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+		long result = 0;
+		boolean isReusable = false;
+		try {
+			ImageWriteParam param = createImageWriteParam(writer, size);
+			IIOMetadata metadata = createImageMetadata(writer, image, param);
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(image, null, metadata), param);
+			ios.flush();
+			result = ios.getStreamPosition();
+			isReusable = true;
+		} finally {
+			if (isReusable) {
+				writers.release(writer);
+			} else {
+				writer.dispose(); // a writer that failed may be in an undefined state
+			}
+			ios.close();
+		}
+
+		bytesWritten.addAndGet(size.asInt(), result);
+		filesWritten.incrementAndGet(size.asInt());
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected ImageWriter acquireImageWriter() throws IOException {
+		ImageWriter result = writers.acquire();
+		if (result == null) {
+			throw new IOException("no JPEG image writer available");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Disposes of the pooled writers, e.g. on shutdown
+	 */
+	public void disposeImageWriters() {
+		writers.close();
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected ImageWriteParam createImageWriteParam(ImageWriter writer, PhotoSize size) {
+		ImageWriteParam result = writer.getDefaultWriteParam();
+		result.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		result.setCompressionQuality(size.getJpegQuality());
+		if (SysConfig.isJpegProgressive()) {
+			result.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		} else {
+			result.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns null (i.e. the writer's defaults) unless metadata is to be stripped.
+	 * Stripping drops the JFIF APP0 segment, which browsers do not need.
+	 *
+	 * @methodtype factory
+	 */
+	protected IIOMetadata createImageMetadata(ImageWriter writer, RenderedImage image, ImageWriteParam param) throws IOException {
+		if (!SysConfig.isJpegStripMetadata()) {
+			return null;
+		}
+
+		ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(image);
+		IIOMetadata result = writer.getDefaultImageMetadata(type, param);
+		Node tree = result.getAsTree(JPEG_METADATA_FORMAT_NAME);
+		Node variety = findChild(tree, "JPEGvariety");
+		if (variety != null) {
+			while (variety.hasChildNodes()) {
+				variety.removeChild(variety.getFirstChild());
+			}
+			result.setFromTree(JPEG_METADATA_FORMAT_NAME, tree);
+		}
+
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected Node findChild(Node parent, String name) {
+		for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (name.equals(child.getNodeName())) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Rough upper bound for buffer presizing; JPEGs rarely exceed one byte per pixel at our qualities
+	 */
+	protected int estimateEncodedSize(RenderedImage image) {
+		return Math.max(4096, image.getWidth() * image.getHeight() / 2);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getBytesWritten(PhotoSize size) {
+		return bytesWritten.get(size.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getFilesWritten(PhotoSize size) {
+		return filesWritten.get(size.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getAverageFileSize(PhotoSize size) {
+		long files = getFilesWritten(size);
+		return (files == 0) ? 0 : getBytesWritten(size) / files;
+	}
+
+	/**
+	 *
+	 */
+	public void logStatistics() {
+		for (PhotoSize size : PhotoSize.values()) {
+			String stats = getFilesWritten(size) + " files, " + getBytesWritten(size) + " bytes, " + getAverageFileSize(size) + " bytes/file";
+			SysLog.logSysInfo("encoded photo size", size.asString(), stats);
+		}
+	}
+
+}
@@ -69,6 +69,13 @@ public class PhotoFactory {
         instance = photoFactory;
     }
 
+    /**
+     * Lets another PhotoFactory be set or created, e.g. in tests
+     */
+    public static synchronized void dropInstance() {
+        instance = null;
+    }
+
     /**
      * Hidden singleton instance; needs to be initialized from the outside.
      */
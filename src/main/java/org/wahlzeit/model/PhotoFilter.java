@@ -20,13 +20,16 @@
 
 package org.wahlzeit.model;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
-import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.utils.*;
 
 /**
  * A class to specify a photo filter.
  * A photo filter captures selection ("filtering") criteria for photos.
+ * It lives as long as its session, hence keeps photo ids as ints rather than as lists of PhotoId objects.
  */
 public class PhotoFilter {
 
@@ -36,6 +39,16 @@ public class PhotoFilter {
 	public static final String USER_NAME = "userName";
 	public static final String TAGS = "tags";
 	
+	/**
+	 * 
+	 */
+	protected static final int[] NO_PHOTO_IDS = new int[0];
+	
+	/**
+	 * Sessions keep a random sample of the candidates; once it is used up, candidates are looked up again
+	 */
+	public static final int MAX_NO_DISPLAYABLE_PHOTO_IDS = 1024;
+	
 	/**
 	 *
 	 */
@@ -43,16 +56,16 @@ public class PhotoFilter {
 	protected Tags tags = Tags.EMPTY_TAGS;
 	
 	/**
-	 * 
+	 * Candidates to pick from are displayablePhotoIds[0..noDisplayablePhotoIds[; some may have been processed meanwhile
 	 */
-	protected List<PhotoId> displayablePhotoIds = new LinkedList<PhotoId>();
-	protected List<PhotoId> processedPhotoIds = new LinkedList<PhotoId>();
+	protected int[] displayablePhotoIds = NO_PHOTO_IDS;
+	protected int noDisplayablePhotoIds = 0;
 	
 	/**
 	 * 
 	 */
-	protected Random randomNumber = new Random(System.currentTimeMillis());
-			
+	protected CompactIntSet processedPhotoIds = new CompactIntSet();
+	
 	/**
 	 * 
 	 */
@@ -71,9 +84,9 @@ public class PhotoFilter {
 	 * 
 	 */
 	public void clear() {
-        setUserName("");
-        setTags(Tags.EMPTY_TAGS);
-		displayablePhotoIds.clear();
+		setUserName("");
+		setTags(Tags.EMPTY_TAGS);
+		resetDisplayablePhotoIds();
 		processedPhotoIds.clear();
 	}
 	
@@ -126,50 +139,85 @@ public class PhotoFilter {
 	}
 	
 	/**
-	 * 
+	 * Drops processed candidates as it comes across them, moving the last candidate into their place
 	 */
 	public PhotoId getRandomDisplayablePhotoId() {
-		if (!displayablePhotoIds.isEmpty()) {
-			int size = displayablePhotoIds.size();
-			int index = ((randomNumber.nextInt() % size) + size) / 2;
-			return displayablePhotoIds.get(index);
-		} else {
-			return PhotoId.NULL_ID;
+		while (noDisplayablePhotoIds > 0) {
+			int index = ThreadLocalRandom.current().nextInt(noDisplayablePhotoIds);
+			int id = displayablePhotoIds[index];
+			if (!processedPhotoIds.contains(id)) {
+				return PhotoId.getIdFromInt(id);
+			}
+			
+			displayablePhotoIds[index] = displayablePhotoIds[--noDisplayablePhotoIds];
 		}
+		
+		return PhotoId.NULL_ID;
 	}
 
 	/**
+	 * Returns the number of candidates, counting those processed since they were last picked
 	 * 
+	 * @methodtype get
 	 */
-	public List<PhotoId> getDisplayablePhotoIds() {
-		return displayablePhotoIds;
+	public int getNoDisplayablePhotoIds() {
+		return noDisplayablePhotoIds;
 	}
 	
 	/**
-	 * 
+	 * Takes over newPhotoIds
 	 */
-	public void setDisplayablePhotoIds(List<PhotoId> newPhotoIds) {
+	public void setDisplayablePhotoIds(int[] newPhotoIds) {
 		displayablePhotoIds = newPhotoIds;
+		noDisplayablePhotoIds = newPhotoIds.length;
+	}
+	
+	/**
+	 * Adds the candidate id, preceded by noOffered others, to sample, keeping a uniform random sample
+	 * of at most MAX_NO_DISPLAYABLE_PHOTO_IDS candidates; returns sample, grown if need be
+	 */
+	public static int[] addToSample(int[] sample, int noOffered, int id) {
+		if (noOffered < MAX_NO_DISPLAYABLE_PHOTO_IDS) {
+			if (noOffered == sample.length) {
+				sample = Arrays.copyOf(sample, Math.min(Math.max(2 * noOffered, 1), MAX_NO_DISPLAYABLE_PHOTO_IDS));
+			}
+			sample[noOffered] = id;
+		} else {
+			int index = ThreadLocalRandom.current().nextInt(noOffered + 1);
+			if (index < sample.length) {
+				sample[index] = id;
+			}
+		}
+		
+		return sample;
 	}
 	
 	/**
 	 * 
 	 */
 	public void resetDisplayablePhotoIds() {
-		displayablePhotoIds = new LinkedList<PhotoId>();
+		displayablePhotoIds = NO_PHOTO_IDS;
+		noDisplayablePhotoIds = 0;
 	}
 	
 	/**
-	 * 
+	 * @methodtype get
 	 */
-	public List<PhotoId> getProcessedPhotoIds() {
-		return processedPhotoIds;
+	public int getNoProcessedPhotoIds() {
+		return processedPhotoIds.size();
 	}
 	
 	/**
 	 * 
 	 */
 	public boolean isProcessedPhotoId(PhotoId photoId) {
+		return processedPhotoIds.contains(photoId.asInt());
+	}
+	
+	/**
+	 * 
+	 */
+	public boolean isProcessedPhotoId(int photoId) {
 		return processedPhotoIds.contains(photoId);
 	}
 	
@@ -177,10 +225,27 @@ public class PhotoFilter {
 	 * 
 	 */
 	public void addProcessedPhoto(Photo photo) {
-		processedPhotoIds.add(photo.getId());
-		if (displayablePhotoIds != null) {
-			displayablePhotoIds.remove(photo.getId());
-		}
+		processedPhotoIds.add(photo.getId().asInt());
+	}
+	
+	/**
+	 * Candidates are left out; they are looked up again when needed
+	 */
+	public void writeOn(DataOutput out) throws IOException {
+		out.writeUTF(userName);
+		out.writeUTF(tags.asString());
+		processedPhotoIds.writeOn(out);
+	}
+	
+	/**
+	 * 
+	 */
+	public void readFrom(DataInput in) throws IOException {
+		clear();
+		setUserName(in.readUTF());
+		String tagsAsString = in.readUTF();
+		setTags(tagsAsString.isEmpty() ? Tags.EMPTY_TAGS : new Tags(tagsAsString));
+		processedPhotoIds.readFrom(in);
 	}
 	
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.wahlzeit.services.*;
+
+/**
+ * A PhotoImporter adds all photo files of a directory to a user, for seeding sites with many photos.
+ * Files are hashed and rendered in parallel; the resulting photos are persisted in batches.
+ * Files whose content the user already owns are skipped, so an interrupted import can simply be run again.
+ */
+public class PhotoImporter {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 *
+	 */
+	protected static final FileFilter PHOTO_FILE_FILTER = new FileFilter() {
+		public boolean accept(File file) {
+			return file.getName().endsWith(".jpg");
+		}
+	};
+
+	/**
+	 *
+	 */
+	protected int noThreads = Runtime.getRuntime().availableProcessors();
+	protected int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Statistics of the last run
+	 */
+	protected int noImportedPhotos = 0;
+	protected int noReusedImages = 0;
+	protected int noSkippedFiles = 0;
+	protected int noFailedFiles = 0;
+	protected long startTime = 0;
+	protected long duration = 0;
+
+	/**
+	 *
+	 */
+	public void setNoThreads(int newNoThreads) {
+		noThreads = Math.max(1, newNoThreads);
+	}
+
+	/**
+	 *
+	 */
+	public void setBatchSize(int newBatchSize) {
+		batchSize = Math.max(1, newBatchSize);
+	}
+
+	/**
+	 *
+	 */
+	public void importPhotos(User user, File photoDir) throws Exception {
+		File[] files = photoDir.listFiles(PHOTO_FILE_FILTER);
+		if (files == null) {
+			throw new IllegalArgumentException("not a directory: " + photoDir);
+		}
+		Arrays.sort(files);
+
+		importPhotos(user, Arrays.asList(files));
+	}
+
+	/**
+	 *
+	 */
+	public void importPhotos(User user, List<File> files) throws Exception {
+		noImportedPhotos = noReusedImages = noSkippedFiles = noFailedFiles = 0;
+		startTime = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(noThreads);
+		try {
+			List<String> contentHashes = computeContentHashes(files, executor);
+			importPhotos(user, files, contentHashes, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		duration = System.currentTimeMillis() - startTime;
+		SysLog.logSysInfo("imported photos", String.valueOf(noImportedPhotos), getStatistics());
+	}
+
+	/**
+	 * Hashing stage; a null hash marks an unreadable file
+	 */
+	protected List<String> computeContentHashes(List<File> files, ExecutorService executor) throws InterruptedException {
+		List<Future<String>> futures = new ArrayList<Future<String>>(files.size());
+		for (final File file : files) {
+			futures.add(executor.submit(new Callable<String>() {
+				public String call() throws IOException {
+					return PhotoUtil.computeContentHash(file);
+				}
+			}));
+		}
+
+		List<String> result = new ArrayList<String>(files.size());
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				result.add(futures.get(i).get());
+			} catch (ExecutionException ex) {
+				SysLog.logSysError("could not read photo file: " + files.get(i));
+				result.add(null);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Database lookups happen in the calling thread, which owns the database connection;
+	 * only decoding, resizing and encoding run in the executor.
+	 */
+	protected void importPhotos(User user, List<File> files, List<String> contentHashes, ExecutorService executor) throws Exception {
+		Set<String> ownedHashes = findOwnedContentHashes(user);
+
+		CompletionService<Photo> renderer = new ExecutorCompletionService<Photo>(executor);
+		Map<String, Photo> originals = new HashMap<String, Photo>();
+		List<String> reusingHashes = new ArrayList<String>();
+		int noPendingPhotos = 0;
+
+		for (int i = 0; i < files.size(); i++) {
+			final File file = files.get(i);
+			final String contentHash = contentHashes.get(i);
+			if (contentHash == null) {
+				noFailedFiles++;
+			} else if (!ownedHashes.add(contentHash)) {
+				noSkippedFiles++; // owned already, or a copy earlier in this import
+			} else {
+				Photo original = findPhotoByContentHash(contentHash);
+				if (original != null) {
+					originals.put(contentHash, original);
+					reusingHashes.add(contentHash);
+				} else {
+					final PhotoId id = PhotoId.getNextId();
+					renderer.submit(new Callable<Photo>() {
+						public Photo call() throws Exception {
+							Photo result = renderPhoto(file, id);
+							result.setContentHash(contentHash);
+							return result;
+						}
+					});
+					noPendingPhotos++;
+				}
+			}
+		}
+
+		List<Photo> batch = new ArrayList<Photo>(batchSize);
+		for (; noPendingPhotos > 0; noPendingPhotos--) {
+			try {
+				Photo photo = renderer.take().get();
+				originals.put(photo.getContentHash(), photo);
+				batch.add(photo);
+			} catch (ExecutionException ex) {
+				SysLog.logThrowable(ex.getCause());
+				noFailedFiles++;
+			}
+
+			if (batch.size() >= batchSize) {
+				persistBatch(user, batch);
+			}
+		}
+
+		for (String contentHash : reusingHashes) {
+			Photo original = originals.get(contentHash);
+			if (original == null) {
+				noFailedFiles++; // rendering the original failed
+				continue;
+			}
+
+			batch.add(PhotoUtil.createPhoto(original, PhotoId.getNextId()));
+			noReusedImages++;
+			if (batch.size() >= batchSize) {
+				persistBatch(user, batch);
+			}
+		}
+
+		persistBatch(user, batch);
+	}
+
+	/**
+	 * Persisting stage
+	 */
+	protected void persistBatch(User user, List<Photo> batch) throws Exception {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		for (Photo photo : batch) {
+			user.addPhoto(photo);
+		}
+
+		savePhotos(user, batch);
+		noImportedPhotos += batch.size();
+		batch.clear();
+
+		SysLog.logSysInfo("imported photos", String.valueOf(noImportedPhotos), getStatistics());
+	}
+
+	/**
+	 * Returns the content hashes of the photos user owns already; the importer adds to the result
+	 * 
+	 * @methodproperty hook
+	 */
+	protected Set<String> findOwnedContentHashes(User user) throws Exception {
+		return PhotoManager.getInstance().findContentHashesByOwner(user.getId());
+	}
+
+	/**
+	 * @methodproperty hook
+	 */
+	protected Photo findPhotoByContentHash(String contentHash) {
+		return PhotoManager.getInstance().findPhotoByContentHash(contentHash);
+	}
+
+	/**
+	 * Runs in the executor
+	 * 
+	 * @methodproperty hook
+	 */
+	protected Photo renderPhoto(File file, PhotoId id) throws Exception {
+		return PhotoUtil.createPhoto(file, id);
+	}
+
+	/**
+	 * @methodproperty hook
+	 */
+	protected void savePhotos(User user, List<Photo> batch) throws Exception {
+		PhotoManager.getInstance().addPhotos(batch);
+		UserManager.getInstance().saveUser(user);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoImportedPhotos() {
+		return noImportedPhotos;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoReusedImages() {
+		return noReusedImages;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoSkippedFiles() {
+		return noSkippedFiles;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoFailedFiles() {
+		return noFailedFiles;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public double getPhotosPerSecond() {
+		long elapsed = (duration > 0) ? duration : System.currentTimeMillis() - startTime;
+		return (elapsed <= 0) ? 0 : noImportedPhotos * 1000.0 / elapsed;
+	}
+
+	/**
+	 *
+	 */
+	public String getStatistics() {
+		return String.format("%.1f photos/s, %d reused images, %d skipped, %d failed", getPhotosPerSecond(), noReusedImages, noSkippedFiles, noFailedFiles);
+	}
+
+}
@@ -23,6 +23,7 @@ package org.wahlzeit.model;
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.wahlzeit.contract.PatternInstance;
 import org.wahlzeit.main.*;
@@ -47,6 +48,11 @@ public class PhotoManager extends ObjectManager {
      */
     protected Map<PhotoId, Photo> photoCache = new HashMap<>();
 
+    /**
+     * In-memory part of the content hash index; maps content hashes to photos holding the image files
+     */
+    protected Map<String, PhotoId> contentHashIndex = new ConcurrentHashMap<>();
+
     /**
      *
      */
@@ -68,6 +74,13 @@ public class PhotoManager extends ObjectManager {
         return instance;
     }
 
+    /**
+     * Lets another PhotoManager be set or created, e.g. in tests
+     */
+    public static synchronized void dropInstance() {
+        instance = null;
+    }
+
     /**
      * Hidden singleton instance; needs to be initialized from the outside.
      */
@@ -143,6 +156,13 @@ public class PhotoManager extends ObjectManager {
         return result;
     }
 
+    /**
+     * Returns the number of photos loaded into memory
+     */
+    public int getNoCachedPhotos() {
+        return photoCache.size();
+    }
+
     /**
      * @methodtype get
      * @methodproperties primitive
@@ -177,6 +197,114 @@ public class PhotoManager extends ObjectManager {
         }
     }
 
+    /**
+     * @methodtype command
+     * <p>
+     * Persists new photos completely, in one transaction: ids are inserted as one batch, the rows are
+     * then filled through one updatable range query, and tags are inserted as another batch.
+     * The globals are saved once.
+     */
+    public void addPhotos(List<Photo> photos) throws SQLException {
+        if (photos.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Photo> photosById = new HashMap<>();
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (Photo photo : photos) {
+            assertIsNewPhoto(photo.getId());
+            int id = photo.getId().asInt();
+            photosById.put(id, photo);
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+        }
+
+        Connection conn = getDatabaseConnection().getRdbmsConnection();
+        boolean wasAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        boolean isCommitted = false;
+        try {
+            PreparedStatement stmt = getReadingStatement("INSERT INTO photos(id) VALUES(?)");
+            for (Photo photo : photos) {
+                stmt.setInt(1, photo.getId().asInt());
+                stmt.addBatch();
+            }
+            executeBatch(stmt);
+
+            stmt = getUpdatingStatement("SELECT * FROM photos WHERE id >= ? AND id <= ?");
+            stmt.setInt(1, minId);
+            stmt.setInt(2, maxId);
+            ResultSet rset = executeQuery(stmt);
+            while (rset.next()) {
+                Photo photo = photosById.get(rset.getInt("id"));
+                if (photo != null) {
+                    photo.writeOn(rset);
+                    rset.updateRow();
+                }
+            }
+
+            stmt = getReadingStatement("INSERT INTO tags VALUES(?, ?)");
+            Set<String> tags = new HashSet<>();
+            for (Photo photo : photos) {
+                tags.clear();
+                photoTagCollector.collect(tags, photo);
+                for (String tag : tags) {
+                    stmt.setString(1, tag);
+                    stmt.setInt(2, photo.getId().asInt());
+                    stmt.addBatch();
+                }
+            }
+            executeBatch(stmt);
+
+            ServiceMain.getInstance().saveGlobals();
+            conn.commit();
+            isCommitted = true;
+        } finally {
+            if (!isCommitted) {
+                rollback(conn); // on any failure, as restoring auto-commit would commit the partial batch
+            }
+            conn.setAutoCommit(wasAutoCommit);
+        }
+
+        for (Photo photo : photos) {
+            photo.resetWriteCount();
+            doAddPhoto(photo);
+            if (photo.getContentHash() != null) {
+                contentHashIndex.putIfAbsent(photo.getContentHash(), photo.getId());
+            }
+        }
+    }
+
+    /**
+     * Rolls back without hiding the failure that made it necessary
+     */
+    protected void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException sex) {
+            SysLog.logThrowable(sex);
+        }
+    }
+
+    /**
+     * Returns the content hashes of all photos of an owner
+     */
+    public Set<String> findContentHashesByOwner(int ownerId) throws SQLException {
+        Set<String> result = new HashSet<>();
+        PreparedStatement stmt = getReadingStatement("SELECT content_hash FROM photos WHERE owner_id = ?");
+        stmt.setInt(1, ownerId);
+        ResultSet rset = executeQuery(stmt);
+        while (rset.next()) {
+            String contentHash = rset.getString(1);
+            if (contentHash != null) {
+                result.add(contentHash);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * @methodtype command
      * @methodproperties primitive
@@ -259,8 +387,7 @@ public class PhotoManager extends ObjectManager {
         Photo result = getPhotoFromFilter(filter);
 
         if (result == null) {
-            java.util.List<PhotoId> list = getFilteredPhotoIds(filter);
-            filter.setDisplayablePhotoIds(list);
+            filter.setDisplayablePhotoIds(getFilteredPhotoIds(filter));
             result = getPhotoFromFilter(filter);
         }
 
@@ -285,10 +412,11 @@ public class PhotoManager extends ObjectManager {
     }
 
     /**
-     *
+     * Returns a random sample of the unprocessed photo ids matching filter
      */
-    protected java.util.List<PhotoId> getFilteredPhotoIds(PhotoFilter filter) {
-        java.util.List<PhotoId> result = new LinkedList<>();
+    protected int[] getFilteredPhotoIds(PhotoFilter filter) {
+        int[] result = new int[PhotoId.BUFFER_SIZE_INCREMENT];
+        int noResults = 0;
 
         try {
             java.util.List<String> filterConditions = filter.getFilterConditions();
@@ -299,8 +427,7 @@ public class PhotoManager extends ObjectManager {
                 stmt.setString(i + 1, filterConditions.get(i));
             }
 
-            SysLog.logQuery(stmt);
-            ResultSet rset = stmt.executeQuery();
+            ResultSet rset = executeQuery(stmt);
 
             if (noFilterConditions == 0) {
                 noFilterConditions++;
@@ -309,18 +436,15 @@ public class PhotoManager extends ObjectManager {
             int[] ids = new int[PhotoId.getCurrentIdAsInt() + 1];
             while (rset.next()) {
                 int id = rset.getInt("photo_id");
-                if (++ids[id] == noFilterConditions) {
-                    PhotoId photoId = PhotoId.getIdFromInt(id);
-                    if (!filter.isProcessedPhotoId(photoId)) {
-                        result.add(photoId);
-                    }
+                if ((++ids[id] == noFilterConditions) && !filter.isProcessedPhotoId(id)) {
+                    result = PhotoFilter.addToSample(result, noResults++, id);
                 }
             }
         } catch (SQLException sex) {
             SysLog.logThrowable(sex);
         }
 
-        return result;
+        return Arrays.copyOf(result, Math.min(noResults, result.length));
     }
 
     /**
@@ -357,18 +481,66 @@ public class PhotoManager extends ObjectManager {
         for (String tag : tags) {
             stmt.setString(1, tag);
             stmt.setInt(2, photo.getId().asInt());
-            SysLog.logQuery(stmt);
-            stmt.executeUpdate();
+            executeUpdate(stmt);
+        }
+    }
+
+    /**
+     *
+     */
+    public Photo findPhotoByContentHash(String contentHash) {
+        PhotoId id = contentHashIndex.get(contentHash);
+        if (id != null) {
+            return getPhotoFromId(id);
+        }
+
+        Photo result = null;
+        try {
+            PreparedStatement stmt = getReadingStatement("SELECT * FROM photos WHERE content_hash = ? ORDER BY id LIMIT 1");
+            result = (Photo) readObject(stmt, contentHash);
+        } catch (SQLException sex) {
+            SysLog.logThrowable(sex);
+        }
+
+        if (result != null) {
+            Photo cached = doGetPhotoFromId(result.getId());
+            if (cached != null) {
+                result = cached;
+            } else {
+                doAddPhoto(result);
+            }
+            contentHashIndex.put(contentHash, result.getId());
         }
+
+        return result;
     }
 
     /**
      * @cw11 2. Reserve an unique photo id and delegate the object creation to the PhotoUtil class
      */
     public Photo createPhoto(File file) throws Exception {
+        return createPhoto(file, PhotoUtil.computeContentHash(file));
+    }
+
+    /**
+     * Creates a photo from file, whose content hash is already known. If the same content was
+     * uploaded before, the new photo references the existing image files instead of rendering new ones.
+     */
+    public Photo createPhoto(File file, String contentHash) throws Exception {
         PhotoId id = PhotoId.getNextId();
-        Photo result = PhotoUtil.createPhoto(file, id);
+        Photo result = null;
+
+        Photo original = findPhotoByContentHash(contentHash);
+        if (original != null) {
+            result = PhotoUtil.createPhoto(original, id);
+            SysLog.logSysInfo("photo", id.asString(), "reused image files of " + result.getImageId().asString());
+        } else {
+            result = PhotoUtil.createPhoto(file, id);
+            result.setContentHash(contentHash);
+        }
+
         addPhoto(result);
+        contentHashIndex.putIfAbsent(contentHash, id);
         return result;
     }
 
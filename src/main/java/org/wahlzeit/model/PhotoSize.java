@@ -31,13 +31,14 @@ public enum PhotoSize implements EnumValue {
 	
 	/**
 	 * medium: 440, 600
+	 * Smaller sizes are compressed harder; artifacts hardly show at thumbnail scale.
 	 */
-	THUMB(0, Photo.MAX_THUMB_PHOTO_WIDTH, Photo.MAX_THUMB_PHOTO_HEIGHT), // = (105, 150)
-	EXTRA_SMALL(1, Photo.MAX_PHOTO_WIDTH * 1 / 2, Photo.MAX_PHOTO_HEIGHT * 1 / 2), // (210, 300)
-	SMALL (2, Photo.MAX_PHOTO_WIDTH * 2 / 3, Photo.MAX_PHOTO_HEIGHT * 2 / 3), // (280, 400)
-	MEDIUM(3, Photo.MAX_PHOTO_WIDTH * 1 / 1, Photo.MAX_PHOTO_HEIGHT * 1 / 1), // (420, 600)
-	LARGE (4, Photo.MAX_PHOTO_WIDTH * 3 / 2, Photo.MAX_PHOTO_HEIGHT * 3 / 2), // (630, 900)
-	EXTRA_LARGE (5, Photo.MAX_PHOTO_WIDTH * 2 / 1, Photo.MAX_PHOTO_HEIGHT * 2 / 1); // (840, 1200)
+	THUMB(0, Photo.MAX_THUMB_PHOTO_WIDTH, Photo.MAX_THUMB_PHOTO_HEIGHT, 0.70f), // = (105, 150)
+	EXTRA_SMALL(1, Photo.MAX_PHOTO_WIDTH * 1 / 2, Photo.MAX_PHOTO_HEIGHT * 1 / 2, 0.75f), // (210, 300)
+	SMALL (2, Photo.MAX_PHOTO_WIDTH * 2 / 3, Photo.MAX_PHOTO_HEIGHT * 2 / 3, 0.80f), // (280, 400)
+	MEDIUM(3, Photo.MAX_PHOTO_WIDTH * 1 / 1, Photo.MAX_PHOTO_HEIGHT * 1 / 1, 0.82f), // (420, 600)
+	LARGE (4, Photo.MAX_PHOTO_WIDTH * 3 / 2, Photo.MAX_PHOTO_HEIGHT * 3 / 2, 0.85f), // (630, 900)
+	EXTRA_LARGE (5, Photo.MAX_PHOTO_WIDTH * 2 / 1, Photo.MAX_PHOTO_HEIGHT * 2 / 1, 0.88f); // (840, 1200)
 	
 	/**
 	 * All possible states of PhotoSize
@@ -106,14 +107,16 @@ public enum PhotoSize implements EnumValue {
 	private int value = 0;
 	private int maxPhotoWidth;
 	private int maxPhotoHeight;
+	private float jpegQuality;
 	
 	/**
 	 * 
 	 */
-	private PhotoSize(int myValue, int myMaxWidth, int myMaxHeight) {
+	private PhotoSize(int myValue, int myMaxWidth, int myMaxHeight, float myJpegQuality) {
 		value = myValue;
 		maxPhotoWidth = myMaxWidth;
 		maxPhotoHeight = myMaxHeight;
+		jpegQuality = myJpegQuality;
 	}
 	
 	/**
@@ -172,6 +175,13 @@ public enum PhotoSize implements EnumValue {
 		return maxPhotoHeight;
 	}
 	
+	/**
+	 * JPEG compression quality in [0, 1] used when rendering photos of this size
+	 */
+	public float getJpegQuality() {
+		return jpegQuality;
+	}
+	
 	/**
 	 * 
 	 */
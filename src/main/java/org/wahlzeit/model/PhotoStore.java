@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+
+/**
+ * A PhotoStore keeps the encoded photo files; PhotoUtil writes through it, the PhotoServlet reads through it.
+ * SysConfig.PHOTO_STORE selects the implementation.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = PhotoStore.class
+)
+@PatternInstance(
+		patternName = "Strategy",
+		participants = {PhotoStore.class, FilePhotoStore.class, PackedPhotoStore.class}
+)
+public abstract class PhotoStore {
+
+	/**
+	 *
+	 */
+	public static final String FILE_STORE = "file";
+	public static final String PACKED_STORE = "packed";
+
+	/**
+	 *
+	 */
+	protected static PhotoStore instance = null;
+
+	/**
+	 *
+	 */
+	public static synchronized PhotoStore getInstance() {
+		if (instance == null) {
+			String storeType = SysConfig.getPhotoStoreType();
+			SysLog.logSysInfo("setting PhotoStore", storeType);
+			setInstance(createPhotoStore(storeType));
+		}
+
+		return instance;
+	}
+
+	/**
+	 *
+	 */
+	protected static synchronized void setInstance(PhotoStore photoStore) {
+		if (instance != null) {
+			throw new IllegalStateException("attempt to initialize PhotoStore twice");
+		}
+
+		instance = photoStore;
+	}
+
+	/**
+	 * Closes and drops the singleton instance to cope with repeated startup/shutdown scenarios
+	 */
+	public static synchronized void dropInstance() throws IOException {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static PhotoStore createPhotoStore(String storeType) {
+		if (PACKED_STORE.equals(storeType)) {
+			return new PackedPhotoStore(SysConfig.getPhotosDir().asString() + File.separator + PackedPhotoStore.VOLUMES_DIR_NAME, SysConfig.getPhotoVolumeSize());
+		} else if (FILE_STORE.equals(storeType)) {
+			return new FilePhotoStore();
+		}
+
+		throw new IllegalArgumentException("unknown photo store: " + storeType);
+	}
+
+	/**
+	 * Stores the encoded photo file of id in size; replaces an existing one.
+	 */
+	public abstract void write(PhotoId id, PhotoSize size, byte[] bytes) throws IOException;
+
+	/**
+	 * Returns the photo file of the id given as string in size, or null if there is none
+	 */
+	public abstract PhotoStoreEntry find(String idAsString, PhotoSize size) throws IOException;
+
+	/**
+	 *
+	 */
+	public void close() throws IOException {
+		// do nothing
+	}
+
+}
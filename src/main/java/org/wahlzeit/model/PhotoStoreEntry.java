@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * A photo file as found in a PhotoStore. Entries are immutable, like the files they describe.
+ */
+public abstract class PhotoStoreEntry {
+
+	/**
+	 *
+	 */
+	protected final long length;
+	protected final long lastModified;
+	protected final String etag;
+
+	/**
+	 *
+	 */
+	protected PhotoStoreEntry(long myLength, long myLastModified) {
+		length = myLength;
+		lastModified = myLastModified;
+		etag = "\"" + Long.toString(myLastModified, 36) + "-" + Long.toString(myLength, 36) + "\"";
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Strong entity tag, derived from last modification time and length
+	 *
+	 * @methodtype get
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * Writes count bytes, beginning at start, onto out
+	 */
+	public abstract void transferTo(long start, long count, OutputStream out) throws IOException;
+
+	/**
+	 *
+	 */
+	public byte[] readBytes() throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream((int) length);
+		transferTo(0, length, result);
+		return result.toByteArray();
+	}
+
+	/**
+	 * Returns an entry that holds this entry's bytes in memory
+	 */
+	public PhotoStoreEntry asCached() throws IOException {
+		return new CachedEntry(this, readBytes());
+	}
+
+	/**
+	 * Lets a file channel push bytes to out without copying them through a heap buffer of ours.
+	 * Uses positional transfers only, so one channel may serve many threads at once.
+	 */
+	protected static void transferTo(FileChannel in, long position, long count, OutputStream out) throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		long remaining = count;
+		while (remaining > 0) {
+			long transferred = in.transferTo(position, remaining, target);
+			if (transferred <= 0) {
+				throw new EOFException("photo file ended prematurely");
+			}
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected static class CachedEntry extends PhotoStoreEntry {
+
+		protected final byte[] bytes;
+
+		protected CachedEntry(PhotoStoreEntry source, byte[] myBytes) {
+			super(source.getLength(), source.getLastModified());
+			bytes = myBytes;
+		}
+
+		public void transferTo(long start, long count, OutputStream out) throws IOException {
+			out.write(bytes, (int) start, (int) count);
+		}
+
+		public byte[] readBytes() {
+			return Arrays.copyOf(bytes, bytes.length);
+		}
+
+		public PhotoStoreEntry asCached() {
+			return this;
+		}
+
+	}
+
+}
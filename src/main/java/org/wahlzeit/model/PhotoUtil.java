@@ -23,9 +23,11 @@ package org.wahlzeit.model;
 import java.io.*;
 import java.awt.*;
 import java.awt.image.*;
+import java.security.*;
 import javax.imageio.*;
 
 import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
 
 /**
  * PhotoUtil provides a set of utility functions to create defined images.
@@ -33,6 +35,17 @@ import org.wahlzeit.services.*;
  */
 public class PhotoUtil {
 
+    /**
+     * Identical uploads are recognized by the digest of their bytes
+     */
+    public static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Photo files are spread over SHARD_LEVELS levels of subdirectories, named by the last characters of the photo id
+     */
+    public static final int SHARD_LEVELS = 2;
+    public static final String PHOTO_FILE_EXTENSION = ".jpg";
+
     /**
      * @cw11 2.1. Create a photo object using the PhotoFactory/LandscapePhotoFactory and configure the object
      * afterwards (set the image size)
@@ -58,6 +71,81 @@ public class PhotoUtil {
         return result;
     }
 
+    /**
+     * Creates a photo object that shares the image files of source; nothing is decoded or rendered.
+     */
+    public static Photo createPhoto(Photo source, PhotoId id) {
+        Photo result = PhotoFactory.getInstance().createPhoto(id);
+        result.setImageFrom(source);
+        return result;
+    }
+
+    /**
+     * @methodtype factory
+     */
+    public static MessageDigest createContentDigest() {
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("no " + CONTENT_HASH_ALGORITHM + " available", ex);
+        }
+    }
+
+    /**
+     *
+     */
+    public static String asContentHash(MessageDigest digest) {
+        return StringUtil.asHexString(digest.digest());
+    }
+
+    /**
+     * Returns the image format recognized by the magic bytes at the beginning of header, or null
+     */
+    public static String getImageFormatName(byte[] header, int length) {
+        if (startsWith(header, length, 0xff, 0xd8, 0xff)) {
+            return "jpeg";
+        } else if (startsWith(header, length, 0x89, 'P', 'N', 'G')) {
+            return "png";
+        } else if (startsWith(header, length, 'G', 'I', 'F', '8')) {
+            return "gif";
+        } else if (startsWith(header, length, 'B', 'M')) {
+            return "bmp";
+        }
+
+        return null;
+    }
+
+    /**
+     * @methodtype boolean-query
+     */
+    protected static boolean startsWith(byte[] bytes, int length, int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xff) != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     */
+    public static String computeContentHash(File source) throws IOException {
+        MessageDigest digest = createContentDigest();
+        try (InputStream in = new DigestInputStream(new FileInputStream(source), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // digest is updated while reading
+            }
+        }
+        return asContentHash(digest);
+    }
+
     /**
      *
      */
@@ -89,10 +177,86 @@ public class PhotoUtil {
         int targetHeight = size.calcAdjustedHeight(sourceWidth, sourceHeight);
 
         BufferedImage targetImage = scaleImage(source, targetWidth, targetHeight);
-        File target = new File(SysConfig.getPhotosDir().asString() + File.separator + id.asString() + size.asInt() + ".jpg");
-        ImageIO.write(targetImage, "jpg", target);
+        byte[] bytes = PhotoEncoder.getInstance().encode(targetImage, size);
+        PhotoStore.getInstance().write(id, size, bytes);
+
+        SysLog.logSysInfo("created image file for id: " + id.asString() + " of size: " + size.asString() + " with bytes: " + bytes.length);
+    }
+
+    /**
+     * @methodtype conversion
+     */
+    public static String getPhotoFileName(PhotoId id, PhotoSize size) {
+        return id.asString() + size.asInt() + PHOTO_FILE_EXTENSION;
+    }
+
+    /**
+     * Returns the shard directories of a photo id, e.g. "3/c" for "x1ac3"
+     *
+     * @methodtype conversion
+     */
+    public static String getShardPath(String idAsString) {
+        StringBuilder result = new StringBuilder(2 * SHARD_LEVELS);
+        int length = idAsString.length();
+        for (int i = 1; i <= SHARD_LEVELS; i++) {
+            if (i > 1) {
+                result.append('/');
+            }
+            result.append((i <= length) ? idAsString.charAt(length - i) : '0');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the photo file path relative to the photos directory, using '/' as separator
+     *
+     * @methodtype conversion
+     */
+    public static String getPhotoFilePath(PhotoId id, PhotoSize size) {
+        return getShardPath(id.asString()) + '/' + getPhotoFileName(id, size);
+    }
+
+    /**
+     * @methodtype conversion
+     */
+    public static File getPhotoFile(PhotoId id, PhotoSize size) {
+        return getPhotoFile(id.asString(), size);
+    }
+
+    /**
+     * @methodtype conversion
+     */
+    public static File getPhotoFile(String idAsString, PhotoSize size) {
+        String shardPath = getShardPath(idAsString).replace('/', File.separatorChar);
+        String fileName = idAsString + size.asInt() + PHOTO_FILE_EXTENSION;
+        return new File(SysConfig.getPhotosDir().asString() + File.separator + shardPath + File.separator + fileName);
+    }
+
+    /**
+     * Returns the file in the flat layout used before photo files were sharded
+     *
+     * @methodtype conversion
+     */
+    public static File getUnshardedPhotoFile(String idAsString, PhotoSize size) {
+        String fileName = idAsString + size.asInt() + PHOTO_FILE_EXTENSION;
+        return new File(SysConfig.getPhotosDir().asString() + File.separator + fileName);
+    }
+
+    /**
+     * Returns the existing file of a photo in either layout, or null; copes with files being migrated meanwhile
+     */
+    public static File findPhotoFile(String idAsString, PhotoSize size) {
+        File result = getPhotoFile(idAsString, size);
+        if (result.isFile()) {
+            return result;
+        }
+
+        File unsharded = getUnshardedPhotoFile(idAsString, size);
+        if (unsharded.isFile()) {
+            return unsharded;
+        }
 
-        SysLog.logSysInfo("created image file for id: " + id.asString() + " of size: " + size.asString());
+        return result.isFile() ? result : null;
     }
 
     /**
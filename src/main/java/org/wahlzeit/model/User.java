@@ -88,6 +88,11 @@ public class User extends Client implements Persistent {
 	 */
 	protected transient int writeCount = 0;
 	
+	/**
+	 * Like DataObject.version; changes with every write and is never reset
+	 */
+	protected transient volatile long version = DataObject.getNextVersion();
+	
 	/**
 	 * 
 	 */
@@ -183,6 +188,14 @@ public class User extends Client implements Persistent {
 	 */
 	public final void incWriteCount() {
 		writeCount++;
+		version = DataObject.getNextVersion();
+	}
+	
+	/**
+	 * 
+	 */
+	public final long getVersion() {
+		return version;
 	}
 	
 	/**
@@ -62,7 +62,7 @@ public class UserLog extends Log {
 	/**
 	 * 
 	 */
-	public static StringBuffer createUserLogEntry() {
+	public static StringBuilder createUserLogEntry() {
 		return Log.createLogEntry("ul");
 	}
 
@@ -76,8 +76,8 @@ public class UserLog extends Log {
 	/**
 	 * @methodtype factory
 	 */
-	public static StringBuffer createActionEntry(String action) {
-		StringBuffer sb = createUserLogEntry();
+	public static StringBuilder createActionEntry(String action) {
+		StringBuilder sb = createUserLogEntry();
 		addLogType(sb, "info");
 		addField(sb, "action", action);
 		return sb;
@@ -86,7 +86,7 @@ public class UserLog extends Log {
 	/**
 	 * 
 	 */
-	public static void addCreatedObject(StringBuffer sb, String type, String object) {
+	public static void addCreatedObject(StringBuilder sb, String type, String object) {
 		addField(sb, "created", type);
 		addField(sb, "object", object);
 	}
@@ -94,7 +94,7 @@ public class UserLog extends Log {
 	/**
 	 * 
 	 */
-	public static void addUpdatedObject(StringBuffer sb, String type, String object) {
+	public static void addUpdatedObject(StringBuilder sb, String type, String object) {
 		addField(sb, "updated", type);
 		addField(sb, "object", object);
 	}
@@ -102,7 +102,7 @@ public class UserLog extends Log {
 	/**
 	 * 
 	 */
-	public static void addDeletedObject(StringBuffer sb, String type, String object) {
+	public static void addDeletedObject(StringBuilder sb, String type, String object) {
 		addField(sb, "deleted", type);
 		addField(sb, "object", object);
 	}
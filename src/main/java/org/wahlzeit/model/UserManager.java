@@ -124,6 +124,13 @@ public class UserManager extends ObjectManager {
 		return reservedNames.contains(Tags.asTag(userName));
 	}
 		
+	/**
+	 * Returns the number of users loaded into memory
+	 */
+	public int getNoCachedUsers() {
+		return users.size();
+	}
+	
 	/**
 	 * 
 	 */
@@ -6,6 +6,7 @@
 
 package org.wahlzeit.model;
 
+import java.io.*;
 import java.util.*;
 
 import org.wahlzeit.services.*;
@@ -26,6 +27,17 @@ public class UserSession extends Session {
 	public static final String HEADING = "heading";
 	public static final String USER = "user";
 	
+	/**
+	 * Kinds of clients and saved args in writeOn and readFrom
+	 */
+	protected static final int GUEST_CLIENT = 0;
+	protected static final int USER_CLIENT = 1;
+	
+	protected static final int STRING_ARG = 0;
+	protected static final int STRING_ARRAY_ARG = 1;
+	protected static final int PHOTO_ARG = 2;
+	protected static final int PHOTO_CASE_ARG = 3;
+	
 	/**
 	 * Session state
 	 */
@@ -37,12 +49,25 @@ public class UserSession extends Session {
 	protected PhotoSize photoSize = PhotoSize.MEDIUM;
 	protected long confirmationCode = -1; // -1 means not set
 	protected PhotoFilter photoFilter = PhotoFactory.getInstance().createPhotoFilter();
-	protected Set praisedPhotos = new HashSet<Photo>();
+	protected CompactIntSet praisedPhotoIds = new CompactIntSet();
 
 	/**
 	 * Transaction state
 	 */
 	protected Map<String, Object> savedArgs = new HashMap<String, Object>();
+	
+	/**
+	 * Kept by the UserSessionStore, which decides when to passivate the session
+	 */
+	protected long lastAccessTime = System.currentTimeMillis();
+	protected int noActiveRequests = 0;
+	
+	/**
+	 * What a shared UserSessionStore wrote last, and when; to write on change only
+	 */
+	protected long storedVersion = 0;
+	protected byte[] storedState = null;
+	protected long storedTime = 0;
 
 	/**
 	 * 
@@ -187,21 +212,21 @@ public class UserSession extends Session {
 	 * 
 	 */
 	public boolean hasPraisedPhoto(Photo photo) {
-		return praisedPhotos.contains(photo);
+		return praisedPhotoIds.contains(photo.getId().asInt());
 	}
 	
 	/**
 	 * 
 	 */
 	public void addPraisedPhoto(Photo photo) {
-		praisedPhotos.add(photo);
+		praisedPhotoIds.add(photo.getId().asInt());
 	}
 	
 	/**
 	 * 
 	 */
 	public void clearPraisedPhotos() {
-		praisedPhotos.clear();
+		praisedPhotoIds.clear();
 	}
 	
 	/**
@@ -381,4 +406,146 @@ public class UserSession extends Session {
 		return result;
 	}
 	
+	/**
+	 * Writes the session state compactly; the client, photos, and cases by name or id only.
+	 * Saved args other than strings, photos, and cases are dropped.
+	 */
+	public void writeOn(DataOutput out) throws IOException {
+		out.writeUTF((siteUrl != null) ? siteUrl : "");
+		out.writeByte(configuration.getLanguage().asInt());
+		out.writeByte(photoSize.asInt());
+		out.writeLong(confirmationCode);
+		writeClientOn(out);
+		photoFilter.writeOn(out);
+		praisedPhotoIds.writeOn(out);
+		writeSavedArgsOn(out);
+	}
+	
+	/**
+	 * 
+	 */
+	protected void writeClientOn(DataOutput out) throws IOException {
+		if (client instanceof User) {
+			out.writeByte(USER_CLIENT);
+			out.writeUTF(((User) client).getName());
+		} else {
+			out.writeByte(GUEST_CLIENT);
+			out.writeUTF(client.getEmailAddress().asString());
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void writeSavedArgsOn(DataOutput out) throws IOException {
+		Map<String, Object> args = new HashMap<String, Object>();
+		for (Map.Entry<String, Object> entry : savedArgs.entrySet()) {
+			Object value = entry.getValue();
+			if ((value instanceof String) || (value instanceof String[]) || (value instanceof Photo) || (value instanceof PhotoCase)) {
+				args.put(entry.getKey(), value);
+			} else if (value != null) {
+				SysLog.logSysInfo("dropped saved arg of passivated session: " + entry.getKey());
+			}
+		}
+		
+		CompactIntSet.writeVarInt(out, args.size());
+		for (Map.Entry<String, Object> entry : args.entrySet()) {
+			out.writeUTF(entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof String) {
+				out.writeByte(STRING_ARG);
+				out.writeUTF((String) value);
+			} else if (value instanceof String[]) {
+				String[] values = (String[]) value;
+				out.writeByte(STRING_ARRAY_ARG);
+				CompactIntSet.writeVarInt(out, values.length);
+				for (String element : values) {
+					out.writeUTF(element);
+				}
+			} else if (value instanceof Photo) {
+				out.writeByte(PHOTO_ARG);
+				CompactIntSet.writeVarInt(out, ((Photo) value).getId().asInt());
+			} else {
+				out.writeByte(PHOTO_CASE_ARG);
+				CompactIntSet.writeVarInt(out, ((PhotoCase) value).getId().asInt());
+			}
+		}
+	}
+	
+	/**
+	 * Reads what writeOn wrote; looks up users, photos, and cases, hence may need a database connection
+	 */
+	public void readFrom(DataInput in) throws IOException {
+		String siteUrlAsString = in.readUTF();
+		siteUrl = siteUrlAsString.isEmpty() ? null : siteUrlAsString;
+		configuration = LanguageConfigs.get(Language.getFromInt(in.readByte()));
+		photoSize = PhotoSize.getFromInt(in.readByte());
+		confirmationCode = in.readLong();
+		readClientFrom(in);
+		photoFilter.readFrom(in);
+		praisedPhotoIds.clear();
+		praisedPhotoIds.readFrom(in);
+		readSavedArgsFrom(in);
+	}
+	
+	/**
+	 * A user who is gone meanwhile leaves a guest behind
+	 */
+	protected void readClientFrom(DataInput in) throws IOException {
+		int kind = in.readByte();
+		String value = in.readUTF();
+		Client newClient = null;
+		if (kind == USER_CLIENT) {
+			newClient = UserManager.getInstance().getUserByName(value);
+		}
+		
+		if (newClient == null) {
+			newClient = new Guest();
+			if ((kind == GUEST_CLIENT) && !value.isEmpty()) { // guests start without an email address
+				newClient.setEmailAddress(EmailAddress.getFromString(value));
+			}
+		}
+		
+		client = newClient;
+	}
+	
+	/**
+	 * 
+	 */
+	protected void readSavedArgsFrom(DataInput in) throws IOException {
+		savedArgs.clear();
+		int noArgs = CompactIntSet.readVarInt(in);
+		for (int i = 0; i < noArgs; i++) {
+			String key = in.readUTF();
+			int kind = in.readByte();
+			Object value = null;
+			if (kind == STRING_ARG) {
+				value = in.readUTF();
+			} else if (kind == STRING_ARRAY_ARG) {
+				String[] values = new String[CompactIntSet.readVarInt(in)];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = in.readUTF();
+				}
+				value = values;
+			} else if (kind == PHOTO_ARG) {
+				value = PhotoManager.getPhoto(PhotoId.getIdFromInt(CompactIntSet.readVarInt(in)));
+			} else if (kind == PHOTO_CASE_ARG) {
+				value = PhotoCaseManager.getInstance().getPhotoCase(CompactIntSet.readVarInt(in));
+			} else {
+				throw new IOException("unknown kind of saved arg: " + kind);
+			}
+			
+			if (value != null) {
+				savedArgs.put(key, value);
+			}
+		}
+	}
+	
+	/**
+	 * @methodtype get
+	 */
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+	
 }
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+
+/**
+ * The UserSessionStore keeps the user sessions, by name. Sessions in use recently are resident in memory;
+ * sessions idle for longer are passivated, that is, dropped from memory and kept only in the backing store,
+ * and activated again once a request comes in for them. Hence memory grows with active users, not daily visitors.
+ * SysConfig.SESSION_STORE selects the backing store: local files, or a database table shared by all nodes.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = UserSessionStore.class
+)
+@PatternInstance(
+		patternName = "Strategy",
+		participants = {UserSessionStore.class, FileUserSessionStore.class, DatabaseUserSessionStore.class}
+)
+public abstract class UserSessionStore {
+
+	/**
+	 * 
+	 */
+	public static final String FILE_STORE = "file";
+	public static final String DATABASE_STORE = "database";
+	
+	/**
+	 * 
+	 */
+	protected static UserSessionStore instance = null;
+
+	/**
+	 * 
+	 */
+	public static synchronized UserSessionStore getInstance() {
+		if (instance == null) {
+			String storeType = SysConfig.getSessionStoreType();
+			SysLog.logSysInfo("setting UserSessionStore", storeType);
+			if (storeType.equals(DATABASE_STORE)) {
+				instance = new DatabaseUserSessionStore();
+			} else if (storeType.equals(FILE_STORE)) {
+				instance = new FileUserSessionStore(SysConfig.getTempDir().asString() + File.separator + "sessions");
+			} else {
+				throw new IllegalArgumentException("unknown session store: " + storeType);
+			}
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * 
+	 */
+	public static synchronized void dropInstance() {
+		instance = null;
+	}
+	
+	/**
+	 * Changed only through compute methods, which serialize access to a session's entry.
+	 * These do no I/O, as a compute method blocks other sessions (and the carrier of a virtual thread), too.
+	 */
+	protected final ConcurrentHashMap<String, UserSession> residentSessions = new ConcurrentHashMap<String, UserSession>();
+	
+	/**
+	 * 
+	 */
+	protected final AtomicLong noPassivations = new AtomicLong();
+	protected final AtomicLong noActivations = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	protected UserSessionStore() {
+		// do nothing
+	}
+	
+	/**
+	 * Whether other nodes see the sessions, too; then they are not tied to one node's HttpSessions
+	 * 
+	 * @methodtype boolean-query
+	 */
+	public boolean isShared() {
+		return false;
+	}
+	
+	/**
+	 * Adds a new session, in use by the caller until released
+	 */
+	public void addSession(UserSession us) {
+		us.noActiveRequests = 1;
+		us.lastAccessTime = System.currentTimeMillis();
+		residentSessions.put(us.getName(), us);
+	}
+	
+	/**
+	 * Returns the session of name, activating it if need be, or null if there is none.
+	 * The session is in use by the caller until released.
+	 * The backing store is read outside of the map; what was read replaces the resident session only if that is still resident,
+	 * and was not stored meanwhile, which would make what was read outdated.
+	 */
+	public UserSession acquireSession(String name) {
+		UserSession resident = residentSessions.get(name);
+		while (true) {
+			long residentVersion = (resident != null) ? resident.storedVersion : 0;
+			UserSession loaded = doLoadSession(name, resident);
+			if ((loaded != null) && (loaded != resident)) {
+				UserSession current = installSession(name, resident, residentVersion, loaded);
+				if (current == loaded) {
+					noActivations.incrementAndGet();
+					doActivateSession(loaded);
+					return loaded;
+				} else if ((current == resident) && (current != null)) {
+					return resident; // loaded was outdated
+				}
+				resident = current;
+			} else if (resident != null) {
+				UserSession current = useSession(name, resident);
+				if (current == resident) {
+					return resident;
+				}
+				resident = current;
+			} else {
+				resident = residentSessions.get(name);
+				if (resident == null) {
+					return null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Makes loaded the resident session of name, in use by the caller, unless resident is not resident anymore; returns the resident session.
+	 * If resident was stored since it had residentVersion, it stays resident, in use by the caller.
+	 */
+	protected UserSession installSession(String name, final UserSession resident, final long residentVersion, final UserSession loaded) {
+		return residentSessions.compute(name, new BiFunction<String, UserSession, UserSession>() {
+			public UserSession apply(String key, UserSession us) {
+				if (us != resident) {
+					return us;
+				}
+				
+				if (resident != null) {
+					if (resident.storedVersion != residentVersion) {
+						markInUse(resident);
+						return resident;
+					}
+					loaded.noActiveRequests = resident.noActiveRequests; // still to be released
+				}
+				markInUse(loaded);
+				return loaded;
+			}
+		});
+	}
+	
+	/**
+	 * Marks resident in use by the caller, if it is still resident; returns the resident session
+	 */
+	protected UserSession useSession(String name, final UserSession resident) {
+		return residentSessions.computeIfPresent(name, new BiFunction<String, UserSession, UserSession>() {
+			public UserSession apply(String key, UserSession us) {
+				if (us == resident) {
+					markInUse(us);
+				}
+				return us;
+			}
+		});
+	}
+	
+	/**
+	 * Called inside a compute method only
+	 */
+	protected void markInUse(UserSession us) {
+		us.noActiveRequests++;
+		us.lastAccessTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Returns the current state of the session of name, given its resident state (or null); returns resident if that is current.
+	 * Called outside of the map, hence it may block, and it may read a session that another thread activates at the same time.
+	 * 
+	 * @methodproperty hook
+	 */
+	protected abstract UserSession doLoadSession(String name, UserSession resident);
+	
+	/**
+	 * Called once the loaded session is resident, and before it is released
+	 * 
+	 * @methodproperty hook
+	 */
+	protected void doActivateSession(UserSession us) {
+		// do nothing
+	}
+	
+	/**
+	 * 
+	 */
+	public void releaseSession(UserSession us) {
+		doReleaseSession(us);
+		
+		residentSessions.computeIfPresent(us.getName(), new BiFunction<String, UserSession, UserSession>() {
+			public UserSession apply(String key, UserSession value) {
+				value.noActiveRequests--;
+				value.lastAccessTime = System.currentTimeMillis();
+				return value;
+			}
+		});
+	}
+	
+	/**
+	 * Called while the session is still in use, hence it cannot be passivated meanwhile
+	 * 
+	 * @methodproperty hook
+	 */
+	protected void doReleaseSession(UserSession us) {
+		// do nothing
+	}
+	
+	/**
+	 * For sessions that ended, e.g. because they timed out
+	 */
+	public void removeSession(String name) {
+		residentSessions.remove(name);
+		doRemoveSession(name);
+	}
+	
+	/**
+	 * @methodproperty hook
+	 */
+	protected abstract void doRemoveSession(String name);
+	
+	/**
+	 * Passivates the sessions not in use and idle for maxIdleTime milliseconds; returns how many
+	 */
+	public int passivateIdleSessions(long maxIdleTime) {
+		long idleSince = System.currentTimeMillis() - maxIdleTime;
+		int result = 0;
+		for (UserSession us : residentSessions.values()) {
+			if ((us.noActiveRequests == 0) && (us.lastAccessTime <= idleSince) && passivateSession(us)) {
+				result++;
+			}
+		}
+		
+		if (result > 0) {
+			SysLog.logSysInfo("passivated sessions: " + result + ", resident sessions: " + residentSessions.size());
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Writes the session, then drops it from memory if it was neither used nor in use meanwhile.
+	 * Otherwise, what was written is taken back, as a request may have changed the session while it was written.
+	 */
+	protected boolean passivateSession(final UserSession us) {
+		final long lastAccessTime = us.lastAccessTime;
+		try {
+			if (!doPassivateSession(us)) {
+				return false;
+			}
+		} catch (RuntimeException rex) {
+			SysLog.logThrowable(rex); // a session that cannot be passivated must not keep the others from it
+			return false;
+		}
+		
+		final AtomicBoolean isRemoved = new AtomicBoolean(false);
+		residentSessions.computeIfPresent(us.getName(), new BiFunction<String, UserSession, UserSession>() {
+			public UserSession apply(String key, UserSession value) {
+				if ((value != us) || (value.noActiveRequests > 0) || (value.lastAccessTime != lastAccessTime)) {
+					return value;
+				}
+				
+				isRemoved.set(true);
+				return null;
+			}
+		});
+		
+		if (!isRemoved.get()) {
+			doCancelPassivation(us);
+			return false;
+		}
+		
+		us.returnDatabaseConnection();
+		noPassivations.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Writes the session to the backing store; returns false if it could not, in which case it stays resident
+	 * 
+	 * @methodproperty hook
+	 */
+	protected abstract boolean doPassivateSession(UserSession us);
+	
+	/**
+	 * Called if the session stays resident after all, after it was written
+	 * 
+	 * @methodproperty hook
+	 */
+	protected void doCancelPassivation(UserSession us) {
+		// do nothing
+	}
+	
+	/**
+	 * Reads the session of name from in, or returns null if it cannot be read.
+	 * The session reads with itself as the thread's session, in case it needs the database.
+	 */
+	protected UserSession readSession(String name, DataInput in) {
+		UserSession result = new UserSession(name, null);
+		Session priorSession = SessionManager.getThreadLocalSession();
+		SessionManager.setThreadLocalSession(result);
+		try {
+			result.readFrom(in);
+		} catch (Exception ex) {
+			SysLog.logThrowable(ex);
+			return null;
+		} finally {
+			SessionManager.setThreadLocalSession(priorSession);
+			result.returnDatabaseConnection();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @methodtype get
+	 */
+	public int getNoResidentSessions() {
+		return residentSessions.size();
+	}
+	
+	/**
+	 * Returns -1 if not known
+	 * 
+	 * @methodtype get
+	 */
+	public abstract int getNoPassivatedSessions();
+	
+	/**
+	 * @methodtype get
+	 */
+	public long getNoPassivations() {
+		return noPassivations.get();
+	}
+	
+	/**
+	 * @methodtype get
+	 */
+	public long getNoActivations() {
+		return noActivations.get();
+	}
+	
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.services;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An AsyncLogWriter hands log entries to log4j on a background thread, so request threads never wait for the console.
+ * Entries are copied into a ring of reusable slots; a full ring makes the logging thread wait rather than drop entries.
+ */
+public class AsyncLogWriter {
+
+	/**
+	 * 
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+	public static final int ENTRY_CAPACITY = 256;
+	
+	/**
+	 * Slots grown beyond this by stack traces and the like are replaced after writing
+	 */
+	public static final int MAX_ENTRY_CAPACITY = 16 * 1024;
+	
+	/**
+	 * 
+	 */
+	protected static final long WAIT_NANOS = 100000L; // 0.1 ms
+	
+	/**
+	 * An idle writer looks for new entries after 1, 2, 4, 8, and 16 ms, so that entries are written in batches
+	 * without a system call per entry; logging threads wake it up early only once the ring is half full.
+	 * After that, it sleeps until the next entry is appended.
+	 */
+	protected static final long IDLE_NANOS = 1000000L; // 1 ms
+	protected static final long MAX_IDLE_NANOS = 16000000L; // 16 ms
+	
+	/**
+	 * 
+	 */
+	protected final Logger logger;
+	
+	/**
+	 * Slot i holds the entry of sequence number published[i]
+	 */
+	protected final StringBuilder[] entries;
+	protected final AtomicLongArray published;
+	protected final int mask;
+	
+	/**
+	 * Next sequence number to hand out; all entries before writtenSequence are written
+	 */
+	protected final AtomicLong nextSequence = new AtomicLong();
+	protected volatile long writtenSequence = 0;
+	
+	/**
+	 * 
+	 */
+	protected final Thread writer;
+	protected volatile boolean isWriterWaiting = false;
+	protected volatile boolean isWriterAsleep = false;
+	protected volatile boolean isStopped = false;
+	
+	/**
+	 * Times a logging thread found the ring full
+	 */
+	protected final AtomicLong noWaits = new AtomicLong();
+	
+	/**
+	 * @param capacity number of slots, rounded up to a power of two
+	 */
+	public AsyncLogWriter(Logger myLogger, int capacity) {
+		logger = myLogger;
+		
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		entries = new StringBuilder[size];
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			entries[i] = new StringBuilder(ENTRY_CAPACITY);
+			published.set(i, -1);
+		}
+		mask = size - 1;
+		
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeEntries();
+			}
+		}, "LogWriter");
+		writer.setDaemon(true);
+	}
+	
+	/**
+	 * 
+	 */
+	public void start() {
+		writer.start();
+	}
+	
+	/**
+	 * Lets the writer thread end once the entries appended so far are written
+	 */
+	public void stop() {
+		isStopped = true;
+		LockSupport.unpark(writer);
+	}
+	
+	/**
+	 * Stops the writer thread and waits for it to end; returns false on timeout
+	 */
+	public boolean stop(long timeoutMillis) {
+		stop();
+		try {
+			writer.join(timeoutMillis);
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+		return !writer.isAlive();
+	}
+	
+	/**
+	 * Copies entry into the next slot; entry may be reused as soon as this method returns.
+	 * Once the writer is stopped, entries are written right away, by the logging thread.
+	 */
+	public void append(CharSequence entry) {
+		if (isStopped) {
+			writeNow(entry);
+			return;
+		}
+		
+		long sequence = nextSequence.getAndIncrement();
+		if ((sequence - writtenSequence) >= entries.length) {
+			noWaits.incrementAndGet();
+			do {
+				if (isStopped && !writer.isAlive()) {
+					writeNow(entry); // appended while the writer ended
+					return;
+				}
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(this, WAIT_NANOS);
+			} while ((sequence - writtenSequence) >= entries.length);
+		}
+		
+		int index = (int) sequence & mask;
+		StringBuilder slot = entries[index];
+		slot.setLength(0);
+		slot.append(entry);
+		published.set(index, sequence);
+		
+		if (isWriterWaiting && (isWriterAsleep || ((sequence - writtenSequence) >= (entries.length >> 1)))) {
+			LockSupport.unpark(writer);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected synchronized void writeNow(CharSequence entry) {
+		try {
+			write(new StringBuilder(entry));
+		} catch (Throwable t) {
+			// nowhere left to log to
+		}
+	}
+	
+	/**
+	 * Runs on the writer thread; only the writer advances writtenSequence
+	 */
+	protected void writeEntries() {
+		long sequence = 0;
+		long idleNanos = IDLE_NANOS;
+		while (!isStopped || (sequence < nextSequence.get())) {
+			int index = (int) sequence & mask;
+			if (published.get(index) != sequence) {
+				isWriterAsleep = idleNanos > MAX_IDLE_NANOS;
+				isWriterWaiting = true;
+				if ((published.get(index) != sequence) && !isStopped) {
+					if (isWriterAsleep) {
+						LockSupport.park(this);
+					} else {
+						LockSupport.parkNanos(this, idleNanos);
+						idleNanos <<= 1;
+					}
+				}
+				isWriterWaiting = false;
+				isWriterAsleep = false;
+				continue;
+			}
+			
+			idleNanos = IDLE_NANOS;
+			
+			StringBuilder slot = entries[index];
+			try {
+				write(slot);
+			} catch (Throwable t) {
+				// nowhere left to log to; go on with the next entry
+			}
+			
+			if (slot.capacity() > MAX_ENTRY_CAPACITY) {
+				entries[index] = new StringBuilder(ENTRY_CAPACITY);
+			}
+			writtenSequence = ++sequence;
+		}
+	}
+	
+	/**
+	 * @methodproperty hook
+	 */
+	protected void write(StringBuilder entry) {
+		logger.info(entry.toString());
+	}
+	
+	/**
+	 * Waits until all entries appended so far are written; returns false on timeout
+	 */
+	public boolean flush(long timeoutMillis) {
+		long sequence = nextSequence.get();
+		long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+		while (writtenSequence < sequence) {
+			if (!writer.isAlive() || (System.nanoTime() - deadline) > 0) {
+				return false;
+			}
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(this, WAIT_NANOS);
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * Entries appended but not written yet
+	 */
+	public long getNoPendingEntries() {
+		return Math.max(nextSequence.get() - writtenSequence, 0);
+	}
+	
+	/**
+	 * 
+	 */
+	public long getNoWrittenEntries() {
+		return writtenSequence;
+	}
+	
+	/**
+	 * 
+	 */
+	public long getNoWaits() {
+		return noWaits.get();
+	}
+	
+}
@@ -20,6 +20,8 @@
 
 package org.wahlzeit.services;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A simple abstract implementation of Persistent with write count and dirty bit.
  * Also defines (but does not use) the field "ID" for subclass use.
@@ -36,6 +38,23 @@ public abstract class DataObject implements Persistent {
 	 */
 	protected transient int writeCount = 0;
 	
+	/**
+	 * Versions are unique across all data objects; they only ever increase and are never reset by saving
+	 */
+	protected static final AtomicLong lastVersion = new AtomicLong();
+	
+	/**
+	 * Changes with every write; caches of derived data compare it to the version they were derived from
+	 */
+	protected transient volatile long version = getNextVersion();
+	
+	/**
+	 * 
+	 */
+	public static long getNextVersion() {
+		return lastVersion.incrementAndGet();
+	}
+	
 	/**
 	 * 
 	 */
@@ -55,6 +74,14 @@ public abstract class DataObject implements Persistent {
 	 */
 	public final void incWriteCount() {
 		writeCount++;
+		version = getNextVersion();
+	}
+	
+	/**
+	 * 
+	 */
+	public final long getVersion() {
+		return version;
 	}
 	
 	/**
@@ -42,6 +42,11 @@ public class DatabaseConnection {
 	 */
 	protected static int dbcId = 0;
 	
+	/**
+	 * Connections created and not yet finalized, in the pool or in use
+	 */
+	protected static int noOpenConnections = 0;
+	
 	/**
 	 * 
 	 */
@@ -49,6 +54,7 @@ public class DatabaseConnection {
 		DatabaseConnection result = null;
 		if (pool.isEmpty()) {
 			result = new DatabaseConnection("dbc" + dbcId++);
+			noOpenConnections++;
 			SysLog.logCreatedObject("DatabaseConnection", result.getName());
 		} else {
 			result = pool.iterator().next();
@@ -93,6 +99,20 @@ public class DatabaseConnection {
 		}
 	}
 	
+	/**
+	 * 
+	 */
+	public static synchronized int getNoOpenConnections() {
+		return noOpenConnections;
+	}
+	
+	/**
+	 * 
+	 */
+	public static synchronized int getNoPooledConnections() {
+		return pool.size();
+	}
+	
 	/**
 	 * 
 	 */
@@ -137,7 +157,10 @@ public class DatabaseConnection {
 	 */
 	protected void finalize() {
 		try {
-			pool.remove(this); // just to be sure...
+			synchronized (DatabaseConnection.class) {
+				pool.remove(this); // just to be sure...
+				noOpenConnections--;
+			}
 			closeConnection(rdbmsConnection);
 		} catch (Throwable t) {
 			SysLog.logThrowable(t);
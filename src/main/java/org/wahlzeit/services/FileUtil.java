@@ -21,6 +21,8 @@
 package org.wahlzeit.services;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 /**
  * Some convenience methods for dealing with the file system.
@@ -36,32 +38,14 @@ public class FileUtil {
 	public static String safelyReadFileAsString(String fileName) {
 		String result = "";
 		
-		File file = new File(fileName);
 		SysLog.logSysInfo("file name", fileName, "opened file for safe string reading");
 
-		FileReader reader = null;
 		try {
-			reader = new FileReader(file);
-			
-			// @FIXME Assumes files are always < 50000 bytes
-			char[] readBuffer = new char[50000];
-			int status = reader.read(readBuffer);
-
-			SysLog.logSysInfo("file size", Integer.toString(status), "read file");
-			
-			if (status != -1) {
-				result = new String(readBuffer, 0, status);
-			}
+			byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+			SysLog.logSysInfo("file size", Integer.toString(bytes.length), "read file");
+			result = new String(bytes, StandardCharsets.UTF_8);
 		} catch(IOException ioex) {
 			SysLog.logThrowable(ioex);
-		} finally {
-			if (reader != null) {
-				try {
-					reader.close();
-				} catch (IOException ioex) {
-					SysLog.logThrowable(ioex);
-				}
-			}
 		}
 		
 		return result;
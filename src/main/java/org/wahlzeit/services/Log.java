@@ -22,28 +22,77 @@ package org.wahlzeit.services;
 
 import java.io.*;
 import java.sql.*;
-import java.text.*;
+import java.time.*;
+import java.time.format.*;
 
 import org.apache.log4j.Logger;
 
+import org.wahlzeit.utils.*;
+
 /**
- * Simple logging class; should be replaced with log4j or the like.
+ * Simple logging class; entries are built in pooled buffers and written by an AsyncLogWriter.
+ * The convenience methods check the log level before they format anything.
  * 
  * @author dirkriehle
  *
  */
 public class Log {
 	
+	/**
+	 * Timestamps look like "2009-06-01 12:30:45 123"; the part up to the seconds is formatted once per second
+	 */
+	protected static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss ").withZone(ZoneId.systemDefault());
+
 	/**
 	 * 
 	 */
-	protected static DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss SSS");
+	protected static final class FormattedSecond {
+		
+		protected final long second;
+		protected final String text;
+		
+		protected FormattedSecond(long mySecond) {
+			second = mySecond;
+			text = SECOND_FORMATTER.format(Instant.ofEpochSecond(mySecond));
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected static volatile FormattedSecond lastSecond = new FormattedSecond(0);
+	
+	/**
+	 * Buffers for entries being built; nested entries simply borrow another one
+	 */
+	public static final int MAX_POOLED_ENTRIES = 64;
+	protected static final ObjectPool<StringBuilder> entryBuffers = new ObjectPool<StringBuilder>(MAX_POOLED_ENTRIES) {
+		protected StringBuilder create() {
+			return new StringBuilder(AsyncLogWriter.ENTRY_CAPACITY);
+		}
+		protected boolean isReusable(StringBuilder sb) {
+			return sb.capacity() <= AsyncLogWriter.MAX_ENTRY_CAPACITY;
+		}
+		protected void reset(StringBuilder sb) {
+			sb.setLength(0);
+		}
+	};
+	
+	/**
+	 * 
+	 */
+	public static final long FLUSH_TIMEOUT = 5000; // ms
 
 	/**
 	 * 
 	 */
 	public static void logInfo(String l, String s) {
-		StringBuffer sb = createLogEntry(l);
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createLogEntry(l);
 		addLogType(sb, "info");
 		addField(sb, "info", s);
 		log(sb);
@@ -53,7 +102,11 @@ public class Log {
 	 * 
 	 */
 	public static void logInfo(String level, String type, String value) {
-		StringBuffer sb = createLogEntry(level);
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createLogEntry(level);
 		addLogType(sb, "info");
 		addField(sb, type, value);
 		log(sb);
@@ -63,7 +116,11 @@ public class Log {
 	 * 
 	 */
 	public static void logInfo(String level, String type, String value, String info) {
-		StringBuffer sb = createLogEntry(level);
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createLogEntry(level);
 		addLogType(sb, "info");
 		addField(sb, type, value);
 		addField(sb, "info", info);
@@ -74,7 +131,11 @@ public class Log {
 	 * 
 	 */
 	public static void logCreatedObject(String level, String type, String object) {
-		StringBuffer sb = createLogEntry(level);
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createLogEntry(level);
 		addLogType(sb, "info");
 		addField(sb, "created", type);
 		addField(sb, "object", object);
@@ -85,22 +146,31 @@ public class Log {
 	 * 
 	 */
 	public static void logError(String l, String s) {
-		StringBuffer sb = createLogEntry(l);
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createLogEntry(l);
 		addLogType(sb, "error");
 		addField(sb, "error", s);
 		log(sb);
 	}
 	
 	/**
+	 * Callers that compute what they log can check this first
 	 * 
+	 * @methodtype boolean-query
 	 */
-	protected static final StringBuffer createLogEntry(String level) {
-		StringBuffer sb = new StringBuffer(256);
-		String date = null;
-		synchronized (dateFormatter) {
-			date = dateFormatter.format(System.currentTimeMillis());
-		}
-		sb.append(date);
+	public static boolean isLogging() {
+		return logger.isInfoEnabled();
+	}
+	
+	/**
+	 * Returns a pooled buffer; log() gives it back
+	 */
+	protected static final StringBuilder createLogEntry(String level) {
+		StringBuilder sb = entryBuffers.acquire();
+		addTimestamp(sb, System.currentTimeMillis());
 		addField(sb, "level", level);
 		addSession(sb);
 		return sb;
@@ -109,14 +179,40 @@ public class Log {
 	/**
 	 * 
 	 */
-	public static final void addField(StringBuffer sb, String name, String value) {
-		sb.append(", " + name + "=" + value);
+	public static final void addTimestamp(StringBuilder sb, long millis) {
+		long second = Math.floorDiv(millis, 1000L);
+		FormattedSecond formatted = lastSecond;
+		if (formatted.second != second) {
+			formatted = new FormattedSecond(second);
+			lastSecond = formatted; // racing threads format the same text
+		}
+		
+		sb.append(formatted.text);
+		int milli = (int) Math.floorMod(millis, 1000L);
+		if (milli < 100) {
+			sb.append((milli < 10) ? "00" : "0");
+		}
+		sb.append(milli);
+	}
+	
+	/**
+	 * 
+	 */
+	public static final void addField(StringBuilder sb, String name, String value) {
+		sb.append(", ").append(name).append('=').append(value);
 	}
 	
 	/**
 	 * 
 	 */
-	public static final void addSession(StringBuffer sb) {
+	public static final void addField(StringBuilder sb, String name, long value) {
+		sb.append(", ").append(name).append('=').append(value);
+	}
+	
+	/**
+	 * 
+	 */
+	public static final void addSession(StringBuilder sb) {
 		Session session = SessionManager.getThreadLocalSession();
 
 		String id = (session != null) ? session.getName() : "no-session";
@@ -125,8 +221,7 @@ public class Log {
 		String dbc = (session != null) && session.hasDatabaseConnection() ? session.ensureDatabaseConnection().getName() : "no-database-connection";
 		addField(sb, "databaseConnection", dbc);
 		
-		String threadId = String.valueOf(Thread.currentThread().getId());
-		addField(sb, "threadId", threadId);
+		addField(sb, "threadId", Thread.currentThread().getId());
 		
 		String cn = (session != null) ? session.getClientName() : "no-client";
 		addField(sb, "client", cn);
@@ -135,21 +230,21 @@ public class Log {
 	/**
 	 * 
 	 */
-	public static final void addLogType(StringBuffer sb, String logType) {
+	public static final void addLogType(StringBuilder sb, String logType) {
 		addField(sb, "logType", logType);
 	}
 	
 	/**
 	 *
 	 */
-	public static final void addThrowable(StringBuffer sb, Throwable t) {
+	public static final void addThrowable(StringBuilder sb, Throwable t) {
 		addField(sb, "throwable", t.toString());
 	}
 	
 	/**
 	 * 
 	 */
-	public static final void addStacktrace(StringBuffer sb, Throwable t) {
+	public static final void addStacktrace(StringBuilder sb, Throwable t) {
 		StringWriter sw = new StringWriter();
 		t.printStackTrace(new PrintWriter(sw));
 		addField(sb, "stacktrace", sw.toString());
@@ -158,7 +253,7 @@ public class Log {
 	/**
 	 * 
 	 */
-	public static final void addQuery(StringBuffer sb, Statement q) {
+	public static final void addQuery(StringBuilder sb, Statement q) {
 		addField(sb, "query", q.toString());
 	}
 
@@ -167,11 +262,80 @@ public class Log {
 	 */
 	protected static Logger logger = Logger.getLogger(Log.class.getName());
 	
+	/**
+	 * Flushes the writer if the JVM exits without stopping it
+	 */
+	protected static Thread flushHook;
+	
 	/**
 	 * 
 	 */
-	public static final void log(StringBuffer sb) {
-		 logger.info(sb.toString());
+	protected static volatile AsyncLogWriter writer = createWriter();
+	
+	/**
+	 * @methodtype factory
+	 */
+	protected static AsyncLogWriter createWriter() {
+		AsyncLogWriter result = new AsyncLogWriter(logger, AsyncLogWriter.DEFAULT_CAPACITY);
+		result.start();
+		flushHook = new Thread("LogFlush") {
+			public void run() {
+				flush();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(flushHook);
+		return result;
+	}
+	
+	/**
+	 * Hands the entry to the writer, which copies it, and takes over sb for the next entry
+	 */
+	public static final void log(StringBuilder sb) {
+		if (isLogging()) {
+			writer.append(sb);
+		}
+		
+		entryBuffers.release(sb);
+	}
+	
+	/**
+	 * Waits until the entries logged so far are written
+	 */
+	public static boolean flush() {
+		return writer.flush(FLUSH_TIMEOUT);
+	}
+	
+	/**
+	 * Writes the entries logged so far and ends the writer thread; later entries are written right away
+	 */
+	public static synchronized boolean stop() {
+		if (flushHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(flushHook);
+			} catch (IllegalStateException isex) {
+				// the JVM is shutting down already
+			}
+			flushHook = null;
+		}
+		
+		return writer.stop(FLUSH_TIMEOUT);
+	}
+	
+	/**
+	 * 
+	 */
+	public static AsyncLogWriter getWriter() {
+		return writer;
+	}
+	
+	/**
+	 * Replaces the writer, e.g. by one that writes elsewhere in benchmarks; returns the previous one
+	 */
+	public static synchronized AsyncLogWriter setWriter(AsyncLogWriter newWriter) {
+		AsyncLogWriter result = writer;
+		result.flush(FLUSH_TIMEOUT);
+		writer = newWriter;
+		return result;
 	}
 	
 }
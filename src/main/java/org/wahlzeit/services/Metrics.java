@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.wahlzeit.contract.PatternInstance;
+
+/**
+ * The Metrics registry keeps the RequestMetrics per handler name and method. Callers should only use names
+ * of registered handlers, as every name gets its own histograms for good.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = Metrics.class
+)
+public class Metrics {
+	
+	/**
+	 * 
+	 */
+	public static final String GET = "GET";
+	public static final String POST = "POST";
+
+	/**
+	 * 
+	 */
+	protected static final Metrics instance = new Metrics();
+	
+	/**
+	 * 
+	 */
+	public static Metrics getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * One map per method, so that looking up needs no concatenated key
+	 */
+	protected final ConcurrentMap<String, RequestMetrics> getMetrics = new ConcurrentHashMap<String, RequestMetrics>();
+	protected final ConcurrentMap<String, RequestMetrics> postMetrics = new ConcurrentHashMap<String, RequestMetrics>();
+	
+	/**
+	 * 
+	 */
+	protected Metrics() {
+		// do nothing
+	}
+	
+	/**
+	 * 
+	 */
+	public RequestMetrics getRequestMetrics(String name, boolean isPost) {
+		ConcurrentMap<String, RequestMetrics> metrics = isPost ? postMetrics : getMetrics;
+		RequestMetrics result = metrics.get(name);
+		if (result == null) {
+			RequestMetrics newMetrics = new RequestMetrics(name, isPost ? POST : GET);
+			result = metrics.putIfAbsent(name, newMetrics);
+			if (result == null) {
+				result = newMetrics;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns all metrics, GETs first, each sorted by name
+	 */
+	public List<RequestMetrics> getAllRequestMetrics() {
+		List<RequestMetrics> result = new ArrayList<RequestMetrics>();
+		result.addAll(new TreeMap<String, RequestMetrics>(getMetrics).values());
+		result.addAll(new TreeMap<String, RequestMetrics>(postMetrics).values());
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	public void clear() {
+		getMetrics.clear();
+		postMetrics.clear();
+	}
+	
+}
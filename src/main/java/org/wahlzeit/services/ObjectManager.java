@@ -38,14 +38,62 @@ public abstract class ObjectManager {
     	return dbc.getUpdatingStatement(stmt);
 	}
 	
+	/**
+	 * Logs and runs the query, counting its time as database time of the thread's session
+	 */
+	protected ResultSet executeQuery(PreparedStatement stmt) throws SQLException {
+		SysLog.logQuery(stmt);
+		long startTime = System.nanoTime();
+		try {
+			return stmt.executeQuery();
+		} finally {
+			addDatabaseTime(System.nanoTime() - startTime);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected int executeUpdate(PreparedStatement stmt) throws SQLException {
+		SysLog.logQuery(stmt);
+		long startTime = System.nanoTime();
+		try {
+			return stmt.executeUpdate();
+		} finally {
+			addDatabaseTime(System.nanoTime() - startTime);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected int[] executeBatch(PreparedStatement stmt) throws SQLException {
+		SysLog.logQuery(stmt);
+		long startTime = System.nanoTime();
+		try {
+			return stmt.executeBatch();
+		} finally {
+			addDatabaseTime(System.nanoTime() - startTime);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void addDatabaseTime(long time) {
+		Session session = SessionManager.getThreadLocalSession();
+		if (session != null) {
+			session.addDatabaseTime(time);
+		}
+	}
+	
 	/**
 	 * 
 	 */
 	protected Persistent readObject(PreparedStatement stmt, int value) throws SQLException {
 		Persistent result = null;
 		stmt.setInt(1, value);
-		SysLog.logQuery(stmt);
-		ResultSet rset = stmt.executeQuery();
+		ResultSet rset = executeQuery(stmt);
 		if (rset.next()) {
 			result = createObject(rset);
 		}
@@ -59,8 +107,7 @@ public abstract class ObjectManager {
 	protected Persistent readObject(PreparedStatement stmt, String value) throws SQLException {
 		Persistent result = null;
 		stmt.setString(1, value);
-		SysLog.logQuery(stmt);
-		ResultSet rset = stmt.executeQuery();
+		ResultSet rset = executeQuery(stmt);
 		if (rset.next()) {
 			result = createObject(rset);
 		}
@@ -72,8 +119,7 @@ public abstract class ObjectManager {
 	 * 
 	 */
 	protected void readObjects(Collection result, PreparedStatement stmt) throws SQLException {
-		SysLog.logQuery(stmt);
-		ResultSet rset = stmt.executeQuery();
+		ResultSet rset = executeQuery(stmt);
 		while (rset.next()) {
 			Persistent obj = createObject(rset);
 			result.add(obj);
@@ -85,8 +131,7 @@ public abstract class ObjectManager {
 	 */
 	protected void readObjects(Collection result, PreparedStatement stmt, String value) throws SQLException {
 		stmt.setString(1, value);
-		SysLog.logQuery(stmt);
-		ResultSet rset = stmt.executeQuery();
+		ResultSet rset = executeQuery(stmt);
 		while (rset.next()) {
 			Persistent obj = createObject(rset);
 			result.add(obj);
@@ -103,8 +148,7 @@ public abstract class ObjectManager {
 	 */
 	protected void createObject(Persistent obj, PreparedStatement stmt, int value) throws SQLException {
 		stmt.setInt(1, value);
-		SysLog.logQuery(stmt);
-		stmt.executeUpdate();
+		executeUpdate(stmt);
 	}
 	
 	/**
@@ -112,8 +156,7 @@ public abstract class ObjectManager {
 	 */
 	protected void createObject(Persistent obj, PreparedStatement stmt, String value) throws SQLException {
 		stmt.setString(1, value);
-		SysLog.logQuery(stmt);
-		stmt.executeUpdate();
+		executeUpdate(stmt);
 	}
 	
 	/**
@@ -122,8 +165,7 @@ public abstract class ObjectManager {
 	protected void updateObject(Persistent obj, PreparedStatement stmt) throws SQLException {
 		if (obj.isDirty()) {
 			obj.writeId(stmt, 1);
-			SysLog.logQuery(stmt);
-			ResultSet rset = stmt.executeQuery();
+			ResultSet rset = executeQuery(stmt);
 			if (rset.next()) {
 				obj.writeOn(rset);
 				rset.updateRow();
@@ -157,8 +199,7 @@ public abstract class ObjectManager {
 	 */
 	protected void deleteObject(Persistent obj, PreparedStatement stmt) throws SQLException {
 		obj.writeId(stmt, 1);
-		SysLog.logQuery(stmt);
-		stmt.executeUpdate();
+		executeUpdate(stmt);
 	}
 
 	/**
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import org.wahlzeit.utils.*;
+
+/**
+ * RequestMetrics are the latencies of the requests to one handler with one method (GET or POST), in total and
+ * broken down into handler time (handling arguments and making the web part), render time (writing the page),
+ * and database time (see ObjectManager). The request count is the total histogram's count.
+ */
+public class RequestMetrics {
+	
+	/**
+	 * 
+	 */
+	protected final String name;
+	protected final String method;
+	
+	/**
+	 * 
+	 */
+	protected final LatencyHistogram totalTimes = new LatencyHistogram();
+	protected final LatencyHistogram handlerTimes = new LatencyHistogram();
+	protected final LatencyHistogram renderTimes = new LatencyHistogram();
+	protected final LatencyHistogram databaseTimes = new LatencyHistogram();
+	
+	/**
+	 * 
+	 */
+	public RequestMetrics(String myName, String myMethod) {
+		name = myName;
+		method = myMethod;
+	}
+	
+	/**
+	 * Records one request; all times in nanoseconds
+	 */
+	public void record(long totalTime, long handlerTime, long renderTime, long databaseTime) {
+		totalTimes.recordNanos(totalTime);
+		handlerTimes.recordNanos(handlerTime);
+		renderTimes.recordNanos(renderTime);
+		databaseTimes.recordNanos(databaseTime);
+	}
+	
+	/**
+	 * 
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * 
+	 */
+	public String getMethod() {
+		return method;
+	}
+	
+	/**
+	 * 
+	 */
+	public long getCount() {
+		return totalTimes.getTotalCount();
+	}
+	
+	/**
+	 * 
+	 */
+	public LatencyHistogram getTotalTimes() {
+		return totalTimes;
+	}
+	
+	/**
+	 * 
+	 */
+	public LatencyHistogram getHandlerTimes() {
+		return handlerTimes;
+	}
+	
+	/**
+	 * 
+	 */
+	public LatencyHistogram getRenderTimes() {
+		return renderTimes;
+	}
+	
+	/**
+	 * 
+	 */
+	public LatencyHistogram getDatabaseTimes() {
+		return databaseTimes;
+	}
+	
+}
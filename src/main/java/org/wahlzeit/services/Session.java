@@ -42,6 +42,11 @@ public class Session {
 	 */
 	protected long processingTime = 0;
 	
+	/**
+	 * time spent waiting for the database in the current request, in nanoseconds
+	 */
+	protected long databaseTime = 0;
+	
 	/**
 	 * 
 	 */
@@ -89,11 +94,13 @@ public class Session {
 	 */
 	public DatabaseConnection ensureDatabaseConnection() {
 		if (databaseConnection == null) {
+			long startTime = System.nanoTime();
 			try {
 				databaseConnection = DatabaseConnection.ensureDatabaseConnection();
 			} catch (Throwable t) {
 				SysLog.logThrowable(t);
 			}
+			addDatabaseTime(System.nanoTime() - startTime);
 		}
 		
 		return databaseConnection;
@@ -141,4 +148,25 @@ public class Session {
 		return processingTime;
 	}
 	
+	/**
+	 * 
+	 */
+	public void resetDatabaseTime() {
+		databaseTime = 0;
+	}
+	
+	/**
+	 * 
+	 */
+	public void addDatabaseTime(long time) {
+		databaseTime += time;
+	}
+	
+	/**
+	 * 
+	 */
+	public long getDatabaseTime() {
+		return databaseTime;
+	}
+	
 }
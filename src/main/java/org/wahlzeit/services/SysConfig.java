@@ -41,6 +41,81 @@ public class SysConfig extends AbstractConfig {
 	public static final String DB_USER = "DB_USER";
 	public static final String DB_PASSWORD = "DB_PASSWORD";
 	
+	/**
+	 * JPEG encoding of photo files
+	 */
+	public static final String JPEG_PROGRESSIVE = "JPEG_PROGRESSIVE";
+	public static final String JPEG_STRIP_METADATA = "JPEG_STRIP_METADATA";
+	
+	/**
+	 * In-memory cache of small, frequently requested photo files
+	 */
+	public static final String PHOTO_CACHE_ENTRIES = "PHOTO_CACHE_ENTRIES";
+	public static final String PHOTO_CACHE_MAX_FILE_SIZE = "PHOTO_CACHE_MAX_FILE_SIZE";
+	
+	/**
+	 * Where photo files are kept; "file" or "packed" (see PhotoStore)
+	 */
+	public static final String PHOTO_STORE = "PHOTO_STORE";
+	public static final String PHOTO_VOLUME_SIZE = "PHOTO_VOLUME_SIZE";
+	
+	/**
+	 * Whether HTML templates are reloaded when their files change
+	 */
+	public static final String RELOAD_TEMPLATES = "RELOAD_TEMPLATES";
+	
+	/**
+	 * In-memory cache of rendered per-photo HTML, e.g. thumbnails and photo forms
+	 */
+	public static final String PHOTO_FRAGMENT_CACHE_ENTRIES = "PHOTO_FRAGMENT_CACHE_ENTRIES";
+	
+	/**
+	 * In-memory cache of rendered guest page skeletons, each about as large as a whole page
+	 */
+	public static final String PHOTO_SKELETON_CACHE_ENTRIES = "PHOTO_SKELETON_CACHE_ENTRIES";
+	
+	/**
+	 * Gzip compression of pages and static files; smaller responses are sent as they are
+	 */
+	public static final String COMPRESSION_LEVEL = "COMPRESSION_LEVEL";
+	public static final String COMPRESSION_MIN_SIZE = "COMPRESSION_MIN_SIZE";
+	
+	/**
+	 * Upper bound in ms for rendering pages at startup before requests are served; 0 for no such warm-up
+	 */
+	public static final String WARM_UP_TIME = "WARM_UP_TIME";
+	
+	/**
+	 * Requests are processed off the container threads, see RequestExecutor; timeout in ms
+	 */
+	public static final String ASYNC_REQUESTS = "ASYNC_REQUESTS";
+	public static final String ASYNC_REQUEST_TIMEOUT = "ASYNC_REQUEST_TIMEOUT";
+	public static final String USE_VIRTUAL_THREADS = "USE_VIRTUAL_THREADS";
+	public static final String REQUEST_THREADS = "REQUEST_THREADS";
+	public static final String REQUEST_QUEUE_SIZE = "REQUEST_QUEUE_SIZE";
+	
+	/**
+	 * Whether the MetricsServlet answers other hosts than localhost
+	 */
+	public static final String METRICS_ALLOW_REMOTE = "METRICS_ALLOW_REMOTE";
+	
+	/**
+	 * Admission control, see AdmissionControl; rates are per second, 0 turns a limit off
+	 */
+	public static final String SESSION_REQUEST_RATE = "SESSION_REQUEST_RATE";
+	public static final String SESSION_REQUEST_BURST = "SESSION_REQUEST_BURST";
+	public static final String ADDRESS_REQUEST_RATE = "ADDRESS_REQUEST_RATE";
+	public static final String ADDRESS_REQUEST_BURST = "ADDRESS_REQUEST_BURST";
+	public static final String MAX_CONCURRENT_REQUESTS = "MAX_CONCURRENT_REQUESTS";
+	public static final String RATE_LIMIT_MAX_KEYS = "RATE_LIMIT_MAX_KEYS";
+	
+	/**
+	 * Session store, see UserSessionStore; "file" or "database"; passivation times in milliseconds
+	 */
+	public static final String SESSION_STORE = "SESSION_STORE";
+	public static final String SESSION_PASSIVATION_TIME = "SESSION_PASSIVATION_TIME";
+	public static final String SESSION_PASSIVATION_PERIOD = "SESSION_PASSIVATION_PERIOD";
+	
 	/**
 	 * 
 	 */
@@ -135,6 +210,57 @@ public class SysConfig extends AbstractConfig {
 		doSetValue(SysConfig.DB_CONNECTION, "jdbc:postgresql://" + dbHostName + ":5432/wahlzeit");
 		doSetValue(SysConfig.DB_USER, "wahlzeit");
 		doSetValue(SysConfig.DB_PASSWORD, "wahlzeit");
+		
+		// JPEG encoding
+		doSetValue(SysConfig.JPEG_PROGRESSIVE, "false");
+		doSetValue(SysConfig.JPEG_STRIP_METADATA, "true");
+		
+		// Photo file cache; thumbnails and extra small photos fit
+		doSetValue(SysConfig.PHOTO_CACHE_ENTRIES, "1024");
+		doSetValue(SysConfig.PHOTO_CACHE_MAX_FILE_SIZE, "32768");
+		
+		// Photo store
+		doSetValue(SysConfig.PHOTO_STORE, "file");
+		doSetValue(SysConfig.PHOTO_VOLUME_SIZE, "1073741824");
+		
+		// HTML templates
+		doSetValue(SysConfig.RELOAD_TEMPLATES, "true");
+		
+		// Rendered photo fragments; a few per photo and language
+		doSetValue(SysConfig.PHOTO_FRAGMENT_CACHE_ENTRIES, "16384");
+		
+		// Guest page skeletons; one per popular photo, language, photo size, and site
+		doSetValue(SysConfig.PHOTO_SKELETON_CACHE_ENTRIES, "512");
+		
+		// Response compression
+		doSetValue(SysConfig.COMPRESSION_LEVEL, "6");
+		doSetValue(SysConfig.COMPRESSION_MIN_SIZE, "1024");
+		
+		// Warm-up at startup
+		doSetValue(SysConfig.WARM_UP_TIME, "10000");
+		
+		// Request processing; the pool is used only if there are no virtual threads
+		doSetValue(SysConfig.ASYNC_REQUESTS, "true");
+		doSetValue(SysConfig.ASYNC_REQUEST_TIMEOUT, "600000");
+		doSetValue(SysConfig.USE_VIRTUAL_THREADS, "true");
+		doSetValue(SysConfig.REQUEST_THREADS, "200");
+		doSetValue(SysConfig.REQUEST_QUEUE_SIZE, "1000");
+		
+		// Metrics
+		doSetValue(SysConfig.METRICS_ALLOW_REMOTE, "false");
+		
+		// Admission control; addresses may be shared by many users behind a NAT
+		doSetValue(SysConfig.SESSION_REQUEST_RATE, "10");
+		doSetValue(SysConfig.SESSION_REQUEST_BURST, "50");
+		doSetValue(SysConfig.ADDRESS_REQUEST_RATE, "50");
+		doSetValue(SysConfig.ADDRESS_REQUEST_BURST, "200");
+		doSetValue(SysConfig.MAX_CONCURRENT_REQUESTS, "400");
+		doSetValue(SysConfig.RATE_LIMIT_MAX_KEYS, "100000");
+		
+		// Session store; sessions idle for 30 minutes are passivated, checked every minute
+		doSetValue(SysConfig.SESSION_STORE, "file");
+		doSetValue(SysConfig.SESSION_PASSIVATION_TIME, "1800000");
+		doSetValue(SysConfig.SESSION_PASSIVATION_PERIOD, "60000");
 	}
 	
 	/**
@@ -213,5 +339,194 @@ public class SysConfig extends AbstractConfig {
 	public static String getDbPasswordAsString() {
 		return getInstance().getValue(SysConfig.DB_PASSWORD);
 	}
+	
+	/**
+	 * 
+	 */
+	public static boolean isJpegProgressive() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.JPEG_PROGRESSIVE));
+	}
+	
+	/**
+	 * 
+	 */
+	public static boolean isJpegStripMetadata() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.JPEG_STRIP_METADATA));
+	}
+
+	/**
+	 * 
+	 */
+	public static int getPhotoCacheEntries() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.PHOTO_CACHE_ENTRIES));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getPhotoCacheMaxFileSize() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.PHOTO_CACHE_MAX_FILE_SIZE));
+	}
+	
+	/**
+	 * 
+	 */
+	public static String getPhotoStoreType() {
+		return getInstance().getValue(SysConfig.PHOTO_STORE);
+	}
+	
+	/**
+	 * 
+	 */
+	public static long getPhotoVolumeSize() {
+		return Long.parseLong(getInstance().getValue(SysConfig.PHOTO_VOLUME_SIZE));
+	}
+	
+	/**
+	 * 
+	 */
+	public static boolean isReloadTemplates() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.RELOAD_TEMPLATES));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getPhotoFragmentCacheEntries() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.PHOTO_FRAGMENT_CACHE_ENTRIES));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getPhotoSkeletonCacheEntries() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.PHOTO_SKELETON_CACHE_ENTRIES));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getCompressionLevel() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.COMPRESSION_LEVEL));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getCompressionMinSize() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.COMPRESSION_MIN_SIZE));
+	}
+
+	/**
+	 * 
+	 */
+	public static long getWarmUpTime() {
+		return Long.parseLong(getInstance().getValue(SysConfig.WARM_UP_TIME));
+	}
+
+	/**
+	 * 
+	 */
+	public static boolean isAsyncRequests() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.ASYNC_REQUESTS));
+	}
+	
+	/**
+	 * 
+	 */
+	public static long getAsyncRequestTimeout() {
+		return Long.parseLong(getInstance().getValue(SysConfig.ASYNC_REQUEST_TIMEOUT));
+	}
+	
+	/**
+	 * 
+	 */
+	public static boolean isUseVirtualThreads() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.USE_VIRTUAL_THREADS));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getRequestThreads() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.REQUEST_THREADS));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getRequestQueueSize() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.REQUEST_QUEUE_SIZE));
+	}
+
+	/**
+	 * 
+	 */
+	public static boolean isMetricsAllowRemote() {
+		return Boolean.parseBoolean(getInstance().getValue(SysConfig.METRICS_ALLOW_REMOTE));
+	}
+
+	/**
+	 * 
+	 */
+	public static double getSessionRequestRate() {
+		return Double.parseDouble(getInstance().getValue(SysConfig.SESSION_REQUEST_RATE));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getSessionRequestBurst() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.SESSION_REQUEST_BURST));
+	}
+	
+	/**
+	 * 
+	 */
+	public static double getAddressRequestRate() {
+		return Double.parseDouble(getInstance().getValue(SysConfig.ADDRESS_REQUEST_RATE));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getAddressRequestBurst() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.ADDRESS_REQUEST_BURST));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getMaxConcurrentRequests() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.MAX_CONCURRENT_REQUESTS));
+	}
+	
+	/**
+	 * 
+	 */
+	public static int getRateLimitMaxKeys() {
+		return Integer.parseInt(getInstance().getValue(SysConfig.RATE_LIMIT_MAX_KEYS));
+	}
+	
+	/**
+	 * 
+	 */
+	public static String getSessionStoreType() {
+		return getInstance().getValue(SysConfig.SESSION_STORE);
+	}
+	
+	/**
+	 * 
+	 */
+	public static long getSessionPassivationTime() {
+		return Long.parseLong(getInstance().getValue(SysConfig.SESSION_PASSIVATION_TIME));
+	}
+	
+	/**
+	 * 
+	 */
+	public static long getSessionPassivationPeriod() {
+		return Long.parseLong(getInstance().getValue(SysConfig.SESSION_PASSIVATION_PERIOD));
+	}
 
 }
@@ -70,7 +70,11 @@ public class SysLog extends Log {
 	 * 
 	 */
 	public static final void logQuery(Statement q) {
-		StringBuffer sb = createSysLogEntry();
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createSysLogEntry();
 		addLogType(sb, "info");
 		addQuery(sb, q);
 		log(sb);
@@ -80,7 +84,11 @@ public class SysLog extends Log {
 	 * 
 	 */
 	public static final void logQuery(String s) {
-		StringBuffer sb = createSysLogEntry();
+		if (!isLogging()) {
+			return;
+		}
+		
+		StringBuilder sb = createSysLogEntry();
 		addLogType(sb, "info");
 		addField(sb, "query", s);
 		log(sb);
@@ -90,12 +98,16 @@ public class SysLog extends Log {
 	 * 
 	 */
 	public static final void logThrowable(Throwable t) {
+		if (!isLogging()) {
+			return;
+		}
+		
 		Throwable cause = t.getCause();
 		if (cause != null) {
 			logThrowable(cause);
 		}
 		
-		StringBuffer sb = createSysLogEntry();
+		StringBuilder sb = createSysLogEntry();
 		addLogType(sb, "exception");
 		addThrowable(sb, t);
 		addStacktrace(sb, t);
@@ -105,7 +117,7 @@ public class SysLog extends Log {
 	/**
 	 * 
 	 */
-	protected static StringBuffer createSysLogEntry() {
+	protected static StringBuilder createSysLogEntry() {
 		return createLogEntry("sl");
 	}
 
@@ -23,10 +23,13 @@ package org.wahlzeit.servlets;
 import java.io.*;
 import java.util.*;
 import java.net.*;
+import java.security.*;
+import java.util.concurrent.*;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+import org.wahlzeit.handlers.AbstractWebPageHandler;
 import org.wahlzeit.main.ServiceMain;
 import org.wahlzeit.model.*;
 import org.wahlzeit.services.*;
@@ -44,6 +47,31 @@ public abstract class AbstractServlet extends HttpServlet {
 	protected static int lastSessionId = 0; // system and agent are named differently
 	private static final long serialVersionUID = 42L; // any does; class never serialized
 	
+	/**
+	 * The HttpSession keeps a UserSessionHandle; the request keeps the UserSession while it is processed
+	 */
+	protected static final String SESSION_ATTRIBUTE = "session";
+	
+	/**
+	 * With a shared UserSessionStore, a cookie names the session, so that any node can serve the request
+	 */
+	protected static final String SESSION_COOKIE = "wahlzeit_session";
+	protected static final int SESSION_TOKEN_LENGTH = 16;
+	protected static final SecureRandom sessionTokens = new SecureRandom();
+	
+	/**
+	 * Pages are written through reusable writers (and buffers), borrowed for one response each
+	 */
+	protected static final int MAX_POOLED_PAGE_WRITERS = 64;
+	protected static final ObjectPool<Utf8Writer> pageWriters = new ObjectPool<Utf8Writer>(MAX_POOLED_PAGE_WRITERS) {
+		protected Utf8Writer create() {
+			return new Utf8Writer();
+		}
+		protected void reset(Utf8Writer writer) {
+			writer.reset(null);
+		}
+	};
+	
 	/**
 	 * 
 	 */
@@ -69,17 +97,81 @@ public abstract class AbstractServlet extends HttpServlet {
 	 * 
 	 */
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		UserSession us = ensureUserSession(request);	
-		SessionManager.setThreadLocalSession(us);
+		processRequest(request, response, false);
+	}
+	
+	/**
+	 * Admits the request (or turns it away) and processes it, asynchronously if possible
+	 */
+	protected void processRequest(HttpServletRequest request, HttpServletResponse response, boolean isPost) throws ServletException, IOException {
+		AdmissionControl admission = AdmissionControl.getInstance();
+		String sessionId = getSessionId(request);
+		String remoteAddress = request.getRemoteAddr();
+		int status = admission.admit(sessionId, remoteAddress);
+		if (status != HttpServletResponse.SC_OK) {
+			rejectRequest(response, status, admission.getRetryAfter(sessionId, remoteAddress));
+			return;
+		}
 		
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myGet(request, response);
-			us.returnDatabaseConnection();
+		boolean isHandedOff = false;
+		try {
+			if (isToProcessAsync(request)) {
+				isHandedOff = processAsync(request, response, isPost);
+			} else if (isPost) {
+				processPost(request, response);
+			} else {
+				processGet(request, response);
+			}
+		} finally {
+			if (!isHandedOff) {
+				admission.release();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the id of the request's session, without creating one
+	 */
+	protected String getSessionId(HttpServletRequest request) {
+		String token = getSessionToken(request);
+		if (token != null) {
+			return token;
+		}
+		
+		HttpSession httpSession = request.getSession(false);
+		return (httpSession != null) ? httpSession.getId() : null;
+	}
+	
+	/**
+	 * Turns a request away as cheaply as possible; no session, no page
+	 */
+	protected void rejectRequest(HttpServletResponse response, int status, long retryAfter) throws IOException {
+		response.setStatus(status);
+		response.setHeader("Retry-After", String.valueOf(retryAfter));
+		response.setContentType("text/plain");
+		response.setContentLength(0);
+	}
+	
+	/**
+	 * Runs on whatever thread processes the request; the thread's session is set for that time only
+	 */
+	protected void processGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		UserSession us = ensureUserSession(request, response);	
+		SessionManager.setThreadLocalSession(us);
+		try {
+			if (!isServing() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				try {
+					myGet(request, response);
+				} finally {
+					us.returnDatabaseConnection();
+				}
+			}
+		} finally {
+			SessionManager.dropThreadLocalSession();
+			releaseUserSession(request);
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 	
 	/**
@@ -93,17 +185,29 @@ public abstract class AbstractServlet extends HttpServlet {
 	 * 
 	 */
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		UserSession us = ensureUserSession(request);	
+		processRequest(request, response, true);
+	}
+	
+	/**
+	 * 
+	 */
+	protected void processPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		UserSession us = ensureUserSession(request, response);	
 		SessionManager.setThreadLocalSession(us);
-		
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myPost(request, response);
-			us.returnDatabaseConnection();
+		try {
+			if (!isServing() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				try {
+					myPost(request, response);
+				} finally {
+					us.returnDatabaseConnection();
+				}
+			}
+		} finally {
+			SessionManager.dropThreadLocalSession();
+			releaseUserSession(request);
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 	
 	/**
@@ -117,32 +221,279 @@ public abstract class AbstractServlet extends HttpServlet {
 	 * 
 	 */
 	protected UserSession ensureUserSession(HttpServletRequest request) {
+		return ensureUserSession(request, null);
+	}
+	
+	/**
+	 * Returns the request's session, acquired from the UserSessionStore (or created) once per request.
+	 * Needs response to create a shared session.
+	 */
+	protected UserSession ensureUserSession(HttpServletRequest request, HttpServletResponse response) {
+		UserSession result = (UserSession) request.getAttribute(SESSION_ATTRIBUTE);
+		if (result != null) {
+			return result;
+		}
+		
+		UserSessionStore store = UserSessionStore.getInstance();
+		if (store.isShared()) {
+			result = ensureSharedUserSession(request, response, store);
+		} else {
+			result = ensureLocalUserSession(request, store);
+		}
+		
+		if (result != null) {
+			request.setAttribute(SESSION_ATTRIBUTE, result);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The HttpSession of this node keeps a handle to the session
+	 */
+	protected UserSession ensureLocalUserSession(HttpServletRequest request, UserSessionStore store) {
+		UserSession result = null;
 		HttpSession httpSession = request.getSession();
-		UserSession result = (UserSession) httpSession.getAttribute("session");
+		Object handle = httpSession.getAttribute(SESSION_ATTRIBUTE);
+		if (handle instanceof UserSessionHandle) {
+			result = store.acquireSession(((UserSessionHandle) handle).getName());
+		}
+		
 		if (result == null) {
-			try {
-				String sessionName = "session" + getNextSessionId();
-				String siteUrl = getSiteUrl(request); // @TODO Application
-				result = new UserSession(sessionName, siteUrl);
-				SysLog.logCreatedObject("UserSession", sessionName);
+			result = createUserSession(request, "session" + getNextSessionId());
+			if (result != null) {
+				store.addSession(result);
+				httpSession.setAttribute(SESSION_ATTRIBUTE, new UserSessionHandle(result.getName()));
+				httpSession.setMaxInactiveInterval(24 * 60 * 60); // time out after 24h
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The session cookie keeps a random token, which the session's name derives from; no HttpSession needed
+	 */
+	protected UserSession ensureSharedUserSession(HttpServletRequest request, HttpServletResponse response, UserSessionStore store) {
+		UserSession result = null;
+		String token = getSessionToken(request);
+		if (token != null) {
+			result = store.acquireSession(getSessionName(token));
+		}
+		
+		if ((result == null) && (response != null)) {
+			token = createSessionToken();
+			result = createUserSession(request, getSessionName(token));
+			if (result != null) {
+				store.addSession(result);
+				Cookie cookie = new Cookie(SESSION_COOKIE, token); // ends with the browser session
+				cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+				cookie.setHttpOnly(true);
+				cookie.setSecure(request.isSecure());
+				response.addCookie(cookie);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	protected UserSession createUserSession(HttpServletRequest request, String sessionName) {
+		UserSession result = null;
+		try {
+			String siteUrl = getSiteUrl(request); // @TODO Application
+			result = new UserSession(sessionName, siteUrl);
+			SysLog.logCreatedObject("UserSession", sessionName);
 
-				// yes, "Referer"; typo in original standard documentation
-				String referrer = request.getHeader("Referer");
-				SysLog.logSysInfo("request referrer: " + referrer);
+			// yes, "Referer"; typo in original standard documentation
+			String referrer = request.getHeader("Referer");
+			SysLog.logSysInfo("request referrer: " + referrer);
 
-				if (request.getLocale().getLanguage().equals("de")) { // @FIXME
-					result.setConfiguration(LanguageConfigs.get(Language.GERMAN));
-				}
-			} catch (Exception ex) {
-				SysLog.logThrowable(ex);
+			if (request.getLocale().getLanguage().equals("de")) { // @FIXME
+				result.setConfiguration(LanguageConfigs.get(Language.GERMAN));
 			}
-			
-			httpSession.setAttribute("session", result);
-			httpSession.setMaxInactiveInterval(24 * 60 * 60); // time out after 24h
+		} catch (Exception ex) {
+			SysLog.logThrowable(ex);
+			return null;
 		}
 		
 		return result;
 	}
+	
+	/**
+	 * Returns the token of the session cookie, or null
+	 */
+	protected String getSessionToken(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (cookie.getName().equals(SESSION_COOKIE) && isSessionToken(cookie.getValue())) {
+					return cookie.getValue();
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @methodtype factory
+	 */
+	protected static String createSessionToken() {
+		byte[] bytes = new byte[SESSION_TOKEN_LENGTH];
+		sessionTokens.nextBytes(bytes);
+		return StringUtil.asHexString(bytes);
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean isSessionToken(String value) {
+		return (value != null) && value.matches("[0-9a-f]{" + (2 * SESSION_TOKEN_LENGTH) + "}");
+	}
+	
+	/**
+	 * Names derive from tokens one-way, so that logs and the session store do not give tokens away
+	 * 
+	 * @methodtype conversion
+	 */
+	protected static String getSessionName(String token) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(token.getBytes("UTF-8"));
+			return "session-" + StringUtil.asHexString(hash).substring(0, 2 * SESSION_TOKEN_LENGTH);
+		} catch (GeneralSecurityException | UnsupportedEncodingException ex) {
+			throw new IllegalStateException("cannot hash session token", ex);
+		}
+	}
+	
+	/**
+	 * Lets the UserSessionStore passivate the request's session once it is idle
+	 */
+	protected void releaseUserSession(HttpServletRequest request) {
+		UserSession us = (UserSession) request.getAttribute(SESSION_ATTRIBUTE);
+		if (us != null) {
+			request.removeAttribute(SESSION_ATTRIBUTE);
+			UserSessionStore.getInstance().releaseSession(us);
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isToProcessAsync(HttpServletRequest request) {
+		return request.isAsyncSupported() && isServing() && SysConfig.isAsyncRequests();
+	}
+	
+	/**
+	 * Frees the container thread: the request is processed by the RequestExecutor, which may block
+	 * on the database or mail server as long as it takes. If it is too busy, the request is turned away.
+	 * Returns true if the request was handed off, in which case it releases its admission when done.
+	 * Once the container times out or fails the request, the task no longer writes to or completes it.
+	 */
+	protected boolean processAsync(final HttpServletRequest request, final HttpServletResponse response, final boolean isPost) throws IOException {
+		final AsyncResponse asyncResponse = new AsyncResponse(response);
+		final AsyncContext context = request.startAsync(request, asyncResponse);
+		context.setTimeout(SysConfig.getAsyncRequestTimeout());
+		context.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent event) {
+				abandonRequest(context, asyncResponse, response, "request timed out");
+			}
+			public void onError(AsyncEvent event) {
+				abandonRequest(context, asyncResponse, response, "request failed: " + event.getThrowable());
+			}
+			public void onComplete(AsyncEvent event) {
+				// nothing to clean up
+			}
+			public void onStartAsync(AsyncEvent event) {
+				// not restarted
+			}
+		});
+		
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					if (asyncResponse.isAbandoned()) {
+						SysLog.logSysInfo("skipped request, abandoned before processing");
+					} else if (isPost) {
+						processPost(request, asyncResponse);
+					} else {
+						processGet(request, asyncResponse);
+					}
+				} catch (Exception ex) {
+					if (!asyncResponse.isAbandoned()) {
+						SysLog.logThrowable(ex);
+						sendErrorIfPossible(asyncResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					}
+				} finally {
+					AdmissionControl.getInstance().release();
+					if (!asyncResponse.isAbandoned()) {
+						complete(context);
+					}
+				}
+			}
+		};
+		
+		try {
+			RequestExecutor.getInstance().execute(task);
+			return true;
+		} catch (RejectedExecutionException rex) {
+			SysLog.logSysInfo("rejected request, too many in process");
+			asyncResponse.abandon();
+			response.setHeader("Retry-After", "1");
+			sendErrorIfPossible(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			complete(context);
+			return false;
+		}
+	}
+	
+	/**
+	 * Called by the container on timeout or error; the task may still be running, so it is cut off
+	 * from the response before the client is told to come back later.
+	 */
+	protected void abandonRequest(AsyncContext context, AsyncResponse asyncResponse, HttpServletResponse response, String reason) {
+		if (asyncResponse.abandon()) {
+			SysLog.logSysInfo(reason);
+			response.setHeader("Retry-After", "1");
+			sendErrorIfPossible(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			complete(context);
+		}
+	}
+	
+	/**
+	 * The container may have completed the request already, after a timeout
+	 */
+	protected void complete(AsyncContext context) {
+		try {
+			context.complete();
+		} catch (IllegalStateException isex) {
+			SysLog.logSysInfo("request completed before processing finished");
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void sendErrorIfPossible(HttpServletResponse response, int status) {
+		if (!response.isCommitted()) {
+			try {
+				response.sendError(status);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+			}
+		}
+	}
+	
+	/**
+	 * Requests are served once the service is warmed up, until it is shutting down
+	 * 
+	 * @methodtype boolean-query
+	 */
+	protected boolean isServing() {
+		ServiceMain main = ServiceMain.getInstance();
+		return main.isReady() && !main.isShuttingDown();
+	}
 
 	/**
 	 * 
@@ -171,16 +522,23 @@ public abstract class AbstractServlet extends HttpServlet {
 	 */
 	protected void configureResponse(Session ctx, HttpServletResponse response, WebPart result) throws IOException {
 		long processingTime = ctx.getProcessingTime();
-		result.addString("processingTime", StringUtil.asStringInSeconds((processingTime == 0) ? 1 : processingTime));
+		result.addString(AbstractWebPageHandler.PROCESSING_TIME_SLOT, StringUtil.asStringInSeconds((processingTime == 0) ? 1 : processingTime));
 		SysLog.logSysInfo("proctime", String.valueOf(processingTime));
 		
-		response.setContentType("text/html");
-
-		PrintWriter out = response.getWriter();
-		result.writeOn(out);
-		out.close();
-
 		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType("text/html; charset=UTF-8");
+
+		Utf8Writer out = pageWriters.acquire().reset(response.getOutputStream());
+		try {
+			result.writeOn(out);
+			if (out.isBuffered()) {
+				response.setContentLength((int) out.getByteCount());
+			}
+			SysLog.logSysInfo("pagesize", String.valueOf(out.getByteCount()));
+			out.close();
+		} finally {
+			pageWriters.release(out);
+		}
 	}
 	
 	/**
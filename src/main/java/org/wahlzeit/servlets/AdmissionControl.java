@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.servlet.http.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+
+/**
+ * The AdmissionControl decides whether a request gets processed at all: each session and each remote address
+ * may make so many requests per second (with some burst), and only so many requests may be in process at once.
+ * Everything else is turned away right away, with 429 (too many requests) or 503 (service unavailable).
+ * A limit of 0 means no limit.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = AdmissionControl.class
+)
+public class AdmissionControl {
+	
+	/**
+	 * 
+	 */
+	public static final int SC_TOO_MANY_REQUESTS = 429;
+	
+	/**
+	 * 
+	 */
+	protected static AdmissionControl instance = null;
+
+	/**
+	 * 
+	 */
+	public static synchronized AdmissionControl getInstance() {
+		if (instance == null) {
+			instance = new AdmissionControl(
+				SysConfig.getSessionRequestRate(), SysConfig.getSessionRequestBurst(),
+				SysConfig.getAddressRequestRate(), SysConfig.getAddressRequestBurst(),
+				SysConfig.getMaxConcurrentRequests(), SysConfig.getRateLimitMaxKeys()
+			);
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * 
+	 */
+	public static synchronized void dropInstance() {
+		instance = null;
+	}
+	
+	/**
+	 * null if not limited
+	 */
+	protected RateLimiter sessionLimiter;
+	protected RateLimiter addressLimiter;
+	protected Semaphore concurrencyLimiter;
+	protected int maxConcurrentRequests;
+	
+	/**
+	 * 
+	 */
+	protected final AtomicLong noRateLimited = new AtomicLong();
+	protected final AtomicLong noOverloaded = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	protected AdmissionControl(double sessionRate, int sessionBurst, double addressRate, int addressBurst, int maxConcurrent, int maxKeys) {
+		if (sessionRate > 0) {
+			sessionLimiter = new RateLimiter(sessionRate, sessionBurst, maxKeys);
+		}
+		if (addressRate > 0) {
+			addressLimiter = new RateLimiter(addressRate, addressBurst, maxKeys);
+		}
+		if (maxConcurrent > 0) {
+			concurrencyLimiter = new Semaphore(maxConcurrent);
+		}
+		maxConcurrentRequests = maxConcurrent;
+	}
+	
+	/**
+	 * Returns SC_OK if the request may be processed, in which case release() must be called once it is done;
+	 * otherwise the status code to turn it away with. sessionId may be null for new sessions.
+	 */
+	public int admit(String sessionId, String remoteAddress) {
+		long now = System.nanoTime();
+		if ((sessionId != null) && (sessionLimiter != null) && !sessionLimiter.tryAcquire(sessionId, now)) {
+			noRateLimited.incrementAndGet();
+			return SC_TOO_MANY_REQUESTS;
+		}
+		
+		if ((remoteAddress != null) && (addressLimiter != null) && !addressLimiter.tryAcquire(remoteAddress, now)) {
+			noRateLimited.incrementAndGet();
+			return SC_TOO_MANY_REQUESTS;
+		}
+		
+		if ((concurrencyLimiter != null) && !concurrencyLimiter.tryAcquire()) {
+			noOverloaded.incrementAndGet();
+			return HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+		}
+		
+		return HttpServletResponse.SC_OK;
+	}
+	
+	/**
+	 * 
+	 */
+	public void release() {
+		if (concurrencyLimiter != null) {
+			concurrencyLimiter.release();
+		}
+	}
+	
+	/**
+	 * Returns the seconds after which a rate-limited client may try again, at least 1
+	 */
+	public long getRetryAfter(String sessionId, String remoteAddress) {
+		long now = System.nanoTime();
+		long waitTime = 0;
+		if ((sessionId != null) && (sessionLimiter != null)) {
+			waitTime = sessionLimiter.getWaitTime(sessionId, now);
+		}
+		if ((remoteAddress != null) && (addressLimiter != null)) {
+			waitTime = Math.max(waitTime, addressLimiter.getWaitTime(remoteAddress, now));
+		}
+		return Math.max(1, (waitTime + 999999999L) / 1000000000L);
+	}
+	
+	/**
+	 * Returns the number of requests turned away with 429
+	 */
+	public long getNoRateLimited() {
+		return noRateLimited.get();
+	}
+	
+	/**
+	 * Returns the number of requests turned away with 503
+	 */
+	public long getNoOverloaded() {
+		return noOverloaded.get();
+	}
+	
+	/**
+	 * Returns the number of requests in process, or -1 if not limited
+	 */
+	public int getNoConcurrentRequests() {
+		return (concurrencyLimiter == null) ? -1 : maxConcurrentRequests - concurrencyLimiter.availablePermits();
+	}
+	
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+/**
+ * The response an asynchronously processed request writes to. Once the container has timed out
+ * or failed the request, it may recycle the underlying response; from then on, nothing reaches it.
+ */
+public class AsyncResponse extends HttpServletResponseWrapper {
+	
+	/**
+	 * 
+	 */
+	protected final AtomicBoolean isAbandoned = new AtomicBoolean(false);
+	protected ServletOutputStream stream = null;
+	
+	/**
+	 * 
+	 */
+	public AsyncResponse(HttpServletResponse response) {
+		super(response);
+	}
+	
+	/**
+	 * Returns true only for the caller that abandoned the response
+	 */
+	public boolean abandon() {
+		return isAbandoned.compareAndSet(false, true);
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isAbandoned() {
+		return isAbandoned.get();
+	}
+	
+	/**
+	 * 
+	 */
+	protected void assertIsNotAbandoned() throws IOException {
+		if (isAbandoned()) {
+			throw new IOException("request abandoned by container");
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public ServletOutputStream getOutputStream() throws IOException {
+		assertIsNotAbandoned();
+		if (stream == null) {
+			stream = new GuardedOutputStream(super.getOutputStream());
+		}
+		return stream;
+	}
+	
+	/**
+	 * 
+	 */
+	public PrintWriter getWriter() throws IOException {
+		assertIsNotAbandoned();
+		return super.getWriter();
+	}
+	
+	/**
+	 * 
+	 */
+	public void sendError(int status) throws IOException {
+		assertIsNotAbandoned();
+		super.sendError(status);
+	}
+	
+	/**
+	 * 
+	 */
+	public void sendError(int status, String message) throws IOException {
+		assertIsNotAbandoned();
+		super.sendError(status, message);
+	}
+	
+	/**
+	 * 
+	 */
+	public void sendRedirect(String location) throws IOException {
+		assertIsNotAbandoned();
+		super.sendRedirect(location);
+	}
+	
+	/**
+	 * 
+	 */
+	public void flushBuffer() throws IOException {
+		assertIsNotAbandoned();
+		super.flushBuffer();
+	}
+	
+	/**
+	 * An abandoned response counts as committed, so no one tries to send an error on it
+	 */
+	public boolean isCommitted() {
+		return isAbandoned() || super.isCommitted();
+	}
+	
+	/**
+	 * 
+	 */
+	public void setStatus(int status) {
+		if (!isAbandoned()) {
+			super.setStatus(status);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void setHeader(String name, String value) {
+		if (!isAbandoned()) {
+			super.setHeader(name, value);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void addHeader(String name, String value) {
+		if (!isAbandoned()) {
+			super.addHeader(name, value);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void setDateHeader(String name, long date) {
+		if (!isAbandoned()) {
+			super.setDateHeader(name, date);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void setContentType(String type) {
+		if (!isAbandoned()) {
+			super.setContentType(type);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void setContentLength(int length) {
+		if (!isAbandoned()) {
+			super.setContentLength(length);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void setContentLengthLong(long length) {
+		if (!isAbandoned()) {
+			super.setContentLengthLong(length);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public void addCookie(Cookie cookie) {
+		if (!isAbandoned()) {
+			super.addCookie(cookie);
+		}
+	}
+	
+	/**
+	 * Checks before each write whether the response has been abandoned meanwhile
+	 */
+	protected class GuardedOutputStream extends ServletOutputStream {
+		
+		/**
+		 * 
+		 */
+		protected final ServletOutputStream out;
+		
+		/**
+		 * 
+		 */
+		protected GuardedOutputStream(ServletOutputStream out) {
+			this.out = out;
+		}
+		
+		/**
+		 * 
+		 */
+		public void write(int b) throws IOException {
+			assertIsNotAbandoned();
+			out.write(b);
+		}
+		
+		/**
+		 * 
+		 */
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			assertIsNotAbandoned();
+			out.write(bytes, offset, length);
+		}
+		
+		/**
+		 * 
+		 */
+		public void flush() throws IOException {
+			assertIsNotAbandoned();
+			out.flush();
+		}
+		
+		/**
+		 * The container closes an abandoned response itself
+		 */
+		public void close() throws IOException {
+			if (!isAbandoned()) {
+				out.close();
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		public boolean isReady() {
+			return !isAbandoned() && out.isReady();
+		}
+		
+		/**
+		 * 
+		 */
+		public void setWriteListener(WriteListener listener) {
+			out.setWriteListener(listener);
+		}
+		
+	}
+	
+}
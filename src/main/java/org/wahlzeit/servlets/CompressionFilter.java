@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+
+/**
+ * A servlet filter that gzips pages and static text files for clients that accept it.
+ * Responses smaller than COMPRESSION_MIN_SIZE go out as they are. Stylesheets and scripts
+ * from the static directory are compressed once at startup and served from memory.
+ */
+public class CompressionFilter implements Filter {
+
+	/**
+	 * 
+	 */
+	public static final String GZIP = "gzip";
+	public static final String VARY_VALUE = "Accept-Encoding";
+	
+	/**
+	 * Content types worth compressing; images are compressed already
+	 */
+	protected static final String[] COMPRESSIBLE_TYPES = { "text/", "application/javascript", "application/json", "application/xml" };
+	
+	/**
+	 * File name extensions of static files to precompress
+	 */
+	protected static final String[] PRECOMPRESSED_EXTENSIONS = { ".css", ".js" };
+	
+	/**
+	 * 
+	 */
+	protected static final int MAX_POOLED_DEFLATERS = 64;
+	
+	/**
+	 * 
+	 */
+	protected static class StaticFile {
+		
+		/**
+		 * 
+		 */
+		protected final File file;
+		protected final long lastModified;
+		protected final byte[] compressedBytes;
+		
+		/**
+		 * 
+		 */
+		protected StaticFile(File myFile, long myLastModified, byte[] myCompressedBytes) {
+			file = myFile;
+			lastModified = myLastModified;
+			compressedBytes = myCompressedBytes;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected ServletContext context;
+	protected DeflaterPool deflaters;
+	protected int minSize;
+	
+	/**
+	 * Precompressed static files by request path, e.g. "/config/static/default/wahlzeit.css"
+	 */
+	protected ConcurrentMap<String, StaticFile> staticFiles = new ConcurrentHashMap<String, StaticFile>();
+	
+	/**
+	 * 
+	 */
+	public void init(FilterConfig config) throws ServletException {
+		context = config.getServletContext();
+		deflaters = new DeflaterPool(SysConfig.getCompressionLevel(), MAX_POOLED_DEFLATERS);
+		minSize = SysConfig.getCompressionMinSize();
+		
+		ConfigDir staticDir = SysConfig.getStaticDir();
+		precompressStaticFiles(new File(staticDir.asString(), ConfigDir.DEFAULT_DIR_NAME));
+		precompressStaticFiles(new File(staticDir.asString(), ConfigDir.CUSTOM_DIR_NAME));
+	}
+	
+	/**
+	 * 
+	 */
+	protected void precompressStaticFiles(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		
+		for (File file : files) {
+			if (isToPrecompress(file.getName())) {
+				String path = getRequestPath(file);
+				try {
+					StaticFile staticFile = compressStaticFile(file);
+					staticFiles.put(path, staticFile);
+					SysLog.logSysInfo("precompressed " + path + " from " + file.length() + " to " + staticFile.compressedBytes.length + " bytes");
+				} catch (IOException ioex) {
+					SysLog.logThrowable(ioex);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isToPrecompress(String fileName) {
+		for (String extension : PRECOMPRESSED_EXTENSIONS) {
+			if (fileName.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	protected String getRequestPath(File file) {
+		Path rootDir = Paths.get(SysConfig.getRootDirAsString()).toAbsolutePath();
+		Path relativePath = rootDir.relativize(file.toPath().toAbsolutePath());
+		StringBuilder result = new StringBuilder();
+		for (Path name : relativePath) {
+			result.append('/').append(name.toString());
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * 
+	 */
+	protected StaticFile compressStaticFile(File file) throws IOException {
+		long lastModified = file.lastModified();
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		return new StaticFile(file, lastModified, PooledGzipOutputStream.compress(bytes, deflaters));
+	}
+	
+	/**
+	 * 
+	 */
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		httpResponse.addHeader("Vary", VARY_VALUE);
+		
+		boolean acceptsGzip = isGzipAccepted(httpRequest.getHeader("Accept-Encoding"));
+		StaticFile staticFile = getStaticFile(httpRequest);
+		if (staticFile != null) {
+			if (acceptsGzip) {
+				serveStaticFile(httpRequest, httpResponse, staticFile);
+			} else {
+				chain.doFilter(request, response);
+			}
+			return;
+		}
+		
+		if (!acceptsGzip) {
+			chain.doFilter(request, response);
+			return;
+		}
+		
+		final CompressingResponse compressingResponse = new CompressingResponse(httpResponse);
+		boolean isAsync = false;
+		try {
+			chain.doFilter(request, compressingResponse);
+			isAsync = request.isAsyncStarted();
+			if (isAsync) { // the request is still being processed, see AbstractServlet
+				request.getAsyncContext().addListener(new AsyncListener() {
+					public void onComplete(AsyncEvent event) throws IOException {
+						compressingResponse.finish();
+					}
+					public void onTimeout(AsyncEvent event) {
+						// onComplete follows
+					}
+					public void onError(AsyncEvent event) {
+						// onComplete follows
+					}
+					public void onStartAsync(AsyncEvent event) {
+						// do nothing
+					}
+				});
+			}
+		} finally {
+			if (!isAsync) {
+				compressingResponse.finish();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the precompressed file for request, recompressing it if it changed meanwhile, or null
+	 */
+	protected StaticFile getStaticFile(HttpServletRequest request) {
+		String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			return null;
+		}
+		
+		String path = request.getServletPath();
+		if (request.getPathInfo() != null) {
+			path += request.getPathInfo();
+		}
+		
+		StaticFile result = staticFiles.get(path);
+		if ((result != null) && (result.file.lastModified() != result.lastModified)) {
+			try {
+				result = compressStaticFile(result.file);
+				staticFiles.put(path, result);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+				staticFiles.remove(path);
+				result = null;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	protected void serveStaticFile(HttpServletRequest request, HttpServletResponse response, StaticFile staticFile) throws IOException {
+		long lastModified = staticFile.lastModified / 1000 * 1000; // HTTP dates have seconds only
+		long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		response.setDateHeader("Last-Modified", lastModified);
+		if ((ifModifiedSince != -1) && (lastModified <= ifModifiedSince)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		String contentType = context.getMimeType(staticFile.file.getName());
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		response.setHeader("Content-Encoding", GZIP);
+		response.setContentLength(staticFile.compressedBytes.length);
+		if (!"HEAD".equals(request.getMethod())) {
+			response.getOutputStream().write(staticFile.compressedBytes);
+		}
+	}
+	
+	/**
+	 * Tells whether an Accept-Encoding header value admits gzip, e.g. "gzip, deflate" but not "gzip;q=0"
+	 * 
+	 * @methodtype boolean-query
+	 */
+	public static boolean isGzipAccepted(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		
+		for (String encoding : acceptEncoding.split(",")) {
+			String[] params = encoding.split(";");
+			String name = params[0].trim();
+			if (name.equalsIgnoreCase(GZIP) || name.equals("*")) {
+				for (int i = 1; i < params.length; i++) {
+					String param = params[i].trim();
+					if (param.startsWith("q=")) {
+						try {
+							return Double.parseDouble(param.substring(2)) > 0;
+						} catch (NumberFormatException nfex) {
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean isCompressibleType(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		
+		for (String type : COMPRESSIBLE_TYPES) {
+			if (contentType.startsWith(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 */
+	public void destroy() {
+		deflaters.close();
+		staticFiles.clear();
+	}
+	
+	/**
+	 * A response that holds back its first minSize bytes; if there are more, they and the rest are gzipped.
+	 * Content lengths set by the servlet are passed on only for uncompressed responses.
+	 */
+	protected class CompressingResponse extends HttpServletResponseWrapper {
+		
+		/**
+		 * 
+		 */
+		protected CompressingOutputStream stream = null;
+		protected PrintWriter writer = null;
+		protected long contentLength = -1;
+		
+		/**
+		 * 
+		 */
+		protected CompressingResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		/**
+		 * 
+		 */
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has been called already");
+			}
+			if (stream == null) {
+				stream = new CompressingOutputStream(this);
+			}
+			return stream;
+		}
+		
+		/**
+		 * 
+		 */
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (stream != null) {
+					throw new IllegalStateException("getOutputStream() has been called already");
+				}
+				stream = new CompressingOutputStream(this);
+				writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+			}
+			return writer;
+		}
+		
+		/**
+		 * 
+		 */
+		public void setContentLength(int length) {
+			setContentLengthLong(length);
+		}
+		
+		/**
+		 * 
+		 */
+		public void setContentLengthLong(long length) {
+			contentLength = length;
+			if ((stream != null) && stream.isPassingThrough()) {
+				super.setContentLengthLong(length);
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		public void setHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLengthLong(Long.parseLong(value));
+			} else {
+				super.setHeader(name, value);
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		public void addHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLengthLong(Long.parseLong(value));
+			} else {
+				super.addHeader(name, value);
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			} else if (stream != null) {
+				stream.flush();
+			}
+			super.flushBuffer();
+		}
+		
+		/**
+		 * 
+		 */
+		public void resetBuffer() {
+			if ((stream != null) && !stream.isPassingThrough() && !stream.isCompressing()) {
+				stream.buffer.reset();
+			}
+			super.resetBuffer();
+		}
+		
+		/**
+		 * Completes the response after the servlet is done
+		 */
+		protected void finish() throws IOException {
+			if (writer != null) {
+				writer.close();
+			} else if (stream != null) {
+				stream.close();
+			}
+		}
+		
+		/**
+		 * 
+		 */
+		protected HttpServletResponse getHttpResponse() {
+			return (HttpServletResponse) getResponse();
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected class CompressingOutputStream extends ServletOutputStream {
+		
+		/**
+		 * 
+		 */
+		protected final CompressingResponse response;
+		protected final ByteArrayOutputStream buffer;
+		protected OutputStream out = null;
+		protected ServletOutputStream containerStream = null;
+		protected boolean isCompressing = false;
+		protected boolean isNonBlocking = false;
+		protected boolean isClosed = false;
+		
+		/**
+		 * 
+		 */
+		protected CompressingOutputStream(CompressingResponse myResponse) {
+			response = myResponse;
+			buffer = new ByteArrayOutputStream(minSize);
+		}
+		
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected boolean isPassingThrough() {
+			return (out != null) && !isCompressing;
+		}
+		
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected boolean isCompressing() {
+			return isCompressing;
+		}
+		
+		/**
+		 * 
+		 */
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+		
+		/**
+		 * 
+		 */
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (isClosed) {
+				throw new IOException("stream closed");
+			}
+			
+			if (out == null) {
+				HttpServletResponse httpResponse = response.getHttpResponse();
+				boolean isCompressible = isCompressibleType(httpResponse.getContentType()) && (httpResponse.getStatus() == HttpServletResponse.SC_OK) && !httpResponse.containsHeader("Content-Encoding");
+				if (!isCompressible || ((response.contentLength >= 0) && (response.contentLength < minSize))) {
+					startPassingThrough(response.contentLength);
+				} else if (buffer.size() + length < minSize) {
+					buffer.write(bytes, offset, length);
+					return;
+				} else {
+					startCompressing();
+				}
+			}
+			
+			out.write(bytes, offset, length);
+		}
+		
+		/**
+		 * 
+		 */
+		protected void startPassingThrough(long contentLength) throws IOException {
+			HttpServletResponse httpResponse = response.getHttpResponse();
+			if (contentLength >= 0) {
+				httpResponse.setContentLengthLong(contentLength);
+			}
+			out = getContainerStream();
+			buffer.writeTo(out);
+			buffer.reset();
+		}
+		
+		/**
+		 * 
+		 */
+		protected void startCompressing() throws IOException {
+			HttpServletResponse httpResponse = response.getHttpResponse();
+			httpResponse.setHeader("Content-Encoding", GZIP);
+			isCompressing = true;
+			out = new PooledGzipOutputStream(getContainerStream(), deflaters);
+			buffer.writeTo(out);
+			buffer.reset();
+		}
+		
+		/**
+		 * 
+		 */
+		public void flush() throws IOException {
+			if (out != null) {
+				out.flush();
+			}
+		}
+		
+		/**
+		 * Small responses are sent as they are, with their length
+		 */
+		public void close() throws IOException {
+			if (isClosed) {
+				return;
+			}
+			
+			if (out == null) {
+				startPassingThrough(buffer.size());
+			}
+			isClosed = true;
+			out.close();
+		}
+		
+		/**
+		 * All output ends up in the container's stream
+		 */
+		protected ServletOutputStream getContainerStream() throws IOException {
+			if (containerStream == null) {
+				containerStream = response.getHttpResponse().getOutputStream();
+			}
+			return containerStream;
+		}
+		
+		/**
+		 * Blocking writes to the buffer or compressor always succeed; otherwise, the container's stream decides
+		 */
+		public boolean isReady() {
+			return (isPassingThrough() || isNonBlocking) ? containerStream.isReady() : true;
+		}
+		
+		/**
+		 * The container calls the listener once its stream can take more output
+		 */
+		public void setWriteListener(WriteListener listener) {
+			if (listener == null) {
+				throw new NullPointerException("no write listener");
+			}
+			
+			try {
+				getContainerStream().setWriteListener(listener);
+				isNonBlocking = true;
+			} catch (IOException ioex) {
+				listener.onError(ioex);
+			}
+		}
+		
+	}
+	
+}
@@ -21,8 +21,10 @@
 package org.wahlzeit.servlets;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.security.*;
 import java.util.*;
 
 import javax.servlet.*;
@@ -47,12 +49,20 @@ public class MainServlet extends AbstractServlet {
 	 */
 	private static final long serialVersionUID = 42L; // any one does; class never serialized
 
+	/**
+	 * 
+	 */
+	protected static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+	protected static final int IMAGE_HEADER_SIZE = 16;
+
 	/**
 	 * 
 	 */
 	public void myGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 		UserSession us = ensureUserSession(request);
+		us.resetDatabaseTime();
 		
 		String link = request.getRequestURI();
 		int linkStart = link.lastIndexOf("/") + 1;
@@ -65,24 +75,95 @@ public class MainServlet extends AbstractServlet {
 		UserLog.logUserInfo("requested", link);
 
 		WebPageHandler handler = WebPartHandlerManager.getWebPageHandler(link);
-		String newLink = PartUtil.DEFAULT_PAGE_NAME;
-		if (handler != null) {
-			Map args = getRequestArgs(request);
-			SysLog.logSysInfo("GET arguments: " + getRequestArgsAsString(us, args));
-			newLink = handler.handleGet(us, link, args);
-		}
+		String metricsName = getMetricsName(link, PartUtil.DEFAULT_PAGE_NAME);
+		long renderTime = 0;
+		try {
+			String newLink = PartUtil.DEFAULT_PAGE_NAME;
+			if (handler != null) {
+				Map args = getRequestArgs(request);
+				if (SysLog.isLogging()) {
+					SysLog.logSysInfo("GET arguments: " + getRequestArgsAsString(us, args));
+				}
+				newLink = handler.handleGet(us, link, args);
+			}
 
-		if (newLink.equals(link)) { // no redirect necessary
-			WebPart result = handler.makeWebPart(us);
-			us.addProcessingTime(System.currentTimeMillis() - startTime);
-			configureResponse(us, response, result);
-			us.clearSavedArgs(); // saved args go from post to next get
-			us.resetProcessingTime();
-		} else {
-			SysLog.logSysInfo("redirect", newLink);
-			redirectRequest(response, newLink);
-			us.addProcessingTime(System.currentTimeMillis() - startTime);
+			if (newLink.equals(link)) { // no redirect necessary
+				String validator = handler.getValidator(us);
+				if (validator != null) {
+					response.setHeader("ETag", validator);
+					response.setHeader("Cache-Control", "private, no-cache");
+					if (isNotModified(request.getHeader("If-None-Match"), validator)) {
+						response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						SysLog.logSysInfo("not modified", link);
+						handler.makeNotModified(us);
+						us.clearSavedArgs();
+						us.resetProcessingTime();
+						return;
+					}
+				}
+			
+				WebPart result = handler.makeWebPart(us);
+				us.addProcessingTime(System.currentTimeMillis() - startTime);
+				long renderStart = System.nanoTime();
+				configureResponse(us, response, result);
+				renderTime = System.nanoTime() - renderStart;
+				us.clearSavedArgs(); // saved args go from post to next get
+				us.resetProcessingTime();
+			} else {
+				SysLog.logSysInfo("redirect", newLink);
+				redirectRequest(response, newLink);
+				us.addProcessingTime(System.currentTimeMillis() - startTime);
+			}
+		} finally {
+			recordRequest(metricsName, false, us, startNanos, renderTime);
+		}
+	}
+	
+	/**
+	 * Requests to links without a handler of their own are counted for the handler that takes them
+	 * 
+	 * @methodtype conversion
+	 */
+	protected String getMetricsName(String link, String defaultName) {
+		WebPartHandler handler = WebPartHandlerManager.getInstance().getWebPartHandlerFor(link);
+		return (handler != null) ? link : defaultName;
+	}
+	
+	/**
+	 * Handler time is all but render time; it includes database time
+	 */
+	protected void recordRequest(String name, boolean isPost, UserSession us, long startTime, long renderTime) {
+		long totalTime = System.nanoTime() - startTime;
+		RequestMetrics metrics = Metrics.getInstance().getRequestMetrics(name, isPost);
+		metrics.record(totalTime, totalTime - renderTime, renderTime, us.getDatabaseTime());
+	}
+	
+	/**
+	 * Compares the ETags of an If-None-Match header with validator, weakly as RFC 7232 asks for
+	 * 
+	 * @methodtype boolean-query
+	 */
+	protected static boolean isNotModified(String ifNoneMatch, String validator) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		
+		String opaqueValidator = getOpaqueTag(validator);
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || getOpaqueTag(tag).equals(opaqueValidator)) {
+				return true;
+			}
 		}
+		
+		return false;
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String getOpaqueTag(String tag) {
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
 	}
 	
 	/**
@@ -90,7 +171,9 @@ public class MainServlet extends AbstractServlet {
 	 */
 	public void myPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 		UserSession us = ensureUserSession(request);
+		us.resetDatabaseTime();
 		
 		String link = request.getRequestURI();
 		int linkStart = link.lastIndexOf("/") + 1;
@@ -102,17 +185,28 @@ public class MainServlet extends AbstractServlet {
 		}
 		UserLog.logUserInfo("postedto", link);
 			
-		Map args = getRequestArgs(request);
-		SysLog.logSysInfo("POST arguments: " + getRequestArgsAsString(us, args));
-		
-		WebFormHandler formHandler = WebPartHandlerManager.getWebFormHandler(link);
-		link = PartUtil.DEFAULT_PAGE_NAME;
-		if (formHandler != null) {
-			link = formHandler.handlePost(us, args);
-		}
+		String metricsName = getMetricsName(link, PartUtil.NULL_FORM_NAME);
+		try {
+			Map args = getRequestArgs(request);
+			if (SysLog.isLogging()) {
+				SysLog.logSysInfo("POST arguments: " + getRequestArgsAsString(us, args));
+			}
+			
+			WebFormHandler formHandler = WebPartHandlerManager.getWebFormHandler(link);
+			link = PartUtil.DEFAULT_PAGE_NAME;
+			try {
+				if (formHandler != null) {
+					link = formHandler.handlePost(us, args);
+				}
+			} finally {
+				deleteUploadedFile(args);
+			}
 
-		redirectRequest(response, link);
-		us.addProcessingTime(System.currentTimeMillis() - startTime);
+			redirectRequest(response, link);
+			us.addProcessingTime(System.currentTimeMillis() - startTime);
+		} finally {
+			recordRequest(metricsName, true, us, startNanos, 0);
+		}
 	}
 
 	/**
@@ -139,9 +233,8 @@ public class MainServlet extends AbstractServlet {
 
 			String key = part.getName();
 			if (key.equals("file")) {
-				String tempFileName = SysConfig.getTempDir().asString() + Thread.currentThread().getId();
-				saveImgToDirectory(tempFileName, part.getInputStream());
-				result.put("fileName", tempFileName);
+				receiveUploadedFile(part, result);
+				part.delete();
 			} else {
 				result.put(key, request.getParameter(key));
 			}			
@@ -150,12 +243,81 @@ public class MainServlet extends AbstractServlet {
 		return result;
 	}
 
-	private void saveImgToDirectory(String filePath, InputStream imgStream) throws IOException {
-		File targetFile = new File(filePath);
-		if(targetFile.exists()) {
-			targetFile.delete();
+	/**
+	 * Streams the uploaded file into a new temp file, computing its content hash and checking its image
+	 * header on the way. Sets fileName and fileHash in args unless the upload is not an image.
+	 */
+	protected void receiveUploadedFile(Part part, Map<String, String> args) throws IOException {
+		Path tempDir = Paths.get(SysConfig.getTempDir().asString());
+		Files.createDirectories(tempDir);
+		Path tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+
+		MessageDigest digest = PhotoUtil.createContentDigest();
+		String formatName = null;
+		boolean isHeaderChecked = false;
+		boolean isComplete = false;
+		try (ReadableByteChannel in = Channels.newChannel(part.getInputStream());
+			 FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(UPLOAD_BUFFER_SIZE);
+			while (in.read(buffer) != -1) {
+				if (!isHeaderChecked) {
+					if (buffer.position() < IMAGE_HEADER_SIZE) {
+						continue; // keep filling the first buffer
+					}
+					formatName = PhotoUtil.getImageFormatName(buffer.array(), buffer.position());
+					isHeaderChecked = true;
+					if (formatName == null) {
+						break;
+					}
+				}
+				writeBuffer(buffer, digest, out);
+			}
+
+			if (!isHeaderChecked) { // tiny upload
+				formatName = PhotoUtil.getImageFormatName(buffer.array(), buffer.position());
+			}
+			if (formatName != null) {
+				writeBuffer(buffer, digest, out);
+				isComplete = true;
+			}
+		} finally {
+			if (!isComplete) {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+
+		if (isComplete) {
+			args.put("fileName", tempFile.toString());
+			args.put("fileHash", PhotoUtil.asContentHash(digest));
+		} else {
+			SysLog.logSysInfo("rejected upload that is not an image");
+		}
+	}
+
+	/**
+	 * Writes the bytes read into buffer to out and adds them to digest; clears buffer
+	 */
+	protected void writeBuffer(ByteBuffer buffer, MessageDigest digest, FileChannel out) throws IOException {
+		buffer.flip();
+		digest.update(buffer.array(), 0, buffer.limit());
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Temp files live only as long as their request
+	 */
+	protected void deleteUploadedFile(Map args) {
+		Object fileName = args.get("fileName");
+		if (fileName instanceof String) {
+			try {
+				Files.deleteIfExists(Paths.get((String) fileName));
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex);
+			}
 		}
-		Files.copy(imgStream, Paths.get(filePath));
 	}
 
 }
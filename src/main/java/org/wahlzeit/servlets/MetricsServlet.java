@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.wahlzeit.agents.*;
+import org.wahlzeit.handlers.PhotoFragmentCache;
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * The MetricsServlet shows how the app is doing in the Prometheus text format (version 0.0.4):
+ * request latencies per handler, database connections, caches, agents, queues, and JVM memory and GC.
+ * Only local requests are answered unless METRICS_ALLOW_REMOTE is set. Everything is read from counters
+ * that are kept anyway; a scrape reads each histogram in one pass per series.
+ */
+public class MetricsServlet extends HttpServlet {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 42L; // any one does; class never serialized
+
+	/**
+	 * 
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	/**
+	 * Histogram bucket bounds, in microseconds
+	 */
+	protected static final long[] LATENCY_BOUNDS = {
+		1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+	};
+	
+	/**
+	 * Summary quantiles, in percent
+	 */
+	protected static final double[] QUANTILES = { 50.0, 90.0, 99.0 };
+	
+	/**
+	 * 
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!SysConfig.isMetricsAllowRemote() && !isLocalHost(request)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		
+		StringBuilder sb = new StringBuilder(32 * 1024);
+		writeRequestMetrics(sb, Metrics.getInstance().getAllRequestMetrics());
+		writeDatabaseMetrics(sb);
+		writeCacheMetrics(sb);
+		writeSessionMetrics(sb, UserSessionStore.getInstance());
+		writeAgentMetrics(sb, AgentManager.getInstance().getAgents());
+		writeQueueMetrics(sb);
+		writeJvmMetrics(sb);
+		
+		byte[] bytes = sb.toString().getBytes("UTF-8");
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-store");
+		response.setContentLength(bytes.length);
+		OutputStream out = response.getOutputStream();
+		out.write(bytes);
+		out.close();
+	}
+	
+	/**
+	 * 
+	 */
+	protected boolean isLocalHost(HttpServletRequest request) {
+		String remoteAddr = request.getRemoteAddr();
+		return "127.0.0.1".equals(remoteAddr) || "0:0:0:0:0:0:0:1".equals(remoteAddr) || "::1".equals(remoteAddr);
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeRequestMetrics(StringBuilder sb, List<RequestMetrics> allMetrics) {
+		String name = "wahlzeit_request_duration_seconds";
+		writeHeader(sb, name, "histogram", "Request latency per handler and method");
+		for (RequestMetrics metrics : allMetrics) {
+			String labels = "handler=\"" + escape(metrics.getName()) + "\",method=\"" + metrics.getMethod() + "\"";
+			writeHistogram(sb, name, labels, metrics.getTotalTimes());
+		}
+		
+		name = "wahlzeit_request_phase_duration_seconds";
+		writeHeader(sb, name, "summary", "Request latency per handler and method, by phase; handler time includes database time");
+		for (RequestMetrics metrics : allMetrics) {
+			String labels = "handler=\"" + escape(metrics.getName()) + "\",method=\"" + metrics.getMethod() + "\",phase=";
+			writeSummary(sb, name, labels + "\"handler\"", metrics.getHandlerTimes());
+			writeSummary(sb, name, labels + "\"render\"", metrics.getRenderTimes());
+			writeSummary(sb, name, labels + "\"database\"", metrics.getDatabaseTimes());
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeDatabaseMetrics(StringBuilder sb) {
+		int noOpen = DatabaseConnection.getNoOpenConnections();
+		int noPooled = DatabaseConnection.getNoPooledConnections();
+		writeGauge(sb, "wahlzeit_db_connections_open", "Open database connections", noOpen);
+		writeGauge(sb, "wahlzeit_db_connections_idle", "Database connections in the pool", noPooled);
+		writeGauge(sb, "wahlzeit_db_connections_in_use", "Database connections held by sessions", noOpen - noPooled);
+	}
+	
+	/**
+	 * 
+	 */
+	protected void writeCacheMetrics(StringBuilder sb) {
+		LruCache<?, ?> photoFiles = (LruCache<?, ?>) getServletContext().getAttribute(PhotoServlet.CACHE_ATTRIBUTE);
+		PhotoFragmentCache photoFragments = PhotoFragmentCache.getInstance();
+		WebPartFragmentCache webPartFragments = WebPartFragmentCache.getInstance();
+		
+		String name = "wahlzeit_cache_entries";
+		writeHeader(sb, name, "gauge", "Entries per in-memory cache");
+		if (photoFiles != null) {
+			writeSample(sb, name, "cache=\"photoFiles\"", photoFiles.size());
+		}
+		writeSample(sb, name, "cache=\"photoFragments\"", photoFragments.getNoEntries());
+		writeSample(sb, name, "cache=\"photoSkeletons\"", photoFragments.getNoSkeletons());
+		writeSample(sb, name, "cache=\"webPartFragments\"", webPartFragments.getNoFragments());
+		writeSample(sb, name, "cache=\"templates\"", WebPartTemplateService.getInstance().getNoTemplates());
+		writeSample(sb, name, "cache=\"photos\"", PhotoManager.getInstance().getNoCachedPhotos());
+		writeSample(sb, name, "cache=\"users\"", UserManager.getInstance().getNoCachedUsers());
+		
+		name = "wahlzeit_cache_hits_total";
+		writeHeader(sb, name, "counter", "Lookups that found an entry");
+		if (photoFiles != null) {
+			writeSample(sb, name, "cache=\"photoFiles\"", photoFiles.getHits());
+		}
+		writeSample(sb, name, "cache=\"photoFragments\"", photoFragments.getHits());
+		writeSample(sb, name, "cache=\"photoSkeletons\"", photoFragments.getSkeletonHits());
+		writeSample(sb, name, "cache=\"webPartFragments\"", webPartFragments.getHits());
+		
+		name = "wahlzeit_cache_misses_total";
+		writeHeader(sb, name, "counter", "Lookups that found no (current) entry");
+		if (photoFiles != null) {
+			writeSample(sb, name, "cache=\"photoFiles\"", photoFiles.getMisses());
+		}
+		writeSample(sb, name, "cache=\"photoFragments\"", photoFragments.getMisses());
+		writeSample(sb, name, "cache=\"photoSkeletons\"", photoFragments.getSkeletonMisses());
+		writeSample(sb, name, "cache=\"webPartFragments\"", webPartFragments.getMisses());
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeAgentMetrics(StringBuilder sb, List<Agent> agents) {
+		String name = "wahlzeit_agent_run_duration_seconds";
+		writeHeader(sb, name, "summary", "Duration of agent runs");
+		for (Agent agent : agents) {
+			writeSummary(sb, name, "agent=\"" + escape(agent.getName()) + "\"", agent.getRunTimes());
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeSessionMetrics(StringBuilder sb, UserSessionStore store) {
+		String name = "wahlzeit_sessions";
+		writeHeader(sb, name, "gauge", "User sessions in memory (resident) and only in the session store (passivated); -1 if not known");
+		writeSample(sb, name, "state=\"resident\"", store.getNoResidentSessions());
+		writeSample(sb, name, "state=\"passivated\"", store.getNoPassivatedSessions());
+		writeHeader(sb, "wahlzeit_session_passivations_total", "counter", "User sessions dropped from memory");
+		writeSample(sb, "wahlzeit_session_passivations_total", null, store.getNoPassivations());
+		writeHeader(sb, "wahlzeit_session_activations_total", "counter", "User sessions read from the session store");
+		writeSample(sb, "wahlzeit_session_activations_total", null, store.getNoActivations());
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeQueueMetrics(StringBuilder sb) {
+		writeGauge(sb, "wahlzeit_backup_queue_length", "Uploaded photo files waiting to be copied to the backup", PhotoBackup.getInstance().getNoPendingCopies());
+		AdmissionControl admission = AdmissionControl.getInstance();
+		writeGauge(sb, "wahlzeit_requests_admitted", "Requests in process; -1 if not limited", admission.getNoConcurrentRequests());
+		String name = "wahlzeit_requests_rejected_total";
+		writeHeader(sb, name, "counter", "Requests turned away by admission control");
+		writeSample(sb, name, "status=\"429\"", admission.getNoRateLimited());
+		writeSample(sb, name, "status=\"503\"", admission.getNoOverloaded());
+		
+		AsyncLogWriter logWriter = Log.getWriter();
+		writeGauge(sb, "wahlzeit_log_queue_length", "Log entries waiting for the log writer", logWriter.getNoPendingEntries());
+		writeHeader(sb, "wahlzeit_log_queue_full_total", "counter", "Log entries that had to wait for room in the log queue");
+		writeSample(sb, "wahlzeit_log_queue_full_total", null, logWriter.getNoWaits());
+		
+		if (SysConfig.isAsyncRequests()) {
+			RequestExecutor executor = RequestExecutor.getInstance();
+			writeGauge(sb, "wahlzeit_request_queue_length", "Requests waiting for a request thread", executor.getNoQueuedRequests());
+			writeGauge(sb, "wahlzeit_requests_active", "Requests being processed by request threads; -1 if not known", executor.getNoActiveRequests());
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeJvmMetrics(StringBuilder sb) {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		MemoryUsage heap = memory.getHeapMemoryUsage();
+		MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+		
+		String name = "jvm_memory_bytes_used";
+		writeHeader(sb, name, "gauge", "Used JVM memory");
+		writeSample(sb, name, "area=\"heap\"", heap.getUsed());
+		writeSample(sb, name, "area=\"nonheap\"", nonHeap.getUsed());
+		name = "jvm_memory_bytes_committed";
+		writeHeader(sb, name, "gauge", "Committed JVM memory");
+		writeSample(sb, name, "area=\"heap\"", heap.getCommitted());
+		writeSample(sb, name, "area=\"nonheap\"", nonHeap.getCommitted());
+		name = "jvm_memory_bytes_max";
+		writeHeader(sb, name, "gauge", "Maximum JVM memory; -1 if undefined");
+		writeSample(sb, name, "area=\"heap\"", heap.getMax());
+		writeSample(sb, name, "area=\"nonheap\"", nonHeap.getMax());
+		
+		List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+		name = "jvm_gc_collections_total";
+		writeHeader(sb, name, "counter", "Garbage collections per collector");
+		for (GarbageCollectorMXBean gc : gcs) {
+			writeSample(sb, name, "gc=\"" + escape(gc.getName()) + "\"", gc.getCollectionCount());
+		}
+		name = "jvm_gc_collection_seconds_total";
+		writeHeader(sb, name, "counter", "Time spent in garbage collection per collector");
+		for (GarbageCollectorMXBean gc : gcs) {
+			writeSample(sb, name, "gc=\"" + escape(gc.getName()) + "\"", gc.getCollectionTime() / 1000.0);
+		}
+		
+		writeGauge(sb, "jvm_threads_current", "Live JVM threads", ManagementFactory.getThreadMXBean().getThreadCount());
+	}
+	
+	/**
+	 * Writes buckets, sum, and count of histogram, in seconds
+	 */
+	protected static void writeHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+		long count = histogram.getTotalCount();
+		long[] counts = histogram.getCountsAtOrBelow(LATENCY_BOUNDS);
+		for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+			writeSample(sb, name + "_bucket", labels + ",le=\"" + asSeconds(LATENCY_BOUNDS[i]) + "\"", Math.min(counts[i], count));
+		}
+		writeSample(sb, name + "_bucket", labels + ",le=\"+Inf\"", count);
+		writeSample(sb, name + "_sum", labels, asSeconds(histogram.getTotalValue()));
+		writeSample(sb, name + "_count", labels, count);
+	}
+	
+	/**
+	 * Writes quantiles, sum, and count of histogram, in seconds
+	 */
+	protected static void writeSummary(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+		for (double quantile : QUANTILES) {
+			long value = histogram.getValueAtPercentile(quantile);
+			writeSample(sb, name, labels + ",quantile=\"" + (quantile / 100.0) + "\"", asSeconds(value));
+		}
+		writeSample(sb, name + "_sum", labels, asSeconds(histogram.getTotalValue()));
+		writeSample(sb, name + "_count", labels, histogram.getTotalCount());
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeGauge(StringBuilder sb, String name, String help, long value) {
+		writeHeader(sb, name, "gauge", help);
+		writeSample(sb, name, null, value);
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeHeader(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeSample(StringBuilder sb, String name, String labels, long value) {
+		appendName(sb, name, labels).append(value).append('\n');
+	}
+	
+	/**
+	 * 
+	 */
+	protected static void writeSample(StringBuilder sb, String name, String labels, double value) {
+		appendName(sb, name, labels).append(value).append('\n');
+	}
+	
+	/**
+	 * 
+	 */
+	protected static StringBuilder appendName(StringBuilder sb, String name, String labels) {
+		sb.append(name);
+		if (labels != null) {
+			sb.append('{').append(labels).append('}');
+		}
+		return sb.append(' ');
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	protected static double asSeconds(long micros) {
+		return micros / 1000000.0;
+	}
+	
+	/**
+	 * Escapes a label value
+	 * 
+	 * @methodtype conversion
+	 */
+	protected static String escape(String value) {
+		if ((value.indexOf('\\') == -1) && (value.indexOf('"') == -1) && (value.indexOf('\n') == -1)) {
+			return value;
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+}
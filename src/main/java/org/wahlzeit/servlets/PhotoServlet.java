@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.util.regex.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+import org.wahlzeit.utils.*;
+
+/**
+ * The servlet for photo files. Photo files never change once written, so responses carry
+ * a strong ETag and may be cached forever. Files are read through the PhotoStore and streamed
+ * through FileChannel.transferTo; small files (thumbnails) are kept in memory.
+ */
+public class PhotoServlet extends HttpServlet {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 42L; // any one does; class never serialized
+
+	/**
+	 *
+	 */
+	public static final String CONTENT_TYPE = "image/jpeg";
+	public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+	/**
+	 * Only photo file names, optionally below their shard directories, are served; rules out path traversal
+	 */
+	protected static final Pattern FILE_NAME_PATTERN = Pattern.compile("(?:/[a-z0-9])*/?(([a-z0-9]+)([0-5])\\.jpg)");
+
+	/**
+	 * A single byte range, e.g. "bytes=0-499", "bytes=500-" or "bytes=-500"; "bytes=-" is no range and is ignored
+	 */
+	protected static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(?=-?\\d)(\\d*)-(\\d*)");
+
+	/**
+	 * Context attribute under which the photo file cache can be found, e.g. by the MetricsServlet
+	 */
+	public static final String CACHE_ATTRIBUTE = "org.wahlzeit.photoCache";
+
+	/**
+	 *
+	 */
+	protected LruCache<String, PhotoStoreEntry> cache;
+	protected int maxCachedFileSize;
+
+	/**
+	 *
+	 */
+	public void init() throws ServletException {
+		cache = new LruCache<String, PhotoStoreEntry>(SysConfig.getPhotoCacheEntries());
+		maxCachedFileSize = SysConfig.getPhotoCacheMaxFileSize();
+		getServletContext().setAttribute(CACHE_ATTRIBUTE, cache);
+	}
+
+	/**
+	 *
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		servePhotoFile(request, response, true);
+	}
+
+	/**
+	 *
+	 */
+	protected void doHead(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		servePhotoFile(request, response, false);
+	}
+
+	/**
+	 *
+	 */
+	protected void servePhotoFile(HttpServletRequest request, HttpServletResponse response, boolean withBody) throws IOException {
+		PhotoStoreEntry photoFile = getPhotoFile(request.getPathInfo());
+		if (photoFile == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		response.setHeader("ETag", photoFile.getEtag());
+		response.setDateHeader("Last-Modified", photoFile.getLastModified());
+		response.setHeader("Cache-Control", CACHE_CONTROL);
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if (isNotModified(request, photoFile)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long start = 0;
+		long end = photoFile.getLength() - 1;
+		String range = request.getHeader("Range");
+		if ((range != null) && isRangeApplicable(request, photoFile)) {
+			Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+			if (!matcher.matches()) {
+				// multiple ranges or other units; ignore and send everything
+			} else if (matcher.group(1).isEmpty()) {
+				long suffixLength = parseLong(matcher.group(2));
+				start = Math.max(0, photoFile.getLength() - suffixLength);
+			} else {
+				start = parseLong(matcher.group(1));
+				if (!matcher.group(2).isEmpty()) {
+					end = Math.min(end, parseLong(matcher.group(2)));
+				}
+			}
+
+			if ((start < 0) || (start > end)) {
+				response.setHeader("Content-Range", "bytes */" + photoFile.getLength());
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+
+			if ((start > 0) || (end < photoFile.getLength() - 1)) {
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + photoFile.getLength());
+			}
+		}
+
+		long count = end - start + 1;
+		response.setContentType(CONTENT_TYPE);
+		response.setContentLengthLong(count);
+		if (!withBody) {
+			return;
+		}
+
+		photoFile.transferTo(start, count, response.getOutputStream());
+	}
+
+	/**
+	 * Returns the photo file for pathInfo, or null if there is no such file
+	 */
+	protected PhotoStoreEntry getPhotoFile(String pathInfo) throws IOException {
+		if (pathInfo == null) {
+			return null;
+		}
+
+		Matcher matcher = FILE_NAME_PATTERN.matcher(pathInfo);
+		if (!matcher.matches()) {
+			return null;
+		}
+
+		String fileName = matcher.group(1);
+		PhotoStoreEntry result = cache.get(fileName);
+		if (result != null) {
+			return result;
+		}
+
+		PhotoSize size = PhotoSize.getFromInt(Integer.parseInt(matcher.group(3)));
+		result = PhotoStore.getInstance().find(matcher.group(2), size);
+		if ((result != null) && (result.getLength() <= maxCachedFileSize)) {
+			result = result.asCached();
+			cache.put(fileName, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * If-None-Match takes precedence over If-Modified-Since
+	 */
+	protected boolean isNotModified(HttpServletRequest request, PhotoStoreEntry photoFile) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return matchesEtag(ifNoneMatch, photoFile.getEtag());
+		}
+
+		long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+		return (ifModifiedSince != -1) && (photoFile.getLastModified() / 1000 <= ifModifiedSince / 1000);
+	}
+
+	/**
+	 * A Range header only applies if If-Range is absent or still matches
+	 */
+	protected boolean isRangeApplicable(HttpServletRequest request, PhotoStoreEntry photoFile) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		} else if (ifRange.startsWith("\"")) {
+			return ifRange.equals(photoFile.getEtag());
+		}
+
+		long ifRangeDate = getDateHeader(request, "If-Range");
+		return (ifRangeDate != -1) && (photoFile.getLastModified() / 1000 == ifRangeDate / 1000);
+	}
+
+	/**
+	 *
+	 */
+	protected boolean matchesEtag(String headerValue, String etag) {
+		for (String candidate : headerValue.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 */
+	protected long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected long parseLong(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public LruCache<String, PhotoStoreEntry> getCache() {
+		return cache;
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.wahlzeit.contract.PatternInstance;
+import org.wahlzeit.services.*;
+
+/**
+ * The RequestExecutor runs requests that servlets handed off from container threads (see AbstractServlet).
+ * It uses a virtual thread per request where the JVM has them (Java 21 on), a bounded thread pool otherwise.
+ * A full pool queue rejects requests with a RejectedExecutionException.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = RequestExecutor.class
+)
+public class RequestExecutor {
+
+	/**
+	 * 
+	 */
+	protected static RequestExecutor instance = null;
+
+	/**
+	 * 
+	 */
+	public static synchronized RequestExecutor getInstance() {
+		if (instance == null) {
+			instance = new RequestExecutor(SysConfig.isUseVirtualThreads(), SysConfig.getRequestThreads(), SysConfig.getRequestQueueSize());
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * 
+	 */
+	public static synchronized void dropInstance() {
+		if (instance != null) {
+			instance.shutDown();
+			instance = null;
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected ExecutorService executor;
+	protected boolean isUsingVirtualThreads;
+	
+	/**
+	 * Falls back to a pool of noThreads threads with a queue of queueSize if there are no virtual threads
+	 */
+	protected RequestExecutor(boolean useVirtualThreads, int noThreads, int queueSize) {
+		if (useVirtualThreads) {
+			executor = createVirtualThreadExecutor();
+		}
+		
+		isUsingVirtualThreads = (executor != null);
+		if (!isUsingVirtualThreads) {
+			executor = createThreadPoolExecutor(noThreads, queueSize);
+		}
+		
+		SysLog.logSysInfo("request executor uses " + (isUsingVirtualThreads ? "virtual threads" : noThreads + " threads"));
+	}
+	
+	/**
+	 * Looked up reflectively, as we still compile for Java 11; returns null if not available
+	 * 
+	 * @methodtype factory
+	 */
+	protected static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException nsmex) {
+			return null;
+		} catch (Exception ex) {
+			SysLog.logThrowable(ex);
+			return null;
+		}
+	}
+	
+	/**
+	 * @methodtype factory
+	 */
+	protected static ExecutorService createThreadPoolExecutor(int noThreads, int queueSize) {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			protected final AtomicInteger lastThreadId = new AtomicInteger();
+			public Thread newThread(Runnable runnable) {
+				Thread result = new Thread(runnable, "RequestWorker-" + lastThreadId.incrementAndGet());
+				result.setDaemon(true);
+				return result;
+			}
+		};
+		
+		ThreadPoolExecutor result = new ThreadPoolExecutor(
+			noThreads, noThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), threadFactory
+		);
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isUsingVirtualThreads() {
+		return isUsingVirtualThreads;
+	}
+	
+	/**
+	 * Returns the number of requests waiting for a pool thread; always 0 with virtual threads
+	 */
+	public int getNoQueuedRequests() {
+		return (executor instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+	}
+	
+	/**
+	 * Returns the approximate number of requests being processed by pool threads, or -1 if not known
+	 */
+	public int getNoActiveRequests() {
+		return (executor instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executor).getActiveCount() : -1;
+	}
+	
+	/**
+	 * @throws RejectedExecutionException if there is no room for request
+	 */
+	public void execute(Runnable request) {
+		executor.execute(request);
+	}
+	
+	/**
+	 * Lets running requests finish, for a few seconds at most
+	 */
+	public void shutDown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				SysLog.logSysInfo("request executor terminated with requests still running");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException iex) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import javax.servlet.http.*;
+
+import org.wahlzeit.model.*;
+
+/**
+ * A UserSessionHandle is what an HttpSession keeps of its user session: the name to look it up by
+ * in the UserSessionStore. The user session is removed from the store once the HttpSession ends.
+ */
+public class UserSessionHandle implements HttpSessionBindingListener {
+
+	/**
+	 * 
+	 */
+	protected final String name;
+	
+	/**
+	 * 
+	 */
+	public UserSessionHandle(String myName) {
+		name = myName;
+	}
+	
+	/**
+	 * @methodtype get
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * 
+	 */
+	public void valueBound(HttpSessionBindingEvent event) {
+		// do nothing
+	}
+	
+	/**
+	 * 
+	 */
+	public void valueUnbound(HttpSessionBindingEvent event) {
+		UserSessionStore.getInstance().removeSession(name);
+	}
+	
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+
+import org.wahlzeit.main.ScriptMain;
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+
+/**
+ * Moves photo files from the flat photos directory into their shard directories.
+ * Photo files stay reachable while the tool runs, because readers fall back to the flat layout.
+ * Usage: ShardPhotoFiles [--threads n]
+ */
+public class ShardPhotoFiles extends ScriptMain {
+
+	/**
+	 * 
+	 */
+	protected static final Pattern PHOTO_FILE_PATTERN = Pattern.compile("([a-z0-9]+)([0-5])\\.jpg");
+
+	/**
+	 * 
+	 */
+	public static void main(String[] argv) {
+		new ShardPhotoFiles().run(argv);
+	}
+
+	/**
+	 * 
+	 */
+	protected int noThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 
+	 */
+	protected AtomicInteger noMovedFiles = new AtomicInteger();
+	protected AtomicInteger noFailedFiles = new AtomicInteger();
+
+	/**
+	 * 
+	 */
+	protected int handleArg(String arg, int i, String[] argv) {
+		if (arg.equals("--threads") && (i + 1 < argv.length)) {
+			noThreads = Integer.parseInt(argv[++i]);
+		} else {
+			i = super.handleArg(arg, i, argv);
+		}
+
+		return i;
+	}
+
+	/**
+	 * 
+	 */
+	protected void execute() throws Exception {
+		super.execute();
+
+		long startTime = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(noThreads);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(SysConfig.getPhotosDir().asString()), "*.jpg")) {
+			for (final Path file : files) {
+				executor.execute(new Runnable() {
+					public void run() {
+						movePhotoFile(file);
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		long duration = System.currentTimeMillis() - startTime;
+		SysLog.logSysInfo("sharded photo files", String.valueOf(noMovedFiles.get()), "failed: " + noFailedFiles.get() + ", took " + duration + "ms");
+	}
+
+	/**
+	 * 
+	 */
+	protected void movePhotoFile(Path source) {
+		Matcher matcher = PHOTO_FILE_PATTERN.matcher(source.getFileName().toString());
+		if (!matcher.matches()) {
+			return;
+		}
+
+		PhotoSize size = PhotoSize.getFromInt(Integer.parseInt(matcher.group(2)));
+		Path target = PhotoUtil.getPhotoFile(matcher.group(1), size).toPath();
+		try {
+			Files.createDirectories(target.getParent());
+			try {
+				Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			noMovedFiles.incrementAndGet();
+		} catch (IOException ioex) {
+			noFailedFiles.incrementAndGet();
+			SysLog.logThrowable(ioex);
+		}
+	}
+
+}
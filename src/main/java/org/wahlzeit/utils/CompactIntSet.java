@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A set of non-negative ints without boxing. Few values are kept in an open-addressing hash table;
+ * once the table would take more memory than a bitmap up to the largest value, the set turns into that bitmap.
+ * Not thread-safe.
+ */
+public class CompactIntSet {
+
+	/**
+	 * Marks an empty table slot
+	 */
+	protected static final int FREE = -1;
+
+	/**
+	 * 
+	 */
+	protected static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * Sparse representation; null once the set is a bitmap
+	 */
+	protected int[] table = newTable(INITIAL_CAPACITY);
+
+	/**
+	 * Dense representation; null while the set is a hash table
+	 */
+	protected long[] bits = null;
+
+	/**
+	 * 
+	 */
+	protected int size = 0;
+	protected int maxValue = 0;
+
+	/**
+	 * 
+	 */
+	public CompactIntSet() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isBitmap() {
+		return bits != null;
+	}
+
+	/**
+	 * Returns the bytes the table or bitmap takes; object and array headers are not counted
+	 * 
+	 * @methodtype get
+	 */
+	public long getNoValueBytes() {
+		return (bits != null) ? 8L * bits.length : 4L * table.length;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		} else if (bits != null) {
+			int index = value >>> 6;
+			return (index < bits.length) && ((bits[index] & (1L << value)) != 0);
+		} else {
+			return table[indexOf(table, value)] == value;
+		}
+	}
+
+	/**
+	 * Returns false if value was in the set already
+	 */
+	public boolean add(int value) {
+		assertIsNonNegative(value);
+
+		if (bits == null) {
+			int index = indexOf(table, value);
+			if (table[index] == value) {
+				return false;
+			}
+
+			maxValue = Math.max(maxValue, value);
+			if (2 * (size + 1) <= table.length) {
+				table[index] = value;
+				size++;
+				return true;
+			}
+
+			int newCapacity = 2 * table.length;
+			if (newCapacity / 2 < getBitmapLength(maxValue)) {
+				rehash(newCapacity);
+			} else {
+				convertToBitmap();
+			}
+		}
+
+		return doAdd(value);
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean doAdd(int value) {
+		if (bits == null) {
+			int index = indexOf(table, value);
+			table[index] = value;
+		} else {
+			int index = value >>> 6;
+			if (index >= bits.length) {
+				bits = Arrays.copyOf(bits, Math.max(index + 1, bits.length + (bits.length >> 1)));
+			} else if ((bits[index] & (1L << value)) != 0) {
+				return false;
+			}
+			bits[index] |= 1L << value;
+		}
+
+		size++;
+		return true;
+	}
+
+	/**
+	 * 
+	 */
+	public void clear() {
+		table = newTable(INITIAL_CAPACITY);
+		bits = null;
+		size = 0;
+		maxValue = 0;
+	}
+
+	/**
+	 * Returns the values in ascending order
+	 * 
+	 * @methodtype conversion
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		int i = 0;
+		if (bits != null) {
+			for (int index = 0; index < bits.length; index++) {
+				for (long word = bits[index]; word != 0; word &= word - 1) {
+					result[i++] = (index << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+		} else {
+			for (int value : table) {
+				if (value != FREE) {
+					result[i++] = value;
+				}
+			}
+			Arrays.sort(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the values in ascending order as variable-length deltas, so small sets take a few bytes
+	 */
+	public void writeOn(DataOutput out) throws IOException {
+		int[] values = toArray();
+		writeVarInt(out, values.length);
+		int prior = 0;
+		for (int value : values) {
+			writeVarInt(out, value - prior);
+			prior = value;
+		}
+	}
+
+	/**
+	 * Adds the values written by writeOn
+	 */
+	public void readFrom(DataInput in) throws IOException {
+		int noValues = readVarInt(in);
+		int value = 0;
+		for (int i = 0; i < noValues; i++) {
+			value += readVarInt(in);
+			add(value);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * 
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("malformed variable-length int");
+	}
+
+	/**
+	 * 
+	 */
+	protected void rehash(int newCapacity) {
+		int[] newTable = newTable(newCapacity);
+		for (int value : table) {
+			if (value != FREE) {
+				newTable[indexOf(newTable, value)] = value;
+			}
+		}
+		table = newTable;
+	}
+
+	/**
+	 * 
+	 */
+	protected void convertToBitmap() {
+		bits = new long[getBitmapLength(maxValue)];
+		for (int value : table) {
+			if (value != FREE) {
+				bits[value >>> 6] |= 1L << value;
+			}
+		}
+		table = null;
+	}
+
+	/**
+	 * Returns the slot holding value, or the free slot to put it in; linear probing
+	 */
+	protected static int indexOf(int[] table, int value) {
+		int mask = table.length - 1;
+		int hash = value * 0x9e3779b9;
+		int index = (hash ^ (hash >>> 16)) & mask;
+		while ((table[index] != value) && (table[index] != FREE)) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static int[] newTable(int capacity) {
+		int[] result = new int[capacity];
+		Arrays.fill(result, FREE);
+		return result;
+	}
+
+	/**
+	 * Returns the number of longs a bitmap up to maxValue takes
+	 */
+	protected static int getBitmapLength(int maxValue) {
+		return (maxValue >>> 6) + 1;
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected static void assertIsNonNegative(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("negative value: " + value);
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.zip.*;
+
+/**
+ * A DeflaterPool hands out Deflaters of one compression level for raw (nowrap) deflate streams.
+ * Deflaters hold native memory; reusing them saves its allocation and release per response.
+ */
+public class DeflaterPool extends ObjectPool<Deflater> {
+
+	/**
+	 *
+	 */
+	protected final int level;
+
+	/**
+	 *
+	 */
+	public DeflaterPool(int myLevel, int myMaxPooled) {
+		super(myMaxPooled);
+		level = myLevel;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected Deflater create() {
+		return new Deflater(level, true);
+	}
+
+	/**
+	 *
+	 */
+	protected void reset(Deflater deflater) {
+		deflater.reset();
+	}
+
+	/**
+	 * Deflaters hold native memory until ended
+	 */
+	protected void discard(Deflater deflater) {
+		deflater.end();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+}
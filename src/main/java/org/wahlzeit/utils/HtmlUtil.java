@@ -20,7 +20,7 @@
 
 package org.wahlzeit.utils;
 
-import java.io.File;
+import java.io.*;
 
 /**
  * A set of utility functions for HTML formatting.
@@ -105,20 +105,21 @@ public class HtmlUtil {
 	}
 	
 	/**
-	 * 
+	 * Returns s with HTML special chars masked; s itself, without any allocation, if it has none
 	 */
 	public static String maskForWeb(String s) {
-		StringBuffer result = new StringBuffer(s.length() + 16);
-		for (int i = 0; i < s.length(); i++) {
+		int first = indexOfCharToMask(s, 0);
+		if (first == -1) {
+			return s;
+		}
+		
+		StringBuilder result = new StringBuilder(s.length() + 16);
+		result.append(s, 0, first);
+		for (int i = first; i < s.length(); i++) {
 			char c = s.charAt(i);
-			if (c == '&') {
-				result.append("&amp;");
-			} else if (c == '"') {
-				result.append("&quot;");
-			} else if (c == '<') {
-				result.append("&lt;");
-			} else if (c == '>') {
-				result.append("&gt;");
+			String mask = getMask(c);
+			if (mask != null) {
+				result.append(mask);
 			} else {
 				result.append(c);
 			}
@@ -127,4 +128,50 @@ public class HtmlUtil {
 		return result.toString();
 	}
 	
+	/**
+	 * Writes s with HTML special chars masked; unmasked runs are written as they are
+	 */
+	public static void maskForWeb(Writer out, String s) throws IOException {
+		int start = 0;
+		for (int i = indexOfCharToMask(s, 0); i != -1; i = indexOfCharToMask(s, start)) {
+			out.write(s, start, i - start);
+			out.write(getMask(s.charAt(i)));
+			start = i + 1;
+		}
+		out.write(s, start, s.length() - start);
+	}
+	
+	/**
+	 * @methodtype boolean-query
+	 */
+	public static boolean isMaskedForWeb(String s) {
+		return indexOfCharToMask(s, 0) == -1;
+	}
+	
+	/**
+	 * Returns the index of the first char from start on that needs masking, or -1
+	 */
+	protected static int indexOfCharToMask(String s, int start) {
+		for (int i = start; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c <= '>') && (getMask(c) != null)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String getMask(char c) {
+		switch (c) {
+			case '&': return "&amp;";
+			case '"': return "&quot;";
+			case '<': return "&lt;";
+			case '>': return "&gt;";
+			default: return null;
+		}
+	}
+	
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A thread-safe histogram of latencies in microseconds, with buckets laid out like an HdrHistogram's:
+ * values below 2^SUB_BUCKET_BITS are counted exactly, larger ones in buckets of about 1.6% relative width.
+ * Values beyond MAX_VALUE (about 19 hours) are counted as MAX_VALUE. Recording a value does not allocate.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 
+	 */
+	public static final int SUB_BUCKET_BITS = 7;
+	public static final int MAX_VALUE_BITS = 36;
+	public static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	
+	/**
+	 * 
+	 */
+	protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	protected static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	protected static final int NO_BUCKETS = getBucketIndex(MAX_VALUE) + 1;
+	
+	/**
+	 * 
+	 */
+	protected final AtomicLongArray counts = new AtomicLongArray(NO_BUCKETS);
+	protected final AtomicLong totalCount = new AtomicLong();
+	protected final AtomicLong totalValue = new AtomicLong();
+	protected final AtomicLong maxValue = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	public LatencyHistogram() {
+		// do nothing
+	}
+	
+	/**
+	 * Returns the bucket index of value, which must be between 0 and MAX_VALUE
+	 * 
+	 * @methodtype conversion
+	 */
+	protected static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		int subBucket = (int) (value >>> shift); // in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+	}
+	
+	/**
+	 * Returns the highest value counted in the bucket at index
+	 * 
+	 * @methodtype conversion
+	 */
+	protected static long getHighestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+	
+	/**
+	 * Counts a latency of value microseconds; negative values count as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		
+		counts.incrementAndGet(getBucketIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		
+		long max = maxValue.get();
+		while ((value > max) && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+	
+	/**
+	 * Counts a latency given in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		record(nanos / 1000);
+	}
+	
+	/**
+	 * 
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+	
+	/**
+	 * Returns the sum of all recorded values, in microseconds
+	 */
+	public long getTotalValue() {
+		return totalValue.get();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getMaxValue() {
+		return maxValue.get();
+	}
+	
+	/**
+	 * 
+	 */
+	public double getMean() {
+		long count = getTotalCount();
+		return (count == 0) ? 0.0 : (double) getTotalValue() / count;
+	}
+	
+	/**
+	 * Returns the value that percentile (0 to 100) of all recorded values are at or below, within
+	 * bucket precision; 0 if nothing was recorded. Concurrent recording may skew the result a little.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getTotalCount();
+		if (count == 0) {
+			return 0;
+		}
+		
+		long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+		long countSoFar = 0;
+		for (int i = 0; i < NO_BUCKETS; i++) {
+			countSoFar += counts.get(i);
+			if (countSoFar >= countAtPercentile) {
+				return Math.min(getHighestValueInBucket(i), getMaxValue());
+			}
+		}
+		
+		return getMaxValue();
+	}
+	
+	/**
+	 * Returns the number of recorded values that are at or below value, within bucket precision
+	 */
+	public long getCountAtOrBelow(long value) {
+		if (value < 0) {
+			return 0;
+		}
+		
+		int lastIndex = getBucketIndex(Math.min(value, MAX_VALUE));
+		long result = 0;
+		for (int i = 0; i <= lastIndex; i++) {
+			result += counts.get(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the number of recorded values at or below each of values, which must be ascending, in one pass
+	 */
+	public long[] getCountsAtOrBelow(long[] values) {
+		long[] result = new long[values.length];
+		long countSoFar = 0;
+		int bucket = 0;
+		for (int i = 0; i < values.length; i++) {
+			int lastIndex = (values[i] < 0) ? -1 : getBucketIndex(Math.min(values[i], MAX_VALUE));
+			for (; bucket <= lastIndex; bucket++) {
+				countSoFar += counts.get(bucket);
+			}
+			result[i] = countSoFar;
+		}
+		return result;
+	}
+	
+}
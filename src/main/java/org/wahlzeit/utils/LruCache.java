@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.utils;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A small, thread-safe map that evicts its least recently used entry once it holds maxEntries.
+ * It counts hits and misses so callers can judge whether the cache pays off.
+ */
+public class LruCache<K, V> {
+
+	/**
+	 *
+	 */
+	protected final int maxEntries;
+
+	/**
+	 * Access-ordered, hence get() moves an entry to the end
+	 */
+	protected final LinkedHashMap<K, V> entries;
+
+	/**
+	 *
+	 */
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public LruCache(int myMaxEntries) {
+		maxEntries = myMaxEntries;
+		entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 42L; // any does; class never serialized
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value or null; counts the lookup as hit or miss
+	 */
+	public V get(K key) {
+		V result;
+		synchronized (entries) {
+			result = entries.get(key);
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	public void put(K key, V value) {
+		if (maxEntries <= 0) {
+			return;
+		}
+
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public V remove(K key) {
+		synchronized (entries) {
+			return entries.remove(key);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+}
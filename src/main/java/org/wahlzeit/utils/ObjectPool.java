@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.utils;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * An ObjectPool keeps up to maxPooled objects that are expensive to make, for threads to borrow and give back.
+ * Unlike one object per thread, it also works for threads that live for a single request, like virtual threads.
+ * Objects are taken from and put into fixed slots by compare-and-set; neither acquire nor release allocates.
+ */
+public abstract class ObjectPool<T> {
+
+	/**
+	 *
+	 */
+	protected final AtomicReferenceArray<T> slots;
+	protected final AtomicInteger noPooled = new AtomicInteger();
+
+	/**
+	 *
+	 */
+	public ObjectPool(int maxPooled) {
+		slots = new AtomicReferenceArray<T>(Math.max(maxPooled, 0));
+	}
+
+	/**
+	 * Returns a pooled object or, if none is left, a new one
+	 */
+	public T acquire() {
+		int length = slots.length();
+		if ((length > 0) && (noPooled.get() > 0)) {
+			int index = getStartIndex(length);
+			for (int i = 0; i < length; i++) {
+				T result = slots.get(index);
+				if ((result != null) && slots.compareAndSet(index, result, null)) {
+					noPooled.decrementAndGet();
+					return result;
+				}
+				index = (index + 1 == length) ? 0 : index + 1;
+			}
+		}
+
+		return create();
+	}
+
+	/**
+	 * Resets object for reuse; discards it if it is not to be reused or the pool is full
+	 */
+	public void release(T object) {
+		if (!isReusable(object)) {
+			discard(object);
+			return;
+		}
+
+		reset(object);
+		int length = slots.length();
+		int index = getStartIndex(Math.max(length, 1));
+		for (int i = 0; i < length; i++) {
+			if ((slots.get(index) == null) && slots.compareAndSet(index, null, object)) {
+				noPooled.incrementAndGet();
+				return;
+			}
+			index = (index + 1 == length) ? 0 : index + 1;
+		}
+
+		discard(object);
+	}
+
+	/**
+	 * Discards all pooled objects; objects currently handed out are pooled again when released
+	 */
+	public void close() {
+		for (int i = 0; i < slots.length(); i++) {
+			T object = slots.getAndSet(i, null);
+			if (object != null) {
+				noPooled.decrementAndGet();
+				discard(object);
+			}
+		}
+	}
+
+	/**
+	 * Threads start looking at different slots, so that they rarely compete for one
+	 */
+	protected int getStartIndex(int length) {
+		return (int) (Thread.currentThread().getId() % length);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected abstract T create();
+
+	/**
+	 * @methodproperty hook
+	 */
+	protected boolean isReusable(T object) {
+		return true;
+	}
+
+	/**
+	 * @methodproperty hook
+	 */
+	protected void reset(T object) {
+		// do nothing
+	}
+
+	/**
+	 * Releases what object holds beyond memory
+	 *
+	 * @methodproperty hook
+	 */
+	protected void discard(T object) {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getMaxPooled() {
+		return slots.length();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPooled() {
+		return noPooled.get();
+	}
+
+}
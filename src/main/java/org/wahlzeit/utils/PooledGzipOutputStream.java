@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * A gzip stream (RFC 1952) that borrows its Deflater from a DeflaterPool and returns it on close.
+ * Unlike GZIPOutputStream, it does not allocate and end a native Deflater per stream.
+ */
+public class PooledGzipOutputStream extends DeflaterOutputStream {
+
+	/**
+	 * Magic, deflate method, no flags, no time, no extra flags, unknown OS
+	 */
+	protected static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 *
+	 */
+	protected final DeflaterPool pool;
+	protected final CRC32 crc = new CRC32();
+	protected boolean isClosed = false;
+
+	/**
+	 *
+	 */
+	public PooledGzipOutputStream(OutputStream out, DeflaterPool myPool) throws IOException {
+		this(out, myPool, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 *
+	 */
+	public PooledGzipOutputStream(OutputStream out, DeflaterPool myPool, int bufferSize) throws IOException {
+		this(out, myPool, myPool.acquire(), bufferSize);
+	}
+
+	/**
+	 * Returns deflater to the pool if the header cannot be written
+	 */
+	protected PooledGzipOutputStream(OutputStream out, DeflaterPool myPool, Deflater deflater, int bufferSize) throws IOException {
+		super(out, deflater, bufferSize);
+		pool = myPool;
+
+		boolean isWritten = false;
+		try {
+			out.write(HEADER);
+			isWritten = true;
+		} finally {
+			if (!isWritten) {
+				isClosed = true;
+				pool.release(deflater);
+			}
+		}
+	}
+
+	/**
+	 * Compresses bytes as a whole
+	 */
+	public static byte[] compress(byte[] bytes, DeflaterPool pool) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length / 3 + HEADER.length + 8);
+		try (PooledGzipOutputStream out = new PooledGzipOutputStream(result, pool)) {
+			out.write(bytes);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		super.write(bytes, offset, length);
+		crc.update(bytes, offset, length);
+	}
+
+	/**
+	 * Writes the remaining compressed data and the trailer; leaves the underlying stream open
+	 */
+	public void finish() throws IOException {
+		if (def.finished()) {
+			return;
+		}
+
+		super.finish();
+		writeInt((int) crc.getValue());
+		writeInt((int) def.getBytesRead());
+	}
+
+	/**
+	 * Little-endian, as gzip wants it
+	 */
+	protected void writeInt(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+
+	/**
+	 *
+	 */
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+
+		isClosed = true;
+		try {
+			finish();
+			out.close();
+		} finally {
+			pool.release(def);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A RateLimiter keeps a TokenBucket per key, e.g. per session or remote address, in a ConcurrentHashMap;
+ * hence it is neither locked as a whole nor a point of contention. Once there are more than maxKeys buckets,
+ * one caller at a time removes the full ones, which are no different from new ones.
+ */
+public class RateLimiter {
+	
+	/**
+	 * 
+	 */
+	protected final double ratePerSecond;
+	protected final int burst;
+	protected final int maxKeys;
+	
+	/**
+	 * 
+	 */
+	protected final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+	protected final AtomicBoolean isCleaningUp = new AtomicBoolean();
+	protected volatile long lastCleanUpTime;
+	
+	/**
+	 * Clean-ups are at least this many nanoseconds apart, lest a flood of new keys keeps them going
+	 */
+	protected static final long CLEAN_UP_INTERVAL = 1000000000L;
+	
+	/**
+	 * 
+	 */
+	public RateLimiter(double myRatePerSecond, int myBurst, int myMaxKeys) {
+		ratePerSecond = myRatePerSecond;
+		burst = myBurst;
+		maxKeys = myMaxKeys;
+		lastCleanUpTime = System.nanoTime() - CLEAN_UP_INTERVAL;
+	}
+	
+	/**
+	 * Takes a token from the bucket of key if there is one
+	 */
+	public boolean tryAcquire(String key, long now) {
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			if (buckets.size() >= maxKeys) {
+				removeFullBuckets(now);
+			}
+			
+			TokenBucket newBucket = new TokenBucket(ratePerSecond, burst, now);
+			bucket = buckets.putIfAbsent(key, newBucket);
+			if (bucket == null) {
+				bucket = newBucket;
+			}
+		}
+		
+		return bucket.tryAcquire(now);
+	}
+	
+	/**
+	 * Returns how many nanoseconds the holder of key has to wait for its next token
+	 */
+	public long getWaitTime(String key, long now) {
+		TokenBucket bucket = buckets.get(key);
+		return (bucket == null) ? 0 : bucket.getWaitTime(now);
+	}
+	
+	/**
+	 * 
+	 */
+	protected void removeFullBuckets(long now) {
+		if ((now - lastCleanUpTime < CLEAN_UP_INTERVAL) || !isCleaningUp.compareAndSet(false, true)) {
+			return; // done recently or someone else is at it
+		}
+		
+		try {
+			lastCleanUpTime = now;
+			for (Iterator<TokenBucket> i = buckets.values().iterator(); i.hasNext(); ) {
+				if (i.next().isFull(now)) {
+					i.remove();
+				}
+			}
+		} finally {
+			isCleaningUp.set(false);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public int getNoKeys() {
+		return buckets.size();
+	}
+	
+}
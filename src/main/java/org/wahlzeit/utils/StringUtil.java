@@ -202,6 +202,23 @@ public class StringUtil {
 		return String.valueOf(seconds) + "." + asThreeDigits(milliSeconds);
 	}
 	
+	/**
+	 * 
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * 
+	 */
+	public final static String asHexString(byte[] bytes) {
+		char[] result = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+			result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+		}
+		return new String(result);
+	}
+	
 	/**
 	 * The string, which separates path segments in a URL
 	 */
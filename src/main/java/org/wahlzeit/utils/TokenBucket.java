@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A lock-free token bucket, implemented as generic cell rate algorithm: instead of a token count, it keeps
+ * the time at which the bucket would be full again, in a single AtomicLong that is updated by CAS.
+ * Times are System.nanoTime() values, passed in so that callers read the clock once per request.
+ */
+public class TokenBucket {
+	
+	/**
+	 * Nanoseconds it takes to refill one token
+	 */
+	protected final long interval;
+	
+	/**
+	 * How far ahead of now the full time may get, i.e. burst size times interval
+	 */
+	protected final long capacity;
+	
+	/**
+	 * Time at which the bucket is full again
+	 */
+	protected final AtomicLong fullTime;
+	
+	/**
+	 * A new bucket is full; it holds up to burst tokens and refills ratePerSecond of them per second
+	 */
+	public TokenBucket(double ratePerSecond, int burst, long now) {
+		interval = Math.max(1, (long) (1000000000L / ratePerSecond));
+		capacity = Math.max(1, burst) * interval;
+		fullTime = new AtomicLong(now);
+	}
+	
+	/**
+	 * Takes a token if there is one
+	 */
+	public boolean tryAcquire(long now) {
+		while (true) {
+			long oldFullTime = fullTime.get();
+			long newFullTime = Math.max(oldFullTime, now) + interval;
+			if (newFullTime - now > capacity) {
+				return false;
+			}
+			if (fullTime.compareAndSet(oldFullTime, newFullTime)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Returns how many nanoseconds from now on a token will be available; 0 if one is available now
+	 */
+	public long getWaitTime(long now) {
+		return Math.max(0, fullTime.get() + interval - now - capacity);
+	}
+	
+	/**
+	 * A full bucket is no different from a new one
+	 * 
+	 * @methodtype boolean-query
+	 */
+	public boolean isFull(long now) {
+		return fullTime.get() - now <= 0;
+	}
+	
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+
+import org.wahlzeit.utils.*;
+
+/**
+ * A MaskedString is a value that needs HTML masking; it is masked while written, straight into the output.
+ */
+public class MaskedString implements Writable {
+	
+	/**
+	 * 
+	 */
+	protected String value;
+	
+	/**
+	 * 
+	 */
+	public MaskedString(String myValue) {
+		value = myValue;
+	}
+	
+	/**
+	 * Returns value as is if it needs no masking, else a MaskedString of it; null for null
+	 * 
+	 * @methodtype factory
+	 */
+	public static Object asMaskedValue(String value) {
+		if ((value == null) || HtmlUtil.isMaskedForWeb(value)) {
+			return value;
+		}
+		return new MaskedString(value);
+	}
+	
+	/**
+	 * 
+	 */
+	public void writeOn(Writer out) throws IOException {
+		HtmlUtil.maskForWeb(out, value);
+	}
+	
+	/**
+	 * 
+	 */
+	public String toString() {
+		return HtmlUtil.maskForWeb(value);
+	}
+	
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+
+/**
+ * A Utf8Writer encodes chars as UTF-8 into a reusable buffer and flushes it to an OutputStream.
+ * Bytes that are UTF-8 encoded already, like template segments, are copied without decoding.
+ * It counts the bytes written since the last reset.
+ */
+public class Utf8Writer extends Writer {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 *
+	 */
+	protected OutputStream out;
+	protected final byte[] buffer;
+	protected int position = 0;
+	protected long byteCount = 0;
+	protected boolean hasFlushedBytes = false;
+
+	/**
+	 * High surrogate of a pair split across two writes, or 0
+	 */
+	protected char pendingHighSurrogate = 0;
+
+	/**
+	 *
+	 */
+	public Utf8Writer() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 *
+	 */
+	public Utf8Writer(int bufferSize) {
+		buffer = new byte[Math.max(bufferSize, 8)];
+	}
+
+	/**
+	 *
+	 */
+	public Utf8Writer(OutputStream myOut) {
+		this();
+		out = myOut;
+	}
+
+	/**
+	 * Prepares this writer, and its buffer, for being reused with another stream
+	 */
+	public Utf8Writer reset(OutputStream newOut) {
+		out = newOut;
+		position = 0;
+		byteCount = 0;
+		hasFlushedBytes = false;
+		pendingHighSurrogate = 0;
+		return this;
+	}
+
+	/**
+	 * Writes bytes that are UTF-8 encoded already
+	 */
+	public void writeBytes(byte[] bytes) throws IOException {
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	/**
+	 *
+	 */
+	public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		flushPendingSurrogate();
+		byteCount += length;
+		if (length > buffer.length - position) {
+			flushBuffer();
+			if (length > buffer.length) {
+				out.write(bytes, offset, length);
+				hasFlushedBytes = true;
+				return;
+			}
+		}
+
+		System.arraycopy(bytes, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 *
+	 */
+	public void write(int c) throws IOException {
+		write((char) c);
+	}
+
+	/**
+	 *
+	 */
+	public void write(String s, int offset, int length) throws IOException {
+		int end = offset + length;
+		for (int i = offset; i < end; ) {
+			if (pendingHighSurrogate == 0) {
+				// fast path for runs of ASCII chars, which most of our pages are made of
+				byte[] bytes = buffer;
+				int start = position;
+				int p = start;
+				int asciiEnd = Math.min(end, i + (bytes.length - p));
+				for (char c; (i < asciiEnd) && ((c = s.charAt(i)) < 0x80); i++) {
+					bytes[p++] = (byte) c;
+				}
+				position = p;
+				byteCount += p - start;
+				if (i == end) {
+					break;
+				} else if (p == bytes.length) {
+					flushBuffer();
+					continue;
+				}
+			}
+			write(s.charAt(i++));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	/**
+	 *
+	 */
+	public void write(char[] chars, int offset, int length) throws IOException {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			write(chars[i]);
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected void write(char c) throws IOException {
+		if (buffer.length - position < 4) {
+			flushBuffer();
+		}
+
+		if (pendingHighSurrogate != 0) {
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				writeCodePoint(Character.toCodePoint(high, c));
+				return;
+			}
+			writeByte('?');
+		}
+
+		if (c < 0x80) {
+			writeByte(c);
+		} else if (c < 0x800) {
+			writeByte(0xc0 | (c >> 6));
+			writeByte(0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c)) {
+			pendingHighSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			writeByte('?');
+		} else {
+			writeByte(0xe0 | (c >> 12));
+			writeByte(0x80 | ((c >> 6) & 0x3f));
+			writeByte(0x80 | (c & 0x3f));
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected void writeCodePoint(int codePoint) {
+		writeByte(0xf0 | (codePoint >> 18));
+		writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+		writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+		writeByte(0x80 | (codePoint & 0x3f));
+	}
+
+	/**
+	 * Caller ensures there is room in buffer
+	 */
+	protected void writeByte(int b) {
+		buffer[position++] = (byte) b;
+		byteCount++;
+	}
+
+	/**
+	 *
+	 */
+	protected void flushPendingSurrogate() throws IOException {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			if (buffer.length == position) {
+				flushBuffer();
+			}
+			writeByte('?');
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected void flushBuffer() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+			hasFlushedBytes = true;
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void flush() throws IOException {
+		flushPendingSurrogate();
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 *
+	 */
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Returns true if all bytes written so far are still in the buffer
+	 *
+	 * @methodtype boolean-query
+	 */
+	public boolean isBuffered() {
+		return !hasFlushedBytes;
+	}
+
+}
@@ -27,7 +27,8 @@ import org.wahlzeit.utils.*;
 
 /**
  * A WebPart is a Writable formatted as HTML, working off a template.
- * A WebPart has its data set from a client using key/value pairs.
+ * A WebPart has its data set from a client using key/value pairs; keys are given as strings or,
+ * cheaper, as WebPartSlots. Values are kept in an array indexed as defined by the template.
  * A WebPart has a recursive structure; it may contain further WebParts.
  */
 public class WebPart implements Writable {
@@ -40,17 +41,30 @@ public class WebPart implements Writable {
 	/**
 	 * 
 	 */
-	protected Map<String, Object> parts = new HashMap<String, Object>();
+	protected Object[] values;
 	
 	/**
 	 * 
 	 */
 	public WebPart(WebPartTemplate myTemplate) {
 		template = myTemplate;
+		values = new Object[myTemplate.getNoValues()];
 	}
 	
+	/**
+	 * 
+	 */
 	public Object getValue(String key) {
-		return parts.get(key);
+		WebPartSlot slot = WebPartSlot.find(key);
+		return (slot != null) ? getValue(slot) : null;
+	}
+	
+	/**
+	 * 
+	 */
+	public Object getValue(WebPartSlot slot) {
+		int index = template.getValueIndex(slot);
+		return (index != -1) ? values[index] : null;
 	}
 	
 	/**
@@ -61,13 +75,31 @@ public class WebPart implements Writable {
 			putValue(key, value);
 		}
 	}
+	
+	/**
+	 * 
+	 */
+	public void addString(WebPartSlot slot, String value) {
+		if (value != null) {
+			putValue(slot, value);
+		}
+	}
 		
 	/**
 	 * 
 	 */
 	public void maskAndAddString(String key, String value) {
 		if (value != null) {
-			putValue(key, HtmlUtil.maskForWeb(value));
+			putValue(key, MaskedString.asMaskedValue(value));
+		}
+	}
+		
+	/**
+	 * 
+	 */
+	public void maskAndAddString(WebPartSlot slot, String value) {
+		if (value != null) {
+			putValue(slot, MaskedString.asMaskedValue(value));
 		}
 	}
 		
@@ -87,7 +119,7 @@ public class WebPart implements Writable {
 	public void maskAndAddStringFromArgs(Map args, String key) {
 		Object value = args.get(key);
 		if (value != null) {
-			addString(key, HtmlUtil.maskForWeb(value.toString()));
+			putValue(key, MaskedString.asMaskedValue(value.toString()));
 		}
 	}
 	
@@ -109,9 +141,9 @@ public class WebPart implements Writable {
 	public void maskAndAddStringFromArgsWithDefault(Map args, String key, String defval) {
 		Object value = args.get(key);
 		if (value != null) {
-			addString(key, HtmlUtil.maskForWeb(value.toString()));
+			putValue(key, MaskedString.asMaskedValue(value.toString()));
 		} else {
-			addString(key, HtmlUtil.maskForWeb(defval));
+			putValue(key, MaskedString.asMaskedValue(defval));
 		}		
 	}
 	
@@ -165,43 +197,122 @@ public class WebPart implements Writable {
 	/**
 	 * 
 	 */
-	protected void putValue(String key, Object value) {
+	public void addWritable(WebPartSlot slot, Writable value) {
 		if (value != null) {
-			parts.put(key, value);
+			putValue(slot, value);
+		}
+	}
+	
+	/**
+	 * A key without slot does not occur in any template; its value would never be written
+	 */
+	protected void putValue(String key, Object value) {
+		WebPartSlot slot = WebPartSlot.find(key);
+		if (slot != null) {
+			putValue(slot, value);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected void putValue(WebPartSlot slot, Object value) {
+		int index = template.getValueIndex(slot);
+		if ((index != -1) && (value != null)) {
+			values[index] = value;
+		}
+	}
+
+	/**
+	 * Renders all values except those for holes into a new template, in which the holes remain slots.
+	 * A WebPart of the skeleton needs only the holes filled to write what this part would.
+	 * 
+	 * @methodtype factory
+	 */
+	public WebPartTemplate createSkeleton(String name, WebPartSlot... holes) throws IOException {
+		String[] segments = template.getSegments();
+		int[] valueIndices = template.getValueIndices();
+		
+		List<String> segmentList = new ArrayList<String>();
+		List<String> keyList = new ArrayList<String>();
+		StringWriter segment = new StringWriter();
+		for (int i = 0; i < valueIndices.length; i++) {
+			segment.write(segments[i]);
+			
+			WebPartSlot slot = template.getValueSlot(valueIndices[i]);
+			if (Arrays.asList(holes).contains(slot)) {
+				segmentList.add(segment.toString());
+				keyList.add(slot.getKey());
+				segment = new StringWriter();
+				continue;
+			}
+			
+			Object object = values[valueIndices[i]];
+			if (object instanceof Writable) {
+				((Writable) object).writeOn(segment);
+			} else if (object != null) {
+				segment.write(object.toString());
+			}
 		}
+		segment.write(segments[valueIndices.length]);
+		segmentList.add(segment.toString());
+		
+		WebPartTemplate result = new WebPartTemplate(name);
+		result.initialize(segmentList, keyList);
+		return result;
 	}
 
 	/**
 	 * 
 	 */
 	public void writeOn(Writer out) throws IOException {
-		String tmpl = template.asString();
-		String[] keys = template.getKeys();
-		int[] slots = template.getSlots();
+		if (out instanceof Utf8Writer) {
+			writeOn((Utf8Writer) out);
+			return;
+		}
+
+		String[] segments = template.getSegments();
+		int[] valueIndices = template.getValueIndices();
 
-		int start = 0;
-		for (int i = 0; i < keys.length; i++ ) {
-			int index = slots[i];
-			out.write(tmpl, start, index - start);
+		for (int i = 0; i < valueIndices.length; i++) {
+			out.write(segments[i]);
 
-			String key = keys[i];
-			if (key != null) {
-				Object object = parts.get(key);
-				if (object != null) {
-					if (object instanceof Writable) {
-						Writable part = (Writable) object;
-						part.writeOn(out);
-					} else {
-						String value = object.toString();
-						out.write(value);
-					}
+			Object object = values[valueIndices[i]];
+			if (object != null) {
+				if (object instanceof Writable) {
+					Writable part = (Writable) object;
+					part.writeOn(out);
+				} else {
+					out.write(object.toString());
+				}
+			}
+		}
+		
+		out.write(segments[valueIndices.length]);
+	}
+	
+	/**
+	 * Writes the pre-encoded segments as they are; only values need encoding
+	 */
+	public void writeOn(Utf8Writer out) throws IOException {
+		byte[][] segments = template.getEncodedSegments();
+		int[] valueIndices = template.getValueIndices();
+
+		for (int i = 0; i < valueIndices.length; i++) {
+			out.writeBytes(segments[i]);
+
+			Object object = values[valueIndices[i]];
+			if (object != null) {
+				if (object instanceof Writable) {
+					Writable part = (Writable) object;
+					part.writeOn(out);
+				} else {
+					out.write(object.toString());
 				}
 			}
-			
-			start = index;
 		}
 		
-		out.write(tmpl, start, tmpl.length() - start);
+		out.writeBytes(segments[valueIndices.length]);
 	}
 	
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A WebPartFragment is an immutable, fully rendered part of a web page.
+ * It keeps its UTF-8 bytes, so that writing it on a Utf8Writer is a single buffer copy.
+ */
+public class WebPartFragment implements Writable {
+	
+	/**
+	 * 
+	 */
+	protected String text;
+	protected byte[] bytes;
+	
+	/**
+	 * The WebPartTemplateService version the fragment was rendered with
+	 */
+	protected long version;
+	
+	/**
+	 * 
+	 */
+	public WebPartFragment(String myText, long myVersion) {
+		text = myText;
+		bytes = myText.getBytes(StandardCharsets.UTF_8);
+		version = myVersion;
+	}
+	
+	/**
+	 * @methodtype factory
+	 */
+	public static WebPartFragment render(Writable part, long version) throws IOException {
+		StringWriter out = new StringWriter();
+		part.writeOn(out);
+		return new WebPartFragment(out.toString(), version);
+	}
+	
+	/**
+	 * 
+	 */
+	public String asString() {
+		return text;
+	}
+	
+	/**
+	 * 
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * 
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * 
+	 */
+	public void writeOn(Writer out) throws IOException {
+		if (out instanceof Utf8Writer) {
+			((Utf8Writer) out).writeBytes(bytes);
+		} else {
+			out.write(text);
+		}
+	}
+	
+}
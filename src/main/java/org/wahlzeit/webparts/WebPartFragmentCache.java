@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.wahlzeit.contract.PatternInstance;
+
+/**
+ * The WebPartFragmentCache keeps rendered parts whose output depends only on template, language, and access rights.
+ * Fragments rendered with older templates are dropped once the WebPartTemplateService reloaded templates.
+ */
+@PatternInstance(
+		patternName = "Singleton",
+		participants = WebPartFragmentCache.class
+)
+public class WebPartFragmentCache {
+
+	/**
+	 * 
+	 */
+	protected static final WebPartFragmentCache instance = new WebPartFragmentCache();
+
+	/**
+	 * 
+	 */
+	public static WebPartFragmentCache getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * 
+	 */
+	protected ConcurrentMap<String, WebPartFragment> fragments = new ConcurrentHashMap<String, WebPartFragment>();
+	
+	/**
+	 * 
+	 */
+	protected volatile boolean isEnabled = true;
+	
+	/**
+	 * 
+	 */
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	protected WebPartFragmentCache() {
+		// do nothing
+	}
+	
+	/**
+	 * @methodtype conversion
+	 */
+	public static String asKey(String name, String lang, String rights) {
+		return name + '|' + lang + '|' + rights;
+	}
+	
+	/**
+	 * 
+	 */
+	public long getVersion() {
+		return WebPartTemplateService.getInstance().getVersion();
+	}
+	
+	/**
+	 * Returns the fragment for key if it is up to date, or null
+	 */
+	public WebPartFragment getFragment(String key) {
+		if (!isEnabled) {
+			return null;
+		}
+		
+		WebPartFragment result = fragments.get(key);
+		if ((result != null) && (result.getVersion() != getVersion())) {
+			fragments.remove(key, result);
+			result = null;
+		}
+		
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+	
+	/**
+	 * Renders part into a fragment for key; version is the one read before part was created
+	 */
+	public WebPartFragment putFragment(String key, long version, Writable part) throws IOException {
+		WebPartFragment result = WebPartFragment.render(part, version);
+		if (isEnabled) {
+			fragments.put(key, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	public WebPartFragment putFragment(String key, long version, String text) {
+		WebPartFragment result = new WebPartFragment(text, version);
+		if (isEnabled) {
+			fragments.put(key, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	public void clear() {
+		fragments.clear();
+	}
+	
+	/**
+	 * 
+	 */
+	public int getNoFragments() {
+		return fragments.size();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * 
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * 
+	 */
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+	
+	/**
+	 * 
+	 */
+	public void setEnabled(boolean enabled) {
+		isEnabled = enabled;
+		if (!enabled) {
+			clear();
+		}
+	}
+	
+}
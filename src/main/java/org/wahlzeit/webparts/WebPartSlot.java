@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.util.concurrent.*;
+
+/**
+ * A WebPartSlot is the handle of a template key like {$photo}.
+ * Every key has exactly one slot with a system-wide id; templates map slot ids to the
+ * positions of their values, so binding a value through a slot needs no hashing.
+ * Handlers are expected to look up the slots they need once, e.g. in static fields.
+ */
+public class WebPartSlot {
+
+	/**
+	 *
+	 */
+	protected static final ConcurrentMap<String, WebPartSlot> slots = new ConcurrentHashMap<String, WebPartSlot>();
+	protected static volatile int noSlots = 0;
+
+	/**
+	 * Returns the slot of key, creating it if necessary
+	 */
+	public static WebPartSlot get(String key) {
+		WebPartSlot result = slots.get(key);
+		if (result == null) {
+			synchronized (slots) {
+				result = slots.get(key);
+				if (result == null) {
+					result = new WebPartSlot(key, noSlots);
+					slots.put(key, result);
+					noSlots++;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the slot of key, or null if no template has used key yet
+	 */
+	public static WebPartSlot find(String key) {
+		return slots.get(key);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static int getNoSlots() {
+		return noSlots;
+	}
+
+	/**
+	 *
+	 */
+	protected final String key;
+	protected final int id;
+
+	/**
+	 *
+	 */
+	protected WebPartSlot(String myKey, int myId) {
+		key = myKey;
+		id = myId;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 *
+	 */
+	public String toString() {
+		return "{$" + key + "}";
+	}
+
+}
@@ -20,11 +20,14 @@
 
 package org.wahlzeit.webparts;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * A WebPartTmpl is a template for a WebPart.
  * It gets initialized once and is read-only after that.
+ * Initialization compiles the source into text segments separated by slots;
+ * each slot refers to an index into the values of a WebPart.
  */
 public class WebPartTemplate {
 
@@ -36,13 +39,34 @@ public class WebPartTemplate {
 	/**
 	 * 
 	 */
-	protected String template;
+	protected String template = "";
 	
 	/**
 	 * 
 	 */
-	protected String[] keys = null;
-	protected int[] slots = null;
+	protected String[] keys = new String[0];
+	protected int[] slots = new int[0];
+	
+	/**
+	 * segments[i] precedes the value at valueIndices[i]; the last segment ends the template
+	 */
+	protected String[] segments = { "" };
+	protected int[] valueIndices = new int[0];
+	
+	/**
+	 * The segments, encoded as UTF-8 once for all responses
+	 */
+	protected byte[][] encodedSegments = { new byte[0] };
+	
+	/**
+	 * Distinct slots of this template, by value index
+	 */
+	protected WebPartSlot[] valueSlots = new WebPartSlot[0];
+	
+	/**
+	 * Maps WebPartSlot ids to value indices; -1 or out of range for slots this template does not use
+	 */
+	protected int[] valueIndicesBySlotId = new int[0];
 		
 	/**
 	 * 
@@ -55,39 +79,73 @@ public class WebPartTemplate {
 	 * @methodtype initialization
 	 */
 	public void initialize(String source) {
-		List<String> keyList = new LinkedList<String>();
-		List<Integer> slotList = new LinkedList<Integer>();
+		List<String> keyList = new ArrayList<String>();
+		List<String> segmentList = new ArrayList<String>();
 		
-		StringBuffer buffer = new StringBuffer(source);
-		
-		for (int index = 0; index != -1; ) {
-			int nextSlot = buffer.indexOf("{$", index);
-			if (nextSlot != -1) {
-				int endSlot = buffer.indexOf("}", nextSlot);
-				if (endSlot != -1) {
-					String key = buffer.substring(nextSlot + 2, endSlot);
-	
-					keyList.add(key);
-					slotList.add(nextSlot);
-	
-					buffer.replace(nextSlot, endSlot + 1, "");
-					index = nextSlot;
-				}
-				index = endSlot;
-			} else {
-				index = -1;
+		int start = 0;
+		for (int nextSlot = source.indexOf("{$"); nextSlot != -1; nextSlot = source.indexOf("{$", start)) {
+			int endSlot = source.indexOf("}", nextSlot);
+			if (endSlot == -1) {
+				break;
 			}
+
+			segmentList.add(source.substring(start, nextSlot));
+			keyList.add(source.substring(nextSlot + 2, endSlot));
+			start = endSlot + 1;
 		}
+		segmentList.add(source.substring(start));
 		
+		initialize(segmentList, keyList);
+	}
+	
+	/**
+	 * Initializes from a template already split into segments; keys.size() == segments.size() - 1
+	 * 
+	 * @methodtype initialization
+	 */
+	public void initialize(List<String> segmentList, List<String> keyList) {
 		int length = keyList.size();
-		keys = new String[length];
+		StringBuilder text = new StringBuilder();
+		for (String segment : segmentList) {
+			text.append(segment);
+		}
+		
+		keys = keyList.toArray(new String[length]);
+		segments = segmentList.toArray(new String[length + 1]);
+		encodedSegments = new byte[length + 1][];
+		for (int i = 0; i <= length; i++) {
+			encodedSegments[i] = segments[i].getBytes(StandardCharsets.UTF_8);
+		}
 		slots = new int[length];
+		valueIndices = new int[length];
+
+		List<WebPartSlot> slotList = new ArrayList<WebPartSlot>();
+		int position = 0;
 		for (int i = 0; i < length; i++) {
-			keys[i] = (String) keyList.get(i);
-			slots[i] = slotList.get(i);
+			position += segments[i].length();
+			slots[i] = position;
+
+			WebPartSlot slot = WebPartSlot.get(keys[i]);
+			int valueIndex = slotList.indexOf(slot);
+			if (valueIndex == -1) {
+				valueIndex = slotList.size();
+				slotList.add(slot);
+			}
+			valueIndices[i] = valueIndex;
+		}
+		valueSlots = slotList.toArray(new WebPartSlot[slotList.size()]);
+
+		int maxSlotId = -1;
+		for (WebPartSlot slot : valueSlots) {
+			maxSlotId = Math.max(maxSlotId, slot.getId());
+		}
+		valueIndicesBySlotId = new int[maxSlotId + 1];
+		Arrays.fill(valueIndicesBySlotId, -1);
+		for (int i = 0; i < valueSlots.length; i++) {
+			valueIndicesBySlotId[valueSlots[i].getId()] = i;
 		}
 		
-		template = buffer.toString();
+		template = text.toString();
 	}
 	
 	/**
@@ -118,4 +176,47 @@ public class WebPartTemplate {
 		return slots; // @FIXME needs cloning?
 	}
 
+	/**
+	 * 
+	 */
+	public String[] getSegments() {
+		return segments; // read-only by convention, like keys and slots
+	}
+
+	/**
+	 * 
+	 */
+	public byte[][] getEncodedSegments() {
+		return encodedSegments; // read-only by convention, like keys and slots
+	}
+
+	/**
+	 * 
+	 */
+	public int[] getValueIndices() {
+		return valueIndices; // read-only by convention, like keys and slots
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoValues() {
+		return valueSlots.length;
+	}
+
+	/**
+	 * Returns the index of the value for slot, or -1 if this template does not contain slot
+	 */
+	public int getValueIndex(WebPartSlot slot) {
+		int slotId = slot.getId();
+		return (slotId < valueIndicesBySlotId.length) ? valueIndicesBySlotId[slotId] : -1;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public WebPartSlot getValueSlot(int valueIndex) {
+		return valueSlots[valueIndex];
+	}
+
 }
@@ -20,17 +20,26 @@
 
 package org.wahlzeit.webparts;
 
-import java.util.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import org.wahlzeit.services.*;
 
 /**
  * The WebPartTemplateService creates WebPartTemplates upon request by reading them from disk.
  * It requires configuration with a template directory and uses the following naming convention: tmplDir/language/part-type/part-name.html
+ * All templates are preloaded in parallel; the cache is an immutable map that is replaced as a whole whenever a template changes.
  */
 public class WebPartTemplateService {
 
+	/**
+	 * 
+	 */
+	public static final String TEMPLATE_FILE_EXTENSION = ".html";
+
 	/**
 	 * 
 	 */
@@ -44,15 +53,26 @@ public class WebPartTemplateService {
 	}
 
 	/**
-	 *
+	 * Never modified; writers copy, change, and replace it while holding the service lock
 	 */
-	protected Map<String, WebPartTemplate> templates = new HashMap<String, WebPartTemplate>();
+	protected volatile Map<String, WebPartTemplate> templates = Collections.emptyMap();
+	
+	/**
+	 * Incremented whenever templates are reloaded, so that caches of rendered parts know when to drop out
+	 */
+	protected volatile long version = 0;
 
 	/**
 	 * 
 	 */
 	protected ConfigDir templatesDir = null;
 	
+	/**
+	 * 
+	 */
+	protected WatchService watchService = null;
+	protected Thread watchThread = null;
+	
 	/**
 	 *
 	 */
@@ -70,21 +90,37 @@ public class WebPartTemplateService {
 	/**
 	 * 
 	 */
-	public void setTemplatesDir(ConfigDir newTemplatesDir) {
+	public synchronized void setTemplatesDir(ConfigDir newTemplatesDir) {
 		templatesDir = newTemplatesDir;
+		templates = Collections.emptyMap();
+		version++;
 	}
-
+	
+	/**
+	 * 
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
 	/**
 	 * 
 	 */
+	public int getNoTemplates() {
+		return templates.size();
+	}
+
+	/**
+	 * Templates that were not preloaded, e.g. because they were added later, are loaded on first request
+	 */
 	public WebPartTemplate getTemplate(String lang, String name) {
-		String shortName = lang + File.separator + name;
+		String shortName = lang + '/' + name;
 		WebPartTemplate result = templates.get(shortName);
 
 		if (result == null) {
 			try {
-				loadTemplate(shortName);
-				result = templates.get(shortName);
+				result = loadTemplate(shortName);
+				putTemplate(result);
 			} catch (IOException ioex) {
 				SysLog.logThrowable(ioex);
 			}
@@ -94,36 +130,253 @@ public class WebPartTemplateService {
 	}
 	
 	/**
-	 * 
+	 * Reads and compiles all templates of all languages using noThreads threads, then replaces the cache
 	 */
-	protected void loadTemplate(String shortName) throws IOException {
-		WebPartTemplate template = new WebPartTemplate(shortName);
-		String fileName = getTemplatesDir().getAbsoluteConfigFileName(shortName + ".html");
-		File file = new File(fileName);
-		SysLog.logSysInfo("file name", fileName, "opened HTML template file");
+	public void loadAllTemplates(int noThreads) {
+		long startTime = System.currentTimeMillis();
+		
+		Set<String> shortNames = new TreeSet<String>();
+		collectShortNames(Paths.get(getDefaultDirName()), shortNames);
+		collectShortNames(Paths.get(getCustomDirName()), shortNames);
 
-		FileReader reader = null;
+		List<Callable<WebPartTemplate>> tasks = new ArrayList<Callable<WebPartTemplate>>();
+		for (final String shortName : shortNames) {
+			tasks.add(new Callable<WebPartTemplate>() {
+				public WebPartTemplate call() throws IOException {
+					return loadTemplate(shortName);
+				}
+			});
+		}
+
+		Map<String, WebPartTemplate> newTemplates = new HashMap<String, WebPartTemplate>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, noThreads));
 		try {
-			reader = new FileReader(file);
-			
-			// @FIXME: Assumes files are always < 50000 bytes
-			char[] readBuffer = new char[50000];
-			int status = reader.read(readBuffer);
-
-			SysLog.logSysInfo("file size", Integer.toString(status), "read HTML template file");
-			
-			if (status != -1) {
-				String source = new String(readBuffer, 0, status);
-				template.initialize(source);
-				SysLog.logCreatedObject("WebPartTmpl", shortName);
+			for (Future<WebPartTemplate> future : executor.invokeAll(tasks)) {
+				try {
+					WebPartTemplate template = future.get();
+					newTemplates.put(template.getName(), template);
+				} catch (ExecutionException eex) {
+					SysLog.logThrowable(eex.getCause());
+				}
 			}
-
-			templates.put(shortName, template);
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			return;
 		} finally {
-			if (reader != null) {
-				reader.close();
+			executor.shutdown();
+		}
+
+		synchronized(this) {
+			templates = Collections.unmodifiableMap(newTemplates);
+			version++;
+		}
+		
+		long time = System.currentTimeMillis() - startTime;
+		SysLog.logSysInfo("loaded " + newTemplates.size() + " HTML templates in " + time + "ms");
+	}
+	
+	/**
+	 * Adds the short names of all templates below dir, a default or custom templates directory
+	 */
+	protected void collectShortNames(final Path dir, final Set<String> shortNames) {
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+		
+		try {
+			Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) {
+					String shortName = asShortName(dir, file);
+					if (shortName != null) {
+						shortNames.add(shortName);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+		}
+	}
+	
+	/**
+	 * Returns e.g. "en/pages/ShowPhotoPage" for dir/en/pages/ShowPhotoPage.html, or null if file is no template
+	 * 
+	 * @methodtype conversion
+	 */
+	protected String asShortName(Path dir, Path file) {
+		Path relativePath = dir.relativize(file);
+		String fileName = relativePath.getFileName().toString();
+		if ((relativePath.getNameCount() != 3) || !fileName.endsWith(TEMPLATE_FILE_EXTENSION)) {
+			return null;
+		}
+		
+		String name = fileName.substring(0, fileName.length() - TEMPLATE_FILE_EXTENSION.length());
+		return relativePath.getName(0) + "/" + relativePath.getName(1) + "/" + name;
+	}
+	
+	/**
+	 * Reads and compiles a template without touching the cache; may be called from any thread
+	 */
+	protected WebPartTemplate loadTemplate(String shortName) throws IOException {
+		String fileName = getTemplatesDir().getAbsoluteConfigFileName(shortName + TEMPLATE_FILE_EXTENSION);
+		byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+		SysLog.logSysInfo("file name", fileName, "read HTML template file of size " + bytes.length);
+
+		WebPartTemplate result = new WebPartTemplate(shortName);
+		result.initialize(new String(bytes, StandardCharsets.UTF_8));
+		SysLog.logCreatedObject("WebPartTmpl", shortName);
+		return result;
+	}
+	
+	/**
+	 * 
+	 */
+	protected synchronized void putTemplate(WebPartTemplate template) {
+		Map<String, WebPartTemplate> newTemplates = new HashMap<String, WebPartTemplate>(templates);
+		WebPartTemplate oldTemplate = newTemplates.put(template.getName(), template);
+		templates = Collections.unmodifiableMap(newTemplates);
+		if (oldTemplate != null) {
+			version++; // nothing can have been rendered with a template that was not there
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	protected synchronized void removeTemplate(String shortName) {
+		if (templates.containsKey(shortName)) {
+			Map<String, WebPartTemplate> newTemplates = new HashMap<String, WebPartTemplate>(templates);
+			newTemplates.remove(shortName);
+			templates = Collections.unmodifiableMap(newTemplates);
+			version++;
+		}
+	}
+	
+	/**
+	 * Reloads a template whose file was created, changed, or deleted
+	 */
+	protected void reloadTemplate(String shortName) {
+		String fileName = shortName + TEMPLATE_FILE_EXTENSION;
+		if (templatesDir.hasDefaultFile(fileName) || templatesDir.hasCustomFile(fileName)) {
+			try {
+				putTemplate(loadTemplate(shortName));
+				SysLog.logSysInfo("reloaded HTML template " + shortName);
+			} catch (IOException ioex) {
+				SysLog.logThrowable(ioex); // keep the old template; the file may be half-written
+			}
+		} else {
+			removeTemplate(shortName);
+		}
+	}
+	
+	/**
+	 * Starts a daemon thread that reloads templates as their files change
+	 */
+	public synchronized void startWatching() throws IOException {
+		if (watchService != null) {
+			return;
+		}
+
+		final Map<WatchKey, Path> baseDirs = new HashMap<WatchKey, Path>();
+		watchService = FileSystems.getDefault().newWatchService();
+		registerTypeDirs(Paths.get(getDefaultDirName()), baseDirs);
+		registerTypeDirs(Paths.get(getCustomDirName()), baseDirs);
+		
+		final WatchService myWatchService = watchService;
+		watchThread = new Thread(new Runnable() {
+			public void run() {
+				watchTemplates(myWatchService, baseDirs);
+			}
+		}, "WebPartTemplateWatcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+	
+	/**
+	 * Registers the part-type directories below dir; baseDirs maps their keys to dir
+	 */
+	protected void registerTypeDirs(Path dir, Map<WatchKey, Path> baseDirs) throws IOException {
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+		
+		try (DirectoryStream<Path> langDirs = Files.newDirectoryStream(dir)) {
+			for (Path langDir : langDirs) {
+				if (!Files.isDirectory(langDir)) {
+					continue;
+				}
+				try (DirectoryStream<Path> typeDirs = Files.newDirectoryStream(langDir)) {
+					for (Path typeDir : typeDirs) {
+						if (Files.isDirectory(typeDir)) {
+							WatchKey key = typeDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+							baseDirs.put(key, dir);
+						}
+					}
+				}
 			}
 		}
 	}
 	
+	/**
+	 * 
+	 */
+	protected void watchTemplates(WatchService myWatchService, Map<WatchKey, Path> baseDirs) {
+		try {
+			while (true) {
+				WatchKey key = myWatchService.take();
+				Path typeDir = (Path) key.watchable();
+				Path baseDir = baseDirs.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						loadAllTemplates(Runtime.getRuntime().availableProcessors());
+						continue;
+					}
+					
+					String shortName = asShortName(baseDir, typeDir.resolve((Path) event.context()));
+					if (shortName != null) {
+						reloadTemplate(shortName);
+					}
+				}
+				key.reset();
+			}
+		} catch (InterruptedException iex) {
+			// stop watching
+		} catch (ClosedWatchServiceException cwsex) {
+			// stop watching
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public synchronized void stopWatching() {
+		if (watchService == null) {
+			return;
+		}
+
+		try {
+			watchService.close();
+		} catch (IOException ioex) {
+			SysLog.logThrowable(ioex);
+		}
+		watchThread.interrupt();
+
+		watchService = null;
+		watchThread = null;
+	}
+	
+	/**
+	 * 
+	 */
+	protected String getDefaultDirName() {
+		return templatesDir.asString() + File.separator + ConfigDir.DEFAULT_DIR_NAME;
+	}
+
+	/**
+	 * 
+	 */
+	protected String getCustomDirName() {
+		return templatesDir.asString() + File.separator + ConfigDir.CUSTOM_DIR_NAME;
+	}
+	
 }
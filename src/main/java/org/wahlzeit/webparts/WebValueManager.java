@@ -21,6 +21,7 @@
 package org.wahlzeit.webparts;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * The WebValueManager provides (and creates on-demand) WebValues.
@@ -41,9 +42,9 @@ public class WebValueManager {
 	}
 
 	/**
-	 *
+	 * Filled by concurrent requests
 	 */
-	protected Map<String, WebValue> webValues = new HashMap<String, WebValue>();
+	protected Map<String, WebValue> webValues = new ConcurrentHashMap<String, WebValue>();
 
 	/**
 	 *
@@ -36,9 +36,13 @@ CREATE TABLE photos (
 	status integer,
 	praise_sum integer,
 	no_votes integer,
-	creation_time bigint
+	creation_time bigint,
+	content_hash text,
+	image_id integer
 );
 
+CREATE INDEX photos_content_hash ON photos (content_hash);
+
 CREATE TABLE tags (
 	tag text,
 	photo_id integer
@@ -55,6 +59,15 @@ CREATE TABLE cases (
 	decision_time bigint
 );
 
+CREATE UNLOGGED TABLE sessions (
+	name text PRIMARY KEY,
+	version bigint,
+	data bytea,
+	access_time bigint
+);
+
+CREATE INDEX sessions_access_time ON sessions (access_time);
+
 CREATE TABLE globals (
 	id integer PRIMARY KEY,
 	last_user_id integer,
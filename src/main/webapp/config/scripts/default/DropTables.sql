@@ -1,4 +1,5 @@
 DROP TABLE IF EXISTS globals;
+DROP TABLE IF EXISTS sessions;
 DROP TABLE IF EXISTS cases;
 DROP TABLE IF EXISTS tags;
 DROP TABLE IF EXISTS photos;
@@ -0,0 +1,4 @@
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS content_hash text;
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS image_id integer;
+
+CREATE INDEX IF NOT EXISTS photos_content_hash ON photos (content_hash);
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.benchmarks;
+
+/**
+ * A Benchmark measures the average time of one operation after a warm-up phase.
+ * Subclasses implement runOnce(); its results are consumed so the JIT cannot discard the work.
+ */
+public abstract class Benchmark {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_WARMUP_ROUNDS = 5;
+	public static final int DEFAULT_MEASURED_ROUNDS = 10;
+	public static final long DEFAULT_ROUND_MILLIS = 500;
+
+	/**
+	 * Sink for results of runOnce()
+	 */
+	protected static volatile int sink = 0;
+
+	/**
+	 *
+	 */
+	public String getName() {
+		String result = getClass().getSimpleName();
+		return result.endsWith("Benchmark") ? result.substring(0, result.length() - "Benchmark".length()) : result;
+	}
+
+	/**
+	 *
+	 */
+	protected void setUp() throws Exception {
+		// do nothing
+	}
+
+	/**
+	 * Performs the measured operation once
+	 */
+	protected abstract Object runOnce() throws Exception;
+
+	/**
+	 *
+	 */
+	protected void tearDown() throws Exception {
+		// do nothing
+	}
+
+	/**
+	 * Runs the benchmark and returns the average nanoseconds per operation of the measured rounds
+	 */
+	public double run() throws Exception {
+		setUp();
+		try {
+			for (int i = 0; i < DEFAULT_WARMUP_ROUNDS; i++) {
+				runRound();
+			}
+
+			long noOperations = 0;
+			long nanos = 0;
+			for (int i = 0; i < DEFAULT_MEASURED_ROUNDS; i++) {
+				long[] round = runRound();
+				noOperations += round[0];
+				nanos += round[1];
+			}
+
+			double result = (double) nanos / noOperations;
+			System.out.println(String.format("%-40s %12.1f ns/op %12.0f ops/s", getName(), result, 1e9 / result));
+			return result;
+		} finally {
+			tearDown();
+		}
+	}
+
+	/**
+	 * Returns the number of operations and the nanoseconds they took
+	 */
+	protected long[] runRound() throws Exception {
+		long roundNanos = DEFAULT_ROUND_MILLIS * 1000000L;
+		long start = System.nanoTime();
+		long now = start;
+		long noOperations = 0;
+		int hash = 0;
+		while (now - start < roundNanos) {
+			for (int i = 0; i < 16; i++) {
+				Object result = runOnce();
+				hash += (result != null) ? result.hashCode() : 0;
+			}
+			noOperations += 16;
+			now = System.nanoTime();
+		}
+
+		sink += hash;
+		return new long[] { noOperations, now - start };
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.benchmarks;
+
+import java.io.*;
+import java.util.zip.*;
+
+import org.wahlzeit.handlers.*;
+import org.wahlzeit.model.*;
+import org.wahlzeit.utils.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * Gzips a rendered show photo page like the CompressionFilter does, with a pooled Deflater or,
+ * for comparison, with a GZIPOutputStream that allocates and ends its own Deflater.
+ * Reports the CPU time per page; the page size before and after compression is printed afterwards.
+ */
+public class GzipPageBenchmark extends Benchmark {
+
+	/**
+	 *
+	 */
+	public static final int COMPRESSION_LEVEL = 6;
+
+	/**
+	 *
+	 */
+	protected boolean isToPoolDeflaters;
+	protected DeflaterPool deflaters = new DeflaterPool(COMPRESSION_LEVEL, 4);
+	protected byte[] page;
+	protected ByteArrayOutputStream byteOut = new ByteArrayOutputStream(16 * 1024);
+
+	/**
+	 *
+	 */
+	public GzipPageBenchmark(boolean poolDeflaters) {
+		isToPoolDeflaters = poolDeflaters;
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		return isToPoolDeflaters ? "GzipPage" : "GzipPageUnpooled";
+	}
+
+	/**
+	 *
+	 */
+	protected void setUp() throws Exception {
+		ShowPhotoPageBenchmark.setUpServices();
+		UserSession session = new UserSession("benchmark", "http://localhost:8080/wahlzeit/");
+		session.setPhoto(ShowPhotoPageBenchmark.createPhoto());
+		WebPart part = WebPartHandlerManager.getWebPageHandler(PartUtil.SHOW_PHOTO_PAGE_NAME).makeWebPart(session);
+
+		ByteArrayOutputStream pageOut = new ByteArrayOutputStream();
+		Utf8Writer out = new Utf8Writer(pageOut);
+		part.writeOn(out);
+		out.flush();
+		page = pageOut.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	protected Object runOnce() throws Exception {
+		byteOut.reset();
+		if (isToPoolDeflaters) {
+			try (OutputStream out = new PooledGzipOutputStream(byteOut, deflaters)) {
+				out.write(page);
+			}
+		} else {
+			try (OutputStream out = new GZIPOutputStream(byteOut) {
+				{ def.setLevel(COMPRESSION_LEVEL); }
+			}) {
+				out.write(page);
+			}
+		}
+		return byteOut.size();
+	}
+
+	/**
+	 *
+	 */
+	protected void tearDown() throws Exception {
+		System.out.println(String.format("%-40s %12d bytes %12d gzipped", getName(), page.length, byteOut.size()));
+		deflaters.close();
+	}
+
+}
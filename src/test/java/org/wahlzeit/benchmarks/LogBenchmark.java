@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.benchmarks;
+
+import java.text.*;
+
+import org.apache.log4j.*;
+import org.wahlzeit.services.*;
+
+/**
+ * Logs a typical system entry: through the AsyncLogWriter into a sink, with the log level turned off,
+ * or, for comparison, the way Log used to build entries, with a new StringBuffer and a shared SimpleDateFormat.
+ */
+public class LogBenchmark extends Benchmark {
+
+	/**
+	 *
+	 */
+	public static final int ASYNC = 0;
+	public static final int DISABLED = 1;
+	public static final int STRING_BUFFER = 2;
+	
+	/**
+	 *
+	 */
+	protected static DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss SSS");
+
+	/**
+	 *
+	 */
+	protected int mode;
+	protected AsyncLogWriter sinkWriter;
+	protected AsyncLogWriter savedWriter;
+	protected Level savedLevel;
+	protected Logger logger = Logger.getLogger(Log.class.getName());
+	protected volatile int noWrittenChars = 0;
+
+	/**
+	 *
+	 */
+	public LogBenchmark(int myMode) {
+		mode = myMode;
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		switch (mode) {
+			case DISABLED: return "LogDisabled";
+			case STRING_BUFFER: return "LogStringBuffer";
+			default: return "Log";
+		}
+	}
+	
+	/**
+	 * Entries are written into a sink instead of the console
+	 */
+	protected void setUp() throws Exception {
+		sinkWriter = new AsyncLogWriter(logger, AsyncLogWriter.DEFAULT_CAPACITY) {
+			protected void write(StringBuilder entry) {
+				noWrittenChars += entry.length();
+			}
+		};
+		sinkWriter.start();
+		savedWriter = Log.setWriter(sinkWriter);
+		
+		savedLevel = logger.getLevel();
+		if (mode == DISABLED) {
+			logger.setLevel(Level.WARN);
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected Object runOnce() throws Exception {
+		if (mode == STRING_BUFFER) {
+			StringBuffer sb = createStringBufferEntry("sl");
+			sb.append(", " + "logType" + "=" + "info");
+			sb.append(", " + "redirect" + "=" + "showPhoto");
+			return sb.toString().length();
+		}
+		
+		SysLog.logSysInfo("redirect", "showPhoto");
+		return null;
+	}
+	
+	/**
+	 * Log.createLogEntry as it used to be
+	 */
+	protected static StringBuffer createStringBufferEntry(String level) {
+		StringBuffer sb = new StringBuffer(256);
+		String date = null;
+		synchronized (dateFormatter) {
+			date = dateFormatter.format(System.currentTimeMillis());
+		}
+		sb.append(date);
+		sb.append(", " + "level" + "=" + level);
+		sb.append(", " + "session" + "=" + "no-session");
+		sb.append(", " + "databaseConnection" + "=" + "no-database-connection");
+		sb.append(", " + "threadId" + "=" + String.valueOf(Thread.currentThread().getId()));
+		sb.append(", " + "client" + "=" + "no-client");
+		return sb;
+	}
+	
+	/**
+	 *
+	 */
+	protected void tearDown() throws Exception {
+		logger.setLevel(savedLevel);
+		Log.setWriter(savedWriter);
+		sinkWriter.stop();
+		if (sinkWriter.getNoWaits() > 0) {
+			System.out.println(getName() + ": log queue was full " + sinkWriter.getNoWaits() + " times");
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.benchmarks;
+
+import java.io.*;
+
+import org.wahlzeit.utils.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * Masks typical tag, caption, and user name values for the web: returning strings, writing into a
+ * Utf8Writer, or, for comparison, the way HtmlUtil.maskForWeb used to, with a new StringBuffer per value.
+ */
+public class MaskForWebBenchmark extends Benchmark {
+
+	/**
+	 * Most values need no masking at all
+	 */
+	protected static final String[] VALUES = {
+		"flower, red, summer",
+		"Sunset at the beach, taken by benchmark",
+		"jane_doe",
+		"Tom & Jerry's <favorite> \"spot\"",
+		"mountains, snow, alps, winter, skiing",
+		"max.mustermann"
+	};
+
+	/**
+	 *
+	 */
+	public static final int STRINGS = 0;
+	public static final int WRITER = 1;
+	public static final int STRING_BUFFER = 2;
+
+	/**
+	 *
+	 */
+	protected int mode;
+	protected ByteArrayOutputStream byteOut = new ByteArrayOutputStream(1024);
+	protected Utf8Writer utf8Out = new Utf8Writer();
+
+	/**
+	 *
+	 */
+	public MaskForWebBenchmark(int myMode) {
+		mode = myMode;
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		switch (mode) {
+			case WRITER: return "MaskForWebWriter";
+			case STRING_BUFFER: return "MaskForWebStringBuffer";
+			default: return "MaskForWeb";
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected Object runOnce() throws Exception {
+		int result = 0;
+		if (mode == WRITER) {
+			byteOut.reset();
+			utf8Out.reset(byteOut);
+			for (String value : VALUES) {
+				HtmlUtil.maskForWeb(utf8Out, value);
+			}
+			utf8Out.flush();
+			result = byteOut.size();
+		} else {
+			for (String value : VALUES) {
+				String masked = (mode == STRINGS) ? HtmlUtil.maskForWeb(value) : maskWithStringBuffer(value);
+				result += masked.length();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * HtmlUtil.maskForWeb as it used to be
+	 */
+	protected static String maskWithStringBuffer(String s) {
+		StringBuffer result = new StringBuffer(s.length() + 16);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '&') {
+				result.append("&amp;");
+			} else if (c == '"') {
+				result.append("&quot;");
+			} else if (c == '<') {
+				result.append("&lt;");
+			} else if (c == '>') {
+				result.append("&gt;");
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.benchmarks;
+
+import java.util.*;
+
+/**
+ * Runs all benchmarks, or those named on the command line, e.g. "ShowPhotoPage".
+ * Run with "gradle benchmark" or "gradle benchmark -Pbenchmarks=ShowPhotoPage".
+ */
+public class RunBenchmarks {
+
+	/**
+	 *
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> result = new ArrayList<Benchmark>();
+		result.add(new ShowPhotoPageBenchmark());
+		result.add(new ShowPhotoPageBenchmark(true, false));
+		result.add(new ShowPhotoPageBenchmark(false, false));
+		result.add(new ShowInfoPageBenchmark(true));
+		result.add(new ShowInfoPageBenchmark(false));
+		result.add(new GzipPageBenchmark(true));
+		result.add(new GzipPageBenchmark(false));
+		result.add(new MaskForWebBenchmark(MaskForWebBenchmark.STRINGS));
+		result.add(new MaskForWebBenchmark(MaskForWebBenchmark.WRITER));
+		result.add(new MaskForWebBenchmark(MaskForWebBenchmark.STRING_BUFFER));
+		result.add(new LogBenchmark(LogBenchmark.ASYNC));
+		result.add(new LogBenchmark(LogBenchmark.DISABLED));
+		result.add(new LogBenchmark(LogBenchmark.STRING_BUFFER));
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	public static void main(String[] argv) throws Exception {
+		Set<String> names = new HashSet<String>(Arrays.asList(argv));
+		for (Benchmark benchmark : getBenchmarks()) {
+			if (names.isEmpty() || names.contains(benchmark.getName())) {
+				benchmark.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.benchmarks;
+
+import java.io.*;
+
+import org.wahlzeit.handlers.*;
+import org.wahlzeit.model.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * Renders the about page for a guest, with or without the WebPartFragmentCache.
+ * Info parts and menus depend on template, language, and access rights only.
+ */
+public class ShowInfoPageBenchmark extends Benchmark {
+
+	/**
+	 *
+	 */
+	protected UserSession session;
+	protected WebPageHandler handler;
+	protected boolean isToUseCache;
+	protected ByteArrayOutputStream byteOut = new ByteArrayOutputStream(16 * 1024);
+	protected Utf8Writer utf8Out = new Utf8Writer();
+
+	/**
+	 *
+	 */
+	public ShowInfoPageBenchmark(boolean useCache) {
+		isToUseCache = useCache;
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		return isToUseCache ? "ShowInfoPage" : "ShowInfoPageUncached";
+	}
+
+	/**
+	 *
+	 */
+	protected void setUp() throws Exception {
+		ShowPhotoPageBenchmark.setUpServices();
+		WebPartFragmentCache.getInstance().setEnabled(isToUseCache);
+		session = new UserSession("benchmark", "http://localhost:8080/wahlzeit/");
+		handler = WebPartHandlerManager.getWebPageHandler(PartUtil.ABOUT_PAGE_NAME);
+	}
+
+	/**
+	 *
+	 */
+	protected Object runOnce() throws Exception {
+		WebPart page = handler.makeWebPart(session);
+		byteOut.reset();
+		utf8Out.reset(byteOut);
+		page.writeOn(utf8Out);
+		utf8Out.flush();
+		return byteOut.size();
+	}
+
+	/**
+	 *
+	 */
+	protected void tearDown() throws Exception {
+		WebPartFragmentCache.getInstance().setEnabled(true);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.benchmarks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+import org.wahlzeit.handlers.*;
+import org.wahlzeit.main.ServiceMain;
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+import org.wahlzeit.webparts.*;
+
+/**
+ * Renders the show photo page for a guest end to end: handler, templates, nested parts, writing.
+ * Writes UTF-8 bytes through a Utf8Writer like AbstractServlet does or, for comparison, through a
+ * charset encoding Writer like the one of ServletResponse.getWriter().
+ * Needs no database; the photo is set up in memory.
+ */
+public class ShowPhotoPageBenchmark extends Benchmark {
+
+	/**
+	 *
+	 */
+	public static final String ROOT_DIR = "src/main/webapp";
+
+	/**
+	 *
+	 */
+	protected UserSession session;
+	protected Photo photo;
+	protected WebPageHandler handler;
+	protected boolean isToWriteBytes;
+	protected boolean isToUseCache;
+	protected ByteArrayOutputStream byteOut = new ByteArrayOutputStream(16 * 1024);
+	protected Utf8Writer utf8Out = new Utf8Writer();
+
+	/**
+	 *
+	 */
+	public ShowPhotoPageBenchmark() {
+		this(true, true);
+	}
+
+	/**
+	 * Unless useCache, the photo changes before each run, so that no cached fragment or page skeleton applies
+	 */
+	public ShowPhotoPageBenchmark(boolean writeBytes, boolean useCache) {
+		isToWriteBytes = writeBytes;
+		isToUseCache = useCache;
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		String result = isToWriteBytes ? "ShowPhotoPage" : "ShowPhotoPageChars";
+		return isToUseCache ? result : result + "Uncached";
+	}
+
+	/**
+	 * Configures what ServiceMain would, minus database and agents
+	 */
+	public static void setUpServices() {
+		if (WebPartTemplateService.getInstance().getTemplatesDir() == null) {
+			SysConfig.setInstance(new SysConfig(ROOT_DIR, "localhost"));
+			WebPartTemplateService.getInstance().setTemplatesDir(SysConfig.getTemplatesDir());
+			ServiceMain.getInstance().configureWebPartHandlers();
+			ServiceMain.getInstance().configureLanguageModels();
+		}
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static Photo createPhoto() throws MalformedURLException {
+		Photo result = PhotoFactory.getInstance().createPhoto(PhotoId.getNextId());
+		result.setWidthAndHeight(1200, 900);
+		result.setOwnerName("benchmark");
+		result.setOwnerHomePage(new URL("http://wahlzeit.org/"));
+		result.setTags(new Tags("flower, red, summer"));
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected void setUp() throws Exception {
+		setUpServices();
+		session = new UserSession("benchmark", "http://localhost:8080/wahlzeit/");
+		photo = createPhoto();
+		handler = WebPartHandlerManager.getWebPageHandler(PartUtil.SHOW_PHOTO_PAGE_NAME);
+	}
+
+	/**
+	 *
+	 */
+	protected Object runOnce() throws Exception {
+		if (!isToUseCache) {
+			photo.touch();
+		}
+		session.setPhoto(photo);
+		WebPart page = handler.makeWebPart(session);
+		session.clearDisplayedPhotos();
+		if (isToWriteBytes) {
+			byteOut.reset();
+			utf8Out.reset(byteOut);
+			page.writeOn(utf8Out);
+			utf8Out.flush();
+			return byteOut.size();
+		} else {
+			byteOut.reset();
+			Writer charOut = new OutputStreamWriter(byteOut, StandardCharsets.UTF_8);
+			page.writeOn(charOut);
+			charOut.flush();
+			return byteOut.size();
+		}
+	}
+
+}
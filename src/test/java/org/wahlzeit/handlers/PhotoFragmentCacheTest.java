@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.handlers;
+
+import java.io.IOException;
+
+import org.junit.*;
+import org.wahlzeit.model.*;
+import org.wahlzeit.webparts.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PhotoFragmentCache class and the DataObject version it relies on.
+ */
+public class PhotoFragmentCacheTest {
+
+	/**
+	 *
+	 */
+	protected PhotoFragmentCache cache;
+	protected Photo photo;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		cache = new PhotoFragmentCache(16, 2);
+		photo = new Photo(PhotoId.getIdFromInt(4711));
+	}
+
+	/**
+	 *
+	 */
+	protected long getTemplatesVersion() {
+		return WebPartTemplateService.getInstance().getVersion();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testVersionChangesWithEveryWrite() {
+		long version = photo.getVersion();
+		photo.setTags(new Tags("flower"));
+		assertTrue(photo.getVersion() > version);
+
+		version = photo.getVersion();
+		photo.resetWriteCount();
+		assertEquals(version, photo.getVersion());
+
+		assertNotEquals(version, new Photo(PhotoId.getIdFromInt(4712)).getVersion());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testChangedPhotoMissesCache() {
+		String key = PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.CAPTION, "en");
+		cache.putString(key, photo.getVersion(), getTemplatesVersion(), "caption");
+		assertEquals("caption", cache.getString(key, photo.getVersion()));
+		assertNull(cache.getString(PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.CAPTION, "de"), photo.getVersion()));
+
+		photo.addToPraise(5);
+		assertNull(cache.getString(key, photo.getVersion()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFragmentOfOlderTemplatesMissesCache() throws IOException {
+		String key = PhotoFragmentCache.asKey(photo.getId().asString(), PhotoFragmentCache.USER_PHOTO_FORM, "en");
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("<p>{$id}</p>");
+		WebPart part = new WebPart(template);
+		part.addString("id", photo.getId().asString());
+
+		WebPartFragment fragment = cache.putFragment(key, photo.getVersion(), getTemplatesVersion(), part);
+		assertEquals("<p>" + photo.getId().asString() + "</p>", fragment.asString());
+		assertSame(fragment, cache.getFragment(key, photo.getVersion()));
+
+		cache.putFragment(key, photo.getVersion(), getTemplatesVersion() - 1, part);
+		assertNull(cache.getFragment(key, photo.getVersion()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSkeletonsDoNotEvictFragments() {
+		String id = photo.getId().asString();
+		String key = PhotoFragmentCache.asKey(id, PhotoFragmentCache.CAPTION, "en");
+		cache.putString(key, photo.getVersion(), getTemplatesVersion(), "caption");
+
+		String[] pageKeys = new String[3];
+		for (int i = 0; i < pageKeys.length; i++) {
+			pageKeys[i] = PhotoFragmentCache.asKey(id, PhotoFragmentCache.GUEST_PAGE, "en") + "|medium|http://site" + i;
+			WebPartTemplate skeleton = new WebPartTemplate(pageKeys[i]);
+			skeleton.initialize("<html>" + i + "</html>");
+			cache.putSkeleton(pageKeys[i], photo.getVersion(), getTemplatesVersion(), skeleton);
+		}
+
+		assertEquals(1, cache.getNoEntries());
+		assertEquals(2, cache.getNoSkeletons());
+		assertEquals("caption", cache.getString(key, photo.getVersion()));
+		assertNull(cache.getSkeleton(pageKeys[0], photo.getVersion()));
+		assertNotNull(cache.getSkeleton(pageKeys[2], photo.getVersion()));
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.handlers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the ShowPhotoPageHandler class.
+ */
+public class ShowPhotoPageHandlerTest {
+
+	@ClassRule
+	public static SysConfigProvider sysConfigProvider = new SysConfigProvider();
+
+	/**
+	 *
+	 */
+	protected ShowPhotoPageHandler handler = new ShowPhotoPageHandler();
+	protected Photo photo;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		LanguageConfigs.put(Language.ENGLISH, new EnglishModelConfig());
+		photo = new Photo(PhotoId.getNextId());
+		photo.setOwnerName("owner");
+	}
+
+	/**
+	 * Sessions create the generic PhotoFactory, which would keep later tests from setting theirs
+	 */
+	@After
+	public void tearDown() {
+		PhotoManager.dropInstance();
+		PhotoFactory.dropInstance();
+	}
+
+	/**
+	 *
+	 */
+	protected UserSession createSession(String userName) {
+		UserSession result = new UserSession("test", "http://localhost:8080/wahlzeit/");
+		result.setClient(new User(userName, "secret", userName + "@example.com", 0));
+		result.setPhoto(photo);
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOwnersGetOtherValidators() {
+		String ownerValidator = handler.getValidator(createSession("owner"));
+		String otherValidator = handler.getValidator(createSession("other"));
+		assertNotNull(ownerValidator);
+		assertFalse(ownerValidator.equals(otherValidator));
+		assertEquals(otherValidator, handler.getValidator(createSession("third")));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNotModifiedPhotoIsProcessed() {
+		UserSession us = createSession("other");
+		assertFalse(us.getPhotoFilter().isProcessedPhotoId(photo.getId()));
+		handler.makeNotModified(us);
+		assertTrue(us.getPhotoFilter().isProcessedPhotoId(photo.getId()));
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.main;
+
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.handlers.PartUtil;
+import org.wahlzeit.model.*;
+import org.wahlzeit.services.*;
+import org.wahlzeit.webparts.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the warm-up of the ServiceMain class; pages are not actually rendered.
+ */
+public class ServiceMainTest {
+
+	/**
+	 *
+	 */
+	protected List<String> renderedPages = new ArrayList<String>();
+	protected int noPhotoLookups = 0;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		LanguageConfigs.put(Language.ENGLISH, new EnglishModelConfig());
+	}
+
+	/**
+	 * Sessions create the generic PhotoFactory, which would keep later tests from setting theirs
+	 */
+	@After
+	public void tearDown() {
+		PhotoManager.dropInstance();
+		PhotoFactory.dropInstance();
+	}
+
+	/**
+	 *
+	 */
+	protected ServiceMain createServiceMain(final Photo photo) {
+		return new ServiceMain() {
+			protected Photo findWarmUpPhoto(UserSession us) {
+				noPhotoLookups++;
+				return photo;
+			}
+			protected boolean replayPageRender(UserSession us, String pageName, Utf8Writer out) {
+				renderedPages.add(pageName);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPhotoPageIsRenderedForAPhoto() {
+		Photo photo = new Photo(PhotoId.getNextId());
+		int noRounds = createServiceMain(photo).replayPageRenders(100);
+
+		assertTrue(noRounds > 1);
+		assertEquals(1, noPhotoLookups);
+		assertTrue(renderedPages.contains(photo.getId().asString()));
+		assertFalse(renderedPages.contains(PartUtil.SHOW_PHOTO_PAGE_NAME));
+		assertTrue(renderedPages.contains(PartUtil.ABOUT_PAGE_NAME));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWithoutPhotosTheDonePageIsRendered() {
+		createServiceMain(null).replayPageRenders(100);
+		assertEquals(1, noPhotoLookups);
+		assertTrue(renderedPages.contains(PartUtil.SHOW_PHOTO_PAGE_NAME));
+	}
+
+}
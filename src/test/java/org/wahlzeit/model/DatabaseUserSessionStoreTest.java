@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+import org.wahlzeit.services.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the DatabaseUserSessionStore class, with an in-memory sessions table two stores (nodes) share.
+ */
+public class DatabaseUserSessionStoreTest {
+
+	/**
+	 * 
+	 */
+	protected static class MemorySessionTable extends DatabaseUserSessionStore.SessionTable {
+		
+		protected Map<String, DatabaseUserSessionStore.StoredState> states = new HashMap<String, DatabaseUserSessionStore.StoredState>();
+		protected int noReads = 0;
+		protected int noWrites = 0;
+		protected int noTouches = 0;
+		protected boolean isFailing = false;
+		
+		protected void createTable() {
+			// do nothing
+		}
+		
+		protected DatabaseUserSessionStore.StoredState readState(String name, long version) {
+			noReads++;
+			DatabaseUserSessionStore.StoredState result = states.get(name);
+			return ((result != null) && (result.version != version)) ? result : null;
+		}
+		
+		protected void writeState(String name, DatabaseUserSessionStore.StoredState state, long accessTime) throws SQLException {
+			if (isFailing) {
+				throw new SQLException("database down");
+			}
+			noWrites++;
+			states.put(name, state);
+		}
+		
+		protected void touchState(String name, long accessTime) {
+			noTouches++;
+		}
+		
+		protected void deleteState(String name) {
+			states.remove(name);
+		}
+		
+		protected int deleteStatesAccessedBefore(long accessTime) {
+			return 0;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 */
+	protected MemorySessionTable sessionTable;
+	protected DatabaseUserSessionStore store;
+	protected DatabaseUserSessionStore otherStore;
+	protected PhotoFactory priorPhotoFactory;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		priorPhotoFactory = PhotoFactory.instance;
+		LanguageConfigs.put(Language.ENGLISH, new EnglishModelConfig());
+		LanguageConfigs.put(Language.GERMAN, new GermanModelConfig());
+		sessionTable = new MemorySessionTable();
+		store = createStore();
+		otherStore = createStore();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		PhotoFactory.instance = priorPhotoFactory; // sessions create the generic one otherwise
+	}
+
+	/**
+	 * 
+	 */
+	protected DatabaseUserSessionStore createStore() {
+		return new DatabaseUserSessionStore() {
+			protected SessionTable createSessionTable() {
+				return sessionTable;
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStateIsReadOnOtherNode() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		us.setConfiguration(LanguageConfigs.get(Language.GERMAN));
+		us.setPhotoSize(PhotoSize.LARGE);
+		us.setEmailAddress(EmailAddress.getFromString("guest@example.com"));
+		us.getPhotoFilter().setUserName("alice");
+		us.getPhotoFilter().processedPhotoIds.add(12);
+		us.praisedPhotoIds.add(7);
+		us.setSavedArg("tags", new String[] { "sky", "sea" });
+		store.addSession(us);
+		store.releaseSession(us);
+		assertEquals(1, sessionTable.noWrites);
+
+		UserSession result = otherStore.acquireSession("session1");
+		assertNotSame(us, result);
+		assertEquals(1, otherStore.getNoActivations());
+		assertEquals(us.storedVersion, result.storedVersion);
+		assertArrayEquals(us.storedState, result.storedState);
+		assertEquals(Language.GERMAN, result.cfg().getLanguage());
+		assertEquals(PhotoSize.LARGE, result.getPhotoSize());
+		assertEquals("guest@example.com", result.getEmailAddressAsString());
+		assertEquals("alice", result.getPhotoFilter().getUserName());
+		assertTrue(result.getPhotoFilter().isProcessedPhotoId(12));
+		assertTrue(result.praisedPhotoIds.contains(7));
+		assertArrayEquals(new String[] { "sky", "sea" }, (String[]) result.getSavedArg("tags"));
+
+		otherStore.releaseSession(result);
+		assertEquals(1, sessionTable.noWrites); // read back unchanged
+		assertNull(otherStore.acquireSession("session2"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionIsWrittenOnChangeOnly() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+		assertEquals(1, sessionTable.noWrites);
+		long version = us.storedVersion;
+
+		assertSame(us, store.acquireSession("session1"));
+		store.releaseSession(us);
+		assertEquals(1, sessionTable.noWrites);
+		assertEquals(0, sessionTable.noTouches);
+
+		us.storedTime -= DatabaseUserSessionStore.TOUCH_INTERVAL;
+		assertSame(us, store.acquireSession("session1"));
+		store.releaseSession(us);
+		assertEquals(1, sessionTable.noWrites);
+		assertEquals(1, sessionTable.noTouches);
+
+		assertSame(us, store.acquireSession("session1"));
+		us.setMessage("welcome back");
+		store.releaseSession(us);
+		assertEquals(2, sessionTable.noWrites);
+		assertTrue(us.storedVersion != version);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionIsReloadedIfChangedElsewhere() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+
+		UserSession other = otherStore.acquireSession("session1");
+		other.setMessage("changed elsewhere");
+		otherStore.releaseSession(other);
+
+		UserSession result = store.acquireSession("session1");
+		assertNotSame(us, result);
+		assertEquals(other.getMessage(), result.getMessage());
+		assertTrue(result.getClient() instanceof Guest); // one without email address
+		assertEquals(other.storedVersion, result.storedVersion);
+		assertEquals(1, store.getNoActivations());
+		
+		store.releaseSession(result);
+		assertSame(result, store.acquireSession("session1"));
+		assertEquals(1, store.getNoActivations());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOutdatedStateDoesNotReplaceResidentSession() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		store = new DatabaseUserSessionStore() {
+			protected SessionTable createSessionTable() {
+				return sessionTable;
+			}
+			protected UserSession doLoadSession(String name, UserSession resident) {
+				UserSession result = super.doLoadSession(name, resident);
+				resident.storedVersion = createVersion(); // another request stores the resident session meanwhile
+				return result;
+			}
+		};
+		store.addSession(us);
+		store.releaseSession(us);
+
+		UserSession other = otherStore.acquireSession("session1");
+		other.setMessage("changed elsewhere");
+		otherStore.releaseSession(other);
+
+		assertSame(us, store.acquireSession("session1"));
+		assertEquals(0, store.getNoActivations());
+		assertEquals(1, us.noActiveRequests);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionFailingToBeWrittenIsWrittenOnPassivation() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+		assertEquals(1, sessionTable.noWrites);
+
+		assertSame(us, store.acquireSession("session1"));
+		us.setMessage("not written");
+		sessionTable.isFailing = true;
+		store.releaseSession(us);
+		assertEquals(0, store.passivateIdleSessions(0));
+		assertEquals(1, store.getNoResidentSessions());
+
+		sessionTable.isFailing = false;
+		assertEquals(1, store.passivateIdleSessions(0));
+		assertEquals(2, sessionTable.noWrites);
+		assertEquals(0, store.getNoResidentSessions());
+
+		UserSession result = otherStore.acquireSession("session1");
+		assertEquals(us.getMessage(), result.getMessage());
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.wahlzeit.services.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the FileUserSessionStore class.
+ */
+public class FileUserSessionStoreTest {
+
+	/**
+	 * 
+	 */
+	protected Path sessionsDir;
+	protected FileUserSessionStore store;
+	protected PhotoFactory priorPhotoFactory;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() throws IOException {
+		priorPhotoFactory = PhotoFactory.instance;
+		LanguageConfigs.put(Language.ENGLISH, new EnglishModelConfig());
+		LanguageConfigs.put(Language.GERMAN, new GermanModelConfig());
+		sessionsDir = Files.createTempDirectory("sessions");
+		store = new FileUserSessionStore(sessionsDir.toString());
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() throws IOException {
+		PhotoFactory.instance = priorPhotoFactory; // sessions create the generic one otherwise
+		for (File file : sessionsDir.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.deleteIfExists(sessionsDir);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIdleSessionIsPassivatedAndActivated() {
+		UserSession us = new UserSession("session1", "http://localhost/");
+		us.setConfiguration(LanguageConfigs.get(Language.GERMAN));
+		us.setPhotoSize(PhotoSize.LARGE);
+		us.setConfirmationCode(4711);
+		us.setEmailAddress(EmailAddress.getFromString("guest@example.com"));
+		us.getPhotoFilter().setUserName("alice");
+		us.getPhotoFilter().processedPhotoIds.add(12);
+		us.getPhotoFilter().processedPhotoIds.add(300000);
+		us.praisedPhotoIds.add(7);
+		us.setMessage("welcome back");
+		us.setSavedArg("tags", new String[] { "sky", "sea" });
+
+		store.addSession(us);
+		assertEquals(0, store.passivateIdleSessions(0)); // in use
+		store.releaseSession(us);
+		assertEquals(0, store.passivateIdleSessions(60000)); // not idle for long enough
+		assertEquals(1, store.passivateIdleSessions(0));
+		assertEquals(0, store.getNoResidentSessions());
+		assertEquals(1, store.getNoPassivatedSessions());
+
+		UserSession result = store.acquireSession("session1");
+		assertNotSame(us, result);
+		assertEquals(1, store.getNoResidentSessions());
+		assertEquals(0, store.getNoPassivatedSessions());
+		assertEquals(1, store.getNoActivations());
+
+		assertEquals("http://localhost/", result.getSiteUrl());
+		assertEquals(Language.GERMAN, result.cfg().getLanguage());
+		assertEquals(PhotoSize.LARGE, result.getPhotoSize());
+		assertEquals(4711, result.getConfirmationCode());
+		assertTrue(result.getClient() instanceof Guest);
+		assertEquals("guest@example.com", result.getEmailAddressAsString());
+		assertEquals("alice", result.getPhotoFilter().getUserName());
+		assertTrue(result.getPhotoFilter().isProcessedPhotoId(12));
+		assertTrue(result.getPhotoFilter().isProcessedPhotoId(300000));
+		assertEquals(2, result.getPhotoFilter().getNoProcessedPhotoIds());
+		assertTrue(result.praisedPhotoIds.contains(7));
+		assertEquals(us.getMessage(), result.getMessage());
+		assertArrayEquals(new String[] { "sky", "sea" }, (String[]) result.getSavedArg("tags"));
+
+		store.releaseSession(result);
+		store.passivateIdleSessions(0);
+		store.removeSession("session1");
+		assertEquals(0, store.getNoPassivatedSessions());
+		assertNull(store.acquireSession("session1"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionInUseWhileWrittenStaysResident() {
+		store = new FileUserSessionStore(sessionsDir.toString()) {
+			protected boolean doPassivateSession(UserSession us) {
+				boolean result = super.doPassivateSession(us);
+				assertSame(us, acquireSession(us.getName())); // a request comes in meanwhile
+				return result;
+			}
+		};
+		
+		UserSession us = new UserSession("session3", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+		assertEquals(0, store.passivateIdleSessions(0));
+		assertEquals(1, store.getNoResidentSessions());
+		assertEquals(0, store.getNoPassivations());
+		assertEquals(0, store.getNoPassivatedSessions());
+		assertFalse(Files.exists(store.getSessionFile("session3")));
+		
+		store.releaseSession(us);
+		assertSame(us, store.acquireSession("session3"));
+		assertEquals(0, store.getNoActivations());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testGuestWithoutEmailAddressIsActivated() {
+		UserSession us = new UserSession("session4", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+		assertEquals(1, store.passivateIdleSessions(0));
+
+		UserSession result = store.acquireSession("session4");
+		assertNotNull(result);
+		assertTrue(result.getClient() instanceof Guest);
+		assertTrue(result.getClient().getEmailAddress().isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionFailingToBeWrittenStaysResident() {
+		UserSession failing = new UserSession("session5", "http://localhost/") {
+			public void writeOn(DataOutput out) {
+				throw new ConcurrentModificationException(); // as if a request changed it meanwhile
+			}
+		};
+		store.addSession(failing);
+		store.releaseSession(failing);
+		UserSession us = new UserSession("session6", "http://localhost/");
+		store.addSession(us);
+		store.releaseSession(us);
+
+		assertEquals(1, store.passivateIdleSessions(0));
+		assertSame(failing, store.acquireSession("session5"));
+		assertFalse(Files.exists(store.getSessionFile("session5")));
+		assertEquals(1, store.getNoPassivatedSessions());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionFileIsSmall() throws IOException {
+		UserSession us = new UserSession("session2", "http://localhost/");
+		for (int id = 1; id <= 1000; id++) {
+			us.getPhotoFilter().processedPhotoIds.add(id * 3);
+		}
+
+		store.addSession(us);
+		store.releaseSession(us);
+		store.passivateIdleSessions(0);
+		assertTrue(Files.size(store.getSessionFile("session2")) < 1100);
+	}
+
+}
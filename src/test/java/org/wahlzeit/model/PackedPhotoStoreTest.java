@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PackedPhotoStore class.
+ */
+public class PackedPhotoStoreTest {
+
+	@ClassRule
+	public static SysConfigProvider sysConfigProvider = new SysConfigProvider();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWrittenPhotoFileIsFound() throws Exception {
+		PackedPhotoStore store = new PackedPhotoStore(folder.getRoot().getPath(), 1 << 20);
+		PhotoId id = PhotoId.getNextId();
+		store.write(id, PhotoSize.THUMB, new byte[] { 1, 2, 3, 4, 5 });
+
+		PhotoStoreEntry entry = store.find(id.asString(), PhotoSize.THUMB);
+		assertEquals(5, entry.getLength());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, entry.readBytes());
+		assertNull(store.find(id.asString(), PhotoSize.SMALL));
+
+		ByteArrayOutputStream range = new ByteArrayOutputStream();
+		entry.transferTo(1, 3, range);
+		assertArrayEquals(new byte[] { 2, 3, 4 }, range.toByteArray());
+		store.close();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIndexIsRebuiltOnReopen() throws Exception {
+		PhotoId id = PhotoId.getNextId();
+		PackedPhotoStore store = new PackedPhotoStore(folder.getRoot().getPath(), 64);
+		store.write(id, PhotoSize.THUMB, new byte[40]);
+		store.write(id, PhotoSize.SMALL, new byte[40]);
+		store.write(id, PhotoSize.THUMB, new byte[] { 7 });
+		assertEquals(3, store.getNoVolumes());
+		store.close();
+
+		store = new PackedPhotoStore(folder.getRoot().getPath(), 64);
+		assertEquals(3, store.getNoVolumes());
+		assertEquals(2, store.getNoPhotoFiles());
+		assertArrayEquals(new byte[] { 7 }, store.find(id.asString(), PhotoSize.THUMB).readBytes());
+		assertEquals(40, store.find(id.asString(), PhotoSize.SMALL).getLength());
+		store.close();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTornRecordIsDropped() throws Exception {
+		PhotoId id = PhotoId.getNextId();
+		PackedPhotoStore store = new PackedPhotoStore(folder.getRoot().getPath(), 1 << 20);
+		store.write(id, PhotoSize.THUMB, new byte[10]);
+		store.write(id, PhotoSize.SMALL, new byte[10]);
+		store.close();
+
+		Path volume = folder.getRoot().toPath().resolve("volume-00000.dat");
+		try (FileChannel channel = FileChannel.open(volume, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		store = new PackedPhotoStore(folder.getRoot().getPath(), 1 << 20);
+		assertEquals(1, store.getNoPhotoFiles());
+		assertNotNull(store.find(id.asString(), PhotoSize.THUMB));
+		store.write(id, PhotoSize.SMALL, new byte[] { 9 });
+		assertArrayEquals(new byte[] { 9 }, store.find(id.asString(), PhotoSize.SMALL).readBytes());
+		store.close();
+	}
+
+}
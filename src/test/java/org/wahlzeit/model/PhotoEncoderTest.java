@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wahlzeit.services.SysConfig;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PhotoEncoder class.
+ */
+public class PhotoEncoderTest {
+
+	@ClassRule
+	public static SysConfigProvider sysConfigProvider = new SysConfigProvider();
+
+	private BufferedImage image;
+	private String priorProgressive;
+	private String priorStripMetadata;
+
+	@Before
+	public void initImage() {
+		priorProgressive = SysConfig.getInstance().getValue(SysConfig.JPEG_PROGRESSIVE);
+		priorStripMetadata = SysConfig.getInstance().getValue(SysConfig.JPEG_STRIP_METADATA);
+
+		image = new BufferedImage(420, 600, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, 420, 600, Color.BLUE));
+		g2d.fillRect(0, 0, 420, 600);
+		g2d.setColor(Color.WHITE);
+		g2d.drawString("Wahlzeit", 100, 300);
+		g2d.dispose();
+	}
+
+	@After
+	public void restoreConfig() {
+		SysConfig.getInstance().setValue(SysConfig.JPEG_PROGRESSIVE, priorProgressive);
+		SysConfig.getInstance().setValue(SysConfig.JPEG_STRIP_METADATA, priorStripMetadata);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEncodeProducesReadableJpeg() throws Exception {
+		byte[] bytes = PhotoEncoder.getInstance().encode(image, PhotoSize.MEDIUM);
+
+		assertEquals((byte) 0xFF, bytes[0]);
+		assertEquals((byte) 0xD8, bytes[1]);
+
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+		assertNotNull(decoded);
+		assertEquals(420, decoded.getWidth());
+		assertEquals(600, decoded.getHeight());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSmallerSizesAreCompressedHarder() throws Exception {
+		PhotoSize[] sizes = PhotoSize.values();
+		for (int i = 1; i < sizes.length; i++) {
+			assertTrue(sizes[i - 1].getJpegQuality() < sizes[i].getJpegQuality());
+		}
+
+		byte[] thumb = PhotoEncoder.getInstance().encode(image, PhotoSize.THUMB);
+		byte[] extraLarge = PhotoEncoder.getInstance().encode(image, PhotoSize.EXTRA_LARGE);
+		assertTrue(thumb.length < extraLarge.length);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStripMetadataOmitsJfifSegment() throws Exception {
+		SysConfig.getInstance().setValue(SysConfig.JPEG_STRIP_METADATA, "true");
+		byte[] stripped = PhotoEncoder.getInstance().encode(image, PhotoSize.SMALL);
+		assertFalse(isApp0Marker(stripped));
+
+		SysConfig.getInstance().setValue(SysConfig.JPEG_STRIP_METADATA, "false");
+		byte[] plain = PhotoEncoder.getInstance().encode(image, PhotoSize.SMALL);
+		assertTrue(isApp0Marker(plain));
+		assertTrue(stripped.length < plain.length);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testProgressiveOutputIsReadable() throws Exception {
+		SysConfig.getInstance().setValue(SysConfig.JPEG_PROGRESSIVE, "true");
+		byte[] bytes = PhotoEncoder.getInstance().encode(image, PhotoSize.LARGE);
+
+		assertNotNull(ImageIO.read(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testBytesWrittenAreCounted() throws Exception {
+		PhotoEncoder encoder = PhotoEncoder.getInstance();
+		long bytesBefore = encoder.getBytesWritten(PhotoSize.EXTRA_SMALL);
+		long filesBefore = encoder.getFilesWritten(PhotoSize.EXTRA_SMALL);
+
+		byte[] bytes = encoder.encode(image, PhotoSize.EXTRA_SMALL);
+
+		assertEquals(bytesBefore + bytes.length, encoder.getBytesWritten(PhotoSize.EXTRA_SMALL));
+		assertEquals(filesBefore + 1, encoder.getFilesWritten(PhotoSize.EXTRA_SMALL));
+	}
+
+	/**
+	 * A JFIF file starts with SOI (FFD8) immediately followed by APP0 (FFE0)
+	 */
+	private boolean isApp0Marker(byte[] bytes) {
+		return (bytes[2] == (byte) 0xFF) && (bytes[3] == (byte) 0xE0);
+	}
+
+}
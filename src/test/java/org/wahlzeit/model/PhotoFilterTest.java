@@ -19,10 +19,13 @@
  */
 package org.wahlzeit.model;
 
+import java.util.*;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -46,8 +49,8 @@ public class PhotoFilterTest {
 		assertEquals("", photoFilter.userName);
 		assertEquals(Tags.EMPTY_TAGS, photoFilter.tags);
 
-		assertEquals(0, photoFilter.processedPhotoIds.size());
-		assertEquals(0, photoFilter.displayablePhotoIds.size());
+		assertEquals(0, photoFilter.getNoProcessedPhotoIds());
+		assertEquals(0, photoFilter.getNoDisplayablePhotoIds());
 	}
 
 	/**
@@ -70,18 +73,149 @@ public class PhotoFilterTest {
 		photoFilter.setTags(new Tags("test"));
 		assertEquals("test", photoFilter.getTags().asString());
 
-		photoFilter.displayablePhotoIds.add(new PhotoId(3));
-		assertTrue(photoFilter.displayablePhotoIds.size() == 1);
+		photoFilter.setDisplayablePhotoIds(new int[] { 3 });
+		assertTrue(photoFilter.getNoDisplayablePhotoIds() == 1);
 
-		photoFilter.processedPhotoIds.add(new PhotoId(2));
-		assertTrue(photoFilter.processedPhotoIds.size() == 1);
+		photoFilter.processedPhotoIds.add(2);
+		assertTrue(photoFilter.getNoProcessedPhotoIds() == 1);
 
 		photoFilter.clear();
 
 		assertEquals("", photoFilter.getUserName());
 		assertEquals(Tags.EMPTY_TAGS, photoFilter.getTags());
-		assertTrue(photoFilter.displayablePhotoIds.isEmpty());
-		assertTrue(photoFilter.processedPhotoIds.isEmpty());
+		assertTrue(photoFilter.getNoDisplayablePhotoIds() == 0);
+		assertTrue(photoFilter.getNoProcessedPhotoIds() == 0);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRandomDisplayablePhotoIdSkipsProcessedIds() {
+		int currentId = PhotoId.getCurrentIdAsInt();
+		PhotoId.setCurrentIdFromInt(Math.max(currentId, 10));
+		try {
+			photoFilter.setDisplayablePhotoIds(new int[] { 3, 5, 7 });
+			photoFilter.processedPhotoIds.add(3);
+			photoFilter.processedPhotoIds.add(7);
+			assertTrue(photoFilter.isProcessedPhotoId(PhotoId.getIdFromInt(7)));
+			assertFalse(photoFilter.isProcessedPhotoId(5));
+
+			for (int i = 0; i < 10; i++) {
+				assertEquals(5, photoFilter.getRandomDisplayablePhotoId().asInt());
+			}
+
+			photoFilter.processedPhotoIds.add(5);
+			assertTrue(photoFilter.getRandomDisplayablePhotoId().isNullId());
+			assertEquals(0, photoFilter.getNoDisplayablePhotoIds());
+		} finally {
+			PhotoId.setCurrentIdFromInt(currentId);
+		}
+	}
+
+	/**
+	 * Bytes taken by the objects holding photo ids, with their headers; the LinkedList<PhotoId>
+	 * PhotoFilter used to keep took a list object and a node per id
+	 */
+	protected static final int ARRAY_HEADER_BYTES = 16;
+	protected static final int COMPACT_INT_SET_BYTES = 32;
+	protected static final int LINKED_LIST_BYTES = 32;
+	protected static final int LINKED_LIST_NODE_BYTES = 24;
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCandidatesAreSampledUniformly() {
+		int[] sample = new int[4];
+		for (int i = 0; i < 10; i++) {
+			sample = PhotoFilter.addToSample(sample, i, i);
+		}
+		assertEquals(16, sample.length);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, sample[i]);
+		}
+
+		int maxNoIds = PhotoFilter.MAX_NO_DISPLAYABLE_PHOTO_IDS;
+		int noOffered = 2 * maxNoIds;
+		long noSampledFromFirstHalf = 0;
+		int noRounds = 1000;
+		for (int round = 0; round < noRounds; round++) {
+			sample = new int[PhotoId.BUFFER_SIZE_INCREMENT];
+			for (int i = 0; i < noOffered; i++) {
+				sample = PhotoFilter.addToSample(sample, i, i);
+			}
+			assertEquals(maxNoIds, sample.length);
+			for (int id : sample) {
+				if (id < maxNoIds) {
+					noSampledFromFirstHalf++;
+				}
+			}
+		}
+
+		long expected = noRounds * maxNoIds / 2;
+		assertTrue("from first half: " + noSampledFromFirstHalf, Math.abs(noSampledFromFirstHalf - expected) < expected / 100);
+	}
+
+	/**
+	 * Guests browse all 100k photos; from a few page views to 10k, a session keeps a fraction of what it used to
+	 */
+	@Test
+	public void testMemoryFootprintOfBrowsingSessions() {
+		int noPhotos = 100000;
+		int currentId = PhotoId.getCurrentIdAsInt();
+		PhotoId.setCurrentIdFromInt(Math.max(currentId, noPhotos));
+		try {
+			for (int noPageViews : new int[] { 10, 100, 1000, 10000 }) {
+				PhotoFilter filter = browse(noPhotos, noPageViews);
+				assertEquals(noPageViews, filter.getNoProcessedPhotoIds());
+
+				// the old filter kept the candidates left and the processed ids, a node for every photo
+				long oldBytes = 2 * LINKED_LIST_BYTES + (long) noPhotos * LINKED_LIST_NODE_BYTES;
+				long newBytes = getRetainedBytes(filter);
+				assertTrue(noPageViews + " page views: " + newBytes + " bytes", 10 * newBytes <= oldBytes);
+			}
+		} finally {
+			PhotoId.setCurrentIdFromInt(currentId);
+		}
+	}
+
+	/**
+	 * Shows noPageViews photos, looking candidates up again as PhotoManager.getVisiblePhoto does
+	 */
+	protected static PhotoFilter browse(int noPhotos, int noPageViews) {
+		PhotoFilter result = new PhotoFilter();
+		for (int i = 0; i < noPageViews; i++) {
+			PhotoId id = result.getRandomDisplayablePhotoId();
+			if (id.isNullId()) {
+				result.setDisplayablePhotoIds(getUnprocessedPhotoIds(result, noPhotos));
+				id = result.getRandomDisplayablePhotoId();
+			}
+			result.processedPhotoIds.add(id.asInt());
+		}
+		return result;
+	}
+
+	/**
+	 * Samples candidates as PhotoManager.getFilteredPhotoIds does, with every photo matching
+	 */
+	protected static int[] getUnprocessedPhotoIds(PhotoFilter filter, int noPhotos) {
+		int[] result = new int[PhotoId.BUFFER_SIZE_INCREMENT];
+		int noResults = 0;
+		for (int id = 1; id <= noPhotos; id++) {
+			if (!filter.isProcessedPhotoId(id)) {
+				result = PhotoFilter.addToSample(result, noResults++, id);
+			}
+		}
+		return Arrays.copyOf(result, Math.min(noResults, result.length));
+	}
+
+	/**
+	 *
+	 */
+	protected static long getRetainedBytes(PhotoFilter filter) {
+		long result = ARRAY_HEADER_BYTES + 4L * filter.displayablePhotoIds.length;
+		return result + COMPACT_INT_SET_BYTES + ARRAY_HEADER_BYTES + filter.processedPhotoIds.getNoValueBytes();
 	}
 
 }
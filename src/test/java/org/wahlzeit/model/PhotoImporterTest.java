@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PhotoImporter class; photos are neither rendered nor saved to the database.
+ */
+public class PhotoImporterTest {
+
+	@ClassRule
+	public static SysConfigProvider sysConfigProvider = new SysConfigProvider();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 *
+	 */
+	protected PhotoFactory priorPhotoFactory;
+	protected User user;
+	protected Set<String> ownedHashes = new HashSet<String>();
+	protected Map<String, Photo> otherPhotos = new HashMap<String, Photo>();
+	protected List<Integer> batchSizes = new ArrayList<Integer>();
+
+	/**
+	 *
+	 */
+	protected PhotoImporter importer = new PhotoImporter() {
+		protected Set<String> findOwnedContentHashes(User user) {
+			return new HashSet<String>(ownedHashes);
+		}
+		protected Photo findPhotoByContentHash(String contentHash) {
+			return otherPhotos.get(contentHash);
+		}
+		protected Photo renderPhoto(File file, PhotoId id) {
+			return PhotoFactory.getInstance().createPhoto(id);
+		}
+		protected void savePhotos(User user, List<Photo> batch) {
+			batchSizes.add(batch.size());
+		}
+	};
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		priorPhotoFactory = PhotoFactory.instance;
+		user = new User("importer", "secret", "importer@example.com", 0);
+		importer.setNoThreads(2);
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		PhotoFactory.instance = priorPhotoFactory;
+	}
+
+	/**
+	 *
+	 */
+	protected File createFile(String name, String content) throws IOException {
+		File result = new File(folder.getRoot(), name);
+		Files.write(result.toPath(), content.getBytes("UTF-8"));
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected List<File> createFiles(int noFiles) throws IOException {
+		List<File> result = new ArrayList<File>();
+		for (int i = 0; i < noFiles; i++) {
+			result.add(createFile("photo" + i + ".jpg", "photo " + i));
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDuplicatesAreSkipped() throws Exception {
+		File owned = createFile("owned.jpg", "owned");
+		File fresh = createFile("fresh.jpg", "fresh");
+		File copy = createFile("copy.jpg", "fresh");
+		File othersImage = createFile("others.jpg", "others");
+		File missing = new File(folder.getRoot(), "missing.jpg");
+
+		ownedHashes.add(PhotoUtil.computeContentHash(owned));
+		Photo otherPhoto = PhotoFactory.getInstance().createPhoto(PhotoId.getNextId());
+		otherPhotos.put(PhotoUtil.computeContentHash(othersImage), otherPhoto);
+
+		importer.importPhotos(user, Arrays.asList(owned, fresh, copy, othersImage, missing));
+
+		assertEquals(2, importer.getNoImportedPhotos());
+		assertEquals(1, importer.getNoReusedImages());
+		assertEquals(2, importer.getNoSkippedFiles());
+		assertEquals(1, importer.getNoFailedFiles());
+		assertEquals(Arrays.asList(2), batchSizes);
+		assertEquals(2, user.getNoPhotos());
+
+		Set<String> contentHashes = new HashSet<String>();
+		for (Photo photo : user.getPhotos()) {
+			assertEquals(user.getId(), photo.getOwnerId());
+			contentHashes.add(photo.getContentHash());
+		}
+		assertTrue(contentHashes.contains(PhotoUtil.computeContentHash(fresh)));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPhotosArePersistedInBatches() throws Exception {
+		importer.importPhotos(user, createFiles(2 * PhotoImporter.DEFAULT_BATCH_SIZE + 50));
+		assertEquals(Arrays.asList(100, 100, 50), batchSizes);
+		assertEquals(250, importer.getNoImportedPhotos());
+		assertEquals(250, user.getNoPhotos());
+
+		batchSizes.clear();
+		importer.importPhotos(new User("second", "secret", "second@example.com", 0), createFiles(2 * PhotoImporter.DEFAULT_BATCH_SIZE));
+		assertEquals(Arrays.asList(100, 100), batchSizes);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReusedImagesFillUpBatches() throws Exception {
+		List<File> files = createFiles(4);
+		for (int i = 2; i < 4; i++) {
+			Photo otherPhoto = PhotoFactory.getInstance().createPhoto(PhotoId.getNextId());
+			otherPhotos.put(PhotoUtil.computeContentHash(files.get(i)), otherPhoto);
+		}
+
+		importer.setBatchSize(3);
+		importer.importPhotos(user, files);
+		assertEquals(Arrays.asList(3, 1), batchSizes);
+		assertEquals(2, importer.getNoReusedImages());
+		assertEquals(4, importer.getNoImportedPhotos());
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+import org.wahlzeit.services.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the content hash lookup of the PhotoManager class; the database is stood in for by a map.
+ */
+public class PhotoManagerTest {
+
+	/**
+	 * 
+	 */
+	protected static final String CONTENT_HASH = "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b";
+
+	/**
+	 * 
+	 */
+	protected Map<String, Photo> storedPhotos = new HashMap<String, Photo>();
+	protected List<Photo> addedPhotos = new ArrayList<Photo>();
+	protected int noQueries = 0;
+	protected PhotoManager manager;
+	protected PhotoFactory priorPhotoFactory;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		priorPhotoFactory = PhotoFactory.instance;
+		manager = new PhotoManager() {
+			protected PreparedStatement getReadingStatement(String stmt) {
+				return null;
+			}
+			protected Persistent readObject(PreparedStatement stmt, String value) {
+				noQueries++;
+				return storedPhotos.get(value);
+			}
+			public void addPhoto(Photo photo) {
+				addedPhotos.add(photo);
+				doAddPhoto(photo);
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		PhotoFactory.instance = priorPhotoFactory;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIdenticalContentReusesStoredImage() throws Exception {
+		Photo original = new Photo(PhotoId.getNextId());
+		original.setContentHash(CONTENT_HASH);
+		storedPhotos.put(CONTENT_HASH, original);
+
+		File missingFile = new File("no-such-photo.jpg"); // rendering it would fail
+		Photo result = manager.createPhoto(missingFile, CONTENT_HASH);
+		assertFalse(result.getId().isEqual(original.getId()));
+		assertTrue(result.getImageId().isEqual(original.getId()));
+		assertTrue(result.hasSharedImage());
+		assertEquals(CONTENT_HASH, result.getContentHash());
+		assertEquals(Arrays.asList(result), addedPhotos);
+		assertEquals(1, noQueries);
+
+		Photo second = manager.createPhoto(missingFile, CONTENT_HASH);
+		assertTrue(second.getImageId().isEqual(original.getId()));
+		assertEquals(1, noQueries); // found in the content hash index
+		assertSame(original, manager.findPhotoByContentHash(CONTENT_HASH));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnknownContentIsNotFound() {
+		assertNull(manager.findPhotoByContentHash(CONTENT_HASH));
+		assertEquals(1, noQueries);
+		assertEquals(0, manager.getNoCachedPhotos());
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.File;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PhotoUtil class.
+ */
+public class PhotoUtilTest {
+
+	@ClassRule
+	public static SysConfigProvider sysConfigProvider = new SysConfigProvider();
+
+	/**
+	 *
+	 */
+	@Test
+	public void testShardPathUsesLastCharacters() {
+		assertEquals("3/c", PhotoUtil.getShardPath("x1ac3"));
+		assertEquals("z/0", PhotoUtil.getShardPath("z"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPhotoFileIsBelowShardDirectories() {
+		File file = PhotoUtil.getPhotoFile("x1ac3", PhotoSize.THUMB);
+		assertEquals("x1ac30.jpg", file.getName());
+		assertEquals("c", file.getParentFile().getName());
+		assertEquals("3", file.getParentFile().getParentFile().getName());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testImageFormatIsRecognizedByMagicBytes() {
+		byte[] jpeg = { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 };
+		assertEquals("jpeg", PhotoUtil.getImageFormatName(jpeg, jpeg.length));
+
+		byte[] png = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n' };
+		assertEquals("png", PhotoUtil.getImageFormatName(png, png.length));
+
+		byte[] text = "<html>".getBytes();
+		assertNull(PhotoUtil.getImageFormatName(text, text.length));
+		assertNull(PhotoUtil.getImageFormatName(jpeg, 2));
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.services;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the AsyncLogWriter class.
+ */
+public class AsyncLogWriterTest {
+
+	/**
+	 *
+	 */
+	protected List<String> written = Collections.synchronizedList(new ArrayList<String>());
+	protected AsyncLogWriter writer;
+
+	/**
+	 *
+	 */
+	protected AsyncLogWriter createWriter(int capacity) {
+		writer = new AsyncLogWriter(Logger.getLogger(AsyncLogWriterTest.class.getName()), capacity) {
+			protected void write(StringBuilder entry) {
+				written.add(entry.toString());
+			}
+		};
+		writer.start();
+		return writer;
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		if (writer != null) {
+			writer.stop();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCapacityIsPowerOfTwo() {
+		assertEquals(8, createWriter(5).getCapacity());
+		writer.stop();
+		assertEquals(8, createWriter(8).getCapacity());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEntryIsCopied() {
+		createWriter(4);
+		StringBuilder entry = new StringBuilder("first");
+		writer.append(entry);
+		entry.setLength(0);
+		entry.append("second");
+		writer.append(entry);
+
+		assertTrue(writer.flush(5000));
+		assertEquals(Arrays.asList("first", "second"), written);
+		assertEquals(2, writer.getNoWrittenEntries());
+		assertEquals(0, writer.getNoPendingEntries());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentAppendsKeepOrderPerThread() throws Exception {
+		createWriter(8);
+		final int noThreads = 4;
+		final int noEntries = 2000;
+		Thread[] threads = new Thread[noThreads];
+		for (int i = 0; i < noThreads; i++) {
+			final int threadNo = i;
+			threads[i] = new Thread() {
+				public void run() {
+					StringBuilder entry = new StringBuilder();
+					for (int j = 0; j < noEntries; j++) {
+						entry.setLength(0);
+						entry.append(threadNo).append(':').append(j);
+						writer.append(entry);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(writer.flush(5000));
+		assertEquals(noThreads * noEntries, written.size());
+		int[] next = new int[noThreads];
+		for (String entry : written) {
+			int colon = entry.indexOf(':');
+			int threadNo = Integer.parseInt(entry.substring(0, colon));
+			assertEquals(next[threadNo]++, Integer.parseInt(entry.substring(colon + 1)));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStopWritesPendingEntries() throws Exception {
+		createWriter(16);
+		for (int i = 0; i < 10; i++) {
+			writer.append("entry" + i);
+		}
+		writer.stop();
+		writer.writer.join(5000);
+
+		assertFalse(writer.writer.isAlive());
+		assertEquals(10, written.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIdleWriterSleepsUntilAppend() throws Exception {
+		createWriter(16);
+		writer.append("first");
+		assertTrue(writer.flush(5000));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!writer.isWriterAsleep && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertTrue(writer.isWriterAsleep);
+		Thread.sleep(50);
+		assertEquals(Thread.State.WAITING, writer.writer.getState());
+
+		writer.append("second");
+		deadline = System.currentTimeMillis() + 5000;
+		while ((written.size() < 2) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(1);
+		}
+		assertEquals(Arrays.asList("first", "second"), written);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEntriesAfterStopAreWrittenRightAway() {
+		createWriter(4);
+		writer.append("before");
+		assertTrue(writer.stop(5000));
+
+		for (int i = 0; i < 10; i++) {
+			writer.append("after" + i);
+		}
+		assertEquals(11, written.size());
+		assertEquals("after9", written.get(10));
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.services;
+
+import java.text.*;
+import java.util.*;
+
+import org.apache.log4j.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the Log class.
+ */
+public class LogTest {
+
+	/**
+	 *
+	 */
+	protected List<String> written = Collections.synchronizedList(new ArrayList<String>());
+	protected AsyncLogWriter savedWriter;
+	protected AsyncLogWriter testWriter;
+	protected Level savedLevel;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		testWriter = new AsyncLogWriter(Log.logger, 64) {
+			protected void write(StringBuilder entry) {
+				written.add(entry.toString());
+			}
+		};
+		testWriter.start();
+		savedWriter = Log.setWriter(testWriter);
+		savedLevel = Log.logger.getLevel();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		Log.logger.setLevel(savedLevel);
+		Log.setWriter(savedWriter);
+		testWriter.stop();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTimestampMatchesDateFormat() {
+		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss SSS");
+		long now = System.currentTimeMillis();
+		long[] times = { 0, 7, 42, 999, 1000, now, now + 1, now + 1000, now - 86400000L };
+		for (long time : times) {
+			StringBuilder sb = new StringBuilder();
+			Log.addTimestamp(sb, time);
+			assertEquals(dateFormat.format(time), sb.toString());
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEntryFields() {
+		SysLog.logSysInfo("redirect", "showPhoto");
+		assertTrue(Log.flush());
+
+		assertEquals(1, written.size());
+		String entry = written.get(0);
+		assertTrue(entry.contains(", level=sl, session="));
+		assertTrue(entry.contains(", threadId=" + Thread.currentThread().getId() + ", "));
+		assertTrue(entry.endsWith(", logType=info, redirect=showPhoto"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEntryBufferIsReused() {
+		StringBuilder first = Log.createLogEntry("sl");
+		StringBuilder nested = Log.createLogEntry("sl");
+		assertNotSame(first, nested);
+		Log.log(nested);
+		Log.log(first);
+
+		int noPooled = Log.entryBuffers.getNoPooled();
+		assertTrue(noPooled >= 2);
+		StringBuilder second = Log.createLogEntry("sl");
+		assertEquals(noPooled - 1, Log.entryBuffers.getNoPooled());
+		String entry = second.toString();
+		assertEquals(entry.indexOf("level=sl"), entry.lastIndexOf("level=sl"));
+		Log.log(second);
+		assertEquals(noPooled, Log.entryBuffers.getNoPooled());
+
+		assertTrue(Log.flush());
+		assertEquals(3, written.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOversizedEntryBufferIsDropped() {
+		StringBuilder sb = Log.createLogEntry("sl");
+		int noPooled = Log.entryBuffers.getNoPooled();
+		sb.append(new char[AsyncLogWriter.MAX_ENTRY_CAPACITY + 1]);
+		Log.log(sb);
+		assertEquals(noPooled, Log.entryBuffers.getNoPooled());
+		assertTrue(Log.flush());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNothingIsWrittenBelowLevel() {
+		Log.logger.setLevel(Level.WARN);
+		SysLog.logSysInfo("redirect", "showPhoto");
+		SysLog.logQuery("SELECT 1");
+		SysLog.logThrowable(new Exception());
+		Log.log(Log.createLogEntry("ul"));
+
+		assertTrue(Log.flush());
+		assertTrue(written.isEmpty());
+	}
+
+}
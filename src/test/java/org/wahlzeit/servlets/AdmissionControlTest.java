@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import javax.servlet.http.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the AdmissionControl class.
+ */
+public class AdmissionControlTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRateLimitsAnswerTooManyRequests() {
+		AdmissionControl admission = new AdmissionControl(1000, 2, 0, 0, 0, 100);
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s1", "10.0.0.1"));
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s1", "10.0.0.1"));
+		assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, admission.admit("s1", "10.0.0.1"));
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s2", "10.0.0.1"));
+		assertEquals(HttpServletResponse.SC_OK, admission.admit(null, "10.0.0.1"));
+		assertEquals(1, admission.getNoRateLimited());
+		assertEquals(1, admission.getRetryAfter("s1", "10.0.0.1"));
+
+		admission = new AdmissionControl(0, 0, 1000, 1, 0, 100);
+		assertEquals(HttpServletResponse.SC_OK, admission.admit(null, "10.0.0.1"));
+		assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, admission.admit("s1", "10.0.0.1"));
+		assertEquals(HttpServletResponse.SC_OK, admission.admit(null, "10.0.0.2"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrencyLimitAnswersServiceUnavailable() {
+		AdmissionControl admission = new AdmissionControl(0, 0, 0, 0, 2, 100);
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s1", "10.0.0.1"));
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s2", "10.0.0.2"));
+		assertEquals(2, admission.getNoConcurrentRequests());
+		assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, admission.admit("s3", "10.0.0.3"));
+		assertEquals(1, admission.getNoOverloaded());
+
+		admission.release();
+		assertEquals(HttpServletResponse.SC_OK, admission.admit("s3", "10.0.0.3"));
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the AsyncResponse class.
+ */
+public class AsyncResponseTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAbandonedResponseIsNotWritten() throws Exception {
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		ServletOutputStream containerStream = new ServletOutputStream() {
+			public void write(int b) {
+				sent.write(b);
+			}
+			public boolean isReady() {
+				return true;
+			}
+			public void setWriteListener(WriteListener listener) {
+				// always ready
+			}
+		};
+		List<String> calls = new ArrayList<String>();
+		AsyncResponse response = new AsyncResponse(createResponse(containerStream, calls));
+
+		ServletOutputStream stream = response.getOutputStream();
+		stream.write("page".getBytes("UTF-8"));
+		response.setContentType("text/html");
+		assertFalse(response.isCommitted());
+
+		assertTrue(response.abandon());
+		assertFalse(response.abandon());
+		assertTrue(response.isCommitted());
+		assertFalse(stream.isReady());
+
+		try {
+			stream.write("more".getBytes("UTF-8"));
+			fail("write to abandoned response");
+		} catch (IOException ioex) {
+			// expected
+		}
+		try {
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			fail("error sent on abandoned response");
+		} catch (IOException ioex) {
+			// expected
+		}
+		response.setHeader("ETag", "\"x\"");
+		response.setStatus(HttpServletResponse.SC_OK);
+		stream.close();
+
+		assertEquals("page", sent.toString("UTF-8"));
+		assertEquals(Arrays.asList("getOutputStream", "setContentType", "isCommitted"), calls);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTimedOutRequestIsAbandonedOnce() throws Exception {
+		List<String> calls = new ArrayList<String>();
+		HttpServletResponse httpResponse = createResponse(null, calls);
+		AsyncResponse response = new AsyncResponse(httpResponse);
+		final int[] completions = new int[1];
+		AsyncContext context = (AsyncContext) Proxy.newProxyInstance(AsyncResponseTest.class.getClassLoader(), new Class<?>[] { AsyncContext.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("complete")) {
+					completions[0]++;
+				}
+				return null;
+			}
+		});
+
+		MainServlet servlet = new MainServlet();
+		servlet.abandonRequest(context, response, httpResponse, "request timed out");
+		servlet.abandonRequest(context, response, httpResponse, "request failed");
+
+		assertTrue(response.isAbandoned());
+		assertEquals(1, completions[0]);
+		assertEquals(Arrays.asList("setHeader", "isCommitted", "sendError 503"), calls);
+	}
+
+	/**
+	 * Returns a response that writes into stream and records the calls made to it
+	 */
+	protected static HttpServletResponse createResponse(final ServletOutputStream stream, final List<String> calls) {
+		return (HttpServletResponse) Proxy.newProxyInstance(AsyncResponseTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("sendError")) {
+					calls.add(name + " " + args[0]);
+				} else {
+					calls.add(name);
+				}
+				if (name.equals("getOutputStream")) {
+					return stream;
+				} else if (name.equals("isCommitted")) {
+					return false;
+				}
+				return null;
+			}
+		});
+	}
+
+}
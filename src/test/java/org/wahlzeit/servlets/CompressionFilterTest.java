@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.zip.Deflater;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.junit.Test;
+import org.wahlzeit.utils.DeflaterPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the CompressionFilter class.
+ */
+public class CompressionFilterTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testGzipIsAcceptedAsListed() {
+		assertTrue(CompressionFilter.isGzipAccepted("gzip, deflate, br"));
+		assertTrue(CompressionFilter.isGzipAccepted("br;q=1.0, GZIP;q=0.5"));
+		assertTrue(CompressionFilter.isGzipAccepted("*"));
+		assertFalse(CompressionFilter.isGzipAccepted(null));
+		assertFalse(CompressionFilter.isGzipAccepted("deflate, br"));
+		assertFalse(CompressionFilter.isGzipAccepted("gzip;q=0, deflate"));
+		assertFalse(CompressionFilter.isGzipAccepted("x-gzip-like"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOnlyTextIsCompressed() {
+		assertTrue(CompressionFilter.isCompressibleType("text/html; charset=UTF-8"));
+		assertTrue(CompressionFilter.isCompressibleType("application/javascript"));
+		assertFalse(CompressionFilter.isCompressibleType("image/jpeg"));
+		assertFalse(CompressionFilter.isCompressibleType(null));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testWriteListenerIsPassedOn() throws Exception {
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		final WriteListener[] containerListener = new WriteListener[1];
+		final boolean[] isContainerReady = new boolean[1];
+		final ServletOutputStream containerStream = new ServletOutputStream() {
+			public void write(int b) {
+				sent.write(b);
+			}
+			public boolean isReady() {
+				return isContainerReady[0];
+			}
+			public void setWriteListener(WriteListener listener) {
+				containerListener[0] = listener;
+			}
+		};
+
+		CompressionFilter filter = new CompressionFilter();
+		filter.minSize = 16;
+		filter.deflaters = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, 1);
+
+		for (String contentType : new String[] { "text/html", "image/jpeg" }) {
+			containerListener[0] = null;
+			isContainerReady[0] = false;
+			sent.reset();
+
+			final ServletOutputStream stream = filter.new CompressingResponse(createResponse(containerStream, contentType)).getOutputStream();
+			assertTrue(stream.isReady());
+			WriteListener listener = new WriteListener() {
+				public void onWritePossible() throws IOException {
+					if (stream.isReady()) {
+						stream.write("photo".getBytes("UTF-8"));
+						stream.close();
+					}
+				}
+				public void onError(Throwable t) {
+					fail(t.toString());
+				}
+			};
+			stream.setWriteListener(listener);
+			assertSame(listener, containerListener[0]);
+			assertFalse(stream.isReady());
+			assertEquals(0, sent.size());
+
+			isContainerReady[0] = true;
+			listener.onWritePossible();
+			assertEquals(contentType, "photo", sent.toString("UTF-8"));
+		}
+	}
+
+	/**
+	 * Returns a response of status 200 and the given content type that writes into stream
+	 */
+	protected static HttpServletResponse createResponse(final ServletOutputStream stream, final String contentType) {
+		return (HttpServletResponse) Proxy.newProxyInstance(CompressionFilterTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getOutputStream")) {
+					return stream;
+				} else if (name.equals("getContentType")) {
+					return contentType;
+				} else if (name.equals("getStatus")) {
+					return HttpServletResponse.SC_OK;
+				} else if (name.equals("containsHeader")) {
+					return false;
+				}
+				return null;
+			}
+		});
+	}
+
+}
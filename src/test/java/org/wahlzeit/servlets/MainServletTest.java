@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the MainServlet class.
+ */
+public class MainServletTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIfNoneMatchIsComparedWeakly() {
+		String validator = "W/\"k1-0-x1ac3-5-en-medium\"";
+		assertTrue(MainServlet.isNotModified(validator, validator));
+		assertTrue(MainServlet.isNotModified("\"other\", \"k1-0-x1ac3-5-en-medium\"", validator));
+		assertTrue(MainServlet.isNotModified("*", validator));
+		assertFalse(MainServlet.isNotModified(null, validator));
+		assertFalse(MainServlet.isNotModified("W/\"k1-0-x1ac3-6-en-medium\"", validator));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSessionNamesDeriveFromTokens() {
+		String token = AbstractServlet.createSessionToken();
+		assertTrue(AbstractServlet.isSessionToken(token));
+		assertFalse(token.equals(AbstractServlet.createSessionToken()));
+		assertFalse(AbstractServlet.isSessionToken("../../etc/passwd"));
+		assertFalse(AbstractServlet.isSessionToken(null));
+
+		String name = AbstractServlet.getSessionName(token);
+		assertEquals(name, AbstractServlet.getSessionName(token));
+		assertFalse(name.contains(token));
+		assertTrue(name.startsWith("session-"));
+	}
+
+}
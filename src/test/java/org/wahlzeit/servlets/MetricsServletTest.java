@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.util.*;
+
+import org.junit.Test;
+import org.wahlzeit.services.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the MetricsServlet class.
+ */
+public class MetricsServletTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRequestLatenciesAreWrittenAsHistogram() {
+		RequestMetrics metrics = new RequestMetrics("index", Metrics.GET);
+		metrics.record(2000000, 1500000, 500000, 1000000); // 2ms total
+		metrics.record(40000000, 30000000, 10000000, 0); // 40ms total
+
+		StringBuilder sb = new StringBuilder();
+		MetricsServlet.writeRequestMetrics(sb, Arrays.asList(metrics));
+		String text = sb.toString();
+
+		assertTrue(text.contains("# TYPE wahlzeit_request_duration_seconds histogram\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_bucket{handler=\"index\",method=\"GET\",le=\"0.001\"} 0\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_bucket{handler=\"index\",method=\"GET\",le=\"0.0025\"} 1\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_bucket{handler=\"index\",method=\"GET\",le=\"0.05\"} 2\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_bucket{handler=\"index\",method=\"GET\",le=\"+Inf\"} 2\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_sum{handler=\"index\",method=\"GET\"} 0.042\n"));
+		assertTrue(text.contains("wahlzeit_request_duration_seconds_count{handler=\"index\",method=\"GET\"} 2\n"));
+		assertTrue(text.contains("wahlzeit_request_phase_duration_seconds_count{handler=\"index\",method=\"GET\",phase=\"database\"} 2\n"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLinesAreWellFormed() {
+		StringBuilder sb = new StringBuilder();
+		MetricsServlet.writeDatabaseMetrics(sb);
+		MetricsServlet.writeJvmMetrics(sb);
+
+		for (String line : sb.toString().split("\n")) {
+			assertTrue(line, line.startsWith("# ") || line.matches("[a-z_]+(\\{[^}]*\\})? -?[0-9.E-]+"));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLabelValuesAreEscaped() {
+		assertEquals("index", MetricsServlet.escape("index"));
+		assertEquals("a\\\"b\\\\c\\n", MetricsServlet.escape("a\"b\\c\n"));
+	}
+
+}
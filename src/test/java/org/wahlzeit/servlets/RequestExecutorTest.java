@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.servlets;
+
+import java.util.concurrent.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the RequestExecutor class.
+ */
+public class RequestExecutorTest {
+
+	/**
+	 *
+	 */
+	protected RequestExecutor executor;
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutDown();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUsesVirtualThreadsOnlyIfAvailable() throws Exception {
+		boolean hasVirtualThreads = true;
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException nsmex) {
+			hasVirtualThreads = false;
+		}
+
+		executor = new RequestExecutor(true, 2, 2);
+		assertEquals(hasVirtualThreads, executor.isUsingVirtualThreads());
+		assertRunsRequest(executor);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testThreadPoolRunsRequests() throws Exception {
+		executor = new RequestExecutor(false, 2, 2);
+		assertFalse(executor.isUsingVirtualThreads());
+		assertRunsRequest(executor);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFullThreadPoolRejectsRequests() throws Exception {
+		executor = new RequestExecutor(false, 1, 1);
+		final CountDownLatch isBlocking = new CountDownLatch(1);
+		final CountDownLatch isReleased = new CountDownLatch(1);
+		Runnable blocker = new Runnable() {
+			public void run() {
+				isBlocking.countDown();
+				try {
+					isReleased.await();
+				} catch (InterruptedException iex) {
+					// done
+				}
+			}
+		};
+
+		executor.execute(blocker);
+		isBlocking.await();
+		executor.execute(blocker); // queued
+		try {
+			executor.execute(blocker);
+			fail("request should have been rejected");
+		} catch (RejectedExecutionException rex) {
+			// expected
+		} finally {
+			isReleased.countDown();
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected void assertRunsRequest(RequestExecutor executor) throws InterruptedException {
+		final CountDownLatch isDone = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				isDone.countDown();
+			}
+		});
+		assertTrue(isDone.await(5, TimeUnit.SECONDS));
+	}
+
+}
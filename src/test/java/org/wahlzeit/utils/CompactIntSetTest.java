@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the CompactIntSet class.
+ */
+public class CompactIntSetTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAddAndContains() {
+		CompactIntSet set = new CompactIntSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(0));
+		assertTrue(set.add(42));
+		assertFalse(set.add(42));
+		assertEquals(2, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(42));
+		assertFalse(set.contains(41));
+		assertFalse(set.contains(-1));
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(42));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSparseValuesStayInTable() {
+		CompactIntSet set = new CompactIntSet();
+		Set<Integer> expected = new TreeSet<Integer>();
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			int value = random.nextInt(Integer.MAX_VALUE);
+			assertEquals(expected.add(value), set.add(value));
+		}
+
+		assertFalse(set.isBitmap());
+		assertTrue(set.getNoValueBytes() <= 4 * 4 * expected.size());
+		assertEquals(expected.size(), set.size());
+		for (int value : expected) {
+			assertTrue(set.contains(value));
+		}
+		assertEquals(expected.toString(), Arrays.toString(set.toArray()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDenseValuesTurnIntoBitmap() {
+		CompactIntSet set = new CompactIntSet();
+		for (int value = 0; value < 10000; value += 3) {
+			assertTrue(set.add(value));
+		}
+
+		assertTrue(set.isBitmap());
+		assertTrue(set.getNoValueBytes() >= 8 * (9999 / 64 + 1));
+		assertTrue(set.getNoValueBytes() <= 3 * 8 * (9999 / 64 + 1) / 2);
+		assertEquals(3334, set.size());
+		assertTrue(set.contains(9999));
+		assertFalse(set.contains(9998));
+		assertFalse(set.contains(100000));
+
+		assertTrue(set.add(100000));
+		assertFalse(set.add(100000));
+		int[] values = set.toArray();
+		assertEquals(3335, values.length);
+		assertEquals(3, values[1]);
+		assertEquals(100000, values[values.length - 1]);
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNegativeValues() {
+		new CompactIntSet().add(-1);
+	}
+
+}
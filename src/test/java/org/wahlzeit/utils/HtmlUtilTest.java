@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.io.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the HtmlUtil class.
+ */
+public class HtmlUtilTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStringWithoutSpecialCharsIsReturnedAsIs() {
+		String value = "flower, red, summer";
+		assertSame(value, HtmlUtil.maskForWeb(value));
+		assertTrue(HtmlUtil.isMaskedForWeb(value));
+		assertSame("", HtmlUtil.maskForWeb(""));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSpecialCharsAreMasked() {
+		assertEquals("&lt;b&gt;Tom &amp; &quot;Jerry&quot;&lt;/b&gt;", HtmlUtil.maskForWeb("<b>Tom & \"Jerry\"</b>"));
+		assertEquals("a&amp;", HtmlUtil.maskForWeb("a&"));
+		assertFalse(HtmlUtil.isMaskedForWeb("x > y"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMaskingWhileWritingMatchesMasking() throws IOException {
+		String[] values = { "", "plain", "<", "&&", "Grüße <Welt> & \"Mond\"", "end>" };
+		for (String value : values) {
+			StringWriter out = new StringWriter();
+			HtmlUtil.maskForWeb(out, value);
+			assertEquals(HtmlUtil.maskForWeb(value), out.toString());
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the LatencyHistogram class.
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSmallValuesAreCountedExactly() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100, histogram.getTotalCount());
+		assertEquals(50, histogram.getValueAtPercentile(50.0));
+		assertEquals(99, histogram.getValueAtPercentile(99.0));
+		assertEquals(100, histogram.getValueAtPercentile(100.0));
+		assertEquals(100, histogram.getMaxValue());
+		assertEquals(50.5, histogram.getMean(), 0.001);
+		assertEquals(10, histogram.getCountAtOrBelow(10));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLargeValuesAreCountedWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1000; value <= 1000000; value += 1000) {
+			histogram.record(value);
+		}
+
+		assertWithinPrecision(500000, histogram.getValueAtPercentile(50.0));
+		assertWithinPrecision(990000, histogram.getValueAtPercentile(99.0));
+		assertEquals(1000000, histogram.getValueAtPercentile(100.0));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testBucketsCoverAllValues() {
+		for (long value = 0; value <= LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 1) {
+			int index = LatencyHistogram.getBucketIndex(value);
+			assertTrue(LatencyHistogram.getHighestValueInBucket(index) >= value);
+			if (index > 0) {
+				assertTrue(LatencyHistogram.getHighestValueInBucket(index - 1) < value);
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOutOfRangeValuesAreClamped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(2, histogram.getTotalCount());
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMaxValue());
+		assertEquals(0, new LatencyHistogram().getValueAtPercentile(99.0));
+	}
+
+	/**
+	 *
+	 */
+	protected void assertWithinPrecision(long expected, long actual) {
+		assertEquals(expected, actual, expected / 64.0);
+	}
+
+}
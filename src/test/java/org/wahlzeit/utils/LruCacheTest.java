@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the LruCache class.
+ */
+public class LruCacheTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEvictsLeastRecentlyUsedEntry() {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+
+		cache.put("c", 3);
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCountsHitsAndMisses() {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(4);
+		cache.put("a", 1);
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testZeroEntriesDisablesCache() {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(0);
+		cache.put("a", 1);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+
+}
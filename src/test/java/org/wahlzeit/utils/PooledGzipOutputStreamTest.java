@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the PooledGzipOutputStream and DeflaterPool classes.
+ */
+public class PooledGzipOutputStreamTest {
+
+	/**
+	 *
+	 */
+	protected byte[] decompress(byte[] bytes) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			byte[] buffer = new byte[4096];
+			for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+				result.write(buffer, 0, length);
+			}
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testOutputIsReadableGzip() throws IOException {
+		StringBuilder page = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			page.append("<p>Grüße aus Wahlzeit, photo ").append(i).append("</p>\n");
+		}
+		byte[] bytes = page.toString().getBytes(StandardCharsets.UTF_8);
+
+		byte[] compressed = PooledGzipOutputStream.compress(bytes, new DeflaterPool(6, 4));
+
+		assertTrue(compressed.length < bytes.length / 4);
+		assertArrayEquals(bytes, decompress(compressed));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEmptyInputIsReadableGzip() throws IOException {
+		byte[] compressed = PooledGzipOutputStream.compress(new byte[0], new DeflaterPool(6, 4));
+		assertEquals(0, decompress(compressed).length);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDeflatersAreReused() throws IOException {
+		DeflaterPool pool = new DeflaterPool(1, 1);
+		Deflater deflater = pool.acquire();
+		pool.release(deflater);
+		assertEquals(1, pool.getNoPooled());
+
+		byte[] bytes = "reused".getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(bytes, decompress(PooledGzipOutputStream.compress(bytes, pool)));
+		assertSame(deflater, pool.acquire());
+
+		pool.release(new Deflater(1, true));
+		pool.release(new Deflater(1, true)); // ended, the pool is full
+		assertEquals(1, pool.getNoPooled());
+		pool.close();
+		assertEquals(0, pool.getNoPooled());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDeflaterIsReleasedIfHeaderFails() {
+		DeflaterPool pool = new DeflaterPool(1, 1);
+		Deflater deflater = pool.acquire();
+		pool.release(deflater);
+
+		OutputStream failing = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("connection reset");
+			}
+		};
+		try {
+			new PooledGzipOutputStream(failing, pool);
+			fail("header written to failing stream");
+		} catch (IOException ioex) {
+			// expected
+		}
+
+		assertEquals(1, pool.getNoPooled());
+		assertSame(deflater, pool.acquire());
+	}
+
+}
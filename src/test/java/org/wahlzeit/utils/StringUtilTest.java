@@ -47,5 +47,14 @@ public class StringUtilTest {
 		assertEquals("/", StringUtil.pathAsUrlString(File.separator));
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testAsHexString() {
+		assertEquals("", StringUtil.asHexString(new byte[0]));
+		assertEquals("00017f80ff", StringUtil.asHexString(new byte[] { 0x00, 0x01, 0x7f, (byte) 0x80, (byte) 0xff }));
+	}
+
 }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.utils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the TokenBucket and RateLimiter classes.
+ */
+public class TokenBucketTest {
+
+	/**
+	 *
+	 */
+	protected static final long SECOND = 1000000000L;
+
+	/**
+	 *
+	 */
+	@Test
+	public void testBurstThenRate() {
+		long now = 42;
+		TokenBucket bucket = new TokenBucket(10, 5, now); // a token every 100ms
+		for (int i = 0; i < 5; i++) {
+			assertTrue(bucket.tryAcquire(now));
+		}
+		assertFalse(bucket.tryAcquire(now));
+		assertEquals(SECOND / 10, bucket.getWaitTime(now));
+
+		now += SECOND / 10;
+		assertEquals(0, bucket.getWaitTime(now));
+		assertTrue(bucket.tryAcquire(now));
+		assertFalse(bucket.tryAcquire(now));
+
+		now += SECOND;
+		assertTrue(bucket.isFull(now));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(bucket.tryAcquire(now));
+		}
+		assertFalse(bucket.tryAcquire(now));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testConcurrentAcquiresTakeNoMoreThanBurst() throws Exception {
+		final long now = System.nanoTime();
+		final TokenBucket bucket = new TokenBucket(0.001, 1000, now);
+		final AtomicInteger noAcquired = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						if (bucket.tryAcquire(now)) {
+							noAcquired.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1000, noAcquired.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRateLimiterKeepsBucketPerKey() {
+		long now = 0;
+		RateLimiter limiter = new RateLimiter(1, 2, 100);
+		assertTrue(limiter.tryAcquire("a", now));
+		assertTrue(limiter.tryAcquire("a", now));
+		assertFalse(limiter.tryAcquire("a", now));
+		assertTrue(limiter.tryAcquire("b", now));
+		assertEquals(2, limiter.getNoKeys());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRateLimiterDropsFullBuckets() {
+		long now = System.nanoTime() + 10 * SECOND;
+		RateLimiter limiter = new RateLimiter(1, 1, 2);
+		limiter.tryAcquire("a", now);
+		limiter.tryAcquire("b", now);
+
+		now += 10 * SECOND; // both full again
+		limiter.tryAcquire("c", now);
+		assertEquals(1, limiter.getNoKeys());
+	}
+
+}
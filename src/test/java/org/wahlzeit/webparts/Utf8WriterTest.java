@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the Utf8Writer class.
+ */
+public class Utf8WriterTest {
+
+	/**
+	 *
+	 */
+	protected byte[] encode(Utf8Writer writer, String s) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writer.reset(bytes);
+		writer.write(s);
+		writer.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEncodesLikeStringGetBytes() throws IOException {
+		Utf8Writer writer = new Utf8Writer(8);
+		String[] samples = { "", "plain ascii", "Grüße aus Erlangen", "日本語のテキスト", "emoji 📷 photo", "€100" };
+		for (String sample : samples) {
+			assertArrayEquals(sample, sample.getBytes(StandardCharsets.UTF_8), encode(writer, sample));
+			assertEquals(sample.getBytes(StandardCharsets.UTF_8).length, writer.getByteCount());
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSurrogatePairMayBeSplitAcrossWrites() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Writer writer = new Utf8Writer(bytes);
+		writer.write('\ud83d');
+		writer.write('\udcf7');
+		writer.flush();
+		assertArrayEquals("📷".getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoneSurrogatesBecomeQuestionMarks() throws IOException {
+		Utf8Writer writer = new Utf8Writer();
+		assertArrayEquals("a?b?".getBytes(StandardCharsets.UTF_8), encode(writer, "a\udcf7b\ud83d"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPreEncodedBytesAreCopied() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Writer writer = new Utf8Writer(16);
+		writer.reset(bytes);
+		writer.writeBytes("<p>".getBytes(StandardCharsets.UTF_8));
+		assertTrue(writer.isBuffered());
+		writer.write("ä");
+		writer.writeBytes("</p> and a segment longer than the buffer".getBytes(StandardCharsets.UTF_8));
+		assertFalse(writer.isBuffered());
+		writer.flush();
+
+		String expected = "<p>ä</p> and a segment longer than the buffer";
+		assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+		assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, writer.getByteCount());
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the WebPartFragment and WebPartFragmentCache classes.
+ */
+public class WebPartFragmentCacheTest {
+
+	/**
+	 *
+	 */
+	protected WebPartFragmentCache cache;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		cache = new WebPartFragmentCache();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFragmentWritesItsBytesAndText() throws IOException {
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("<p>Grüße, {$name}</p>");
+		WebPart part = new WebPart(template);
+		part.addString("name", "Welt");
+
+		WebPartFragment fragment = WebPartFragment.render(part, 0);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Writer utf8Out = new Utf8Writer(bytes);
+		fragment.writeOn(utf8Out);
+		utf8Out.flush();
+		assertEquals("<p>Grüße, Welt</p>", bytes.toString("UTF-8"));
+
+		StringWriter charOut = new StringWriter();
+		fragment.writeOn(charOut);
+		assertEquals("<p>Grüße, Welt</p>", charOut.toString());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFragmentsAreKeyedByNameLanguageAndRights() {
+		String guestKey = WebPartFragmentCache.asKey("infos/LinksInfo", "en", "guest");
+		String userKey = WebPartFragmentCache.asKey("infos/LinksInfo", "en", "user");
+		WebPartFragment fragment = cache.putFragment(guestKey, cache.getVersion(), "links");
+
+		assertSame(fragment, cache.getFragment(guestKey));
+		assertNull(cache.getFragment(userKey));
+		assertNull(cache.getFragment(WebPartFragmentCache.asKey("infos/LinksInfo", "de", "guest")));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFragmentsOfOlderTemplatesAreDropped() {
+		String key = WebPartFragmentCache.asKey("menu", "en", "guest");
+		cache.putFragment(key, cache.getVersion() - 1, "old menu");
+
+		assertNull(cache.getFragment(key));
+		assertEquals(0, cache.getNoFragments());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDisabledCacheKeepsNothing() {
+		cache.setEnabled(false);
+		String key = WebPartFragmentCache.asKey("menu", "en", "guest");
+		WebPartFragment fragment = cache.putFragment(key, cache.getVersion(), "menu");
+
+		assertEquals("menu", fragment.asString());
+		assertNull(cache.getFragment(key));
+	}
+
+}
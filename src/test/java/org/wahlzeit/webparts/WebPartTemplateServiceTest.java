@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.wahlzeit.services.ConfigDir;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the WebPartTemplateService class.
+ */
+public class WebPartTemplateServiceTest {
+
+	/**
+	 *
+	 */
+	@Rule
+	public TemporaryFolder rootDir = new TemporaryFolder();
+
+	/**
+	 *
+	 */
+	protected WebPartTemplateService service;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setUp() {
+		service = new WebPartTemplateService();
+		service.setTemplatesDir(new ConfigDir(rootDir.getRoot().getPath(), "templates"));
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() {
+		service.stopWatching();
+	}
+
+	/**
+	 *
+	 */
+	protected Path writeTemplate(String dirName, String shortName, String source) throws IOException {
+		Path file = rootDir.getRoot().toPath().resolve("templates/" + dirName + "/" + shortName + ".html");
+		Files.createDirectories(file.getParent());
+		Path tempFile = Files.write(file.resolveSibling("template.tmp"), source.getBytes(StandardCharsets.UTF_8));
+		return Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAllTemplatesArePreloaded() throws IOException {
+		writeTemplate("default", "en/pages/ShowTestPage", "<p>{$text}</p>");
+		writeTemplate("default", "de/pages/ShowTestPage", "<p>{$text}</p>");
+		writeTemplate("custom", "en/infos/CustomInfo", "<p>custom</p>");
+		Files.write(rootDir.getRoot().toPath().resolve("templates/default/en/ModelConfig.properties"), new byte[0]);
+
+		service.loadAllTemplates(2);
+
+		assertEquals(3, service.getNoTemplates());
+		assertEquals("<p>custom</p>", service.getTemplate("en", "infos/CustomInfo").asString());
+		assertSame(service.getTemplate("de", "pages/ShowTestPage"), service.getTemplate("de", "pages/ShowTestPage"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLargeTemplatesAreNotTruncated() throws IOException {
+		char[] text = new char[100000];
+		Arrays.fill(text, 'x');
+		String source = new String(text) + "{$end}ä";
+		writeTemplate("default", "en/pages/LargePage", source);
+
+		service.loadAllTemplates(1);
+
+		assertEquals(new String(text) + "ä", service.getTemplate("en", "pages/LargePage").asString());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testChangedTemplatesAreReloaded() throws Exception {
+		writeTemplate("default", "en/pages/ShowTestPage", "<p>old</p>");
+		service.loadAllTemplates(1);
+		service.startWatching();
+		WebPartTemplate oldTemplate = service.getTemplate("en", "pages/ShowTestPage");
+
+		writeTemplate("default", "en/pages/ShowTestPage", "<p>new</p>");
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((service.getTemplate("en", "pages/ShowTestPage") == oldTemplate) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(20);
+		}
+		assertEquals("<p>new</p>", service.getTemplate("en", "pages/ShowTestPage").asString());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the WebPart and WebPartTemplate classes.
+ */
+public class WebPartTest {
+
+	/**
+	 *
+	 */
+	protected String render(WebPart part) throws IOException {
+		StringWriter out = new StringWriter();
+		part.writeOn(out);
+		return out.toString();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTemplateIsCompiledIntoSegments() {
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("<a href=\"{$link}\">{$caption}{$caption}</a>");
+
+		assertArrayEquals(new String[] { "<a href=\"", "\">", "", "</a>" }, template.getSegments());
+		assertArrayEquals(new String[] { "link", "caption", "caption" }, template.getKeys());
+		assertEquals("<a href=\"\"></a>", template.asString());
+		assertEquals(2, template.getNoValues());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testValuesAreBoundByKeyAndBySlot() throws IOException {
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("<p>{$first}, {$second}!</p>");
+
+		WebPart part = new WebPart(template);
+		part.addString("first", "Hello");
+		part.addString(WebPartSlot.get("second"), "World");
+		assertEquals("<p>Hello, World!</p>", render(part));
+		assertEquals("Hello", part.getValue(WebPartSlot.get("first")));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnknownAndMissingKeysAreIgnored() throws IOException {
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("{$known}|{$unset}");
+
+		WebPart part = new WebPart(template);
+		part.addString("known", "x");
+		part.addString("neverUsedInAnyTemplate", "y");
+		part.addString(WebPartSlot.get("otherTemplatesKey"), "z");
+		assertEquals("x|", render(part));
+		assertNull(part.getValue("neverUsedInAnyTemplate"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNestedPartsAreWritten() throws IOException {
+		WebPartTemplate outer = new WebPartTemplate("outer");
+		outer.initialize("<div>{$inner}</div>");
+		WebPartTemplate inner = new WebPartTemplate("inner");
+		inner.initialize("<span>{$text}</span>");
+
+		WebPart innerPart = new WebPart(inner);
+		innerPart.addString("text", "nested");
+		WebPart outerPart = new WebPart(outer);
+		outerPart.addWritable("inner", innerPart);
+		assertEquals("<div><span>nested</span></div>", render(outerPart));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSkeletonKeepsOnlyHoles() throws IOException {
+		WebPartTemplate outer = new WebPartTemplate("outer");
+		outer.initialize("<div>{$inner}|{$hole}|{$text}{$hole}</div>");
+		WebPartTemplate inner = new WebPartTemplate("inner");
+		inner.initialize("<span>{$text}</span>");
+
+		WebPart innerPart = new WebPart(inner);
+		innerPart.addString("text", "nested {$text}");
+		WebPart outerPart = new WebPart(outer);
+		outerPart.addWritable("inner", innerPart);
+		outerPart.addString("text", "outer");
+		outerPart.addString("hole", "old");
+
+		WebPartTemplate skeleton = outerPart.createSkeleton("skeleton", WebPartSlot.get("hole"));
+		assertArrayEquals(new String[] { "hole", "hole" }, skeleton.getKeys());
+
+		WebPart part = new WebPart(skeleton);
+		part.addString("hole", "new");
+		part.addString("text", "ignored");
+		assertEquals("<div><span>nested {$text}</span>|new|outernew</div>", render(part));
+	}
+
+}